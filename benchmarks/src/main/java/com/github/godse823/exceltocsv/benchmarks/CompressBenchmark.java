@@ -0,0 +1,69 @@
+package com.github.godse823.exceltocsv.benchmarks;
+
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.ExcelToCsvConverter;
+import com.github.godse823.exceltocsv.SheetResult;
+import com.github.godse823.exceltocsv.codec.OutputCodec;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converts the first sheet of a synthetic workbook with each output codec,
+ * discarding the compressed bytes, to compare the codecs against plain CSV
+ * ({@code none}). The {@code bytes} counter is the uncompressed CSV size.
+ * One operation is one row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressBenchmark {
+
+    @Param({"NUMERIC", "STRINGS"})
+    public WorkbookShape shape;
+
+    @Param({"none", "gzip:1", "gzip", "lz4", "zstd"})
+    public String codec;
+
+    private Path workbook;
+    private ExcelToCsvConverter converter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workbook = SyntheticWorkbook.create(shape);
+        converter = new ExcelToCsvConverter(ConversionOptions.builder()
+                .compression(codec.equals("none") ? null : OutputCodec.named(codec))
+                .build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticWorkbook.delete(workbook.getParent());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticWorkbook.ROWS)
+    public long convert(Throughput throughput) throws IOException {
+        SheetResult result = converter.convertSheet(workbook, null, new NullChannel());
+        throughput.bytes += result.bytes();
+        return result.rows();
+    }
+}
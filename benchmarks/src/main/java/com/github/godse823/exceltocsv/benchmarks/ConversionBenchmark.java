@@ -0,0 +1,78 @@
+package com.github.godse823.exceltocsv.benchmarks;
+
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.ExcelToCsvConverter;
+import com.github.godse823.exceltocsv.OutputFormat;
+import com.github.godse823.exceltocsv.SheetResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end conversion of a whole workbook to CSV or Arrow files, as the
+ * command line tool does it. One operation is one row, so the score is rows/s and
+ * {@code -prof gc} reports allocation per row as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param
+    public WorkbookShape shape;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"CSV", "ARROW"})
+    public OutputFormat format;
+
+    private Path workbook;
+    private Path output;
+    private ExcelToCsvConverter converter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workbook = SyntheticWorkbook.create(shape);
+        output = Files.createDirectory(workbook.resolveSibling("csv"));
+        converter = new ExcelToCsvConverter(ConversionOptions.builder()
+                .parallelism(threads)
+                .outputFormat(format)
+                .build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticWorkbook.delete(workbook.getParent());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticWorkbook.ROWS)
+    public long convert(Throughput throughput) throws IOException {
+        long rows = 0;
+        for (SheetResult result : converter.convert(workbook, output)) {
+            rows += result.rows();
+            throughput.bytes += result.bytes();
+        }
+        return rows;
+    }
+}
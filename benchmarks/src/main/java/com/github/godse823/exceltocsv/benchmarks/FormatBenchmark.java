@@ -0,0 +1,83 @@
+package com.github.godse823.exceltocsv.benchmarks;
+
+import com.github.godse823.exceltocsv.RowBuffer;
+import com.github.godse823.exceltocsv.format.CellFormat;
+import com.github.godse823.exceltocsv.format.CellFormats;
+import com.github.godse823.exceltocsv.format.FormatScratch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Number formatting of XLSX cell text and of BIFF8 doubles. One operation
+ * is one cell; {@code gc.alloc.rate.norm} should be zero for every format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatBenchmark {
+
+    private static final int CELLS = 1024;
+
+    @Param({"General", "#,##0.00", "0.00%", "yyyy-mm-dd hh:mm:ss"})
+    public String code;
+
+    private CellFormat format;
+    private final FormatScratch scratch = new FormatScratch();
+    private final RowBuffer row = new RowBuffer();
+    private final byte[][] texts = new byte[CELLS][];
+    private final double[] values = new double[CELLS];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        format = new CellFormats(false).forCode(code);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < CELLS; i++) {
+            values[i] = 36_526 + random.nextDouble() * 9_000;
+            texts[i] = Double.toString(values[i]).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public int text() {
+        row.reset(1);
+        for (byte[] text : texts) {
+            row.beginCell(0);
+            format.format(text, 0, text.length, row, scratch);
+            row.endCell();
+            row.reset(1);
+        }
+        return row.cellCount();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public int binary() {
+        row.reset(1);
+        for (double value : values) {
+            row.beginCell(0);
+            format.format(value, row, scratch);
+            row.endCell();
+            row.reset(1);
+        }
+        return row.cellCount();
+    }
+}
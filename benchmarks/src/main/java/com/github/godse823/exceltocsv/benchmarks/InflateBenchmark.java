@@ -0,0 +1,79 @@
+package com.github.godse823.exceltocsv.benchmarks;
+
+import com.github.godse823.exceltocsv.zip.InflaterBackend;
+import com.github.godse823.exceltocsv.zip.MappedZipFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Inflates every entry of a synthetic workbook with each
+ * {@link InflaterBackend}, to compare them on the same mapped input. The
+ * {@code bytes} counter is the inflated size. One operation is one row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InflateBenchmark {
+
+    @Param
+    public WorkbookShape shape;
+
+    @Param({"jdk", "java"})
+    public String backend;
+
+    private Path workbook;
+    private MappedZipFile zip;
+    private final List<MappedZipFile.Entry> entries = new ArrayList<>();
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workbook = SyntheticWorkbook.create(shape);
+        zip = MappedZipFile.open(workbook, InflaterBackend.named(backend));
+        entries.addAll(zip.entries());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        zip.close();
+        SyntheticWorkbook.delete(workbook.getParent());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticWorkbook.ROWS)
+    public long inflate(Throughput throughput) throws IOException {
+        long total = 0;
+        for (MappedZipFile.Entry entry : entries) {
+            try (InputStream in = zip.getInputStream(entry)) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    total += n;
+                }
+            }
+        }
+        throughput.bytes += total;
+        return total;
+    }
+}
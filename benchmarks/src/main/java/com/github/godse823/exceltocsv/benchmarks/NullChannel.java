@@ -0,0 +1,24 @@
+package com.github.godse823.exceltocsv.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/** A channel that discards everything written to it, so output cost is not measured. */
+final class NullChannel implements WritableByteChannel {
+
+    @Override
+    public int write(ByteBuffer src) {
+        int length = src.remaining();
+        src.position(src.limit());
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.godse823.exceltocsv.benchmarks;
+
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.RowBuffer;
+import com.github.godse823.exceltocsv.xlsx.SharedStrings;
+import com.github.godse823.exceltocsv.xlsx.XlsxWorkbook;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Random-access lookups in the shared-strings table, held in direct memory
+ * or spilled to a memory-mapped file. One operation is one lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SharedStringsBenchmark {
+
+    private static final int LOOKUPS = 4096;
+
+    @Param({"false", "true"})
+    public boolean spilled;
+
+    private Path workbook;
+    private XlsxWorkbook book;
+    private SharedStrings strings;
+    private final int[] indexes = new int[LOOKUPS];
+    private final RowBuffer row = new RowBuffer();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workbook = SyntheticWorkbook.create(WorkbookShape.STRINGS);
+        book = XlsxWorkbook.open(workbook, ConversionOptions.builder()
+                .sharedStringsSpillThreshold(spilled ? 0 : -1)
+                .build());
+        strings = book.sharedStrings();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < LOOKUPS; i++) {
+            indexes[i] = random.nextInt(strings.size());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        book.close();
+        SyntheticWorkbook.delete(workbook.getParent());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int lookup(Throughput throughput) throws IOException {
+        int bytes = 0;
+        for (int index : indexes) {
+            row.reset(1);
+            row.beginCell(0);
+            strings.appendTo(index, row);
+            row.endCell();
+            bytes += row.length(0);
+        }
+        throughput.bytes += bytes;
+        return bytes;
+    }
+}
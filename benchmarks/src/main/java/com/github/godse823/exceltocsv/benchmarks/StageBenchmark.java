@@ -0,0 +1,160 @@
+package com.github.godse823.exceltocsv.benchmarks;
+
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.RowBuffer;
+import com.github.godse823.exceltocsv.csv.CsvWriter;
+import com.github.godse823.exceltocsv.xlsx.SheetInfo;
+import com.github.godse823.exceltocsv.xlsx.SheetReader;
+import com.github.godse823.exceltocsv.xlsx.XlsxWorkbook;
+import com.github.godse823.exceltocsv.zip.MappedZipFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The conversion pipeline one stage at a time, over all sheets of a
+ * synthetic workbook. Each stage is fed from memory prepared during setup,
+ * so its score excludes the stages before it:
+ *
+ * <ul>
+ *   <li>{@link #inflate} reads the compressed sheet entries;</li>
+ *   <li>{@link #parse} decodes inflated sheet XML into rows, with number
+ *       formatting disabled (shared-string lookups are included);</li>
+ *   <li>{@link #parseAndFormat} does the same with number formats applied;</li>
+ *   <li>{@link #write} encodes decoded rows as CSV into a discarding channel.</li>
+ * </ul>
+ *
+ * One operation is one row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmark {
+
+    @Param
+    public WorkbookShape shape;
+
+    private Path workbook;
+    private XlsxWorkbook raw;
+    private XlsxWorkbook formatted;
+    private MappedZipFile zip;
+    private final List<MappedZipFile.Entry> entries = new ArrayList<>();
+    private final List<byte[]> sheetXml = new ArrayList<>();
+    private final List<RowBuffer> rows = new ArrayList<>();
+    private final byte[] inflateBuffer = new byte[64 * 1024];
+    private final ByteBuffer csvBuffer = ByteBuffer.allocateDirect(CsvWriter.DEFAULT_BUFFER_SIZE);
+    private SheetReader rawReader;
+    private SheetReader formattingReader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workbook = SyntheticWorkbook.create(shape);
+        raw = XlsxWorkbook.open(workbook, ConversionOptions.builder().formatNumbers(false).build());
+        formatted = XlsxWorkbook.open(workbook);
+        zip = MappedZipFile.open(workbook);
+        for (SheetInfo sheet : raw.sheets()) {
+            entries.add(zip.getEntry(sheet.entryName()));
+            try (InputStream in = raw.openSheet(sheet)) {
+                sheetXml.add(in.readAllBytes());
+            }
+        }
+        rawReader = raw.newSheetReader();
+        formattingReader = formatted.newSheetReader();
+        for (byte[] xml : sheetXml) {
+            formattingReader.read(new ByteArrayInputStream(xml), row -> rows.add(copy(row)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        raw.close();
+        formatted.close();
+        zip.close();
+        SyntheticWorkbook.delete(workbook.getParent());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticWorkbook.ROWS)
+    public long inflate(Throughput throughput) throws IOException {
+        long total = 0;
+        for (MappedZipFile.Entry entry : entries) {
+            try (InputStream in = zip.getInputStream(entry)) {
+                int n;
+                while ((n = in.read(inflateBuffer)) > 0) {
+                    total += n;
+                }
+            }
+        }
+        throughput.bytes += total;
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticWorkbook.ROWS)
+    public long parse(Throughput throughput, Blackhole blackhole) throws IOException {
+        return parse(rawReader, throughput, blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticWorkbook.ROWS)
+    public long parseAndFormat(Throughput throughput, Blackhole blackhole) throws IOException {
+        return parse(formattingReader, throughput, blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticWorkbook.ROWS)
+    public long write(Throughput throughput) throws IOException {
+        csvBuffer.clear();
+        CsvWriter csv = new CsvWriter(new NullChannel(), csvBuffer, ',', "\n");
+        for (RowBuffer row : rows) {
+            csv.row(row);
+        }
+        csv.finish();
+        throughput.bytes += csv.bytesWritten();
+        return csv.bytesWritten();
+    }
+
+    private long parse(SheetReader reader, Throughput throughput, Blackhole blackhole) throws IOException {
+        long count = 0;
+        for (byte[] xml : sheetXml) {
+            count += reader.read(new ByteArrayInputStream(xml), row -> blackhole.consume(row.cellCount()));
+            throughput.bytes += xml.length;
+        }
+        return count;
+    }
+
+    private static RowBuffer copy(RowBuffer row) {
+        RowBuffer copy = new RowBuffer();
+        copy.reset(row.rowNumber());
+        for (int column = 0; column < row.cellCount(); column++) {
+            copy.beginCell(column);
+            copy.append(row.array(), row.start(column), row.length(column));
+            copy.endCell();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.godse823.exceltocsv.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Start-up to first row: launches the command-line tool as a new process
+ * with {@code --stdout --limit 1} and times it until the first CSV line
+ * arrives, the latency a shell pipeline sees. Each launcher is measured in
+ * its own right:
+ *
+ * <ul>
+ *   <li>{@code jvm}: {@code java -jar} on the converter jar;</li>
+ *   <li>{@code cds}: the same with the Class Data Sharing archive built
+ *       next to the jar;</li>
+ *   <li>{@code native}: the native executable of the {@code native}
+ *       profile, if it has been built.</li>
+ * </ul>
+ *
+ * Paths are relative to the repository root unless given with
+ * {@code -p target=DIR}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"jvm", "cds"})
+    public String launcher;
+
+    /** The converter module's build directory. */
+    @Param("converter/target")
+    public String target;
+
+    private Path workbook;
+    private List<String> command;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path directory = Path.of(target);
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        command = new ArrayList<>();
+        switch (launcher) {
+            case "jvm" -> command.addAll(List.of(java, "-jar", jar(directory)));
+            case "cds" -> command.addAll(List.of(java,
+                    "-XX:SharedArchiveFile=" + existing(directory.resolve("excel-to-csv.jsa")),
+                    "-jar", jar(directory)));
+            case "native" -> command.add(existing(directory.resolve("excel-to-csv")));
+            default -> throw new IllegalArgumentException("Unknown launcher: " + launcher);
+        }
+        workbook = SyntheticWorkbook.create(WorkbookShape.NUMERIC);
+        command.addAll(List.of("--stdout", "--limit", "1", workbook.toString()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticWorkbook.delete(workbook.getParent());
+    }
+
+    @Benchmark
+    public int firstRow() throws IOException {
+        process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        int bytes = 0;
+        try (InputStream out = process.getInputStream()) {
+            int b;
+            while ((b = out.read()) >= 0) {
+                bytes++;
+                if (b == '\n') {
+                    break;
+                }
+            }
+        }
+        if (bytes == 0) {
+            throw new IllegalStateException("No output from " + command);
+        }
+        return bytes;
+    }
+
+    /** The first row is the measurement; the process exiting is not, but must not overlap the next launch. */
+    @TearDown(Level.Invocation)
+    public void reap() throws InterruptedException {
+        process.destroy();
+        process.waitFor();
+    }
+
+    private static String jar(Path directory) throws IOException {
+        try (Stream<Path> jars = Files.list(directory)) {
+            return jars.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith("excel-to-csv-") && name.endsWith(".jar");
+            }).findFirst().orElseThrow(() -> new IOException("No converter jar in " + directory)).toString();
+        }
+    }
+
+    private static String existing(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            throw new IOException("Not built: " + path);
+        }
+        return path.toString();
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.godse823.exceltocsv.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes minimal but valid XLSX packages for the benchmarks. Content is
+ * derived from a fixed seed, so every run measures the same bytes.
+ */
+public final class SyntheticWorkbook {
+
+    /** Total number of rows in every generated workbook. */
+    public static final int ROWS = 20_000;
+
+    /** Size of the shared-strings pool of the string-heavy shapes. */
+    static final int SHARED_STRINGS = 50_000;
+
+    // Cell style indexes into the cellXfs written by styles().
+    private static final int STYLE_DECIMAL = 1;
+    private static final int STYLE_PERCENT = 2;
+    private static final int STYLE_DATE = 3;
+
+    private static final long SEED = 0x5EED_CAFEL;
+
+    private SyntheticWorkbook() {
+    }
+
+    /** Writes a workbook of the given shape into a new temporary directory and returns its path. */
+    public static Path create(WorkbookShape shape) throws IOException {
+        Path directory = Files.createTempDirectory("excel-to-csv-bench");
+        Path workbook = directory.resolve(shape.name().toLowerCase() + ".xlsx");
+        write(workbook, shape);
+        return workbook;
+    }
+
+    /** Deletes a directory created for a benchmark, including its contents. */
+    public static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /** Writes a workbook of the given shape to {@code path}. */
+    public static void write(Path path, WorkbookShape shape) throws IOException {
+        try (OutputStream file = Files.newOutputStream(path);
+             ZipOutputStream zip = new ZipOutputStream(file)) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+            part(zip, out, "[Content_Types].xml", contentTypes(shape));
+            part(zip, out, "_rels/.rels", """
+                    <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                    <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">\
+                    <Relationship Id="rId1"\s\
+                    Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument"\s\
+                    Target="xl/workbook.xml"/>\
+                    </Relationships>""");
+            part(zip, out, "xl/workbook.xml", workbook(shape));
+            part(zip, out, "xl/_rels/workbook.xml.rels", workbookRelationships(shape));
+            part(zip, out, "xl/styles.xml", styles());
+
+            zip.putNextEntry(new ZipEntry("xl/sharedStrings.xml"));
+            sharedStrings(out);
+            out.flush();
+            zip.closeEntry();
+
+            SplittableRandom random = new SplittableRandom(SEED);
+            for (int sheet = 1; sheet <= shape.sheets(); sheet++) {
+                zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheet + ".xml"));
+                sheet(out, shape, random);
+                out.flush();
+                zip.closeEntry();
+            }
+        }
+    }
+
+    private static void part(ZipOutputStream zip, Writer out, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.flush();
+        zip.closeEntry();
+    }
+
+    private static String contentTypes(WorkbookShape shape) {
+        StringBuilder xml = new StringBuilder("""
+                <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                <Types xmlns="http://schemas.openxmlformats.org/package/2006/content-types">\
+                <Default Extension="rels" ContentType="application/vnd.openxmlformats-package.relationships+xml"/>\
+                <Default Extension="xml" ContentType="application/xml"/>\
+                <Override PartName="/xl/workbook.xml"\s\
+                ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml"/>\
+                <Override PartName="/xl/styles.xml"\s\
+                ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml"/>\
+                <Override PartName="/xl/sharedStrings.xml"\s\
+                ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml"/>""");
+        for (int sheet = 1; sheet <= shape.sheets(); sheet++) {
+            xml.append("<Override PartName=\"/xl/worksheets/sheet").append(sheet).append(".xml\" ContentType=\"")
+                    .append("application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        return xml.append("</Types>").toString();
+    }
+
+    private static String workbook(WorkbookShape shape) {
+        StringBuilder xml = new StringBuilder("""
+                <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                <workbook xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main" \
+                xmlns:r="http://schemas.openxmlformats.org/officeDocument/2006/relationships"><sheets>""");
+        for (int sheet = 1; sheet <= shape.sheets(); sheet++) {
+            xml.append("<sheet name=\"Sheet").append(sheet).append("\" sheetId=\"").append(sheet)
+                    .append("\" r:id=\"rId").append(sheet).append("\"/>");
+        }
+        return xml.append("</sheets></workbook>").toString();
+    }
+
+    private static String workbookRelationships(WorkbookShape shape) {
+        String type = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/";
+        StringBuilder xml = new StringBuilder("""
+                <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">""");
+        for (int sheet = 1; sheet <= shape.sheets(); sheet++) {
+            xml.append("<Relationship Id=\"rId").append(sheet).append("\" Type=\"").append(type)
+                    .append("worksheet\" Target=\"worksheets/sheet").append(sheet).append(".xml\"/>");
+        }
+        xml.append("<Relationship Id=\"rStyles\" Type=\"").append(type).append("styles\" Target=\"styles.xml\"/>");
+        xml.append("<Relationship Id=\"rStrings\" Type=\"").append(type)
+                .append("sharedStrings\" Target=\"sharedStrings.xml\"/>");
+        return xml.append("</Relationships>").toString();
+    }
+
+    private static String styles() {
+        return """
+                <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                <styleSheet xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main">\
+                <numFmts count="1"><numFmt numFmtId="164" formatCode="yyyy-mm-dd hh:mm:ss"/></numFmts>\
+                <cellXfs count="4">\
+                <xf numFmtId="0"/><xf numFmtId="4"/><xf numFmtId="10"/><xf numFmtId="164"/>\
+                </cellXfs>\
+                </styleSheet>""";
+    }
+
+    private static void sharedStrings(Writer out) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        out.write("<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" uniqueCount=\""
+                + SHARED_STRINGS + "\">");
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < SHARED_STRINGS; i++) {
+            out.write("<si><t>");
+            out.write(text(random, i));
+            out.write("</t></si>");
+        }
+        out.write("</sst>");
+    }
+
+    /** A word-like string; some contain characters that force CSV quoting. */
+    private static String text(SplittableRandom random, int index) {
+        StringBuilder text = new StringBuilder(32);
+        int words = 1 + random.nextInt(5);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                text.append(' ');
+            }
+            int letters = 2 + random.nextInt(9);
+            for (int i = 0; i < letters; i++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        switch (index % 20) {
+            case 0 -> text.append(", etc.");
+            case 1 -> text.append(" &quot;quoted&quot;");
+            case 2 -> text.append(" über");
+            default -> {
+            }
+        }
+        return text.toString();
+    }
+
+    private static void sheet(Writer out, WorkbookShape shape, SplittableRandom random) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        out.write("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+        StringBuilder ref = new StringBuilder(8);
+        for (int row = 1; row <= shape.rowsPerSheet(); row++) {
+            if (shape == WorkbookShape.SPARSE && row % 10 != 0 && row != shape.rowsPerSheet()) {
+                continue;
+            }
+            out.write("<row r=\"" + row + "\">");
+            if (shape == WorkbookShape.SPARSE) {
+                cell(out, ref, random.nextInt(shape.columns()), row, random, WorkbookShape.NUMERIC);
+            } else {
+                for (int column = 0; column < shape.columns(); column++) {
+                    cell(out, ref, column, row, random, shape);
+                }
+            }
+            out.write("</row>");
+        }
+        out.write("</sheetData></worksheet>");
+    }
+
+    private static void cell(Writer out, StringBuilder ref, int column, int row, SplittableRandom random,
+                             WorkbookShape shape) throws IOException {
+        ref.setLength(0);
+        for (int c = column + 1; c > 0; c = (c - 1) / 26) {
+            ref.insert(0, (char) ('A' + (c - 1) % 26));
+        }
+        ref.append(row);
+        out.write("<c r=\"");
+        out.append(ref);
+        boolean strings = shape == WorkbookShape.STRINGS || (shape != WorkbookShape.NUMERIC && column % 5 == 4);
+        if (strings) {
+            out.write("\" t=\"s\"><v>" + random.nextInt(SHARED_STRINGS) + "</v></c>");
+            return;
+        }
+        switch (column % 4) {
+            case 0 -> out.write("\"><v>" + random.nextInt(1_000_000) + "</v></c>");
+            case 1 -> out.write("\" s=\"" + STYLE_DECIMAL + "\"><v>" + random.nextDouble() * 1e6 + "</v></c>");
+            case 2 -> out.write("\" s=\"" + STYLE_PERCENT + "\"><v>" + random.nextDouble() + "</v></c>");
+            default -> out.write("\" s=\"" + STYLE_DATE + "\"><v>"
+                    + (36_526 + random.nextDouble() * 9_000) + "</v></c>");
+        }
+    }
+}
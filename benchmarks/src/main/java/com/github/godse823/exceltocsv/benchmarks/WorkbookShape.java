@@ -0,0 +1,40 @@
+package com.github.godse823.exceltocsv.benchmarks;
+
+/**
+ * The synthetic workbooks the benchmarks run against. Every shape holds
+ * {@link SyntheticWorkbook#ROWS} rows in total, so results per operation can
+ * be compared across shapes as results per row.
+ */
+public enum WorkbookShape {
+
+    /** Ten styled numeric columns: integers, decimals, percentages and dates. */
+    NUMERIC(1, 10),
+    /** Ten columns of shared strings drawn from a large pool. */
+    STRINGS(1, 10),
+    /** Fifty columns, one populated cell in every tenth row. */
+    SPARSE(1, 50),
+    /** Two hundred columns per row, one in five a shared string. */
+    WIDE(1, 200),
+    /** One hundred small sheets, one column in five a shared string. */
+    MANY_SHEETS(100, 10);
+
+    private final int sheets;
+    private final int columns;
+
+    WorkbookShape(int sheets, int columns) {
+        this.sheets = sheets;
+        this.columns = columns;
+    }
+
+    public int sheets() {
+        return sheets;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int rowsPerSheet() {
+        return SyntheticWorkbook.ROWS / sheets;
+    }
+}
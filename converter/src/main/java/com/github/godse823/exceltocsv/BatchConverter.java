@@ -0,0 +1,160 @@
+package com.github.godse823.exceltocsv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Converts many workbooks in one JVM, several at a time, so that start-up
+ * and JIT warm-up are paid once per batch instead of once per file.
+ *
+ * <p>Concurrency is limited twice: by the number of worker threads and by a
+ * memory budget. Before a workbook is opened its worker reserves an
+ * estimate of the memory the conversion will hold, taken as the size of the
+ * file (the shared-strings table, which dominates, grows with it). A
+ * workbook larger than the whole budget reserves all of it and so runs
+ * alone. Failures are recorded per file and do not stop the batch.
+ */
+public final class BatchConverter {
+
+    /** Smallest reservation, covering the per-file reader and writer buffers. */
+    private static final long MIN_RESERVATION = 1024 * 1024;
+    private static final int PERMIT_BYTES = 1024;
+
+    private final ExcelToCsvConverter converter;
+    private final int concurrency;
+    private final long memoryBudget;
+
+    /**
+     * @param options      options applied to every workbook; its parallelism
+     *                     is the number of sheets converted concurrently
+     *                     within one workbook
+     * @param concurrency  number of workbooks converted concurrently
+     * @param memoryBudget bytes that workbooks in flight may reserve together
+     */
+    public BatchConverter(ConversionOptions options, int concurrency, long memoryBudget) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1: " + concurrency);
+        }
+        if (memoryBudget < MIN_RESERVATION) {
+            throw new IllegalArgumentException("Memory budget must be at least 1M: " + memoryBudget);
+        }
+        this.converter = new ExcelToCsvConverter(options);
+        this.concurrency = concurrency;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /** A workbook to convert and the directory its sheets go to. */
+    public record Task(Path workbook, Path outputDirectory) {
+
+        public Task {
+            Objects.requireNonNull(workbook, "workbook");
+            Objects.requireNonNull(outputDirectory, "outputDirectory");
+        }
+    }
+
+    /**
+     * Converts all tasks and returns the totals.
+     *
+     * @param listener receives each file's result as soon as it completes,
+     *                 on the worker thread that converted it
+     */
+    public BatchSummary convert(List<Task> tasks, Consumer<FileResult> listener) throws IOException {
+        long start = System.nanoTime();
+        int permits = (int) Math.min(Integer.MAX_VALUE, memoryBudget / PERMIT_BYTES);
+        Semaphore budget = new Semaphore(permits);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(tasks.size(), 1)),
+                Threads.daemon("excel-to-csv-file"));
+        List<FileResult> results = new ArrayList<>(tasks.size());
+        try {
+            List<Future<FileResult>> futures = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                futures.add(pool.submit(() -> {
+                    FileResult result = convert(task, budget, permits);
+                    listener.accept(result);
+                    return result;
+                }));
+            }
+            for (Future<FileResult> future : futures) {
+                results.add(Threads.await(future));
+            }
+        } finally {
+            Threads.shutdown(pool);
+        }
+        return summarize(results, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private FileResult convert(Task task, Semaphore budget, int maxPermits) throws InterruptedIOException {
+        int reserved = reservation(task.workbook(), maxPermits);
+        try {
+            budget.acquire(reserved);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for memory budget");
+        }
+        long start = System.nanoTime();
+        try {
+            List<SheetResult> sheets = converter.convert(task.workbook(), task.outputDirectory());
+            return new FileResult(task.workbook(), task.outputDirectory(), sheets,
+                    Duration.ofNanos(System.nanoTime() - start), null);
+        } catch (IOException | RuntimeException e) {
+            return new FileResult(task.workbook(), task.outputDirectory(), List.of(),
+                    Duration.ofNanos(System.nanoTime() - start), e);
+        } finally {
+            budget.release(reserved);
+        }
+    }
+
+    private static int reservation(Path workbook, int maxPermits) {
+        long size;
+        try {
+            size = Files.size(workbook);
+        } catch (IOException e) {
+            // The conversion itself will report the problem.
+            size = 0;
+        }
+        long permits = Math.max(size, MIN_RESERVATION) / PERMIT_BYTES;
+        return (int) Math.min(permits, maxPermits);
+    }
+
+    private static BatchSummary summarize(List<FileResult> results, Duration elapsed) {
+        int failed = 0;
+        long sheets = 0;
+        long rows = 0;
+        long bytes = 0;
+        long[] latencies = new long[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            FileResult result = results.get(i);
+            if (!result.succeeded()) {
+                failed++;
+            }
+            sheets += result.sheets().size();
+            rows += result.rows();
+            bytes += result.bytes();
+            latencies[i] = result.elapsed().toNanos();
+        }
+        Arrays.sort(latencies);
+        return new BatchSummary(results.size(), failed, sheets, rows, bytes, elapsed,
+                percentile(latencies, 50), percentile(latencies, 99));
+    }
+
+    /** Nearest-rank percentile of sorted values. */
+    private static Duration percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return Duration.ZERO;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return Duration.ofNanos(sorted[Math.max(rank, 1) - 1]);
+    }
+}
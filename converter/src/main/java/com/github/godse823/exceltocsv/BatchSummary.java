@@ -0,0 +1,19 @@
+package com.github.godse823.exceltocsv;
+
+import java.time.Duration;
+
+/**
+ * Totals of a batch conversion.
+ *
+ * @param files   number of workbooks processed
+ * @param failed  number of workbooks that could not be converted
+ * @param sheets  number of sheets written
+ * @param rows    number of CSV records written
+ * @param bytes   number of CSV bytes written
+ * @param elapsed wall-clock time of the whole batch
+ * @param p50     median per-workbook conversion time
+ * @param p99     99th percentile per-workbook conversion time
+ */
+public record BatchSummary(int files, int failed, long sheets, long rows, long bytes, Duration elapsed,
+                           Duration p50, Duration p99) {
+}
@@ -0,0 +1,52 @@
+package com.github.godse823.exceltocsv;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Recycles the fixed-size buffers of pipeline blocks and CSV writers across
+ * sheets and workbooks, so that a converter kept for many small conversions
+ * does not allocate them afresh for every sheet. Direct buffers in
+ * particular are costly to allocate and are only freed by the garbage
+ * collector.
+ *
+ * <p>At most {@code maxRetained} buffers of each kind are kept; any released
+ * beyond that are left to the garbage collector. The pool does not limit
+ * how many buffers are in use: that is the job of the {@link ByteBudget}.
+ */
+final class BufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> blocks;
+    private final BlockingQueue<ByteBuffer> directBuffers;
+
+    BufferPool(int bufferSize, int maxRetained) {
+        this.bufferSize = bufferSize;
+        this.blocks = new ArrayBlockingQueue<>(maxRetained);
+        this.directBuffers = new ArrayBlockingQueue<>(maxRetained);
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+
+    byte[] block() {
+        byte[] block = blocks.poll();
+        return block != null ? block : new byte[bufferSize];
+    }
+
+    void release(byte[] block) {
+        blocks.offer(block);
+    }
+
+    /** A cleared direct buffer of {@link #bufferSize()} bytes. */
+    ByteBuffer directBuffer() {
+        ByteBuffer buffer = directBuffers.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    void release(ByteBuffer buffer) {
+        directBuffers.offer(buffer);
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.godse823.exceltocsv;
+
+import java.io.InterruptedIOException;
+
+/**
+ * A byte budget shared by all pipeline stages of a converter. Producers
+ * reserve bytes before buffering data for the next stage and consumers give
+ * them back once the data has been passed on, so a slow output target
+ * stalls parsing instead of letting buffers pile up on the heap.
+ *
+ * <p>Each producer reserves through its own {@link Account}. An account that
+ * holds nothing may always reserve, even beyond the budget: its consumer is
+ * starved and would otherwise wait forever. This keeps every pipeline moving
+ * at the cost of overshooting the budget by at most one block per account.
+ */
+final class ByteBudget {
+
+    private final long limit;
+    private long used;
+
+    /** @param limit total bytes that may be reserved at once */
+    ByteBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /** A budget without a byte limit: accounts are bounded by their block count alone. */
+    static ByteBudget unlimited() {
+        return new ByteBudget(Long.MAX_VALUE);
+    }
+
+    synchronized long used() {
+        return used;
+    }
+
+    /** Opens an account that holds at most {@code maxBlocks} reservations at a time. */
+    Account newAccount(int maxBlocks) {
+        return new Account(maxBlocks);
+    }
+
+    final class Account {
+
+        private final int maxBlocks;
+        private int blocks;
+
+        private Account(int maxBlocks) {
+            this.maxBlocks = maxBlocks;
+        }
+
+        /** Reserves {@code bytes}, waiting until the budget and the block limit allow it. */
+        void acquire(int bytes) throws InterruptedIOException {
+            synchronized (ByteBudget.this) {
+                try {
+                    while (!allowed(bytes)) {
+                        ByteBudget.this.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for buffer budget");
+                }
+                reserve(bytes);
+            }
+        }
+
+        /** Reserves {@code bytes} if that is possible without waiting. */
+        boolean tryAcquire(int bytes) {
+            synchronized (ByteBudget.this) {
+                if (!allowed(bytes)) {
+                    return false;
+                }
+                reserve(bytes);
+                return true;
+            }
+        }
+
+        void release(int bytes) {
+            synchronized (ByteBudget.this) {
+                used -= bytes;
+                blocks--;
+                ByteBudget.this.notifyAll();
+            }
+        }
+
+        private boolean allowed(int bytes) {
+            return blocks == 0 || (blocks < maxBlocks && used + bytes <= limit);
+        }
+
+        private void reserve(int bytes) {
+            used += bytes;
+            blocks++;
+        }
+    }
+}
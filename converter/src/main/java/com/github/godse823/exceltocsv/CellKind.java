@@ -0,0 +1,25 @@
+package com.github.godse823.exceltocsv;
+
+/**
+ * What a cell held in the workbook, as opposed to the text written for it.
+ * Readers record it for every cell of a {@link RowBuffer}, so sinks that
+ * write typed columns need not guess from the text.
+ */
+public enum CellKind {
+
+    /** A string, or a cell without a value. */
+    TEXT,
+    /** A number whose format is not a date or time. */
+    NUMBER,
+    /** A number formatted as a date or time: a serial day count. */
+    DATE,
+    BOOLEAN,
+    /** An error value such as {@code #N/A}. */
+    ERROR;
+
+    private static final CellKind[] VALUES = values();
+
+    static CellKind of(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,296 @@
+package com.github.godse823.exceltocsv;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Describes the columns of a sheet as its rows go by, for the schema
+ * sidecar written next to the CSV: what each column holds, how wide its
+ * values are and how many are missing, so that loaders need not scan the
+ * CSV again to guess types.
+ *
+ * <p>Each cell is classified from its {@link CellKind} and, for numbers,
+ * a glance at its text: a formatted number such as {@code 12.5%} or
+ * {@code 1,234} is a string to a CSV loader. Per column only a handful of
+ * counters and the widest value are kept, in flat primitive arrays, so
+ * profiling allocates nothing once the widest row has been seen.
+ *
+ * <p>The first row is held back: if all of its non-empty cells are strings
+ * it is taken for the header that names the columns, otherwise it is
+ * counted like any other row and columns are named after their letters. Profiles of consecutive row ranges can be
+ * {@linkplain #append appended} to one another.
+ */
+final class ColumnProfile {
+
+    private static final byte INTEGER = 0;
+    private static final byte DECIMAL = 1;
+    private static final byte DATE = 2;
+    private static final byte DATETIME = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte STRING = 5;
+    private static final byte ERROR = 6;
+    /** Number of counters per column. */
+    private static final int STRIDE = 7;
+    private static final byte EMPTY = -1;
+
+    private static final String[] CLASS_NAMES = {"integer", "number", "date", "datetime", "boolean", "string", "error"};
+
+    private final RowSelection selection;
+    private long[] counts = new long[16 * STRIDE];
+    private int[] maxBytes = new int[16];
+    private int columns;
+    /** Rows counted, not including the first. */
+    private long rows;
+    private byte[] firstClasses;
+    private int[] firstWidths;
+    private String[] firstTexts;
+
+    /** @param selection the selection rows are read with, to name columns after their sheet columns */
+    ColumnProfile(RowSelection selection) {
+        this.selection = selection;
+    }
+
+    /** Returns a sink that profiles each row before passing it to {@code sink}. */
+    RowSink observing(RowSink sink) {
+        return row -> {
+            add(row);
+            sink.row(row);
+        };
+    }
+
+    void add(RowBuffer row) {
+        int cells = row.cellCount();
+        if (firstClasses == null) {
+            firstClasses = new byte[cells];
+            firstWidths = new int[cells];
+            firstTexts = new String[cells];
+            for (int i = 0; i < cells; i++) {
+                firstClasses[i] = classify(row, i);
+                firstWidths[i] = row.end(i) - row.start(i);
+                if (firstClasses[i] == STRING) {
+                    firstTexts[i] = row.cellAsString(i);
+                }
+            }
+            return;
+        }
+        ensureColumns(cells);
+        for (int i = 0; i < cells; i++) {
+            int type = classify(row, i);
+            if (type != EMPTY) {
+                counts[i * STRIDE + type]++;
+                maxBytes[i] = Math.max(maxBytes[i], row.end(i) - row.start(i));
+            }
+        }
+        rows++;
+    }
+
+    /** Adds the profile of the rows that follow the ones profiled here. */
+    void append(ColumnProfile next) {
+        if (next.firstClasses == null) {
+            return;
+        }
+        if (firstClasses == null) {
+            firstClasses = next.firstClasses;
+            firstWidths = next.firstWidths;
+            firstTexts = next.firstTexts;
+        } else {
+            countFirstRow(next);
+        }
+        ensureColumns(next.columns);
+        for (int i = 0; i < next.columns * STRIDE; i++) {
+            counts[i] += next.counts[i];
+        }
+        for (int i = 0; i < next.columns; i++) {
+            maxBytes[i] = Math.max(maxBytes[i], next.maxBytes[i]);
+        }
+        rows += next.rows;
+    }
+
+    /**
+     * Returns the sidecar describing the profiled rows as JSON, in the shape
+     * of a Frictionless Table Schema with a few additions per field.
+     */
+    String toJson(String sheetName, String fileName) {
+        boolean header = isHeader();
+        ColumnProfile data = this;
+        if (!header && firstClasses != null) {
+            data = new ColumnProfile(selection);
+            data.append(this);
+            data.countFirstRow(this);
+        }
+        int width = Math.max(data.columns, firstClasses == null ? 0 : firstClasses.length);
+        long total = rows + (firstClasses == null ? 0 : 1);
+
+        StringBuilder json = new StringBuilder(256 + 192 * width);
+        json.append("{\n  \"sheet\": ");
+        Json.string(json, sheetName);
+        json.append(",\n  \"path\": ");
+        Json.string(json, fileName);
+        json.append(",\n  \"rows\": ").append(total);
+        json.append(",\n  \"header\": ").append(header);
+        json.append(",\n  \"missingValues\": [\"\"]");
+        json.append(",\n  \"fields\": [");
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < width; i++) {
+            String letter = RowSelection.columnName(selection.column(i));
+            String base = header && i < firstTexts.length && firstTexts[i] != null ? firstTexts[i] : letter;
+            String name = base;
+            for (int suffix = 2; !names.add(name); suffix++) {
+                name = base + "_" + suffix;
+            }
+            long present = 0;
+            for (int type = 0; type < STRIDE; type++) {
+                present += data.count(i, type);
+            }
+            json.append(i == 0 ? "\n" : ",\n").append("    {\"name\": ");
+            Json.string(json, name);
+            json.append(", \"column\": \"").append(letter).append('"');
+            json.append(", \"type\": \"").append(data.type(i)).append('"');
+            json.append(", \"nulls\": ").append(data.rows - present);
+            json.append(", \"maxBytes\": ").append(i < data.columns ? data.maxBytes[i] : 0);
+            json.append(", \"counts\": {");
+            for (int type = 0; type < STRIDE; type++) {
+                json.append(type == 0 ? "\"" : ", \"").append(CLASS_NAMES[type]).append("\": ")
+                        .append(data.count(i, type));
+            }
+            json.append("}}");
+        }
+        json.append(width == 0 ? "]\n}\n" : "\n  ]\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * The Table Schema type of a column: the narrowest one all its values
+     * fit, or {@code string}. Error values such as {@code #N/A} do not
+     * count, as loaders usually treat them as missing.
+     */
+    private String type(int column) {
+        long integers = count(column, INTEGER);
+        long decimals = count(column, DECIMAL);
+        long dates = count(column, DATE);
+        long datetimes = count(column, DATETIME);
+        long booleans = count(column, BOOLEAN);
+        if (count(column, STRING) > 0) {
+            return "string";
+        }
+        if (booleans > 0) {
+            return integers + decimals + dates + datetimes > 0 ? "string" : "boolean";
+        }
+        if (dates + datetimes > 0) {
+            return integers + decimals > 0 ? "string" : datetimes > 0 ? "datetime" : "date";
+        }
+        if (decimals > 0) {
+            return "number";
+        }
+        return integers > 0 ? "integer" : "string";
+    }
+
+    private long count(int column, int type) {
+        return column < columns ? counts[column * STRIDE + type] : 0;
+    }
+
+    private boolean isHeader() {
+        if (firstClasses == null) {
+            return false;
+        }
+        boolean named = false;
+        for (byte type : firstClasses) {
+            if (type == STRING) {
+                named = true;
+            } else if (type != EMPTY) {
+                return false;
+            }
+        }
+        return named;
+    }
+
+    private void countFirstRow(ColumnProfile other) {
+        ensureColumns(other.firstClasses.length);
+        for (int i = 0; i < other.firstClasses.length; i++) {
+            if (other.firstClasses[i] != EMPTY) {
+                counts[i * STRIDE + other.firstClasses[i]]++;
+                maxBytes[i] = Math.max(maxBytes[i], other.firstWidths[i]);
+            }
+        }
+        rows++;
+    }
+
+    private void ensureColumns(int count) {
+        if (count > columns) {
+            if (count > maxBytes.length) {
+                int capacity = Math.max(count, maxBytes.length * 2);
+                counts = Arrays.copyOf(counts, capacity * STRIDE);
+                maxBytes = Arrays.copyOf(maxBytes, capacity);
+            }
+            columns = count;
+        }
+    }
+
+    private static byte classify(RowBuffer row, int cell) {
+        int start = row.start(cell);
+        int end = row.end(cell);
+        if (start == end) {
+            return EMPTY;
+        }
+        byte[] data = row.array();
+        return switch (row.kind(cell)) {
+            case NUMBER -> number(data, start, end);
+            case DATE -> contains(data, start, end, (byte) ':') ? DATETIME : DATE;
+            case BOOLEAN -> BOOLEAN;
+            case ERROR -> ERROR;
+            default -> STRING;
+        };
+    }
+
+    /** Tells plain integers and decimals from numbers a format has decorated. */
+    private static byte number(byte[] data, int start, int end) {
+        int i = start;
+        if (data[i] == '-') {
+            i++;
+        }
+        int digits = i;
+        while (i < end && isDigit(data[i])) {
+            i++;
+        }
+        if (i == digits) {
+            return STRING;
+        }
+        if (i == end) {
+            return INTEGER;
+        }
+        if (data[i] == '.') {
+            i++;
+            while (i < end && isDigit(data[i])) {
+                i++;
+            }
+        }
+        if (i < end && (data[i] == 'E' || data[i] == 'e')) {
+            i++;
+            if (i < end && (data[i] == '+' || data[i] == '-')) {
+                i++;
+            }
+            int exponent = i;
+            while (i < end && isDigit(data[i])) {
+                i++;
+            }
+            if (i == exponent) {
+                return STRING;
+            }
+        }
+        return i == end ? DECIMAL : STRING;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean contains(byte[] data, int start, int end, byte b) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == b) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
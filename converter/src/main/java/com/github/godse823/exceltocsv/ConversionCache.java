@@ -0,0 +1,406 @@
+package com.github.godse823.exceltocsv;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A content-addressed, size-bounded on-disk cache of converted sheets.
+ *
+ * <p>Keys are SHA-256 digests of the conversion options together with the
+ * content the output depends on: the whole workbook file for a
+ * {@linkplain #manifest workbook manifest}, or just the parts of one sheet
+ * (see {@link Workbook#digestSheet}) for a sheet object. A workbook
+ * delivered again unchanged is restored from its manifest without being
+ * opened; a workbook in which only some sheets changed has its unchanged
+ * sheets restored individually.
+ *
+ * <pre>
+ * objects/ab/&lt;key&gt;.csv    converted sheet
+ * objects/ab/&lt;key&gt;.meta   rows and bytes of the sheet
+ * objects/ab/&lt;key&gt;.schema.json   schema sidecar of the sheet, if asked for
+ * workbooks/ab/&lt;key&gt;      one line per sheet: object key, file name, sheet name
+ * </pre>
+ *
+ * Entries are written to temporary files and moved into place atomically,
+ * so several processes may share a cache directory. Restoring an entry
+ * touches its modification time. Whenever the cache is found beyond its
+ * size limit, on first use or after storing, the least recently used
+ * entries are deleted whole, a sheet together with its metadata and
+ * sidecar, until it is 10% below the limit; manifests naming a sheet that
+ * is gone are deleted with it.
+ */
+final class ConversionCache {
+
+    /** Bumped whenever the CSV produced for the same input and options may change. */
+    private static final int FORMAT_VERSION = 2;
+    private static final String TEMP_PREFIX = ".tmp-";
+    private static final long DIGEST_WINDOW = 1L << 30;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final boolean link;
+    /** Approximate size of the cache; -1 until first scanned. Guarded by {@code this}. */
+    private long size = -1;
+
+    /**
+     * @param link whether to hard-link cached files to their outputs instead
+     *             of copying them, falling back to a copy across file systems
+     */
+    ConversionCache(Path directory, long maxBytes, boolean link) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.link = link;
+    }
+
+    /** One sheet of a workbook manifest. */
+    record Sheet(String objectKey, String fileName, String sheetName) {
+    }
+
+    /** Starts a key for content converted with the given options. */
+    static MessageDigest newKey(String options) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update((FORMAT_VERSION + "\n" + options + "\n").getBytes(StandardCharsets.UTF_8));
+        return digest;
+    }
+
+    static String finish(MessageDigest key) {
+        return HexFormat.of().formatHex(key.digest());
+    }
+
+    /** Adds the contents of {@code file} to {@code key}. */
+    static void digestFile(Path file, MessageDigest key) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            for (long position = 0; position < length; position += DIGEST_WINDOW) {
+                key.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(DIGEST_WINDOW, length - position)));
+            }
+        }
+    }
+
+    /** Returns the manifest stored for a workbook key, or {@code null}. */
+    List<Sheet> manifest(String workbookKey) {
+        Path path = manifestPath(workbookKey);
+        try {
+            open();
+            List<Sheet> sheets = readManifest(path);
+            if (sheets != null) {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            return sheets;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static List<Sheet> readManifest(Path path) throws IOException {
+        List<Sheet> sheets = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", 3);
+            if (fields.length != 3) {
+                return null;
+            }
+            sheets.add(new Sheet(fields[0], fields[1], fields[2]));
+        }
+        return sheets;
+    }
+
+    void storeManifest(String workbookKey, List<Sheet> sheets) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (Sheet sheet : sheets) {
+            text.append(sheet.objectKey()).append('\t').append(sheet.fileName()).append('\t')
+                    .append(sheet.sheetName()).append('\n');
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        Path path = manifestPath(workbookKey);
+        Path temp = tempFile(path);
+        Files.write(temp, bytes);
+        moveIntoPlace(temp, path);
+        added(bytes.length);
+    }
+
+    /**
+     * Copies or links a cached sheet to {@code target}, replacing it, and
+     * returns its {@code {rows, bytes}}; returns {@code null} on a miss.
+     */
+    long[] restore(String objectKey, Path target) throws IOException {
+        open();
+        Path object = objectPath(objectKey);
+        Path meta = metaPath(objectKey);
+        long[] totals;
+        try {
+            String[] fields = Files.readString(meta, StandardCharsets.UTF_8).trim().split(" ");
+            if (fields.length != 2) {
+                return null;
+            }
+            totals = new long[] {Long.parseLong(fields[0]), Long.parseLong(fields[1])};
+            FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+            Files.setLastModifiedTime(object, now);
+            Files.setLastModifiedTime(meta, now);
+        } catch (NoSuchFileException | NumberFormatException e) {
+            return null;
+        }
+        Files.deleteIfExists(target);
+        try {
+            if (!link || !tryLink(target, object)) {
+                Files.copy(object, target);
+            }
+        } catch (NoSuchFileException e) {
+            // Evicted in the meantime.
+            return null;
+        }
+        return totals;
+    }
+
+    /** Adds a converted sheet to the cache. */
+    void store(String objectKey, Path csv, long rows, long bytes) throws IOException {
+        Path object = objectPath(objectKey);
+        Path temp = tempFile(object);
+        if (!link || !tryLink(temp, csv)) {
+            Files.copy(csv, temp);
+        }
+        moveIntoPlace(temp, object);
+        Path meta = metaPath(objectKey);
+        Path tempMeta = tempFile(meta);
+        Files.writeString(tempMeta, rows + " " + bytes + "\n", StandardCharsets.UTF_8);
+        moveIntoPlace(tempMeta, meta);
+        // The object may be compressed, so count what it occupies rather than the CSV bytes.
+        added(Files.size(object));
+    }
+
+    /** Adds the schema sidecar of a sheet stored with {@link #store}. */
+    void storeSidecar(String objectKey, Path sidecar) throws IOException {
+        Path object = sidecarPath(objectKey);
+        Path temp = tempFile(object);
+        Files.copy(sidecar, temp);
+        moveIntoPlace(temp, object);
+        added(Files.size(object));
+    }
+
+    /** Copies the schema sidecar of a cached sheet to {@code target}; returns {@code false} on a miss. */
+    boolean restoreSidecar(String objectKey, Path target) throws IOException {
+        Path sidecar = sidecarPath(objectKey);
+        try {
+            Files.setLastModifiedTime(sidecar, FileTime.fromMillis(System.currentTimeMillis()));
+            Files.copy(sidecar, target, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static boolean tryLink(Path link, Path existing) {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+            // Different file systems, or links not supported.
+            return false;
+        }
+    }
+
+    private Path objectPath(String key) {
+        return directory.resolve("objects").resolve(key.substring(0, 2)).resolve(key + ".csv");
+    }
+
+    private Path metaPath(String key) {
+        return directory.resolve("objects").resolve(key.substring(0, 2)).resolve(key + ".meta");
+    }
+
+    private Path sidecarPath(String key) {
+        return directory.resolve("objects").resolve(key.substring(0, 2)).resolve(key + ".schema.json");
+    }
+
+    private Path manifestPath(String key) {
+        return directory.resolve("workbooks").resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static Path tempFile(Path destination) throws IOException {
+        Files.createDirectories(destination.getParent());
+        return destination.resolveSibling(TEMP_PREFIX + UUID.randomUUID());
+    }
+
+    private static void moveIntoPlace(Path temp, Path destination) throws IOException {
+        try {
+            Files.move(temp, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /** Scans the cache on first use, evicting entries if an earlier run left it beyond its limit. */
+    private synchronized void open() throws IOException {
+        if (size < 0) {
+            added(0);
+        }
+    }
+
+    private synchronized void added(long bytes) throws IOException {
+        if (size < 0) {
+            size = 0;
+            for (Entry entry : scan().values()) {
+                size += entry.size;
+            }
+        } else {
+            size += bytes;
+        }
+        if (size > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is 10% below
+     * its limit, then the manifests that name a sheet no longer cached.
+     * Metadata or sidecars left without their sheet, for example by an
+     * interrupted eviction, go first.
+     */
+    private void evict() throws IOException {
+        Map<String, Entry> entries = scan();
+        List<Entry> candidates = new ArrayList<>(entries.values());
+        candidates.sort(Comparator.comparing(Entry::isComplete).thenComparing(entry -> entry.lastUsed));
+        long total = 0;
+        for (Entry entry : candidates) {
+            total += entry.size;
+        }
+        long target = maxBytes - maxBytes / 10;
+        Set<String> sheets = new HashSet<>();
+        for (Entry entry : candidates) {
+            if (!entry.manifest && entry.hasObject) {
+                sheets.add(entry.key);
+            }
+        }
+        for (Entry entry : candidates) {
+            if (total <= target && entry.isComplete()) {
+                break;
+            }
+            delete(entry);
+            total -= entry.size;
+            sheets.remove(entry.key);
+        }
+        for (Entry entry : candidates) {
+            if (entry.manifest && !entry.deleted && !allCached(entry, sheets)) {
+                delete(entry);
+                total -= entry.size;
+            }
+        }
+        size = total;
+    }
+
+    private static boolean allCached(Entry manifest, Set<String> sheets) {
+        try {
+            List<Sheet> listed = readManifest(manifest.files.get(0));
+            if (listed == null) {
+                return false;
+            }
+            for (Sheet sheet : listed) {
+                if (!sheets.contains(sheet.objectKey())) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void delete(Entry entry) throws IOException {
+        // The sheet itself first: metadata without it is a miss, never a broken restore.
+        entry.files.sort(Comparator.comparing((Path file) -> !file.getFileName().toString().endsWith(".csv")));
+        for (Path file : entry.files) {
+            Files.deleteIfExists(file);
+        }
+        entry.deleted = true;
+    }
+
+    /** The files of one sheet object, with its metadata and sidecar, or one workbook manifest. */
+    private static final class Entry {
+
+        final String key;
+        final boolean manifest;
+        final List<Path> files = new ArrayList<>(3);
+        long size;
+        FileTime lastUsed = FileTime.fromMillis(0);
+        boolean hasObject;
+        boolean deleted;
+
+        Entry(String key, boolean manifest) {
+            this.key = key;
+            this.manifest = manifest;
+        }
+
+        boolean isComplete() {
+            return manifest || hasObject;
+        }
+    }
+
+    /** Groups the cached files into entries, keyed by {@code objects/<key>} or {@code workbooks/<key>}. */
+    private Map<String, Entry> scan() throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!Files.isDirectory(directory)) {
+            return entries;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                String name = file.getFileName().toString();
+                Path shard = file.getParent();
+                if (!attributes.isRegularFile() || name.startsWith(TEMP_PREFIX) || shard == null
+                        || shard.getParent() == null) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String area = shard.getParent().getFileName().toString();
+                boolean manifest = area.equals("workbooks");
+                if (!manifest && !area.equals("objects")) {
+                    return FileVisitResult.CONTINUE;
+                }
+                int dot = name.indexOf('.');
+                String key = manifest || dot < 0 ? name : name.substring(0, dot);
+                Entry entry = entries.computeIfAbsent(area + "/" + key, k -> new Entry(key, manifest));
+                entry.files.add(file);
+                entry.size += attributes.size();
+                if (attributes.lastModifiedTime().compareTo(entry.lastUsed) > 0) {
+                    entry.lastUsed = attributes.lastModifiedTime();
+                }
+                entry.hasObject |= name.endsWith(".csv");
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Deleted by a concurrent eviction.
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return entries;
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.godse823.exceltocsv;
+
+import java.io.IOException;
+
+/**
+ * Signals that a workbook could not be converted because its content is
+ * malformed or uses a feature the converter does not understand.
+ */
+public class ConversionException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConversionException(String message) {
+        super(message);
+    }
+
+    public ConversionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
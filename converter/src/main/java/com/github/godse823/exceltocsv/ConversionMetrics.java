@@ -0,0 +1,427 @@
+package com.github.godse823.exceltocsv;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms describing the conversions of every converter
+ * whose {@linkplain ConversionOptions#metrics() options} carry this
+ * instance: rows, cells, shared-string and formatted cells, bytes in and
+ * out, and the wall-clock time, CPU time and allocation of each stage.
+ * Comparing the stages shows where a slow conversion spends its time:
+ *
+ * <ul>
+ *   <li>{@code open}: reading the workbook's directory, shared strings and
+ *       styles;</li>
+ *   <li>{@code inflate}: decompressing XLSX sheet XML on its own stage
+ *       thread;</li>
+ *   <li>{@code parse}: tokenizing, decoding and number formatting, and
+ *       encoding the output. Without a pipeline this is the whole sheet,
+ *       inflating and writing included;</li>
+ *   <li>{@code write}: draining the output to its file or stream, and for a
+ *       split sheet also cutting the XML into chunks;</li>
+ *   <li>{@code compress}: compressing output blocks on the compressor
+ *       threads.</li>
+ * </ul>
+ *
+ * A stage that is mostly waiting for the others shows a wall-clock time
+ * well above its CPU time. Allocation is measured per thread, so it is
+ * attributed to each workbook even when several are converted at once.
+ *
+ * <p>The instance can be {@linkplain #register() registered} as an MXBean
+ * and rendered {@linkplain #toJson() as JSON}. Conversions without metrics
+ * only test for their absence once per sheet and stage: no counting is done
+ * per row.
+ */
+public final class ConversionMetrics implements ConversionMetricsMXBean {
+
+    /** Where a conversion spends its time. */
+    enum Stage {
+        OPEN, INFLATE, PARSE, WRITE, COMPRESS;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS =
+            THREADS instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported()
+                    ? bean : null;
+
+    private final LongAdder workbooks = new LongAdder();
+    private final LongAdder failedWorkbooks = new LongAdder();
+    private final LongAdder sheets = new LongAdder();
+    private final LongAdder cachedSheets = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder cells = new LongAdder();
+    private final LongAdder sharedStringCells = new LongAdder();
+    private final LongAdder formattedCells = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final Histogram[] stageWall = new Histogram[Stage.values().length];
+    private final LongAdder[] stageCpu = new LongAdder[Stage.values().length];
+    private final LongAdder[] stageAllocated = new LongAdder[Stage.values().length];
+    private final Histogram sheetNanos = new Histogram();
+    private final Histogram workbookNanos = new Histogram();
+    private final Histogram workbookAllocated = new Histogram();
+    private final long gcCollectionsAtStart = gc(GarbageCollectorMXBean::getCollectionCount);
+    private final long gcMillisAtStart = gc(GarbageCollectorMXBean::getCollectionTime);
+
+    /** Workbooks being converted, and since when the count has been above zero. */
+    private int active;
+    private long busySince;
+    private long busyNanos;
+
+    public ConversionMetrics() {
+        for (int i = 0; i < stageWall.length; i++) {
+            stageWall[i] = new Histogram();
+            stageCpu[i] = new LongAdder();
+            stageAllocated[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as
+     * {@code com.github.godse823.exceltocsv:type=ConversionMetrics}, for
+     * JConsole and other JMX clients, and returns the name used.
+     *
+     * @throws JMException if metrics are already registered under that name
+     */
+    public ObjectName register() throws JMException {
+        ObjectName name = new ObjectName("com.github.godse823.exceltocsv:type=ConversionMetrics");
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        return name;
+    }
+
+    /** Starts measuring the conversion of one workbook. */
+    Meter start() {
+        synchronized (this) {
+            if (active++ == 0) {
+                busySince = System.nanoTime();
+            }
+        }
+        return new Meter();
+    }
+
+    /**
+     * The measurements of one workbook conversion. Methods may be called
+     * from any of the threads converting the workbook.
+     */
+    final class Meter {
+
+        private final long started = System.nanoTime();
+        private final LongAdder allocated = new LongAdder();
+
+        /**
+         * Reads the clocks of the current thread, to be passed to
+         * {@link #stop} once the stage is done on this thread.
+         */
+        long[] startStage() {
+            return new long[] {System.nanoTime(), cpuTime(), allocatedBytes()};
+        }
+
+        void stop(Stage stage, long[] start) {
+            long bytes = allocatedBytes() - start[2];
+            stageWall[stage.ordinal()].record(System.nanoTime() - start[0]);
+            stageCpu[stage.ordinal()].add(cpuTime() - start[1]);
+            stageAllocated[stage.ordinal()].add(bytes);
+            allocated.add(bytes);
+        }
+
+        /** Returns an executor timing each task it runs on {@code executor} as a {@code stage}. */
+        Executor timing(Executor executor, Stage stage) {
+            return task -> executor.execute(() -> {
+                long[] start = startStage();
+                try {
+                    task.run();
+                } finally {
+                    stop(stage, start);
+                }
+            });
+        }
+
+        /** Returns a sink that counts the cells of each row before passing it to {@code sink}. */
+        RowSink counting(RowSink sink) {
+            return new CountingSink(sink);
+        }
+
+        void bytesIn(long bytes) {
+            bytesIn.add(bytes);
+        }
+
+        void sheet(SheetResult result) {
+            sheets.increment();
+            if (result.cached()) {
+                cachedSheets.increment();
+            }
+            rows.add(result.rows());
+            bytesOut.add(result.bytes());
+            sheetNanos.record(result.elapsed().toNanos());
+        }
+
+        void finish(boolean succeeded) {
+            workbooks.increment();
+            if (!succeeded) {
+                failedWorkbooks.increment();
+            }
+            long now = System.nanoTime();
+            workbookNanos.record(now - started);
+            workbookAllocated.record(allocated.sum());
+            synchronized (ConversionMetrics.this) {
+                if (--active == 0) {
+                    busyNanos += now - busySince;
+                }
+            }
+        }
+    }
+
+    /** Counts cells in a plain field, added to the totals once the reader reports the end of the sheet. */
+    private final class CountingSink implements RowSink {
+
+        private final RowSink sink;
+        private long rowCells;
+
+        CountingSink(RowSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void row(RowBuffer row) throws IOException {
+            rowCells += row.cellCount();
+            sink.row(row);
+        }
+
+        @Override
+        public void decoded(long sharedStrings, long formatted) {
+            cells.add(rowCells);
+            rowCells = 0;
+            sharedStringCells.add(sharedStrings);
+            formattedCells.add(formatted);
+            sink.decoded(sharedStrings, formatted);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            sink.finish();
+        }
+    }
+
+    @Override
+    public long getWorkbooks() {
+        return workbooks.sum();
+    }
+
+    @Override
+    public long getFailedWorkbooks() {
+        return failedWorkbooks.sum();
+    }
+
+    @Override
+    public long getSheets() {
+        return sheets.sum();
+    }
+
+    @Override
+    public long getCachedSheets() {
+        return cachedSheets.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getCells() {
+        return cells.sum();
+    }
+
+    @Override
+    public long getSharedStringCells() {
+        return sharedStringCells.sum();
+    }
+
+    @Override
+    public long getFormattedCells() {
+        return formattedCells.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getBusyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(busyNanos());
+    }
+
+    private synchronized long busyNanos() {
+        return active > 0 ? busyNanos + System.nanoTime() - busySince : busyNanos;
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        long busy = busyNanos();
+        return busy == 0 ? 0 : getRows() * 1e9 / busy;
+    }
+
+    @Override
+    public Map<String, Long> getStageWallMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            millis.put(stage.label, TimeUnit.NANOSECONDS.toMillis(stageWall[stage.ordinal()].sum()));
+        }
+        return millis;
+    }
+
+    @Override
+    public Map<String, Long> getStageCpuMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            millis.put(stage.label, TimeUnit.NANOSECONDS.toMillis(stageCpu[stage.ordinal()].sum()));
+        }
+        return millis;
+    }
+
+    @Override
+    public Map<String, Long> getStageAllocatedBytes() {
+        Map<String, Long> bytes = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            bytes.put(stage.label, stageAllocated[stage.ordinal()].sum());
+        }
+        return bytes;
+    }
+
+    @Override
+    public Map<String, Long> getSheetMillis() {
+        return summary(sheetNanos, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Override
+    public Map<String, Long> getWorkbookMillis() {
+        return summary(workbookNanos, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Override
+    public Map<String, Long> getWorkbookAllocatedBytes() {
+        return summary(workbookAllocated, 1);
+    }
+
+    private static Map<String, Long> summary(Histogram histogram, long unit) {
+        Map<String, Long> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.count());
+        summary.put("p50", histogram.percentile(0.5) / unit);
+        summary.put("p90", histogram.percentile(0.9) / unit);
+        summary.put("p99", histogram.percentile(0.99) / unit);
+        summary.put("max", histogram.max() / unit);
+        return summary;
+    }
+
+    @Override
+    public long getGcCollections() {
+        return gc(GarbageCollectorMXBean::getCollectionCount) - gcCollectionsAtStart;
+    }
+
+    @Override
+    public long getGcMillis() {
+        return gc(GarbageCollectorMXBean::getCollectionTime) - gcMillisAtStart;
+    }
+
+    private static long gc(ToLongFunction<GarbageCollectorMXBean> counter) {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, counter.applyAsLong(collector));
+        }
+        return total;
+    }
+
+    @Override
+    public String getJson() {
+        return toJson();
+    }
+
+    /** Returns a snapshot of the metrics as a JSON document. */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(2048);
+        json.append("{\n");
+        field(json, "workbooks", getWorkbooks());
+        field(json, "failedWorkbooks", getFailedWorkbooks());
+        field(json, "sheets", getSheets());
+        field(json, "cachedSheets", getCachedSheets());
+        field(json, "rows", getRows());
+        field(json, "cells", getCells());
+        field(json, "sharedStringCells", getSharedStringCells());
+        field(json, "formattedCells", getFormattedCells());
+        field(json, "bytesIn", getBytesIn());
+        field(json, "bytesOut", getBytesOut());
+        field(json, "busyMillis", getBusyMillis());
+        json.append("  \"rowsPerSecond\": ").append(Math.round(getRowsPerSecond())).append(",\n");
+        json.append("  \"stages\": {");
+        for (Stage stage : Stage.values()) {
+            Histogram wall = stageWall[stage.ordinal()];
+            json.append(stage.ordinal() == 0 ? "\n" : ",\n").append("    \"").append(stage.label).append("\": {");
+            json.append("\"count\": ").append(wall.count());
+            json.append(", \"wallMillis\": ").append(millis(wall.sum()));
+            json.append(", \"cpuMillis\": ").append(millis(stageCpu[stage.ordinal()].sum()));
+            json.append(", \"allocatedBytes\": ").append(stageAllocated[stage.ordinal()].sum());
+            json.append(", \"latencyMillis\": ");
+            histogram(json, wall, true);
+            json.append('}');
+        }
+        json.append("\n  },\n");
+        json.append("  \"sheetMillis\": ");
+        histogram(json, sheetNanos, true);
+        json.append(",\n  \"workbookMillis\": ");
+        histogram(json, workbookNanos, true);
+        json.append(",\n  \"workbookAllocatedBytes\": ");
+        histogram(json, workbookAllocated, false);
+        json.append(",\n  \"gc\": {\"collections\": ").append(getGcCollections())
+                .append(", \"millis\": ").append(getGcMillis()).append("}\n}\n");
+        return json.toString();
+    }
+
+    private static void field(StringBuilder json, String name, long value) {
+        json.append("  \"").append(name).append("\": ").append(value).append(",\n");
+    }
+
+    private static void histogram(StringBuilder json, Histogram histogram, boolean nanos) {
+        json.append("{\"count\": ").append(histogram.count());
+        json.append(", \"p50\": ").append(value(histogram.percentile(0.5), nanos));
+        json.append(", \"p90\": ").append(value(histogram.percentile(0.9), nanos));
+        json.append(", \"p99\": ").append(value(histogram.percentile(0.99), nanos));
+        json.append(", \"max\": ").append(value(histogram.max(), nanos)).append('}');
+    }
+
+    private static String value(long value, boolean nanos) {
+        return nanos ? millis(value) : Long.toString(value);
+    }
+
+    /** Milliseconds to the microsecond. */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATIONS == null ? 0 : ALLOCATIONS.getCurrentThreadAllocatedBytes();
+    }
+}
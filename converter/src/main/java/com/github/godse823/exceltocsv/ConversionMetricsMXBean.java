@@ -0,0 +1,59 @@
+package com.github.godse823.exceltocsv;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link ConversionMetrics}. Times are in milliseconds;
+ * histograms are reported as their count, 50th, 90th and 99th percentiles
+ * and maximum.
+ */
+public interface ConversionMetricsMXBean {
+
+    long getWorkbooks();
+
+    long getFailedWorkbooks();
+
+    long getSheets();
+
+    long getCachedSheets();
+
+    long getRows();
+
+    long getCells();
+
+    long getSharedStringCells();
+
+    long getFormattedCells();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    /** Wall-clock time during which at least one workbook was being converted. */
+    long getBusyMillis();
+
+    double getRowsPerSecond();
+
+    /** Wall-clock time spent in each stage, summed over sheets and threads. */
+    Map<String, Long> getStageWallMillis();
+
+    /** CPU time spent in each stage. */
+    Map<String, Long> getStageCpuMillis();
+
+    /** Bytes allocated by each stage. */
+    Map<String, Long> getStageAllocatedBytes();
+
+    Map<String, Long> getSheetMillis();
+
+    Map<String, Long> getWorkbookMillis();
+
+    Map<String, Long> getWorkbookAllocatedBytes();
+
+    /** Garbage collections since the metrics were created. */
+    long getGcCollections();
+
+    long getGcMillis();
+
+    /** All of the above as the JSON document written by {@code --stats}. */
+    String getJson();
+}
@@ -0,0 +1,371 @@
+package com.github.godse823.exceltocsv;
+
+import com.github.godse823.exceltocsv.codec.OutputCodec;
+import com.github.godse823.exceltocsv.xlsx.SheetChunker;
+import com.github.godse823.exceltocsv.zip.InflaterBackend;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable settings for a conversion. Create instances with {@link #builder()}.
+ */
+public final class ConversionOptions {
+
+    private static final ConversionOptions DEFAULTS = builder().build();
+
+    private final char delimiter;
+    private final String lineSeparator;
+    private final List<String> sheets;
+    private final long sharedStringsSpillThreshold;
+    private final int parallelism;
+    private final int sheetChunkSize;
+    private final boolean formatNumbers;
+    private final long pipelineBudget;
+    private final RowSelection selection;
+    private final Path cacheDirectory;
+    private final long cacheSize;
+    private final boolean cacheLinks;
+    private final InflaterBackend inflater;
+    private final OutputCodec compression;
+    private final OutputFormat outputFormat;
+    private final int rowGroupSize;
+    private final boolean schemaSidecar;
+    private final ConversionMetrics metrics;
+
+    private ConversionOptions(Builder builder) {
+        this.delimiter = builder.delimiter;
+        this.lineSeparator = builder.lineSeparator;
+        this.sheets = List.copyOf(builder.sheets);
+        this.sharedStringsSpillThreshold = builder.sharedStringsSpillThreshold;
+        this.parallelism = builder.parallelism;
+        this.sheetChunkSize = builder.sheetChunkSize;
+        this.formatNumbers = builder.formatNumbers;
+        this.pipelineBudget = builder.pipelineBudget;
+        this.selection = builder.selection;
+        this.cacheDirectory = builder.cacheDirectory;
+        this.cacheSize = builder.cacheSize;
+        this.cacheLinks = builder.cacheLinks;
+        this.inflater = builder.inflater;
+        this.compression = builder.compression;
+        this.outputFormat = builder.outputFormat;
+        this.rowGroupSize = builder.rowGroupSize;
+        this.schemaSidecar = builder.schemaSidecar;
+        this.metrics = builder.metrics;
+    }
+
+    public static ConversionOptions defaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** A builder initialised with these options, for deriving variants of them. */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.delimiter = delimiter;
+        builder.lineSeparator = lineSeparator;
+        builder.sheets = sheets;
+        builder.sharedStringsSpillThreshold = sharedStringsSpillThreshold;
+        builder.parallelism = parallelism;
+        builder.sheetChunkSize = sheetChunkSize;
+        builder.formatNumbers = formatNumbers;
+        builder.pipelineBudget = pipelineBudget;
+        builder.selection = selection;
+        builder.cacheDirectory = cacheDirectory;
+        builder.cacheSize = cacheSize;
+        builder.cacheLinks = cacheLinks;
+        builder.inflater = inflater;
+        builder.compression = compression;
+        builder.outputFormat = outputFormat;
+        builder.rowGroupSize = rowGroupSize;
+        builder.schemaSidecar = schemaSidecar;
+        builder.metrics = metrics;
+        return builder;
+    }
+
+    public char delimiter() {
+        return delimiter;
+    }
+
+    public String lineSeparator() {
+        return lineSeparator;
+    }
+
+    /** Names of the sheets to convert; empty means all sheets. */
+    public List<String> sheets() {
+        return sheets;
+    }
+
+    /**
+     * Size in bytes above which the shared-strings table is moved from direct
+     * memory to a memory-mapped temporary file; negative means never.
+     */
+    public long sharedStringsSpillThreshold() {
+        return sharedStringsSpillThreshold;
+    }
+
+    /** Maximum number of sheets converted concurrently. */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Whether a single sheet is split into row ranges that are parsed
+     * concurrently, rather than converting whole sheets in parallel.
+     */
+    public boolean splitSheets() {
+        return sheetChunkSize > 0;
+    }
+
+    /** Target size in bytes of the sheet XML chunks when splitting sheets; 0 when disabled. */
+    public int sheetChunkSize() {
+        return sheetChunkSize;
+    }
+
+    /**
+     * Whether numeric cells are rendered through their number format (dates,
+     * percentages, fixed decimals) rather than written as stored.
+     */
+    public boolean formatNumbers() {
+        return formatNumbers;
+    }
+
+    /**
+     * Bytes that may be buffered between the stages of all sheet pipelines
+     * of a converter together; 0 runs each sheet on a single thread with no
+     * buffering between stages.
+     */
+    public long pipelineBudget() {
+        return pipelineBudget;
+    }
+
+    /** The columns written and rows kept for every sheet. */
+    public RowSelection selection() {
+        return selection;
+    }
+
+    /**
+     * Directory of the conversion cache, or {@code null} for none. Sheets
+     * written to files are looked up there before being converted.
+     */
+    public Path cacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /** Size in bytes above which the least recently used cache entries are evicted. */
+    public long cacheSize() {
+        return cacheSize;
+    }
+
+    /** Whether cached sheets are hard-linked to their outputs rather than copied. */
+    public boolean cacheLinks() {
+        return cacheLinks;
+    }
+
+    /** Decompresses XLSX sheet entries; see {@link InflaterBackend#preferred()}. */
+    public InflaterBackend inflater() {
+        return inflater;
+    }
+
+    /**
+     * Compresses the CSV of every sheet, or {@code null} to write plain CSV.
+     * Files written get the codec's {@linkplain OutputCodec#extension()
+     * extension} after {@code .csv}.
+     */
+    public OutputCodec compression() {
+        return compression;
+    }
+
+    /** The format sheets are written in; CSV by default. */
+    public OutputFormat outputFormat() {
+        return outputFormat;
+    }
+
+    /**
+     * Rows per record batch of columnar output. Column types are inferred
+     * from the first batch of each sheet.
+     */
+    public int rowGroupSize() {
+        return rowGroupSize;
+    }
+
+    /**
+     * Whether each sheet written to a file gets a {@code .schema.json}
+     * sidecar describing its columns, profiled while the sheet is converted.
+     */
+    public boolean schemaSidecar() {
+        return schemaSidecar;
+    }
+
+    /**
+     * Where conversions record their counters and stage timings, or
+     * {@code null} (the default) to record nothing.
+     */
+    public ConversionMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Describes every option that affects the CSV produced for a sheet, for
+     * use in cache keys.
+     */
+    String outputKey() {
+        return "delimiter=" + (int) delimiter + " eol=" + lineSeparator.replace("\r", "CR").replace("\n", "LF")
+                + " format=" + formatNumbers + " " + selection
+                + (compression == null ? "" : " compress=" + compression.spec())
+                + (outputFormat == OutputFormat.CSV ? "" : " output=" + outputFormat + " rowGroup=" + rowGroupSize);
+    }
+
+    public static final class Builder {
+
+        private char delimiter = ',';
+        private String lineSeparator = "\n";
+        private List<String> sheets = List.of();
+        // Direct memory is capped at -Xmx by default, so stay well below it.
+        private long sharedStringsSpillThreshold = Math.min(64L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int sheetChunkSize;
+        private boolean formatNumbers = true;
+        private long pipelineBudget = Math.min(64L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+        private RowSelection selection = RowSelection.ALL;
+        private Path cacheDirectory;
+        private long cacheSize = 1024L * 1024 * 1024;
+        private boolean cacheLinks;
+        private InflaterBackend inflater = InflaterBackend.preferred();
+        private OutputCodec compression;
+        private OutputFormat outputFormat = OutputFormat.CSV;
+        private int rowGroupSize = 65_536;
+        private boolean schemaSidecar;
+        private ConversionMetrics metrics;
+
+        private Builder() {
+        }
+
+        public Builder delimiter(char delimiter) {
+            if (delimiter > 0x7F || delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+                throw new IllegalArgumentException("Unsupported CSV delimiter: " + delimiter);
+            }
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        public Builder lineSeparator(String lineSeparator) {
+            this.lineSeparator = Objects.requireNonNull(lineSeparator, "lineSeparator");
+            return this;
+        }
+
+        public Builder sheets(List<String> sheets) {
+            this.sheets = Objects.requireNonNull(sheets, "sheets");
+            return this;
+        }
+
+        public Builder sharedStringsSpillThreshold(long bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Spill threshold must not be negative: " + bytes);
+            }
+            this.sharedStringsSpillThreshold = bytes;
+            return this;
+        }
+
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /** Splits each sheet into chunks of the default size; see {@link #sheetChunkSize(int)}. */
+        public Builder splitSheets(boolean splitSheets) {
+            this.sheetChunkSize = splitSheets ? SheetChunker.DEFAULT_CHUNK_SIZE : 0;
+            return this;
+        }
+
+        /** Splits each sheet into chunks of about {@code bytes} of XML; 0 disables splitting. */
+        public Builder sheetChunkSize(int bytes) {
+            if (bytes != 0 && bytes < 1024) {
+                throw new IllegalArgumentException("Sheet chunk size must be at least 1K: " + bytes);
+            }
+            this.sheetChunkSize = bytes;
+            return this;
+        }
+
+        public Builder formatNumbers(boolean formatNumbers) {
+            this.formatNumbers = formatNumbers;
+            return this;
+        }
+
+        public Builder pipelineBudget(long bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Pipeline budget must not be negative: " + bytes);
+            }
+            this.pipelineBudget = bytes;
+            return this;
+        }
+
+        public Builder selection(RowSelection selection) {
+            this.selection = Objects.requireNonNull(selection, "selection");
+            return this;
+        }
+
+        public Builder cacheDirectory(Path directory) {
+            this.cacheDirectory = directory;
+            return this;
+        }
+
+        public Builder cacheSize(long bytes) {
+            if (bytes < 1) {
+                throw new IllegalArgumentException("Cache size must be positive: " + bytes);
+            }
+            this.cacheSize = bytes;
+            return this;
+        }
+
+        public Builder cacheLinks(boolean cacheLinks) {
+            this.cacheLinks = cacheLinks;
+            return this;
+        }
+
+        public Builder inflater(InflaterBackend inflater) {
+            this.inflater = Objects.requireNonNull(inflater, "inflater");
+            return this;
+        }
+
+        /** Compresses the output with {@code codec}; {@code null} writes plain CSV. */
+        public Builder compression(OutputCodec codec) {
+            this.compression = codec;
+            return this;
+        }
+
+        public Builder outputFormat(OutputFormat format) {
+            this.outputFormat = Objects.requireNonNull(format, "format");
+            return this;
+        }
+
+        public Builder rowGroupSize(int rows) {
+            if (rows < 1) {
+                throw new IllegalArgumentException("Row group size must be positive: " + rows);
+            }
+            this.rowGroupSize = rows;
+            return this;
+        }
+
+        public Builder schemaSidecar(boolean schemaSidecar) {
+            this.schemaSidecar = schemaSidecar;
+            return this;
+        }
+
+        public Builder metrics(ConversionMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public ConversionOptions build() {
+            return new ConversionOptions(this);
+        }
+    }
+}
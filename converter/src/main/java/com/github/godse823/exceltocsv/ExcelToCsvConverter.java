@@ -0,0 +1,847 @@
+package com.github.godse823.exceltocsv;
+
+import com.github.godse823.exceltocsv.codec.OutputCodec;
+import com.github.godse823.exceltocsv.jfr.FlushRecordingChannel;
+import com.github.godse823.exceltocsv.jfr.SheetConvertedEvent;
+import com.github.godse823.exceltocsv.jfr.SheetStartedEvent;
+import com.github.godse823.exceltocsv.jfr.WorkbookOpenedEvent;
+import com.github.godse823.exceltocsv.xlsx.SheetInfo;
+import com.github.godse823.exceltocsv.xlsx.SheetReader;
+import com.github.godse823.exceltocsv.xlsx.StreamedXlsx;
+import com.github.godse823.exceltocsv.xlsx.XlsxWorkbook;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts the sheets of an XLSX or legacy {@code .xls} workbook to CSV.
+ *
+ * <p>Sheets are streamed: rows are decoded and written as the sheet is read,
+ * so heap use does not grow with the size of the workbook. By default each
+ * sheet runs as a pipeline of inflate, parse and write stages on separate
+ * threads, connected by buffers drawn from one {@link ByteBudget} per
+ * converter; see {@link ConversionOptions#pipelineBudget()}. Buffers and
+ * stage threads are pooled per converter, so a converter kept for many
+ * conversions, or shared through {@link #withOptions}, stops allocating them
+ * once warm. Converters are safe for concurrent use.
+ *
+ * <p>With a {@linkplain ConversionOptions#cacheDirectory() cache directory}
+ * configured, conversions to files are first looked up in a
+ * {@link ConversionCache}: an unchanged workbook is restored without being
+ * opened, and in a changed XLSX workbook only the sheets whose parts
+ * changed are converted again.
+ *
+ * <p>With {@linkplain ConversionOptions#compression() compression}, the CSV
+ * of each sheet is cut into blocks that are compressed on a pool of one
+ * thread per CPU, shared by all sheets, while the next blocks are written.
+ */
+public final class ExcelToCsvConverter {
+
+    private final ConversionOptions options;
+    private final ByteBudget budget;
+    private final BufferPool buffers;
+    /** Threads for the inflate and write stages of sheet pipelines, or {@code null} when pipelining is off. */
+    private final ExecutorService stages;
+    /** Threads that compress output blocks; idle ones time out. */
+    private final ExecutorService compressors;
+    private final ConversionCache cache;
+
+    public ExcelToCsvConverter() {
+        this(ConversionOptions.defaults());
+    }
+
+    public ExcelToCsvConverter(ConversionOptions options) {
+        this(options,
+                options.pipelineBudget() > 0 ? new ByteBudget(options.pipelineBudget()) : ByteBudget.unlimited(),
+                new BufferPool(SheetPipeline.BLOCK_SIZE, retainedBuffers(options)),
+                // Idle stage threads time out, so the pool needs no shutdown.
+                options.pipelineBudget() > 0
+                        ? Executors.newCachedThreadPool(Threads.daemon("excel-to-csv-stage")) : null,
+                newCompressorPool(),
+                options.cacheDirectory() == null ? null
+                        : new ConversionCache(options.cacheDirectory(), options.cacheSize(), options.cacheLinks()));
+    }
+
+    private ExcelToCsvConverter(ConversionOptions options, ByteBudget budget, BufferPool buffers,
+                                ExecutorService stages, ExecutorService compressors, ConversionCache cache) {
+        this.options = options;
+        this.budget = budget;
+        this.buffers = buffers;
+        this.stages = stages;
+        this.compressors = compressors;
+        this.cache = cache;
+    }
+
+    private static ExecutorService newCompressorPool() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), Threads.daemon("excel-to-csv-compress"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /** Keeps enough buffers for the pipes of a few concurrent sheets, and never more than the budget. */
+    private static int retainedBuffers(ConversionOptions options) {
+        long blocks = options.pipelineBudget() / SheetPipeline.BLOCK_SIZE;
+        return (int) Math.max(2, Math.min(blocks, 4L * SheetPipeline.MAX_BLOCKS));
+    }
+
+    /**
+     * Returns a converter for different options that shares this
+     * converter's pipeline budget, buffers, threads and cache. The pipeline
+     * budget and cache settings of {@code options} are ignored.
+     */
+    public ExcelToCsvConverter withOptions(ConversionOptions options) {
+        return new ExcelToCsvConverter(options, budget, buffers, stages, compressors, cache);
+    }
+
+    /**
+     * Converts every selected sheet to {@code <sheet name>.csv} inside
+     * {@code outputDirectory}, creating the directory if needed. Compressed
+     * sheets get the codec's extension as well, as in {@code Sales.csv.gz}.
+     * If {@linkplain ConversionOptions#schemaSidecar() asked for}, each sheet
+     * is accompanied by {@code <sheet name>.schema.json} describing its
+     * columns.
+     *
+     * <p>Up to {@link ConversionOptions#parallelism()} sheets are converted
+     * at the same time. They share the workbook's read-only shared-strings
+     * table; each sheet has its own reader and writer. Results are returned
+     * in workbook order regardless of completion order.
+     */
+    public List<SheetResult> convert(Path workbook, Path outputDirectory) throws IOException {
+        ConversionMetrics.Meter meter = startMeter();
+        if (meter == null) {
+            return convert(workbook, outputDirectory, null);
+        }
+        boolean succeeded = false;
+        try {
+            meter.bytesIn(Files.size(workbook));
+            List<SheetResult> results = convert(workbook, outputDirectory, meter);
+            results.forEach(meter::sheet);
+            succeeded = true;
+            return results;
+        } finally {
+            meter.finish(succeeded);
+        }
+    }
+
+    private List<SheetResult> convert(Path workbook, Path outputDirectory, ConversionMetrics.Meter meter)
+            throws IOException {
+        String workbookKey = null;
+        if (cache != null) {
+            long started = System.nanoTime();
+            MessageDigest key = ConversionCache.newKey(options.outputKey() + " sheets=" + options.sheets());
+            ConversionCache.digestFile(workbook, key);
+            workbookKey = ConversionCache.finish(key);
+            List<SheetResult> restored = restoreWorkbook(workbook, workbookKey, outputDirectory, started);
+            if (restored != null) {
+                return restored;
+            }
+        }
+        try (Workbook book = open(workbook, meter)) {
+            Files.createDirectories(outputDirectory);
+            List<Integer> sheets = selectSheets(book);
+            List<Path> outputs = new ArrayList<>(sheets.size());
+            Set<String> usedNames = new HashSet<>();
+            for (int sheet : sheets) {
+                outputs.add(outputDirectory.resolve(fileNameFor(book.sheetNames().get(sheet), sheet, usedNames)));
+            }
+            String[] keys = new String[sheets.size()];
+            if (cache != null) {
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = sheetKey(book, sheets.get(i), outputs.get(i), workbookKey);
+                }
+            }
+
+            List<SheetResult> results = new ArrayList<>(sheets.size());
+            boolean split = splitting(book);
+            ExecutorService helpers = split ? newPool("excel-to-csv-chunk", options.parallelism()) : stages;
+            try {
+                // Split sheets are converted one after another, each using all chunk threads.
+                int threads = split ? 1 : Math.min(options.parallelism(), sheets.size());
+                if (threads <= 1) {
+                    boolean prefetch = !split && helpers != null;
+                    SheetPipeline.Prefetch next = null;
+                    try {
+                        for (int i = 0; i < sheets.size(); i++) {
+                            SheetPipeline.Prefetch current = next;
+                            next = null;
+                            // Inflate the next sheet while this one is parsed.
+                            if (prefetch && i + 1 < sheets.size()) {
+                                next = new SheetPipeline(options, budget, buffers, helpers, meter)
+                                        .prefetch(book, sheets.get(i + 1));
+                            }
+                            try {
+                                results.add(convertToFile(workbook, book, sheets.get(i), outputs.get(i), helpers,
+                                        keys[i], current, meter));
+                            } catch (IOException | RuntimeException | Error e) {
+                                if (current != null) {
+                                    current.cancel();
+                                }
+                                throw e;
+                            }
+                        }
+                    } finally {
+                        if (next != null) {
+                            next.cancel();
+                        }
+                    }
+                    return remember(workbookKey, results, keys);
+                }
+
+                ExecutorService pool = newPool("excel-to-csv-sheet", threads);
+                try {
+                    List<Future<SheetResult>> futures = new ArrayList<>(sheets.size());
+                    for (int i = 0; i < sheets.size(); i++) {
+                        int sheet = sheets.get(i);
+                        Path output = outputs.get(i);
+                        String key = keys[i];
+                        futures.add(pool.submit(() -> convertToFile(workbook, book, sheet, output, helpers, key,
+                                null, meter)));
+                    }
+                    for (Future<SheetResult> future : futures) {
+                        results.add(Threads.await(future));
+                    }
+                } finally {
+                    Threads.shutdown(pool);
+                }
+                return remember(workbookKey, results, keys);
+            } finally {
+                if (split) {
+                    Threads.shutdown(helpers);
+                }
+            }
+        }
+    }
+
+    /** Restores every sheet of a cached workbook, or returns {@code null} if any is missing. */
+    private List<SheetResult> restoreWorkbook(Path workbook, String workbookKey, Path outputDirectory, long started)
+            throws IOException {
+        List<ConversionCache.Sheet> manifest = cache.manifest(workbookKey);
+        if (manifest == null) {
+            return null;
+        }
+        Files.createDirectories(outputDirectory);
+        List<SheetResult> results = new ArrayList<>(manifest.size());
+        for (ConversionCache.Sheet sheet : manifest) {
+            SheetConvertedEvent event = new SheetConvertedEvent();
+            event.begin();
+            Path output = outputDirectory.resolve(sheet.fileName());
+            long[] totals = cache.restore(sheet.objectKey(), output);
+            if (totals == null || options.schemaSidecar()
+                    && !cache.restoreSidecar(sheet.objectKey(), schemaFileFor(output))) {
+                return null;
+            }
+            SheetResult result = new SheetResult(sheet.sheetName(), output, totals[0], totals[1],
+                    Duration.ofNanos(System.nanoTime() - started), true);
+            results.add(result);
+            sheetConverted(event, workbook, result);
+            started = System.nanoTime();
+        }
+        return results;
+    }
+
+    /**
+     * Keys a sheet by its own parts where the format allows, so that it is
+     * found again when other sheets of the workbook change. The schema
+     * sidecar also records the sheet's name and file, which its parts do not
+     * cover, so a renamed sheet gets a fresh sidecar.
+     */
+    private String sheetKey(Workbook book, int sheet, Path output, String workbookKey) throws IOException {
+        String names = options.schemaSidecar()
+                ? " sheet=" + book.sheetNames().get(sheet) + " file=" + output.getFileName()
+                : "";
+        MessageDigest key = ConversionCache.newKey(options.outputKey() + names);
+        if (!book.digestSheet(sheet, key)) {
+            key = ConversionCache.newKey(workbookKey + " sheet=" + sheet);
+        }
+        return ConversionCache.finish(key);
+    }
+
+    /** Records the workbook manifest once all its sheets are in the cache. */
+    private List<SheetResult> remember(String workbookKey, List<SheetResult> results, String[] keys)
+            throws IOException {
+        if (workbookKey != null) {
+            List<ConversionCache.Sheet> manifest = new ArrayList<>(results.size());
+            for (int i = 0; i < results.size(); i++) {
+                SheetResult result = results.get(i);
+                manifest.add(new ConversionCache.Sheet(keys[i], result.output().getFileName().toString(),
+                        result.sheetName()));
+            }
+            cache.storeManifest(workbookKey, manifest);
+        }
+        return results;
+    }
+
+    /**
+     * Converts a single sheet to the given stream, which is flushed but not
+     * closed. A {@code null} sheet name selects the first selected sheet.
+     * With compression, a complete compressed stream is written.
+     */
+    public SheetResult convertSheet(Path workbook, String sheetName, OutputStream out) throws IOException {
+        return convertSheet(workbook, sheetName, Channels.newChannel(out));
+    }
+
+    /**
+     * Converts a single sheet to the given channel, which is left open. A
+     * {@code null} sheet name selects the first selected sheet.
+     */
+    public SheetResult convertSheet(Path workbook, String sheetName, WritableByteChannel out) throws IOException {
+        ConversionMetrics.Meter meter = startMeter();
+        boolean succeeded = false;
+        try {
+            if (meter != null) {
+                meter.bytesIn(Files.size(workbook));
+            }
+            SheetResult result = convertSheet(workbook, sheetName, out, meter);
+            if (meter != null) {
+                meter.sheet(result);
+            }
+            succeeded = true;
+            return result;
+        } finally {
+            if (meter != null) {
+                meter.finish(succeeded);
+            }
+        }
+    }
+
+    private SheetResult convertSheet(Path workbook, String sheetName, WritableByteChannel out,
+                                     ConversionMetrics.Meter meter) throws IOException {
+        try (Workbook book = open(workbook, meter)) {
+            int sheet = sheetName == null ? selectSheets(book).get(0) : findSheet(book, sheetName);
+            if (!splitting(book)) {
+                return convertSheet(workbook, book, sheet, out, null, stages, null, meter);
+            }
+            ExecutorService helpers = newPool("excel-to-csv-chunk", options.parallelism());
+            try {
+                return convertSheet(workbook, book, sheet, out, null, helpers, null, meter);
+            } finally {
+                Threads.shutdown(helpers);
+            }
+        }
+    }
+
+    /**
+     * Converts every selected sheet of a workbook read from a stream, such as
+     * standard input, into {@code outputDirectory}, like
+     * {@link #convert(Path, Path)}. The stream is read to its end and closed.
+     *
+     * <p>An XLSX workbook is converted while it is being read, without
+     * waiting for the end of the input; see {@link StreamedXlsx}. Sheets are
+     * converted one at a time on the calling thread and are not looked up in
+     * or added to the cache, which would need the whole input first. A
+     * {@code .xls} workbook cannot be read in stream order and is copied to
+     * a temporary file first.
+     */
+    public List<SheetResult> convert(InputStream workbook, Path outputDirectory) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(workbook);
+        Path copy = spoolUnlessZip(in);
+        if (copy != null) {
+            try {
+                return convert(copy, outputDirectory);
+            } finally {
+                Files.deleteIfExists(copy);
+            }
+        }
+        Files.createDirectories(outputDirectory);
+        Set<String> usedNames = new HashSet<>();
+        Map<Integer, Path> outputs = new HashMap<>();
+        Map<Integer, SheetResult> results = new TreeMap<>();
+        ConversionMetrics.Meter meter = startMeter();
+        readStreamed(in, meter, new StreamedXlsx.Handler() {
+            @Override
+            public List<SheetInfo> select(List<SheetInfo> sheets) throws ConversionException {
+                List<SheetInfo> selected = selectSheets(sheets);
+                for (SheetInfo sheet : selected) {
+                    outputs.put(sheet.index(), outputDirectory.resolve(
+                            fileNameFor(sheet.name(), sheet.index(), usedNames)));
+                }
+                return selected;
+            }
+
+            @Override
+            public void sheet(SheetInfo sheet, SheetReader reader, InputStream xml) throws IOException {
+                Path output = outputs.get(sheet.index());
+                Files.deleteIfExists(output);
+                try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+                    results.put(sheet.index(), writeSheet(sheet.name(), reader, xml, out, output, meter));
+                }
+            }
+        });
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * Converts a single sheet of a workbook read from a stream to the given
+     * channel, which is left open. The stream is read to its end and closed;
+     * see {@link #convert(InputStream, Path)}.
+     */
+    public SheetResult convertSheet(InputStream workbook, String sheetName, WritableByteChannel out)
+            throws IOException {
+        BufferedInputStream in = new BufferedInputStream(workbook);
+        Path copy = spoolUnlessZip(in);
+        if (copy != null) {
+            try {
+                return convertSheet(copy, sheetName, out);
+            } finally {
+                Files.deleteIfExists(copy);
+            }
+        }
+        SheetResult[] result = new SheetResult[1];
+        ConversionMetrics.Meter meter = startMeter();
+        readStreamed(in, meter, new StreamedXlsx.Handler() {
+            @Override
+            public List<SheetInfo> select(List<SheetInfo> sheets) throws ConversionException {
+                if (sheetName == null) {
+                    return selectSheets(sheets).subList(0, 1);
+                }
+                List<String> names = sheets.stream().map(SheetInfo::name).toList();
+                return List.of(sheets.get(findSheet(names, sheetName)));
+            }
+
+            @Override
+            public void sheet(SheetInfo sheet, SheetReader reader, InputStream xml) throws IOException {
+                result[0] = writeSheet(sheet.name(), reader, xml, out, null, meter);
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * Reads a workbook in stream order, counting its bytes if {@code meter}
+     * is not {@code null}. The workbook counts as opened in a flight
+     * recording once its sheets are known.
+     */
+    private void readStreamed(InputStream in, ConversionMetrics.Meter meter, StreamedXlsx.Handler sheets)
+            throws IOException {
+        WorkbookOpenedEvent event = new WorkbookOpenedEvent();
+        event.begin();
+        StreamedXlsx.Handler handler = new StreamedXlsx.Handler() {
+            @Override
+            public List<SheetInfo> select(List<SheetInfo> all) throws IOException {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.workbook = workbookName(null);
+                    event.format = "xlsx";
+                    event.sheets = all.size();
+                    event.commit();
+                }
+                return sheets.select(all);
+            }
+
+            @Override
+            public void sheet(SheetInfo sheet, SheetReader reader, InputStream xml) throws IOException {
+                sheets.sheet(sheet, reader, xml);
+            }
+        };
+        if (meter == null) {
+            StreamedXlsx.read(in, options, handler);
+            return;
+        }
+        boolean succeeded = false;
+        long[] bytes = new long[1];
+        try {
+            StreamedXlsx.read(new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    bytes[0] += b < 0 ? 0 : 1;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    bytes[0] += Math.max(n, 0);
+                    return n;
+                }
+            }, options, handler);
+            succeeded = true;
+        } finally {
+            meter.bytesIn(bytes[0]);
+            meter.finish(succeeded);
+        }
+    }
+
+    /**
+     * Returns {@code null} if {@code in} holds a ZIP archive, leaving it
+     * unread; otherwise copies a BIFF8 workbook, which cannot be read in
+     * order, to a temporary file, closing the stream.
+     */
+    private static Path spoolUnlessZip(BufferedInputStream in) throws IOException {
+        in.mark(8);
+        byte[] magic = in.readNBytes(8);
+        in.reset();
+        if (magic.length >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            return null;
+        }
+        if (magic.length < 8 || (magic[0] & 0xFF) != 0xD0 || (magic[1] & 0xFF) != 0xCF
+                || (magic[2] & 0xFF) != 0x11 || (magic[3] & 0xFF) != 0xE0) {
+            in.close();
+            throw new ConversionException("Unsupported file format");
+        }
+        Path copy = Files.createTempFile("excel-to-csv-", ".xls");
+        try (in) {
+            Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(copy);
+            throw e;
+        }
+        return copy;
+    }
+
+    /** Converts one streamed sheet on this thread. */
+    private SheetResult writeSheet(String name, SheetReader reader, InputStream xml, WritableByteChannel out,
+                                   Path output, ConversionMetrics.Meter meter) throws IOException {
+        long started = System.nanoTime();
+        SheetConvertedEvent event = sheetStarted(null, name, output);
+        long[] stage = meter == null ? null : meter.startStage();
+        ColumnProfile profile = profileFor(output);
+        WritableByteChannel sink = FlushRecordingChannel.of(out, name, output);
+        WritableByteChannel target = compressing(sink, meter);
+        ByteBuffer buffer = buffers.directBuffer();
+        long rows;
+        long bytes;
+        try {
+            SheetWriter writer = options.outputFormat().newWriter(target, buffer, options);
+            rows = reader.read(xml, observing(writer, profile, meter));
+            writer.finish();
+            rows -= writer.headerRows();
+            bytes = writer.bytesWritten();
+        } finally {
+            buffers.release(buffer);
+        }
+        finishCompressing(target, sink);
+        writeSchema(profile, name, output);
+        SheetResult result = new SheetResult(name, output, rows, bytes, Duration.ofNanos(System.nanoTime() - started));
+        if (meter != null) {
+            meter.stop(ConversionMetrics.Stage.PARSE, stage);
+            meter.sheet(result);
+        }
+        sheetConverted(event, null, result);
+        return result;
+    }
+
+    /**
+     * Row-range splitting relies on the XML layout of XLSX sheets, and on
+     * CSV parts that can simply be concatenated.
+     */
+    private boolean splitting(Workbook book) {
+        // A row range or limit is satisfied by reading from the start and stopping early, not by chunks.
+        return options.splitSheets() && options.outputFormat() == OutputFormat.CSV && options.parallelism() > 1
+                && book instanceof XlsxWorkbook && !options.selection().limitsRows();
+    }
+
+    private static ExecutorService newPool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, Threads.daemon(name));
+    }
+
+    /**
+     * Converts one sheet to a file, or restores it from the cache if
+     * {@code key} is not {@code null} and has been converted before.
+     * {@code prefetched}, if not {@code null}, is the sheet's inflate stage
+     * already under way; it is cancelled when the sheet is restored.
+     */
+    private SheetResult convertToFile(Path workbook, Workbook book, int sheet, Path output,
+                                      ExecutorService helpers, String key, SheetPipeline.Prefetch prefetched,
+                                      ConversionMetrics.Meter meter) throws IOException {
+        Path schema = options.schemaSidecar() ? schemaFileFor(output) : null;
+        if (key != null) {
+            long started = System.nanoTime();
+            SheetConvertedEvent event = new SheetConvertedEvent();
+            event.begin();
+            long[] totals = cache.restore(key, output);
+            if (totals != null && (schema == null || cache.restoreSidecar(key, schema))) {
+                if (prefetched != null) {
+                    prefetched.cancel();
+                }
+                SheetResult result = new SheetResult(book.sheetNames().get(sheet), output, totals[0], totals[1],
+                        Duration.ofNanos(System.nanoTime() - started), true);
+                sheetConverted(event, workbook, result);
+                return result;
+            }
+        }
+        // Replace rather than truncate: the old file may be a hard link into the cache.
+        Files.deleteIfExists(output);
+        SheetResult result;
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            result = convertSheet(workbook, book, sheet, out, output, helpers, prefetched, meter);
+        }
+        if (key != null) {
+            cache.store(key, output, result.rows(), result.bytes());
+            if (schema != null) {
+                cache.storeSidecar(key, schema);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts one sheet.
+     *
+     * @param workbook the path {@code book} was opened from, for flight recordings
+     * @param helpers the chunk pool when the workbook is split into row
+     *                ranges, otherwise the stage pool for a pipelined
+     *                conversion, or {@code null} to convert on this thread
+     * @param prefetched the sheet's inflate stage if it was started early
+     */
+    private SheetResult convertSheet(Path workbook, Workbook book, int sheet, WritableByteChannel out, Path output,
+                                     ExecutorService helpers, SheetPipeline.Prefetch prefetched,
+                                     ConversionMetrics.Meter meter) throws IOException {
+        long started = System.nanoTime();
+        String name = book.sheetNames().get(sheet);
+        SheetConvertedEvent event = sheetStarted(workbook, name, output);
+        ColumnProfile profile = profileFor(output);
+        WritableByteChannel sink = FlushRecordingChannel.of(out, name, output);
+        WritableByteChannel target = compressing(sink, meter);
+        long[] totals = writeSheet(book, sheet, target, helpers, prefetched, profile, meter);
+        finishCompressing(target, sink);
+        writeSchema(profile, name, output);
+        SheetResult result = new SheetResult(name, output, totals[0], totals[1],
+                Duration.ofNanos(System.nanoTime() - started));
+        sheetConverted(event, workbook, result);
+        return result;
+    }
+
+    /**
+     * Records the start of a sheet in a flight recording, if one is running,
+     * and returns the event that will record its end.
+     */
+    private static SheetConvertedEvent sheetStarted(Path workbook, String sheet, Path output) {
+        SheetStartedEvent started = new SheetStartedEvent();
+        if (started.shouldCommit()) {
+            started.workbook = workbookName(workbook);
+            started.sheet = sheet;
+            started.output = output == null ? null : output.toString();
+            started.commit();
+        }
+        SheetConvertedEvent converted = new SheetConvertedEvent();
+        converted.begin();
+        return converted;
+    }
+
+    private static void sheetConverted(SheetConvertedEvent event, Path workbook, SheetResult result) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.workbook = workbookName(workbook);
+            event.sheet = result.sheetName();
+            event.output = result.output() == null ? null : result.output().toString();
+            event.rows = result.rows();
+            event.bytes = result.bytes();
+            event.cached = result.cached();
+            event.commit();
+        }
+    }
+
+    /** The workbook as named in flight recordings: its path, or {@code <stream>} when {@code null}. */
+    private static String workbookName(Path workbook) {
+        return workbook == null ? "<stream>" : workbook.toString();
+    }
+
+    /**
+     * Writes the output of one sheet, profiling its rows unless
+     * {@code profile} is {@code null} and measuring it unless {@code meter}
+     * is; returns the rows and bytes written.
+     */
+    private long[] writeSheet(Workbook book, int sheet, WritableByteChannel out, ExecutorService helpers,
+                              SheetPipeline.Prefetch prefetched, ColumnProfile profile,
+                              ConversionMetrics.Meter meter) throws IOException {
+        if (splitting(book)) {
+            XlsxWorkbook xlsx = (XlsxWorkbook) book;
+            long[] stage = meter == null ? null : meter.startStage();
+            try (InputStream in = xlsx.openSheet(xlsx.sheets().get(sheet))) {
+                return new SplitSheetConverter(xlsx, options, budget, helpers, meter).convert(in, out, profile);
+            } finally {
+                if (meter != null) {
+                    meter.stop(ConversionMetrics.Stage.WRITE, stage);
+                }
+            }
+        }
+        if (helpers != null) {
+            return new SheetPipeline(options, budget, buffers, helpers, meter)
+                    .convert(book, sheet, out, prefetched, profile);
+        }
+        long[] stage = meter == null ? null : meter.startStage();
+        ByteBuffer buffer = buffers.directBuffer();
+        long rows;
+        long bytes;
+        try {
+            SheetWriter writer = options.outputFormat().newWriter(out, buffer, options);
+            rows = book.readSheet(sheet, observing(writer, profile, meter));
+            writer.finish();
+            rows -= writer.headerRows();
+            bytes = writer.bytesWritten();
+        } finally {
+            buffers.release(buffer);
+        }
+        if (meter != null) {
+            meter.stop(ConversionMetrics.Stage.PARSE, stage);
+        }
+        return new long[] {rows, bytes};
+    }
+
+    /** Passes rows to {@code writer}, adding them to {@code profile} and {@code meter} unless {@code null}. */
+    static RowSink observing(SheetWriter writer, ColumnProfile profile, ConversionMetrics.Meter meter) {
+        RowSink sink = profile == null ? writer : profile.observing(writer);
+        return meter == null ? sink : meter.counting(sink);
+    }
+
+    /**
+     * Returns a channel compressing into {@code out} if the options ask for
+     * it, otherwise {@code out} itself. With a {@code meter}, the time spent
+     * compressing each block is measured.
+     */
+    private WritableByteChannel compressing(WritableByteChannel out, ConversionMetrics.Meter meter)
+            throws IOException {
+        OutputCodec codec = options.compression();
+        if (codec == null) {
+            return out;
+        }
+        return codec.compress(out, meter == null ? compressors
+                : meter.timing(compressors, ConversionMetrics.Stage.COMPRESS));
+    }
+
+    /** A meter for one workbook conversion, or {@code null} without metrics. */
+    private ConversionMetrics.Meter startMeter() {
+        ConversionMetrics metrics = options.metrics();
+        return metrics == null ? null : metrics.start();
+    }
+
+    /** Opens a workbook, timing it as the {@code open} stage and recording it in a flight recording. */
+    private Workbook open(Path workbook, ConversionMetrics.Meter meter) throws IOException {
+        WorkbookOpenedEvent event = new WorkbookOpenedEvent();
+        event.begin();
+        long[] stage = meter == null ? null : meter.startStage();
+        Workbook book = Workbook.open(workbook, options);
+        if (meter != null) {
+            meter.stop(ConversionMetrics.Stage.OPEN, stage);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.workbook = workbookName(workbook);
+            event.format = book instanceof XlsxWorkbook ? "xlsx" : "xls";
+            event.size = Files.size(workbook);
+            event.sheets = book.sheetNames().size();
+            event.commit();
+        }
+        return book;
+    }
+
+    /**
+     * Ends the compressed stream once the sheet is complete. A failed sheet
+     * leaves it unfinished, so that it cannot pass for a complete one.
+     */
+    private static void finishCompressing(WritableByteChannel target, WritableByteChannel out) throws IOException {
+        if (target != out) {
+            target.close();
+        }
+    }
+
+    /** Returns the indices of the sheets to convert. */
+    private List<Integer> selectSheets(Workbook book) throws ConversionException {
+        List<Integer> selected = new ArrayList<>();
+        if (options.sheets().isEmpty()) {
+            if (book.sheetNames().isEmpty()) {
+                throw new ConversionException("Workbook contains no worksheets");
+            }
+            for (int i = 0; i < book.sheetNames().size(); i++) {
+                selected.add(i);
+            }
+            return selected;
+        }
+        for (String name : options.sheets()) {
+            selected.add(findSheet(book, name));
+        }
+        return selected;
+    }
+
+    /** Returns the sheets to convert from a streamed workbook. */
+    private List<SheetInfo> selectSheets(List<SheetInfo> sheets) throws ConversionException {
+        if (options.sheets().isEmpty()) {
+            if (sheets.isEmpty()) {
+                throw new ConversionException("Workbook contains no worksheets");
+            }
+            return sheets;
+        }
+        List<String> names = sheets.stream().map(SheetInfo::name).toList();
+        List<SheetInfo> selected = new ArrayList<>();
+        for (String name : options.sheets()) {
+            selected.add(sheets.get(findSheet(names, name)));
+        }
+        return selected;
+    }
+
+    private static int findSheet(Workbook book, String name) throws ConversionException {
+        return findSheet(book.sheetNames(), name);
+    }
+
+    private static int findSheet(List<String> sheetNames, String name) throws ConversionException {
+        int index = sheetNames.indexOf(name);
+        if (index < 0) {
+            throw new ConversionException("No sheet named '" + name + "'");
+        }
+        return index;
+    }
+
+    /** A profile for the schema sidecar of {@code output}, or {@code null} if none is written. */
+    private ColumnProfile profileFor(Path output) {
+        return output != null && options.schemaSidecar() ? new ColumnProfile(options.selection()) : null;
+    }
+
+    private void writeSchema(ColumnProfile profile, String sheetName, Path output) throws IOException {
+        if (profile != null) {
+            Files.writeString(schemaFileFor(output), profile.toJson(sheetName, output.getFileName().toString()),
+                    StandardCharsets.UTF_8);
+        }
+    }
+
+    /** {@code Sales.schema.json} for {@code Sales.csv} or {@code Sales.csv.gz}. */
+    private Path schemaFileFor(Path output) {
+        String name = output.getFileName().toString();
+        OutputCodec codec = options.compression();
+        int suffix = options.outputFormat().extension().length() + (codec == null ? 0 : codec.extension().length());
+        return output.resolveSibling(name.substring(0, name.length() - suffix) + ".schema.json");
+    }
+
+    private String fileNameFor(String sheetName, int index, Set<String> usedNames) {
+        String base = sheetName.replaceAll("[^A-Za-z0-9._ -]", "_").strip();
+        if (base.isEmpty() || base.startsWith(".")) {
+            base = "sheet" + (index + 1);
+        }
+        String name = base;
+        for (int i = 2; !usedNames.add(name.toLowerCase()); i++) {
+            name = base + "_" + i;
+        }
+        OutputCodec codec = options.compression();
+        return name + options.outputFormat().extension() + (codec == null ? "" : codec.extension());
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.godse823.exceltocsv;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of converting one workbook in a batch.
+ *
+ * @param workbook        the input workbook
+ * @param outputDirectory directory the sheets were written to
+ * @param sheets          the converted sheets; empty if the conversion failed
+ * @param elapsed         wall-clock time from opening the workbook to the last sheet
+ * @param error           the failure, or {@code null} on success
+ */
+public record FileResult(Path workbook, Path outputDirectory, List<SheetResult> sheets, Duration elapsed,
+                         Exception error) {
+
+    public boolean succeeded() {
+        return error == null;
+    }
+
+    public long rows() {
+        return sheets.stream().mapToLong(SheetResult::rows).sum();
+    }
+
+    public long bytes() {
+        return sheets.stream().mapToLong(SheetResult::bytes).sum();
+    }
+}
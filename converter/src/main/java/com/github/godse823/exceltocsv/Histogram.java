@@ -0,0 +1,83 @@
+package com.github.godse823.exceltocsv;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative values, such as latencies in
+ * nanoseconds or allocated bytes. Values are counted in buckets four to each
+ * power of two, so percentiles are exact to within about 20% whatever the
+ * range, and recording is a few atomic additions without allocation.
+ */
+final class Histogram {
+
+    /** Sub-buckets per power of two, as a shift. */
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long value) {
+        long v = Math.max(value, 0);
+        buckets.incrementAndGet(bucket(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    long sum() {
+        return sum.sum();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the value below which
+     * {@code fraction} of the recorded values fall, or 0 if none were
+     * recorded.
+     */
+    long percentile(double fraction) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return exponent * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (SUB_BUCKETS + bucket % SUB_BUCKETS) * width;
+        return lower + width - 1;
+    }
+}
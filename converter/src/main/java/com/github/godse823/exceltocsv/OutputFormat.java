@@ -0,0 +1,54 @@
+package com.github.godse823.exceltocsv;
+
+import com.github.godse823.exceltocsv.arrow.ArrowWriter;
+import com.github.godse823.exceltocsv.csv.CsvWriter;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/** The file format sheets are written in. */
+public enum OutputFormat {
+
+    /** RFC 4180 text, with numbers rendered through their number formats. */
+    CSV(".csv"),
+    /**
+     * An Apache Arrow IPC file of typed columns inferred from the cells; see
+     * {@link ArrowWriter}. Typed columns hold values as stored, text columns
+     * the same text as CSV.
+     */
+    ARROW(".arrow");
+
+    private final String extension;
+
+    OutputFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /** The extension of the files written, e.g. {@code .csv}. */
+    public String extension() {
+        return extension;
+    }
+
+    /** Whether readers record cell values rather than formatting them. */
+    public boolean typed() {
+        return this != CSV;
+    }
+
+    /** Looks up a format by its name in any case, e.g. {@code csv} or {@code arrow}. */
+    public static OutputFormat named(String name) {
+        for (OutputFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output format: " + name + " (expected csv or arrow)");
+    }
+
+    /** Creates the writer of one sheet, staging output in {@code buffer}. */
+    SheetWriter newWriter(WritableByteChannel out, ByteBuffer buffer, ConversionOptions options) {
+        return switch (this) {
+            case CSV -> new CsvWriter(out, buffer, options.delimiter(), options.lineSeparator());
+            case ARROW -> new ArrowWriter(out, buffer, options.rowGroupSize(), options.selection());
+        };
+    }
+}
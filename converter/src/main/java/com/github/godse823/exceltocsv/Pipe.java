@@ -0,0 +1,275 @@
+package com.github.godse823.exceltocsv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A one-producer, one-consumer byte stream between two pipeline stages,
+ * carried in fixed-size blocks. Blocks are reserved from a
+ * {@link ByteBudget} while they are filled and queued, and returned to a
+ * {@link BufferPool} once consumed, so pipes of later sheets reuse them.
+ *
+ * <p>The producer writes through the pipe's {@link WritableByteChannel}
+ * methods and ends the stream with {@link #finish()} or
+ * {@link #abort(Throwable)}; the consumer reads with {@link #source()} or
+ * {@link #drainTo(WritableByteChannel)}. A consumer that closes its source
+ * before the end discards the rest of the stream, and the producer stops
+ * at its next block. If {@link #drainTo} fails, for example because the
+ * client of the output went away, the producer's next write fails too.
+ */
+final class Pipe implements WritableByteChannel {
+
+    private static final Block END = new Block(new byte[0]);
+
+    private final ByteBudget.Account account;
+    private final BufferPool pool;
+    private final int blockSize;
+    private final BlockingQueue<Block> queue;
+    private Block current;
+    private volatile Throwable failure;
+    private volatile Throwable consumerFailure;
+    private volatile boolean discarded;
+
+    /** Creates a pipe of blocks of the pool's buffer size. */
+    Pipe(ByteBudget budget, BufferPool pool, int maxBlocks) {
+        this.account = budget.newAccount(maxBlocks);
+        this.pool = pool;
+        this.blockSize = pool.bufferSize();
+        // One extra slot for the end marker.
+        this.queue = new ArrayBlockingQueue<>(maxBlocks + 1);
+    }
+
+    // ---- producer side
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int written = src.remaining();
+        while (src.hasRemaining()) {
+            if (discarded) {
+                throw stopped();
+            }
+            Block block = current();
+            int n = Math.min(src.remaining(), block.data.length - block.length);
+            src.get(block.data, block.length, n);
+            block.length += n;
+            if (block.length == block.data.length) {
+                publish();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Copies everything from {@code in} into the pipe, without finishing it.
+     * Returns early if the consumer has discarded the stream.
+     */
+    void transferFrom(InputStream in) throws IOException {
+        while (!discarded) {
+            Block block = current();
+            int n = in.read(block.data, block.length, block.data.length - block.length);
+            if (n < 0) {
+                return;
+            }
+            block.length += n;
+            if (block.length == block.data.length) {
+                publish();
+            }
+        }
+    }
+
+    /** Passes on the last partial block and marks the end of the stream. */
+    void finish() throws IOException {
+        if (discarded) {
+            if (current != null) {
+                recycle(current);
+                current = null;
+            }
+            // Blocks published after the consumer's own cleanup still hold budget.
+            discardQueued();
+            return;
+        }
+        if (current != null && current.length > 0) {
+            publish();
+        }
+        put(END);
+    }
+
+    /**
+     * Ends the stream with a failure, which the consumer rethrows. Blocks
+     * still queued are released here, as a consumer that never ran, or has
+     * stopped, would not release them.
+     */
+    void abort(Throwable cause) {
+        failure = cause;
+        if (current != null) {
+            recycle(current);
+            current = null;
+        }
+        discardQueued();
+        // Wake a consumer waiting for data. Only this producer puts, so the emptied queue has room.
+        queue.offer(END);
+    }
+
+    private IOException stopped() {
+        Throwable cause = consumerFailure;
+        return cause == null ? new IOException("Stream closed by the next stage")
+                : new IOException(cause.getMessage(), cause);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    /** Does nothing; the stream is ended with {@link #finish()}. */
+    @Override
+    public void close() {
+    }
+
+    private Block current() throws IOException {
+        if (current == null) {
+            account.acquire(blockSize);
+            current = new Block(pool.block());
+        }
+        return current;
+    }
+
+    private void publish() throws IOException {
+        put(current);
+        current = null;
+    }
+
+    private void put(Block block) throws IOException {
+        try {
+            queue.put(block);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while passing data between stages");
+        }
+    }
+
+    // ---- consumer side
+
+    /** Writes the whole stream to {@code out} and returns the number of bytes written. */
+    long drainTo(WritableByteChannel out) throws IOException {
+        long total = 0;
+        Block block = null;
+        try {
+            while ((block = take()) != null) {
+                ByteBuffer buffer = ByteBuffer.wrap(block.data, 0, block.length);
+                while (buffer.hasRemaining()) {
+                    total += out.write(buffer);
+                }
+                recycle(block);
+                block = null;
+            }
+            return total;
+        } catch (IOException | RuntimeException | Error e) {
+            if (block != null) {
+                recycle(block);
+            }
+            consumerFailure = e;
+            discarded = true;
+            discardQueued();
+            throw e;
+        }
+    }
+
+    /** The stream as an {@link InputStream}, for a consumer that pulls data. */
+    InputStream source() {
+        return new InputStream() {
+            private Block block;
+            private int position;
+            private boolean ended;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                while (block == null || position == block.length) {
+                    if (block != null) {
+                        recycle(block);
+                        block = null;
+                    }
+                    if (ended || (block = take()) == null) {
+                        ended = true;
+                        return -1;
+                    }
+                    position = 0;
+                }
+                int n = Math.min(len, block.length - position);
+                System.arraycopy(block.data, position, b, off, n);
+                position += n;
+                return n;
+            }
+
+            @Override
+            public void close() {
+                if (block != null) {
+                    recycle(block);
+                    block = null;
+                }
+                if (!ended) {
+                    ended = true;
+                    discarded = true;
+                    discardQueued();
+                }
+            }
+        };
+    }
+
+    /** Returns the next block, or {@code null} at the end of the stream. */
+    private Block take() throws IOException {
+        Block block;
+        try {
+            block = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data from the previous stage");
+        }
+        Throwable cause = failure;
+        if (cause != null) {
+            if (block != END) {
+                recycle(block);
+            }
+            throw cause instanceof IOException io ? io : new IOException(cause);
+        }
+        return block == END ? null : block;
+    }
+
+    private void discardQueued() {
+        Block block;
+        while ((block = queue.poll()) != null) {
+            if (block != END) {
+                recycle(block);
+            }
+        }
+    }
+
+    private void recycle(Block block) {
+        account.release(blockSize);
+        pool.release(block.data);
+    }
+
+    private static final class Block {
+
+        final byte[] data;
+        int length;
+
+        Block(byte[] data) {
+            this.data = data;
+        }
+    }
+}
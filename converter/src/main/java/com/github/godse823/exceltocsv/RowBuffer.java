@@ -0,0 +1,259 @@
+package com.github.godse823.exceltocsv;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A reusable, growable holder for the cells of a single row.
+ *
+ * <p>Cell values are kept as UTF-8 bytes in one shared array, with a start
+ * offset and an end offset per column. Readers fill the buffer cell by cell
+ * and hand it to a {@link RowSink}; once the buffers have grown to the widest
+ * row of a sheet no further allocation takes place.
+ *
+ * <p>Each cell also records its {@link CellKind} and, for numbers, dates and
+ * booleans decoded by a typed reader, the value itself, so that typed sinks
+ * never parse the text back.
+ */
+public final class RowBuffer {
+
+    private byte[] data = new byte[4096];
+    private int size;
+
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private byte[] kinds = new byte[64];
+    private double[] numbers = new double[64];
+    private int cellCount;
+
+    // Spare arrays for select(), swapped with the ones above.
+    private int[] selectedStarts = new int[0];
+    private int[] selectedEnds = new int[0];
+    private byte[] selectedKinds = new byte[0];
+    private double[] selectedNumbers = new double[0];
+
+    private int rowNumber;
+    private int openCellStart = -1;
+    private CellKind openKind = CellKind.TEXT;
+    private double openNumber;
+
+    /** Clears the buffer and starts the row with the given 1-based number. */
+    public void reset(int rowNumber) {
+        this.rowNumber = rowNumber;
+        this.size = 0;
+        this.cellCount = 0;
+        this.openCellStart = -1;
+    }
+
+    /**
+     * Starts the cell at the given 0-based column. Columns skipped since the
+     * previous cell are filled with empty values.
+     */
+    public void beginCell(int column) {
+        if (openCellStart >= 0) {
+            endCell();
+        }
+        while (cellCount < column) {
+            ensureCells(cellCount + 1);
+            starts[cellCount] = size;
+            ends[cellCount] = size;
+            kinds[cellCount] = 0;
+            cellCount++;
+        }
+        openCellStart = size;
+        openKind = CellKind.TEXT;
+    }
+
+    /** Completes the cell opened by {@link #beginCell(int)}. */
+    public void endCell() {
+        if (openCellStart < 0) {
+            return;
+        }
+        ensureCells(cellCount + 1);
+        starts[cellCount] = openCellStart;
+        ends[cellCount] = size;
+        kinds[cellCount] = (byte) openKind.ordinal();
+        numbers[cellCount] = openNumber;
+        cellCount++;
+        openCellStart = -1;
+    }
+
+    /** Sets the kind of the open cell, which is {@link CellKind#TEXT} until set. */
+    public void kind(CellKind kind) {
+        openKind = kind;
+    }
+
+    /**
+     * Sets the kind and value of the open cell: the number, the date as days
+     * since 1970-01-01 with the time of day as the fraction, or 1 or 0 for a
+     * boolean.
+     */
+    public void number(CellKind kind, double value) {
+        openKind = kind;
+        openNumber = value;
+    }
+
+    /** Discards whatever has been appended to the currently open cell, and its kind. */
+    public void clearCell() {
+        if (openCellStart >= 0) {
+            size = openCellStart;
+            openKind = CellKind.TEXT;
+        }
+    }
+
+    public void append(byte b) {
+        ensureData(1);
+        data[size++] = b;
+    }
+
+    public void append(byte[] bytes) {
+        append(bytes, 0, bytes.length);
+    }
+
+    public void append(byte[] bytes, int offset, int length) {
+        ensureData(length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+    }
+
+    /** Appends {@code length} bytes of {@code source} starting at absolute index {@code index}. */
+    public void append(ByteBuffer source, int index, int length) {
+        ensureData(length);
+        source.get(index, data, size, length);
+        size += length;
+    }
+
+    /** Appends the given characters encoded as UTF-8. */
+    public void appendUtf8(char[] chars, int offset, int length) {
+        ensureData(length * 3);
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                data[size++] = (byte) c;
+            } else if (c < 0x800) {
+                data[size++] = (byte) (0xC0 | (c >> 6));
+                data[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end
+                    && Character.isLowSurrogate(chars[i + 1])) {
+                int cp = Character.toCodePoint(c, chars[++i]);
+                data[size++] = (byte) (0xF0 | (cp >> 18));
+                data[size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                data[size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                data[size++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                data[size++] = (byte) '?';
+            } else {
+                data[size++] = (byte) (0xE0 | (c >> 12));
+                data[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                data[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Narrows the row to the given columns, in the given order. Only the cell
+     * offsets are rearranged; no bytes are copied. Columns beyond the end of
+     * the row read as empty, and trailing ones are dropped like the missing
+     * cells they stand for.
+     */
+    public void select(int[] columns) {
+        if (selectedStarts.length < columns.length) {
+            selectedStarts = new int[columns.length];
+            selectedEnds = new int[columns.length];
+            selectedKinds = new byte[columns.length];
+            selectedNumbers = new double[columns.length];
+        }
+        int count = 0;
+        for (int i = 0; i < columns.length; i++) {
+            int column = columns[i];
+            if (column < cellCount) {
+                selectedStarts[i] = starts[column];
+                selectedEnds[i] = ends[column];
+                selectedKinds[i] = kinds[column];
+                selectedNumbers[i] = numbers[column];
+                count = i + 1;
+            } else {
+                selectedStarts[i] = 0;
+                selectedEnds[i] = 0;
+                selectedKinds[i] = 0;
+            }
+        }
+        int[] swap = starts;
+        starts = selectedStarts;
+        selectedStarts = swap;
+        swap = ends;
+        ends = selectedEnds;
+        selectedEnds = swap;
+        byte[] swapKinds = kinds;
+        kinds = selectedKinds;
+        selectedKinds = swapKinds;
+        double[] swapNumbers = numbers;
+        numbers = selectedNumbers;
+        selectedNumbers = swapNumbers;
+        cellCount = count;
+    }
+
+    public int rowNumber() {
+        return rowNumber;
+    }
+
+    public int cellCount() {
+        return cellCount;
+    }
+
+    public boolean isEmpty() {
+        return cellCount == 0;
+    }
+
+    /** The backing array; valid between {@link #start(int)} and {@link #end(int)} of each cell. */
+    public byte[] array() {
+        return data;
+    }
+
+    public int start(int column) {
+        return starts[column];
+    }
+
+    public int end(int column) {
+        return ends[column];
+    }
+
+    public int length(int column) {
+        return ends[column] - starts[column];
+    }
+
+    public CellKind kind(int column) {
+        return CellKind.of(kinds[column]);
+    }
+
+    /**
+     * The value of a {@link CellKind#NUMBER}, {@link CellKind#DATE} or
+     * {@link CellKind#BOOLEAN} cell read by a typed reader; undefined otherwise.
+     */
+    public double number(int column) {
+        return numbers[column];
+    }
+
+    /** Decodes a cell to a {@code String}; intended for diagnostics, not the conversion path. */
+    public String cellAsString(int column) {
+        return new String(data, starts[column], length(column), StandardCharsets.UTF_8);
+    }
+
+    private void ensureData(int extra) {
+        if (size + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+        }
+    }
+
+    private void ensureCells(int count) {
+        if (count > starts.length) {
+            int capacity = Math.max(starts.length * 2, count);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+        }
+    }
+}
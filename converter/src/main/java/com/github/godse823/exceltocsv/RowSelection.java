@@ -0,0 +1,416 @@
+package com.github.godse823.exceltocsv;
+
+import com.github.godse823.exceltocsv.format.FormatScratch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Which columns of a sheet to write and which rows to keep: the
+ * {@code --columns} projection, {@code --where} conditions and the
+ * {@code --rows}, {@code --sample} and {@code --limit} row range, compiled
+ * into a form the sheet readers consult while decoding.
+ *
+ * <p>Readers ask {@link #slot(int)} for every cell and skip cells that map
+ * to {@code -1} before decoding, formatting or resolving shared strings.
+ * The remaining cells, the projected columns plus any column a condition
+ * refers to, are packed into consecutive row slots in sheet order. Once a
+ * row is complete, {@link #accept} evaluates the conditions and narrows it
+ * to the projected columns in the requested order.
+ *
+ * <p>Conditions compare the cell text as it would be written to the CSV.
+ * {@code =} and {@code !=} compare text exactly; {@code <}, {@code <=},
+ * {@code >} and {@code >=} compare numerically and never match cells that
+ * are not plain numbers, which includes numbers rendered with grouping or
+ * currency by their number format. All conditions must hold for a row to
+ * be kept.
+ *
+ * <p>Rows outside the row range or sample are skipped without decoding any
+ * of their cells, and readers stop reading a sheet, including inflating it,
+ * once they pass the last row of the range or have delivered the row limit.
+ * Instances are immutable and may be shared across threads.
+ */
+public final class RowSelection {
+
+    /** Every column of every row. */
+    public static final RowSelection ALL =
+            new RowSelection(null, null, new Condition[0], "", 1, Integer.MAX_VALUE, 1, Long.MAX_VALUE);
+
+    /** Excel's last column, XFD. */
+    private static final int MAX_COLUMNS = 16_384;
+
+    /** Row slot of each sheet column, or {@code null} to keep columns in place. */
+    private final int[] slots;
+    /** Slots written to the CSV, in output order; {@code null} for all. */
+    private final int[] output;
+    private final Condition[] conditions;
+    /** Whether a condition refers to each slot, for early rejection of rows. */
+    private final boolean[] conditionSlots;
+    /** The column list and conditions as given, for {@link #toString()}. */
+    private final String spec;
+    private final int firstRow;
+    private final int lastRow;
+    private final int sampleEvery;
+    private final long limit;
+
+    private RowSelection(int[] slots, int[] output, Condition[] conditions, String spec,
+                         int firstRow, int lastRow, int sampleEvery, long limit) {
+        this.slots = slots;
+        this.output = output;
+        this.conditions = conditions;
+        this.spec = spec;
+        this.firstRow = firstRow;
+        this.lastRow = lastRow;
+        this.sampleEvery = sampleEvery;
+        this.limit = limit;
+        int maxSlot = -1;
+        for (Condition condition : conditions) {
+            maxSlot = Math.max(maxSlot, condition.slot);
+        }
+        this.conditionSlots = new boolean[maxSlot + 1];
+        for (Condition condition : conditions) {
+            conditionSlots[condition.slot] = true;
+        }
+    }
+
+    /**
+     * Compiles a column list and row conditions.
+     *
+     * @param columns    comma-separated columns and ranges such as
+     *                   {@code A,C,F:H}, written in that order; {@code null}
+     *                   for all columns
+     * @param conditions conditions of the form {@code <column><op><value>}
+     *                   with {@code op} one of {@code = != < <= > >=}, for
+     *                   example {@code B=EUR} or {@code D>=100}
+     * @throws IllegalArgumentException if either is malformed
+     */
+    public static RowSelection parse(String columns, List<String> conditions) {
+        if (columns == null && conditions.isEmpty()) {
+            return ALL;
+        }
+        int[] projected = columns == null ? null : parseColumns(columns);
+        String spec = "columns=" + (columns == null ? "*" : columns) + " where=" + conditions;
+        List<ParsedCondition> parsed = new ArrayList<>();
+        for (String condition : conditions) {
+            parsed.add(ParsedCondition.parse(condition));
+        }
+        if (projected == null) {
+            Condition[] compiled = new Condition[parsed.size()];
+            for (int i = 0; i < compiled.length; i++) {
+                compiled[i] = parsed.get(i).compile(parsed.get(i).column);
+            }
+            return new RowSelection(null, null, compiled, spec, 1, Integer.MAX_VALUE, 1, Long.MAX_VALUE);
+        }
+
+        // Decode the union of projected and filtered columns, packed in sheet order.
+        int width = 0;
+        for (int column : projected) {
+            width = Math.max(width, column + 1);
+        }
+        for (ParsedCondition condition : parsed) {
+            width = Math.max(width, condition.column + 1);
+        }
+        int[] slots = new int[width];
+        Arrays.fill(slots, -1);
+        for (int column : projected) {
+            slots[column] = 0;
+        }
+        for (ParsedCondition condition : parsed) {
+            slots[condition.column] = 0;
+        }
+        int next = 0;
+        for (int column = 0; column < width; column++) {
+            if (slots[column] == 0) {
+                slots[column] = next++;
+            }
+        }
+        int[] output = new int[projected.length];
+        for (int i = 0; i < projected.length; i++) {
+            output[i] = slots[projected[i]];
+        }
+        Condition[] compiled = new Condition[parsed.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = parsed.get(i).compile(slots[parsed.get(i).column]);
+        }
+        return new RowSelection(slots, output, compiled, spec, 1, Integer.MAX_VALUE, 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a copy that keeps only sheet rows {@code first} to {@code last},
+     * 1-based and inclusive.
+     */
+    public RowSelection rows(int first, int last) {
+        if (first < 1 || last < first) {
+            throw new IllegalArgumentException("Invalid row range: " + first + ":" + last);
+        }
+        return new RowSelection(slots, output, conditions, spec, first, last, sampleEvery, limit);
+    }
+
+    /**
+     * Parses a row range such as {@code 100:200}, {@code 100:} (to the end),
+     * {@code :200} (from the start) or {@code 7} (a single row).
+     */
+    public RowSelection rows(String range) {
+        int colon = range.indexOf(':');
+        try {
+            if (colon < 0) {
+                int row = Integer.parseInt(range.trim());
+                return rows(row, row);
+            }
+            String first = range.substring(0, colon).trim();
+            String last = range.substring(colon + 1).trim();
+            return rows(first.isEmpty() ? 1 : Integer.parseInt(first),
+                    last.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(last));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid row range: " + range);
+        }
+    }
+
+    /** Returns a copy that keeps every {@code every}-th row of the range, starting with its first. */
+    public RowSelection sample(int every) {
+        if (every < 1) {
+            throw new IllegalArgumentException("Sampling interval must be at least 1: " + every);
+        }
+        return new RowSelection(slots, output, conditions, spec, firstRow, lastRow, every, limit);
+    }
+
+    /** Returns a copy that stops each sheet after {@code rows} rows have been written. */
+    public RowSelection limit(long rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("Row limit must be at least 1: " + rows);
+        }
+        return new RowSelection(slots, output, conditions, spec, firstRow, lastRow, sampleEvery, rows);
+    }
+
+    /** Whether this selection keeps every cell of every row. */
+    public boolean isAll() {
+        return slots == null && conditions.length == 0 && !limitsRows();
+    }
+
+    /**
+     * Whether a row range, sample or limit applies, in which case a sheet
+     * must be read in order from its start and may end early.
+     */
+    public boolean limitsRows() {
+        return firstRow > 1 || lastRow < Integer.MAX_VALUE || sampleEvery > 1 || limit < Long.MAX_VALUE;
+    }
+
+    /** Whether sheet row {@code rowNumber} lies within the row range and sample. */
+    public boolean includesRow(int rowNumber) {
+        return rowNumber >= firstRow && rowNumber <= lastRow
+                && (sampleEvery == 1 || (rowNumber - firstRow) % sampleEvery == 0);
+    }
+
+    /** The last sheet row of the range; readers stop once they pass it. */
+    public int lastRow() {
+        return lastRow;
+    }
+
+    /** The maximum number of rows to write per sheet. */
+    public long limit() {
+        return limit;
+    }
+
+    /** The row slot for 0-based sheet {@code column}, or -1 if the cell is not needed. */
+    public int slot(int column) {
+        if (slots == null) {
+            return column;
+        }
+        return column < slots.length ? slots[column] : -1;
+    }
+
+    /** The 0-based sheet column written at position {@code index} of an accepted row. */
+    public int column(int index) {
+        if (output == null) {
+            return index;
+        }
+        int slot = index < output.length ? output[index] : -1;
+        for (int column = 0; column < slots.length; column++) {
+            if (slots[column] == slot) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tests the conditions on the cell just completed in {@code slot}. Returns
+     * {@code false} if the row can no longer be accepted, so the reader may
+     * skip the rest of it.
+     */
+    public boolean test(int slot, RowBuffer row, FormatScratch scratch) {
+        if (slot >= conditionSlots.length || !conditionSlots[slot]) {
+            return true;
+        }
+        for (Condition condition : conditions) {
+            if (condition.slot == slot && !condition.test(row, scratch)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates all conditions on a complete row and, if they hold, narrows
+     * the row to the projected columns. Returns whether the row is kept.
+     */
+    public boolean accept(RowBuffer row, FormatScratch scratch) {
+        for (Condition condition : conditions) {
+            if (!condition.test(row, scratch)) {
+                return false;
+            }
+        }
+        if (output != null) {
+            row.select(output);
+        }
+        return true;
+    }
+
+    /**
+     * Describes the selection; equal descriptions select the same cells,
+     * so the text can serve as part of a cache key.
+     */
+    @Override
+    public String toString() {
+        return spec + " rows=" + firstRow + ":" + lastRow + " sample=" + sampleEvery + " limit=" + limit;
+    }
+
+    private static int[] parseColumns(String spec) {
+        List<Integer> columns = new ArrayList<>();
+        for (String item : spec.split(",", -1)) {
+            String range = item.trim();
+            int separator = Math.max(range.indexOf(':'), range.indexOf('-'));
+            if (separator < 0) {
+                columns.add(column(range, spec));
+                continue;
+            }
+            int first = column(range.substring(0, separator).trim(), spec);
+            int last = column(range.substring(separator + 1).trim(), spec);
+            if (last < first) {
+                throw new IllegalArgumentException("Descending column range: " + range);
+            }
+            for (int column = first; column <= last; column++) {
+                columns.add(column);
+            }
+        }
+        return columns.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** The name, such as {@code AB}, of 0-based sheet {@code column}. */
+    public static String columnName(int column) {
+        StringBuilder name = new StringBuilder(3);
+        for (int n = column + 1; n > 0; n = (n - 1) / 26) {
+            name.insert(0, (char) ('A' + (n - 1) % 26));
+        }
+        return name.toString();
+    }
+
+    /** Parses a column name such as {@code AB} into its 0-based index. */
+    private static int column(String name, String context) {
+        if (name.isEmpty() || name.length() > 3) {
+            throw new IllegalArgumentException("Invalid column in '" + context + "': " + name);
+        }
+        int column = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = Character.toUpperCase(name.charAt(i));
+            if (c < 'A' || c > 'Z') {
+                throw new IllegalArgumentException("Invalid column in '" + context + "': " + name);
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        if (column > MAX_COLUMNS) {
+            throw new IllegalArgumentException("Column beyond XFD in '" + context + "': " + name);
+        }
+        return column - 1;
+    }
+
+    private enum Operator {
+        EQUAL("="), NOT_EQUAL("!="), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"), GREATER_OR_EQUAL(">=");
+
+        final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean numeric() {
+            return this != EQUAL && this != NOT_EQUAL;
+        }
+    }
+
+    /** A condition on a sheet column, before columns are assigned to slots. */
+    private record ParsedCondition(int column, Operator operator, String value) {
+
+        static ParsedCondition parse(String condition) {
+            String text = condition.stripLeading();
+            int nameEnd = 0;
+            while (nameEnd < text.length() && Character.isLetter(text.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            int column = RowSelection.column(text.substring(0, nameEnd), condition);
+            String rest = text.substring(nameEnd).stripLeading();
+            Operator operator = null;
+            for (Operator candidate : Operator.values()) {
+                // Prefer the two-character operators over their one-character prefixes.
+                if (rest.startsWith(candidate.symbol)
+                        && (operator == null || candidate.symbol.length() > operator.symbol.length())) {
+                    operator = candidate;
+                }
+            }
+            if (operator == null) {
+                throw new IllegalArgumentException("Expected <column><op><value> with op one of "
+                        + "= != < <= > >=: " + condition);
+            }
+            String value = rest.substring(operator.symbol.length()).strip();
+            if (operator.numeric()) {
+                try {
+                    Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number in '" + condition + "': " + value);
+                }
+            }
+            return new ParsedCondition(column, operator, value);
+        }
+
+        Condition compile(int slot) {
+            return new Condition(slot, operator, value.getBytes(StandardCharsets.UTF_8),
+                    operator.numeric() ? Double.parseDouble(value) : Double.NaN);
+        }
+    }
+
+    private static final class Condition {
+
+        final int slot;
+        final Operator operator;
+        final byte[] text;
+        final double number;
+
+        Condition(int slot, Operator operator, byte[] text, double number) {
+            this.slot = slot;
+            this.operator = operator;
+            this.text = text;
+            this.number = number;
+        }
+
+        boolean test(RowBuffer row, FormatScratch scratch) {
+            int start = slot < row.cellCount() ? row.start(slot) : 0;
+            int end = slot < row.cellCount() ? row.end(slot) : 0;
+            byte[] data = row.array();
+            return switch (operator) {
+                case EQUAL -> Arrays.equals(data, start, end, text, 0, text.length);
+                case NOT_EQUAL -> !Arrays.equals(data, start, end, text, 0, text.length);
+                default -> {
+                    double value = scratch.parse(data, start, end - start);
+                    yield switch (operator) {
+                        case LESS -> value < number;
+                        case LESS_OR_EQUAL -> value <= number;
+                        case GREATER -> value > number;
+                        default -> value >= number;
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.godse823.exceltocsv;
+
+import java.io.IOException;
+
+/**
+ * Receives decoded rows from a sheet reader, one at a time and in sheet order.
+ *
+ * <p>The {@link RowBuffer} passed to {@link #row} is reused by the reader for
+ * the next row, so implementations must consume or copy it before returning.
+ */
+public interface RowSink {
+
+    void row(RowBuffer row) throws IOException;
+
+    /**
+     * Called by readers once they stop reading, with the number of cells
+     * whose text came from the shared-strings table and the number of
+     * numbers rendered through a format other than General. Only used for
+     * {@linkplain ConversionMetrics metrics}.
+     */
+    default void decoded(long sharedStrings, long formatted) {
+    }
+
+    /** Called once after the last row of the sheet has been delivered. */
+    default void finish() throws IOException {
+    }
+}
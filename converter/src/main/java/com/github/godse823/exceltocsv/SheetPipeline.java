@@ -0,0 +1,180 @@
+package com.github.godse823.exceltocsv;
+
+import com.github.godse823.exceltocsv.csv.CsvWriter;
+import com.github.godse823.exceltocsv.xlsx.XlsxWorkbook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Converts one sheet as a three-stage pipeline, each stage on its own
+ * thread:
+ *
+ * <ol>
+ *   <li>inflate: decompresses the XLSX sheet entry into a {@link Pipe};</li>
+ *   <li>parse: tokenizes the XML, decodes cells and encodes CSV into a
+ *       second pipe (on the calling thread);</li>
+ *   <li>write: drains the CSV blocks to the output channel.</li>
+ * </ol>
+ *
+ * The inflate stage of the next sheet can be {@linkplain #prefetch started}
+ * while the current one is parsed, so that converting sheets one after
+ * another does not leave the parse stage waiting at each sheet boundary.
+ *
+ * <p>Both pipes draw on the converter's {@link ByteBudget}. When the output is
+ * slower than parsing the budget runs out and the earlier stages block, so
+ * heap use stays flat however slow the target is. BIFF8 records are read
+ * directly from the compound file, so {@code .xls} sheets skip the inflate
+ * stage.
+ */
+final class SheetPipeline {
+
+    static final int BLOCK_SIZE = CsvWriter.DEFAULT_BUFFER_SIZE;
+    /** Blocks per pipe: enough to smooth out bursts without letting one sheet take the whole budget. */
+    static final int MAX_BLOCKS = 16;
+
+    private final ConversionOptions options;
+    private final ByteBudget budget;
+    private final BufferPool pool;
+    private final ExecutorService stages;
+    /** Times each stage, or {@code null} without metrics. */
+    private final ConversionMetrics.Meter meter;
+
+    SheetPipeline(ConversionOptions options, ByteBudget budget, BufferPool pool, ExecutorService stages,
+                  ConversionMetrics.Meter meter) {
+        this.options = options;
+        this.budget = budget;
+        this.pool = pool;
+        this.stages = stages;
+        this.meter = meter;
+    }
+
+    /** Converts the sheet and returns {@code {rows, bytes}} written to {@code out}. */
+    long[] convert(Workbook book, int sheet, WritableByteChannel out) throws IOException {
+        return convert(book, sheet, out, null, null);
+    }
+
+    /**
+     * Converts the sheet, parsing the XML of {@code prefetched} if it is not
+     * {@code null}, and returns {@code {rows, bytes}} written to {@code out}.
+     * Rows are also added to {@code profile} unless it is {@code null}.
+     */
+    long[] convert(Workbook book, int sheet, WritableByteChannel out, Prefetch prefetched, ColumnProfile profile)
+            throws IOException {
+        Pipe csvBlocks = new Pipe(budget, pool, MAX_BLOCKS);
+        Future<Long> writer = stages.submit(() -> {
+            long[] stage = meter == null ? null : meter.startStage();
+            try {
+                return csvBlocks.drainTo(out);
+            } finally {
+                stop(ConversionMetrics.Stage.WRITE, stage);
+            }
+        });
+        Prefetch inflating = prefetched;
+        try {
+            long[] stage = meter == null ? null : meter.startStage();
+            ByteBuffer buffer = pool.directBuffer();
+            long rows;
+            try {
+                SheetWriter sheetWriter = options.outputFormat().newWriter(csvBlocks, buffer, options);
+                RowSink sink = ExcelToCsvConverter.observing(sheetWriter, profile, meter);
+                if (book instanceof XlsxWorkbook xlsx) {
+                    if (inflating == null) {
+                        inflating = prefetch(xlsx, sheet);
+                    }
+                    try (InputStream in = inflating.xml.source()) {
+                        rows = xlsx.newSheetReader().read(in, sink);
+                    }
+                    Threads.await(inflating.inflater);
+                } else {
+                    rows = book.readSheet(sheet, sink);
+                }
+                sheetWriter.finish();
+                rows -= sheetWriter.headerRows();
+            } finally {
+                pool.release(buffer);
+            }
+            csvBlocks.finish();
+            stop(ConversionMetrics.Stage.PARSE, stage);
+            return new long[] {rows, Threads.await(writer)};
+        } catch (IOException | RuntimeException | Error e) {
+            csvBlocks.abort(e);
+            // The aborted pipe stops a running writer; interrupting it could close the output channel.
+            writer.cancel(false);
+            if (inflating != null) {
+                try {
+                    inflating.cancel();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts inflating an XLSX sheet into its pipe ahead of
+     * {@link #convert(Workbook, int, WritableByteChannel, Prefetch, ColumnProfile)}, so that
+     * it runs while the sheet before it is still being parsed. The pipe stops
+     * the inflate stage once {@link #MAX_BLOCKS} are waiting. Returns
+     * {@code null} for other workbooks, whose sheets have no inflate stage.
+     */
+    Prefetch prefetch(Workbook book, int sheet) {
+        if (!(book instanceof XlsxWorkbook xlsx)) {
+            return null;
+        }
+        Pipe xml = new Pipe(budget, pool, MAX_BLOCKS);
+        Future<?> inflater = stages.submit(() -> {
+            long[] stage = meter == null ? null : meter.startStage();
+            try {
+                inflate(xlsx, sheet, xml);
+            } finally {
+                stop(ConversionMetrics.Stage.INFLATE, stage);
+            }
+            return null;
+        });
+        return new Prefetch(xml, inflater);
+    }
+
+    /** A sheet being inflated before it is converted. */
+    static final class Prefetch {
+
+        private final Pipe xml;
+        private final Future<?> inflater;
+
+        private Prefetch(Pipe xml, Future<?> inflater) {
+            this.xml = xml;
+            this.inflater = inflater;
+        }
+
+        /**
+         * Stops the inflate stage of a sheet that will not be converted after
+         * all, releasing the blocks it holds. The stage is left to notice on
+         * its own rather than interrupted, which would close the workbook's
+         * file channel.
+         */
+        void cancel() throws IOException {
+            xml.source().close();
+        }
+    }
+
+    private void stop(ConversionMetrics.Stage stage, long[] start) {
+        if (meter != null) {
+            meter.stop(stage, start);
+        }
+    }
+
+    private static void inflate(XlsxWorkbook xlsx, int sheet, Pipe xml) throws IOException {
+        try (InputStream in = xlsx.openSheet(xlsx.sheets().get(sheet))) {
+            xml.transferFrom(in);
+            xml.finish();
+        } catch (IOException | RuntimeException | Error e) {
+            xml.abort(e);
+            throw e;
+        }
+    }
+}
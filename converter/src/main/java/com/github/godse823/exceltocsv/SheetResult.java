@@ -0,0 +1,21 @@
+package com.github.godse823.exceltocsv;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Outcome of converting one sheet.
+ *
+ * @param sheetName name of the converted sheet
+ * @param output    the CSV file written, or {@code null} when writing to a stream
+ * @param rows      number of CSV records written
+ * @param bytes     number of CSV bytes written, before any compression
+ * @param elapsed   wall-clock time spent converting the sheet
+ * @param cached    whether the output was restored from the conversion cache
+ */
+public record SheetResult(String sheetName, Path output, long rows, long bytes, Duration elapsed, boolean cached) {
+
+    public SheetResult(String sheetName, Path output, long rows, long bytes, Duration elapsed) {
+        this(sheetName, output, rows, bytes, elapsed, false);
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.godse823.exceltocsv;
+
+/**
+ * A {@link RowSink} that encodes the rows of one sheet in an
+ * {@link OutputFormat} and writes them to a channel. {@link #finish()}
+ * flushes everything, including any trailer of the format, and leaves the
+ * channel open.
+ */
+public interface SheetWriter extends RowSink {
+
+    /** Bytes written to the channel, or staged for it, so far. */
+    long bytesWritten();
+
+    /**
+     * Rows given to the writer that it kept as metadata instead of writing
+     * them as records, such as a header row naming the columns.
+     */
+    default long headerRows() {
+        return 0;
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.godse823.exceltocsv;
+
+import com.github.godse823.exceltocsv.csv.CsvWriter;
+import com.github.godse823.exceltocsv.xlsx.SheetChunker;
+import com.github.godse823.exceltocsv.xlsx.XlsxWorkbook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Converts one sheet on several threads. The sheet XML is cut into chunks
+ * of whole rows by a {@link SheetChunker}; each chunk is parsed and encoded
+ * to CSV by a pool worker, and the encoded chunks are written to the output
+ * strictly in row order.
+ *
+ * <p>At most {@code parallelism + 1} chunks are in flight at a time, and
+ * fewer when the converter's {@link ByteBudget} runs low: each chunk
+ * reserves twice its XML size, for the XML and the CSV it encodes to. When
+ * no reservation can be made the oldest chunk is written out first, so the
+ * chunker never runs ahead of the output.
+ */
+final class SplitSheetConverter {
+
+    private final XlsxWorkbook workbook;
+    private final ConversionOptions options;
+    private final ByteBudget.Account account;
+    private final ExecutorService pool;
+    /** Times the parsing of each chunk, or {@code null} without metrics. */
+    private final ConversionMetrics.Meter meter;
+
+    SplitSheetConverter(XlsxWorkbook workbook, ConversionOptions options, ByteBudget budget, ExecutorService pool,
+                        ConversionMetrics.Meter meter) {
+        this.workbook = workbook;
+        this.options = options;
+        this.account = budget.newAccount(options.parallelism() + 1);
+        this.pool = pool;
+        this.meter = meter;
+    }
+
+    /**
+     * Converts the sheet and returns {@code {rows, bytes}} written to
+     * {@code out}. Each chunk is profiled on its worker and added to
+     * {@code profile} in row order, unless it is {@code null}.
+     */
+    long[] convert(InputStream sheetXml, WritableByteChannel channel, ColumnProfile profile) throws IOException {
+        OutputStream out = Channels.newOutputStream(channel);
+        SheetChunker chunker = new SheetChunker(sheetXml, options.sheetChunkSize());
+        Deque<InFlight> inFlight = new ArrayDeque<>();
+        long[] totals = new long[2];
+        try {
+            SheetChunker.Chunk chunk;
+            while ((chunk = chunker.next()) != null) {
+                int reservation = (int) Math.min(Integer.MAX_VALUE, 2L * chunk.length());
+                while (!inFlight.isEmpty() && !account.tryAcquire(reservation)) {
+                    write(inFlight.removeFirst(), out, totals, profile);
+                }
+                if (inFlight.isEmpty()) {
+                    // An empty window is always admitted, whatever other sheets hold.
+                    account.acquire(reservation);
+                }
+                SheetChunker.Chunk task = chunk;
+                inFlight.addLast(new InFlight(pool.submit(() -> encode(task, profile != null)), reservation));
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.removeFirst(), out, totals, profile);
+            }
+        } finally {
+            for (InFlight pending : inFlight) {
+                pending.result().cancel(true);
+                account.release(pending.reservation());
+            }
+        }
+        out.flush();
+        return totals;
+    }
+
+    private EncodedChunk encode(SheetChunker.Chunk chunk, boolean profiled) throws IOException {
+        long[] stage = meter == null ? null : meter.startStage();
+        ByteArrayOutputStream csvBytes = new ByteArrayOutputStream(chunk.length());
+        CsvWriter csv = new CsvWriter(Channels.newChannel(csvBytes), options.delimiter(), options.lineSeparator());
+        ColumnProfile profile = profiled ? new ColumnProfile(options.selection()) : null;
+        long rows = workbook.newSheetReader().read(chunk, ExcelToCsvConverter.observing(csv, profile, meter));
+        csv.finish();
+        if (meter != null) {
+            meter.stop(ConversionMetrics.Stage.PARSE, stage);
+        }
+        return new EncodedChunk(csvBytes, rows, profile);
+    }
+
+    private void write(InFlight pending, OutputStream out, long[] totals, ColumnProfile profile)
+            throws IOException {
+        try {
+            EncodedChunk chunk = Threads.await(pending.result());
+            chunk.csv().writeTo(out);
+            totals[0] += chunk.rows();
+            totals[1] += chunk.csv().size();
+            if (profile != null) {
+                profile.append(chunk.profile());
+            }
+        } finally {
+            account.release(pending.reservation());
+        }
+    }
+
+    private record EncodedChunk(ByteArrayOutputStream csv, long rows, ColumnProfile profile) {
+    }
+
+    private record InFlight(Future<EncodedChunk> result, int reservation) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.godse823.exceltocsv;
+
+import com.github.godse823.exceltocsv.xls.XlsWorkbook;
+import com.github.godse823.exceltocsv.xlsx.XlsxWorkbook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * An open workbook whose sheets can be streamed row by row.
+ *
+ * <p>Implementations are safe for concurrent {@link #readSheet} calls on
+ * different sheets.
+ */
+public interface Workbook extends Closeable {
+
+    /** Names of the worksheets in workbook order. */
+    List<String> sheetNames();
+
+    /**
+     * Streams the sheet at {@code index} (into {@link #sheetNames()}) to
+     * {@code sink} and returns the number of rows delivered.
+     */
+    long readSheet(int index, RowSink sink) throws IOException;
+
+    /**
+     * Feeds everything the CSV of sheet {@code index} depends on, apart from
+     * the conversion options, into {@code digest} and returns {@code true};
+     * returns {@code false} if sheets cannot be told apart more cheaply than
+     * by digesting the whole file.
+     */
+    default boolean digestSheet(int index, MessageDigest digest) throws IOException {
+        return false;
+    }
+
+    /**
+     * Opens an XLSX or BIFF8 {@code .xls} workbook, detected from the file
+     * signature rather than the extension.
+     */
+    static Workbook open(Path path, ConversionOptions options) throws IOException {
+        byte[] magic = new byte[8];
+        int n;
+        try (InputStream in = Files.newInputStream(path)) {
+            n = in.readNBytes(magic, 0, magic.length);
+        }
+        if (n >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            return XlsxWorkbook.open(path, options);
+        }
+        if (n == 8 && (magic[0] & 0xFF) == 0xD0 && (magic[1] & 0xFF) == 0xCF
+                && (magic[2] & 0xFF) == 0x11 && (magic[3] & 0xFF) == 0xE0) {
+            return XlsWorkbook.open(path, options);
+        }
+        throw new ConversionException("Unsupported file format: " + path.getFileName());
+    }
+}
@@ -0,0 +1,644 @@
+package com.github.godse823.exceltocsv.arrow;
+
+import com.github.godse823.exceltocsv.CellKind;
+import com.github.godse823.exceltocsv.RowBuffer;
+import com.github.godse823.exceltocsv.RowSelection;
+import com.github.godse823.exceltocsv.SheetWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes rows as an Apache Arrow IPC file: one record batch per row group,
+ * each column a typed, nullable Arrow vector. Any Arrow implementation can
+ * read the file, and from there write Parquet or load a data frame without
+ * parsing text.
+ *
+ * <p>Column types are inferred from the whole sheet. A column holding only
+ * numbers becomes {@code float64}, only dates {@code timestamp[ms]}
+ * (without a time zone), only booleans {@code bool}; numbers mixed with
+ * dates become {@code float64}, with dates as days since 1970-01-01, and
+ * anything else becomes {@code utf8}. Empty cells and error values are
+ * null. The schema precedes the first record batch, so a sheet longer than
+ * one row group is spilled to a temporary file group by group, each cell
+ * with its value and its text, and the batches are written from there once
+ * the last row has settled every column's type. Memory stays bounded by a
+ * row group however long the sheet.
+ *
+ * <p>If every non-empty cell of the first row is a string, that row names
+ * the columns; otherwise columns are named after their sheet columns, such
+ * as {@code A} or {@code AB}.
+ */
+public final class ArrowWriter implements SheetWriter {
+
+    private static final byte[] MAGIC = {'A', 'R', 'R', 'O', 'W', '1', 0, 0};
+    private static final int CONTINUATION = 0xFFFFFFFF;
+    private static final short METADATA_V5 = 4;
+    private static final byte HEADER_SCHEMA = 1;
+    private static final byte HEADER_RECORD_BATCH = 3;
+    private static final double MILLIS_PER_DAY = 86_400_000d;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final int rowGroupSize;
+    private final RowSelection selection;
+    private final List<Column> columns = new ArrayList<>();
+    /** Offset, metadata length and body length of each record batch written. */
+    private final List<long[]> batches = new ArrayList<>();
+    private String[] header;
+    private boolean started;
+    private int rows;
+    private long bytesWritten;
+    /** Row groups written before the schema was known, or null while there are none. */
+    private FileChannel spill;
+    private ByteBuffer spillBuffer;
+    private long spillSize;
+
+    /**
+     * @param rowGroupSize the rows per record batch
+     * @param selection    the selection the rows were read with, used to
+     *                     name columns after their sheet columns
+     */
+    public ArrowWriter(WritableByteChannel channel, ByteBuffer buffer, int rowGroupSize, RowSelection selection) {
+        if (buffer.capacity() < 16) {
+            throw new IllegalArgumentException("Arrow buffer too small: " + buffer.capacity());
+        }
+        this.channel = channel;
+        this.buffer = buffer.clear().order(ByteOrder.LITTLE_ENDIAN);
+        this.rowGroupSize = rowGroupSize;
+        this.selection = selection;
+    }
+
+    @Override
+    public void row(RowBuffer row) throws IOException {
+        if (!started) {
+            started = true;
+            if (isHeader(row)) {
+                header = new String[row.cellCount()];
+                for (int i = 0; i < header.length; i++) {
+                    header[i] = new String(row.array(), row.start(i), row.end(i) - row.start(i),
+                            StandardCharsets.UTF_8);
+                }
+                return;
+            }
+        }
+        int cells = row.cellCount();
+        while (columns.size() < cells) {
+            columns.add(new Column(rows));
+        }
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            Column column = columns.get(i);
+            if (i >= cells || isNull(row, i)) {
+                column.addNull();
+            } else {
+                column.add(row, i);
+            }
+        }
+        if (++rows == rowGroupSize) {
+            spillGroup();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        infer();
+        if (spill == null) {
+            if (rows > 0) {
+                writeBatch();
+            }
+        } else {
+            try (FileChannel groups = spill) {
+                if (rows > 0) {
+                    spillGroup();
+                }
+                long position = 0;
+                while (position < spillSize) {
+                    position = loadGroup(groups, position);
+                    writeBatch();
+                }
+            } finally {
+                spill = null;
+            }
+        }
+        putInt(CONTINUATION);
+        putInt(0);
+        byte[] footer = footer();
+        put(footer, 0, footer.length);
+        putInt(footer.length);
+        put(MAGIC, 0, 6);
+        flush();
+    }
+
+    @Override
+    public long headerRows() {
+        return header == null ? 0 : 1;
+    }
+
+    @Override
+    public long bytesWritten() {
+        return bytesWritten + buffer.position();
+    }
+
+    private static boolean isNull(RowBuffer row, int cell) {
+        CellKind kind = row.kind(cell);
+        return kind == CellKind.ERROR || kind == CellKind.TEXT && row.start(cell) == row.end(cell);
+    }
+
+    private static boolean isHeader(RowBuffer row) {
+        boolean named = false;
+        for (int i = 0, n = row.cellCount(); i < n; i++) {
+            if (!isNull(row, i)) {
+                if (row.kind(i) != CellKind.TEXT) {
+                    return false;
+                }
+                named = true;
+            }
+        }
+        return named;
+    }
+
+    /** Fixes the schema from all rows and writes it. */
+    private void infer() throws IOException {
+        int width = Math.max(columns.size(), header == null ? 0 : header.length);
+        while (columns.size() < width) {
+            columns.add(new Column(rows));
+        }
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < width; i++) {
+            Column column = columns.get(i);
+            column.type = column.inferType();
+            String base = header != null && i < header.length && !header[i].isEmpty()
+                    ? header[i] : RowSelection.columnName(selection.column(i));
+            String name = base;
+            for (int suffix = 2; !names.add(name); suffix++) {
+                name = base + "_" + suffix;
+            }
+            column.name = name;
+        }
+
+        FlatBuilder flat = new FlatBuilder();
+        int schema = schema(flat);
+        put(MAGIC, 0, MAGIC.length);
+        writeMessage(flat, HEADER_SCHEMA, schema, 0);
+    }
+
+    private void writeBatch() throws IOException {
+        FlatBuilder flat = new FlatBuilder();
+        int bufferCount = 0;
+        for (Column column : columns) {
+            bufferCount += column.type.buffers;
+        }
+        long[] layout = new long[bufferCount * 2];
+        long bodyLength = 0;
+        int b = 0;
+        for (Column column : columns) {
+            for (int i = 0; i < column.type.buffers; i++) {
+                long length = column.bufferLength(i);
+                layout[b++] = bodyLength;
+                layout[b++] = length;
+                bodyLength += padded(length);
+            }
+        }
+        flat.startVector(16, bufferCount, 8);
+        for (int i = bufferCount - 1; i >= 0; i--) {
+            flat.prep(8, 16);
+            flat.putLong(layout[2 * i + 1]);
+            flat.putLong(layout[2 * i]);
+        }
+        int buffers = flat.endVector(bufferCount);
+        flat.startVector(16, columns.size(), 8);
+        for (int i = columns.size() - 1; i >= 0; i--) {
+            flat.prep(8, 16);
+            flat.putLong(columns.get(i).nulls);
+            flat.putLong(columns.get(i).count);
+        }
+        int nodes = flat.endVector(columns.size());
+        flat.startTable(5);
+        flat.addLong(0, rows);
+        flat.addOffset(1, nodes);
+        flat.addOffset(2, buffers);
+        int batch = flat.endTable();
+
+        long offset = bytesWritten();
+        int metadataLength = writeMessage(flat, HEADER_RECORD_BATCH, batch, bodyLength);
+        for (Column column : columns) {
+            for (int i = 0; i < column.type.buffers; i++) {
+                writeBuffer(column, i);
+            }
+            column.clear();
+        }
+        batches.add(new long[] {offset, metadataLength, bodyLength});
+        rows = 0;
+    }
+
+    /**
+     * Appends the current row group to the spill file, creating it on first
+     * use: its row and column counts, then for each column its null count,
+     * text size, kinds, values, text offsets and text.
+     */
+    private void spillGroup() throws IOException {
+        if (spill == null) {
+            // Deleted once closed, and on Unix already unlinked while open, so a failed sheet leaves nothing behind.
+            spill = FileChannel.open(Files.createTempFile("excel-to-csv-", ".arrow.part"), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        ByteBuffer out = spillBuffer(8);
+        out.putInt(rows).putInt(columns.size());
+        writeSpill(out);
+        for (Column column : columns) {
+            out = spillBuffer(8 + Column.spilledSize(rows, column.textSize));
+            out.putInt(column.nulls).putInt(column.textSize);
+            out.put(column.kinds, 0, rows);
+            out.asDoubleBuffer().put(column.values, 0, rows);
+            out.position(out.position() + rows * Double.BYTES);
+            out.asIntBuffer().put(column.offsets, 0, rows + 1);
+            out.position(out.position() + (rows + 1) * Integer.BYTES);
+            out.put(column.text, 0, column.textSize);
+            writeSpill(out);
+            column.clear();
+        }
+        rows = 0;
+    }
+
+    /** Reads the row group spilled at {@code position} into the columns and returns the position after it. */
+    private long loadGroup(FileChannel groups, long position) throws IOException {
+        ByteBuffer in = readSpill(groups, position, 8);
+        position += 8;
+        rows = in.getInt();
+        int spilledColumns = in.getInt();
+        for (int c = 0; c < columns.size(); c++) {
+            Column column = columns.get(c);
+            if (c >= spilledColumns) {
+                // Found after this group, or named only by the header.
+                for (int i = 0; i < rows; i++) {
+                    column.addNull();
+                }
+                continue;
+            }
+            in = readSpill(groups, position, 8);
+            int nulls = in.getInt();
+            int textSize = in.getInt();
+            int size = Column.spilledSize(rows, textSize);
+            in = readSpill(groups, position + 8, size);
+            position += 8 + size;
+            column.load(in, rows, nulls, textSize);
+        }
+        return position;
+    }
+
+    private ByteBuffer spillBuffer(int capacity) {
+        if (spillBuffer == null || spillBuffer.capacity() < capacity) {
+            spillBuffer = ByteBuffer.allocate(Math.max(capacity, 64 * 1024)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return spillBuffer.clear();
+    }
+
+    private void writeSpill(ByteBuffer out) throws IOException {
+        out.flip();
+        spillSize += out.remaining();
+        while (out.hasRemaining()) {
+            spill.write(out);
+        }
+    }
+
+    private ByteBuffer readSpill(FileChannel groups, long position, int length) throws IOException {
+        ByteBuffer in = spillBuffer(length).limit(length);
+        while (in.hasRemaining()) {
+            if (groups.read(in, position + in.position()) < 0) {
+                throw new IOException("Arrow spill file truncated");
+            }
+        }
+        return in.flip();
+    }
+
+    /** Writes an encapsulated message and returns the length of its metadata, prefix included. */
+    private int writeMessage(FlatBuilder flat, byte headerType, int header, long bodyLength) throws IOException {
+        flat.startTable(5);
+        flat.addLong(3, bodyLength);
+        flat.addOffset(2, header);
+        flat.addShort(0, METADATA_V5);
+        flat.addByte(1, headerType);
+        byte[] metadata = flat.finish(flat.endTable());
+        int length = (int) padded(8 + metadata.length);
+        putInt(CONTINUATION);
+        putInt(length - 8);
+        put(metadata, 0, metadata.length);
+        zeros(length - 8 - metadata.length);
+        return length;
+    }
+
+    private int schema(FlatBuilder flat) {
+        int[] fields = new int[columns.size()];
+        for (int i = 0; i < fields.length; i++) {
+            Column column = columns.get(i);
+            int name = flat.createString(column.name);
+            int type = column.type.table(flat);
+            int children = flat.createOffsetVector(new int[0]);
+            flat.startTable(7);
+            flat.addOffset(0, name);
+            flat.addOffset(3, type);
+            flat.addOffset(5, children);
+            flat.addByte(1, 1);
+            flat.addByte(2, column.type.id);
+            fields[i] = flat.endTable();
+        }
+        int vector = flat.createOffsetVector(fields);
+        flat.startTable(4);
+        flat.addOffset(1, vector);
+        return flat.endTable();
+    }
+
+    private byte[] footer() {
+        FlatBuilder flat = new FlatBuilder();
+        int schema = schema(flat);
+        flat.startVector(24, 0, 8);
+        int dictionaries = flat.endVector(0);
+        flat.startVector(24, batches.size(), 8);
+        for (int i = batches.size() - 1; i >= 0; i--) {
+            long[] block = batches.get(i);
+            flat.prep(8, 24);
+            flat.putLong(block[2]);
+            flat.pad(4);
+            flat.putInt((int) block[1]);
+            flat.putLong(block[0]);
+        }
+        int blocks = flat.endVector(batches.size());
+        flat.startTable(5);
+        flat.addOffset(1, schema);
+        flat.addOffset(2, dictionaries);
+        flat.addOffset(3, blocks);
+        flat.addShort(0, METADATA_V5);
+        return flat.finish(flat.endTable());
+    }
+
+    private void writeBuffer(Column column, int index) throws IOException {
+        long length = column.bufferLength(index);
+        if (length == 0) {
+            return;
+        }
+        int count = column.count;
+        if (index == 0) {
+            writeBits(column, false);
+        } else if (column.type == Type.UTF8) {
+            if (index == 1) {
+                for (int i = 0; i <= count; i++) {
+                    putInt(column.offsets[i]);
+                }
+            } else {
+                put(column.text, 0, column.textSize);
+            }
+        } else if (column.type == Type.BOOL) {
+            writeBits(column, true);
+        } else {
+            for (int i = 0; i < count; i++) {
+                double value = column.kinds[i] == Column.NULL ? 0 : column.values[i];
+                if (column.type == Type.TIMESTAMP) {
+                    putLong(Math.round(value * MILLIS_PER_DAY));
+                } else {
+                    putLong(Double.doubleToRawLongBits(value));
+                }
+            }
+        }
+        zeros((int) (padded(length) - length));
+    }
+
+    /** Writes the validity bitmap, or with {@code values} the bitmap of a boolean column. */
+    private void writeBits(Column column, boolean values) throws IOException {
+        int bits = 0;
+        for (int i = 0; i < column.count; i++) {
+            boolean set = column.kinds[i] != Column.NULL && (!values || column.values[i] != 0);
+            if (set) {
+                bits |= 1 << (i & 7);
+            }
+            if ((i & 7) == 7) {
+                putByte(bits);
+                bits = 0;
+            }
+        }
+        if ((column.count & 7) != 0) {
+            putByte(bits);
+        }
+    }
+
+    private static long padded(long length) {
+        return (length + 7) & ~7L;
+    }
+
+    private void putByte(int value) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) value);
+    }
+
+    private void putInt(int value) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            flush();
+        }
+        buffer.putInt(value);
+    }
+
+    private void putLong(long value) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            flush();
+        }
+        buffer.putLong(value);
+    }
+
+    private void zeros(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            putByte(0);
+        }
+    }
+
+    private void put(byte[] data, int offset, int length) throws IOException {
+        while (length > buffer.remaining()) {
+            int n = buffer.remaining();
+            buffer.put(data, offset, n);
+            offset += n;
+            length -= n;
+            flush();
+        }
+        buffer.put(data, offset, length);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** The Arrow type of a column, with its type id and number of buffers. */
+    private enum Type {
+        UTF8(5, 3),
+        BOOL(6, 2),
+        FLOAT64(3, 2),
+        TIMESTAMP(10, 2);
+
+        final byte id;
+        final int buffers;
+
+        Type(int id, int buffers) {
+            this.id = (byte) id;
+            this.buffers = buffers;
+        }
+
+        int table(FlatBuilder flat) {
+            switch (this) {
+                case FLOAT64 -> {
+                    flat.startTable(1);
+                    flat.addShort(0, 2); // DOUBLE
+                }
+                case TIMESTAMP -> {
+                    flat.startTable(2);
+                    flat.addShort(0, 1); // MILLISECOND, no time zone
+                }
+                default -> flat.startTable(0);
+            }
+            return flat.endTable();
+        }
+    }
+
+    /**
+     * The values of one column in the current row group, each with both its
+     * text and its number, and counts of the kinds of cell seen in the whole
+     * sheet, from which the type is inferred.
+     */
+    private static final class Column {
+
+        static final byte NULL = -1;
+
+        Type type;
+        String name;
+        byte[] kinds = new byte[64];
+        double[] values = new double[64];
+        int[] offsets = new int[65];
+        byte[] text = new byte[1024];
+        int textSize;
+        int count;
+        int nulls;
+        long numbers;
+        long dates;
+        long booleans;
+        long strings;
+
+        Column(int leadingNulls) {
+            for (int i = 0; i < leadingNulls; i++) {
+                addNull();
+            }
+        }
+
+        void addNull() {
+            ensure(count + 1);
+            kinds[count] = NULL;
+            offsets[count + 1] = textSize;
+            count++;
+            nulls++;
+        }
+
+        /** Adds a non-null cell. */
+        void add(RowBuffer row, int cell) {
+            CellKind kind = row.kind(cell);
+            switch (kind) {
+                case NUMBER -> numbers++;
+                case DATE -> dates++;
+                case BOOLEAN -> booleans++;
+                default -> strings++;
+            }
+            ensure(count + 1);
+            kinds[count] = (byte) kind.ordinal();
+            values[count] = row.number(cell);
+            int start = row.start(cell);
+            int length = row.end(cell) - start;
+            ensureText((long) textSize + length);
+            System.arraycopy(row.array(), start, text, textSize, length);
+            textSize += length;
+            offsets[count + 1] = textSize;
+            count++;
+        }
+
+        /** Bytes a row group of this column takes in the spill file after its two counts. */
+        static int spilledSize(int rows, int textSize) {
+            long size = rows * (1L + Double.BYTES) + (rows + 1L) * Integer.BYTES + textSize;
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Column exceeds 2 GB in one row group; use a smaller row group");
+            }
+            return (int) size;
+        }
+
+        /** Replaces the row group with one read back from the spill file. */
+        void load(ByteBuffer in, int rows, int nullCount, int size) {
+            ensure(rows);
+            ensureText(size);
+            in.get(kinds, 0, rows);
+            in.asDoubleBuffer().get(values, 0, rows);
+            in.position(in.position() + rows * Double.BYTES);
+            in.asIntBuffer().get(offsets, 0, rows + 1);
+            in.position(in.position() + (rows + 1) * Integer.BYTES);
+            in.get(text, 0, size);
+            count = rows;
+            nulls = nullCount;
+            textSize = size;
+        }
+
+        Type inferType() {
+            if (strings > 0) {
+                return Type.UTF8;
+            } else if (booleans > 0) {
+                return numbers + dates > 0 ? Type.UTF8 : Type.BOOL;
+            } else if (numbers > 0) {
+                return Type.FLOAT64;
+            }
+            return dates > 0 ? Type.TIMESTAMP : Type.UTF8;
+        }
+
+        long bufferLength(int index) {
+            if (index == 0) {
+                return nulls == 0 ? 0 : (count + 7) / 8;
+            }
+            return switch (type) {
+                case UTF8 -> index == 1 ? (count + 1) * 4L : textSize;
+                case BOOL -> (count + 7) / 8;
+                default -> count * 8L;
+            };
+        }
+
+        void clear() {
+            count = 0;
+            nulls = 0;
+            textSize = 0;
+        }
+
+        private void ensureText(long capacity) {
+            if (capacity > text.length) {
+                long grown = Math.max(text.length * 2L, capacity);
+                if (grown > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Text of column " + name + " exceeds 2 GB in one row group");
+                }
+                text = Arrays.copyOf(text, (int) grown);
+            }
+        }
+
+        private void ensure(int capacity) {
+            if (capacity > kinds.length) {
+                int grown = Math.max(capacity, kinds.length * 2);
+                kinds = Arrays.copyOf(kinds, grown);
+                values = Arrays.copyOf(values, grown);
+                offsets = Arrays.copyOf(offsets, grown + 1);
+            }
+        }
+    }
+}
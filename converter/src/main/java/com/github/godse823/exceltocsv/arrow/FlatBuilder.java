@@ -0,0 +1,177 @@
+package com.github.godse823.exceltocsv.arrow;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A minimal FlatBuffers builder, enough to encode the Arrow IPC metadata:
+ * tables with scalar, offset and union fields, strings, and vectors of
+ * offsets or structs.
+ *
+ * <p>Like the reference implementation the buffer is filled back to front,
+ * so children are written before the tables that refer to them and an
+ * offset is the distance of an object from the end of the buffer. Vtables
+ * are not shared between tables; the metadata is small and written once
+ * per record batch.
+ */
+final class FlatBuilder {
+
+    private byte[] buffer = new byte[1024];
+    /** Index of the first written byte; everything after it is in use. */
+    private int space = buffer.length;
+    private int minAlign = 1;
+    private int[] vtable = new int[16];
+    private int fieldCount;
+    private int objectStart;
+
+    /** The offset of the last written byte, as stored by {@link #addOffset}. */
+    int offset() {
+        return buffer.length - space;
+    }
+
+    /**
+     * Pads so that, once {@code additional} more bytes have been written, the
+     * next {@code size} bytes are aligned to {@code size}.
+     */
+    void prep(int size, int additional) {
+        minAlign = Math.max(minAlign, size);
+        int padding = -(offset() + additional) & (size - 1);
+        int needed = padding + size + additional;
+        if (space < needed) {
+            int used = offset();
+            int capacity = Math.max(buffer.length * 2, used + needed);
+            byte[] grown = new byte[capacity];
+            System.arraycopy(buffer, space, grown, capacity - used, used);
+            buffer = grown;
+            space = capacity - used;
+        }
+        space -= padding;
+    }
+
+    void putByte(int value) {
+        buffer[--space] = (byte) value;
+    }
+
+    void putShort(int value) {
+        space -= 2;
+        buffer[space] = (byte) value;
+        buffer[space + 1] = (byte) (value >>> 8);
+    }
+
+    void putInt(int value) {
+        space -= 4;
+        writeInt(space, value);
+    }
+
+    void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    void pad(int bytes) {
+        space -= bytes;
+    }
+
+    /** Writes a reference to the object at {@code target}, relative to where it is stored. */
+    void addOffset(int target) {
+        prep(4, 0);
+        putInt(offset() - target + 4);
+    }
+
+    void startTable(int fields) {
+        if (vtable.length < fields) {
+            vtable = new int[fields];
+        }
+        Arrays.fill(vtable, 0, fields, 0);
+        fieldCount = fields;
+        objectStart = offset();
+    }
+
+    void addByte(int field, int value) {
+        prep(1, 0);
+        putByte(value);
+        vtable[field] = offset();
+    }
+
+    void addShort(int field, int value) {
+        prep(2, 0);
+        putShort(value);
+        vtable[field] = offset();
+    }
+
+    void addLong(int field, long value) {
+        prep(8, 0);
+        putLong(value);
+        vtable[field] = offset();
+    }
+
+    void addOffset(int field, int target) {
+        addOffset(target);
+        vtable[field] = offset();
+    }
+
+    /** Writes the table's vtable and returns the table's offset. */
+    int endTable() {
+        prep(4, 0);
+        putInt(0);
+        int object = offset();
+        int fields = fieldCount;
+        while (fields > 0 && vtable[fields - 1] == 0) {
+            fields--;
+        }
+        for (int i = fields - 1; i >= 0; i--) {
+            putShort(vtable[i] == 0 ? 0 : object - vtable[i]);
+        }
+        putShort(object - objectStart);
+        putShort((fields + 2) * 2);
+        // The table starts with the distance back to its vtable.
+        writeInt(buffer.length - object, offset() - object);
+        return object;
+    }
+
+    int createString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        prep(4, bytes.length + 1);
+        putByte(0);
+        space -= bytes.length;
+        System.arraycopy(bytes, 0, buffer, space, bytes.length);
+        putInt(bytes.length);
+        return offset();
+    }
+
+    int createOffsetVector(int[] targets) {
+        startVector(4, targets.length, 4);
+        for (int i = targets.length - 1; i >= 0; i--) {
+            addOffset(targets[i]);
+        }
+        return endVector(targets.length);
+    }
+
+    /**
+     * Prepares for {@code count} elements of {@code size} bytes, which the
+     * caller then writes last to first before calling {@link #endVector}.
+     */
+    void startVector(int size, int count, int alignment) {
+        prep(4, size * count);
+        prep(alignment, size * count);
+    }
+
+    int endVector(int count) {
+        putInt(count);
+        return offset();
+    }
+
+    /** Completes the buffer with {@code root} as its root table and returns its bytes. */
+    byte[] finish(int root) {
+        prep(minAlign, 4);
+        addOffset(root);
+        return Arrays.copyOfRange(buffer, space, buffer.length);
+    }
+
+    private void writeInt(int index, int value) {
+        buffer[index] = (byte) value;
+        buffer[index + 1] = (byte) (value >>> 8);
+        buffer[index + 2] = (byte) (value >>> 16);
+        buffer[index + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.godse823.exceltocsv.cli;
+
+import com.github.godse823.exceltocsv.BatchConverter;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Expands the inputs of a batch run (workbook files, directories searched
+ * recursively, and glob patterns such as {@code data/**}{@code /*.xlsx})
+ * into conversion tasks. Each workbook gets its own output directory named
+ * after the workbook, mirroring its location below the directory or glob
+ * base it was found in.
+ */
+final class BatchInputs {
+
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private final Path outputRoot;
+    private final List<BatchConverter.Task> tasks = new ArrayList<>();
+    private final Set<String> usedOutputs = new HashSet<>();
+    private final Set<Path> seenWorkbooks = new HashSet<>();
+
+    private BatchInputs(Path outputRoot) {
+        this.outputRoot = outputRoot;
+    }
+
+    static List<BatchConverter.Task> expand(List<String> inputs, Path outputRoot) throws IOException {
+        BatchInputs expansion = new BatchInputs(outputRoot);
+        for (String input : inputs) {
+            expansion.add(input);
+        }
+        return expansion.tasks;
+    }
+
+    private void add(String input) throws IOException {
+        int glob = firstGlobSegment(input);
+        if (glob >= 0) {
+            Path base = Path.of(glob == 0 ? "." : input.substring(0, glob));
+            String pattern = input.substring(glob);
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("/").length;
+            addAll(base, depth, file -> matcher.matches(base.relativize(file)));
+            return;
+        }
+        Path path = Path.of(input);
+        if (Files.isDirectory(path)) {
+            addAll(path, Integer.MAX_VALUE, BatchInputs::isWorkbook);
+        } else {
+            // Missing files are passed on so that they are reported as failed conversions.
+            addTask(path, path.getFileName());
+        }
+    }
+
+    private void addAll(Path base, int depth, Predicate<Path> filter) throws IOException {
+        if (!Files.isDirectory(base)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(base, depth)) {
+            files = walk.filter(Files::isRegularFile).filter(filter).sorted().toList();
+        }
+        for (Path file : files) {
+            addTask(file, base.relativize(file));
+        }
+    }
+
+    private void addTask(Path workbook, Path relative) {
+        if (!seenWorkbooks.add(workbook.toAbsolutePath().normalize())) {
+            // Listed more than once, e.g. by a directory and by a glob.
+            return;
+        }
+        String name = relative.toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > name.lastIndexOf(relative.getFileSystem().getSeparator())) {
+            name = name.substring(0, dot);
+        }
+        String unique = name;
+        for (int i = 2; !usedOutputs.add(unique.toLowerCase(Locale.ROOT)); i++) {
+            unique = name + "_" + i;
+        }
+        tasks.add(new BatchConverter.Task(workbook, outputRoot.resolve(unique)));
+    }
+
+    /** Returns the offset of the first path segment containing glob syntax, or -1. */
+    private static int firstGlobSegment(String input) {
+        int segmentStart = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '/') {
+                segmentStart = i + 1;
+            } else if (GLOB_CHARACTERS.indexOf(c) >= 0) {
+                return segmentStart;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWorkbook(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        // Excel leaves "~$name.xlsx" lock files next to open workbooks.
+        return !name.startsWith("~$") && (name.endsWith(".xlsx") || name.endsWith(".xlsm") || name.endsWith(".xls"));
+    }
+}
@@ -0,0 +1,303 @@
+package com.github.godse823.exceltocsv.cli;
+
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.ExcelToCsvConverter;
+import com.github.godse823.exceltocsv.OutputFormat;
+import com.github.godse823.exceltocsv.SheetResult;
+import com.github.godse823.exceltocsv.Threads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps one warm {@link ExcelToCsvConverter} resident and runs conversion
+ * jobs against it, so that JVM start-up, class loading and JIT compilation
+ * are paid once rather than per workbook. All jobs share the converter's
+ * pipeline budget, buffer pool and stage threads, and compiled number
+ * formats are shared process-wide.
+ *
+ * <p>Over HTTP, {@code POST /convert} converts the workbook sent as the
+ * request body, reading it in stream order, and {@code GET /convert?path=FILE}
+ * a file readable by the server; either way one sheet is streamed back as
+ * {@code text/csv} while it is converted. Query parameters mirror the command-line options:
+ * {@code sheet}, {@code delimiter}, {@code crlf}, {@code raw},
+ * {@code columns}, {@code where} (repeatable), {@code rows}, {@code sample}
+ * and {@code limit}. Errors found before the first byte of CSV get a 4xx or
+ * 5xx status; a failure after that drops the connection without ending the
+ * chunked response, so clients never mistake a truncated CSV for a
+ * complete one. Responses are always plain CSV; {@code --compress} and
+ * {@code --format} apply to the files written for standard-input jobs only.
+ *
+ * <p>On standard input, each line names a workbook and, after a TAB, an
+ * output directory; a result line is written to standard output for each.
+ *
+ * <p>At most {@code maxJobs} jobs run at a time; further HTTP requests wait
+ * for a free slot.
+ */
+final class ConversionServer {
+
+    private final ExcelToCsvConverter converter;
+    private final ConversionOptions options;
+    private final int maxJobs;
+    private final PrintStream log;
+
+    ConversionServer(ConversionOptions options, int maxJobs, PrintStream log) {
+        this.converter = new ExcelToCsvConverter(options);
+        this.options = options;
+        this.maxJobs = maxJobs;
+        this.log = log;
+    }
+
+    /** Serves HTTP on {@code address} until the process is stopped. */
+    void serveHttp(InetSocketAddress address) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(maxJobs, Threads.daemon("excel-to-csv-job"));
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/convert", this::convert);
+        server.createContext("/health", exchange -> respond(exchange, 200, "ok"));
+        server.setExecutor(workers);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // Let jobs in flight finish their responses.
+            server.stop(5);
+            Threads.shutdown(workers);
+        }, "excel-to-csv-shutdown"));
+        InetSocketAddress bound = server.getAddress();
+        log.printf("excel-to-csv: listening on http://%s:%d/convert%n",
+                bound.getAddress().getHostAddress(), bound.getPort());
+    }
+
+    /**
+     * Runs the jobs read from {@code in} until end of input and returns
+     * whether all of them succeeded.
+     */
+    boolean serveLines(BufferedReader in, PrintStream out, Path outputRoot) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(maxJobs, Threads.daemon("excel-to-csv-job"));
+        Semaphore slots = new Semaphore(maxJobs);
+        AtomicBoolean failed = new AtomicBoolean();
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                Path workbook = Path.of(tab < 0 ? line.strip() : line.substring(0, tab));
+                Path output = tab < 0 ? outputRoot.resolve(baseName(workbook)) : Path.of(line.substring(tab + 1));
+                slots.acquireUninterruptibly();
+                workers.execute(() -> {
+                    boolean succeeded = false;
+                    try {
+                        String result = runJob(workbook, output);
+                        succeeded = !result.startsWith("error");
+                        synchronized (out) {
+                            out.println(result);
+                            out.flush();
+                        }
+                    } finally {
+                        // Also after an Error, so that the wait for all slots at the end of input returns.
+                        if (!succeeded) {
+                            failed.set(true);
+                        }
+                        slots.release();
+                    }
+                });
+            }
+            slots.acquireUninterruptibly(maxJobs);
+        } finally {
+            Threads.shutdown(workers);
+        }
+        return !failed.get();
+    }
+
+    private String runJob(Path workbook, Path output) {
+        long started = System.nanoTime();
+        try {
+            long rows = 0;
+            List<SheetResult> sheets = converter.convert(workbook, output);
+            for (SheetResult sheet : sheets) {
+                rows += sheet.rows();
+            }
+            return "ok\t" + workbook + "\t" + output + "\t" + sheets.size() + "\t" + rows + "\t"
+                    + (System.nanoTime() - started) / 1_000_000;
+        } catch (NoSuchFileException e) {
+            return "error\t" + workbook + "\tno such file";
+        } catch (IOException | RuntimeException e) {
+            return "error\t" + workbook + "\t" + e.getMessage();
+        }
+    }
+
+    private static String baseName(Path workbook) {
+        String name = workbook.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private void convert(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        String method = exchange.getRequestMethod();
+        ResponseChannel response = new ResponseChannel(exchange);
+        try {
+            Map<String, List<String>> query = query(exchange.getRequestURI().getRawQuery());
+            ExcelToCsvConverter requestConverter = converter.withOptions(requestOptions(query));
+            SheetResult result;
+            if (method.equals("POST")) {
+                // Converted while the body is still arriving.
+                result = requestConverter.convertSheet(exchange.getRequestBody(), last(query, "sheet"), response);
+            } else if (method.equals("GET") && query.containsKey("path")) {
+                result = requestConverter.convertSheet(Path.of(last(query, "path")), last(query, "sheet"), response);
+            } else {
+                respond(exchange, 405, "Use POST with the workbook as body, or GET with ?path=FILE");
+                return;
+            }
+            response.finish();
+            log.printf("%s %s -> 200 (%d rows, %d ms)%n", method, exchange.getRequestURI(), result.rows(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (IllegalArgumentException | ConversionException e) {
+            fail(exchange, response, 400, e);
+        } catch (NoSuchFileException e) {
+            fail(exchange, response, 404, new NoSuchFileException("no such file: " + e.getFile()));
+        } catch (IOException | RuntimeException e) {
+            fail(exchange, response, 500, e);
+        }
+    }
+
+    /** Reports a failure, or aborts the response if part of the CSV has already been sent. */
+    private void fail(HttpExchange exchange, ResponseChannel response, int status, Exception e) throws IOException {
+        log.printf("%s %s -> %d: %s%n", exchange.getRequestMethod(), exchange.getRequestURI(), status,
+                e.getMessage());
+        if (response.started()) {
+            // Thrown out of the handler, the exchange is closed without the final chunk.
+            throw e instanceof IOException io ? io : new IOException(e);
+        }
+        respond(exchange, status, e.getMessage());
+    }
+
+    private ConversionOptions requestOptions(Map<String, List<String>> query) {
+        ConversionOptions.Builder builder = options.toBuilder().sheets(List.of()).compression(null)
+                .outputFormat(OutputFormat.CSV);
+        if (query.containsKey("delimiter")) {
+            builder.delimiter(Main.delimiter(last(query, "delimiter")));
+        }
+        if (query.containsKey("crlf")) {
+            builder.lineSeparator(flag(query, "crlf") ? "\r\n" : "\n");
+        }
+        if (query.containsKey("raw")) {
+            builder.formatNumbers(!flag(query, "raw"));
+        }
+        if (query.containsKey("columns") || query.containsKey("where") || query.containsKey("rows")
+                || query.containsKey("sample") || query.containsKey("limit")) {
+            // A request selecting rows or columns replaces the server's selection rather than narrowing it.
+            builder.selection(Main.selection(last(query, "columns"), query.getOrDefault("where", List.of()),
+                    last(query, "rows"),
+                    query.containsKey("sample") ? Main.count(last(query, "sample")) : 1,
+                    query.containsKey("limit") ? Main.count(last(query, "limit")) : Long.MAX_VALUE));
+        }
+        return builder.build();
+    }
+
+    private static boolean flag(Map<String, List<String>> query, String name) {
+        String value = last(query, name);
+        return value.isEmpty() || value.equals("true") || value.equals("1");
+    }
+
+    private static String last(Map<String, List<String>> query, String name) {
+        List<String> values = query.get(name);
+        return values == null ? null : values.get(values.size() - 1);
+    }
+
+    private static Map<String, List<String>> query(String rawQuery) {
+        Map<String, List<String>> query = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            query.computeIfAbsent(name, key -> new ArrayList<>(1)).add(value);
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * The CSV response body. The {@code 200} status line is only sent with
+     * the first bytes of CSV, so that a workbook that cannot be opened still
+     * gets an error status.
+     */
+    private static final class ResponseChannel implements WritableByteChannel {
+
+        private final HttpExchange exchange;
+        private volatile WritableByteChannel body;
+
+        ResponseChannel(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        boolean started() {
+            return body != null;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (body == null) {
+                start();
+            }
+            return body.write(src);
+        }
+
+        /** Ends the response, sending the headers first if the sheet produced no output. */
+        void finish() throws IOException {
+            if (body == null) {
+                start();
+            }
+            body.close();
+        }
+
+        private void start() throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+            // A length of 0 selects chunked encoding.
+            exchange.sendResponseHeaders(200, 0);
+            body = Channels.newChannel(exchange.getResponseBody());
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        /** Does nothing; the response is ended with {@link #finish()}. */
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.github.godse823.exceltocsv.cli;
+
+import com.github.godse823.exceltocsv.BatchConverter;
+import com.github.godse823.exceltocsv.BatchSummary;
+import com.github.godse823.exceltocsv.ConversionMetrics;
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.ExcelToCsvConverter;
+import com.github.godse823.exceltocsv.FileResult;
+import com.github.godse823.exceltocsv.OutputFormat;
+import com.github.godse823.exceltocsv.RowSelection;
+import com.github.godse823.exceltocsv.SheetResult;
+import com.github.godse823.exceltocsv.codec.OutputCodec;
+import com.github.godse823.exceltocsv.zip.InflaterBackend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import javax.management.JMException;
+
+/**
+ * Command-line entry point.
+ *
+ * <pre>
+ * excel-to-csv [options] &lt;workbook&gt;|- [&lt;output-dir&gt;]
+ * excel-to-csv --batch [options] [-o &lt;output-dir&gt;] &lt;file|dir|glob&gt;...
+ * excel-to-csv --serve [HOST:]PORT [options]
+ * excel-to-csv --serve-stdin [options] [-o &lt;output-dir&gt;]
+ * </pre>
+ */
+public final class Main {
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private Main() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream stdout, PrintStream stderr) {
+        String[] statsFile = new String[1];
+        ConversionMetrics[] metrics = new ConversionMetrics[1];
+        int exit = run(args, stdout, stderr, statsFile, metrics);
+        if (metrics[0] != null && !writeStats(metrics[0], statsFile[0], stderr)) {
+            return Math.max(exit, EXIT_FAILURE);
+        }
+        return exit;
+    }
+
+    /**
+     * Runs the command. If it sets {@code statsFile[0]}, it also records
+     * into new metrics, which it leaves in {@code metrics[0]}.
+     */
+    private static int run(String[] args, PrintStream stdout, PrintStream stderr, String[] statsFile,
+                           ConversionMetrics[] metrics) {
+        ConversionOptions.Builder options = ConversionOptions.builder();
+        List<String> sheets = new ArrayList<>();
+        List<String> positional = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        String columns = null;
+        String rowRange = null;
+        int sampleEvery = 1;
+        long limit = Long.MAX_VALUE;
+        boolean toStdout = false;
+        boolean batch = false;
+        boolean threadsGiven = false;
+        boolean outputGiven = false;
+        String batchOutput = ".";
+        int jobs = Runtime.getRuntime().availableProcessors();
+        long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+        String serveAddress = null;
+        boolean serveStdin = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-h", "--help" -> {
+                        printUsage(stdout);
+                        return EXIT_OK;
+                    }
+                    case "-s", "--sheet" -> sheets.add(value(args, ++i, arg));
+                    case "-d", "--delimiter" -> options.delimiter(delimiter(value(args, ++i, arg)));
+                    case "--crlf" -> options.lineSeparator("\r\n");
+                    case "--spill-threshold" -> options.sharedStringsSpillThreshold(size(value(args, ++i, arg)));
+                    case "--stdout" -> toStdout = true;
+                    case "--split-sheets" -> options.splitSheets(true);
+                    case "--raw-values" -> options.formatNumbers(false);
+                    case "--pipeline-budget" -> options.pipelineBudget(size(value(args, ++i, arg)));
+                    case "--columns" -> columns = value(args, ++i, arg);
+                    case "--where" -> conditions.add(value(args, ++i, arg));
+                    case "--rows" -> rowRange = value(args, ++i, arg);
+                    case "--sample" -> sampleEvery = count(value(args, ++i, arg));
+                    case "--limit" -> limit = count(value(args, ++i, arg));
+                    case "--cache" -> options.cacheDirectory(Path.of(value(args, ++i, arg)));
+                    case "--cache-size" -> options.cacheSize(size(value(args, ++i, arg)));
+                    case "--cache-link" -> options.cacheLinks(true);
+                    case "--inflater" -> options.inflater(InflaterBackend.named(value(args, ++i, arg)));
+                    case "--compress" -> options.compression(OutputCodec.named(value(args, ++i, arg)));
+                    case "--format" -> options.outputFormat(OutputFormat.named(value(args, ++i, arg)));
+                    case "--row-group" -> options.rowGroupSize(count(value(args, ++i, arg)));
+                    case "--schema" -> options.schemaSidecar(true);
+                    case "--stats" -> statsFile[0] = value(args, ++i, arg);
+                    case "-j", "--threads" -> {
+                        options.parallelism(count(value(args, ++i, arg)));
+                        threadsGiven = true;
+                    }
+                    case "--batch" -> batch = true;
+                    case "-o", "--output" -> {
+                        batchOutput = value(args, ++i, arg);
+                        outputGiven = true;
+                    }
+                    case "--jobs" -> jobs = count(value(args, ++i, arg));
+                    case "--memory-budget" -> memoryBudget = size(value(args, ++i, arg));
+                    case "--serve" -> serveAddress = value(args, ++i, arg);
+                    case "--serve-stdin" -> serveStdin = true;
+                    default -> {
+                        if (arg.startsWith("-") && arg.length() > 1) {
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                        }
+                        positional.add(arg);
+                    }
+                }
+            }
+            options.selection(selection(columns, conditions, rowRange, sampleEvery, limit));
+            if (outputGiven && !batch && !serveStdin) {
+                // A single workbook takes its output directory as the second argument.
+                throw new IllegalArgumentException("-o/--output only applies to --batch and --serve-stdin");
+            }
+            if (statsFile[0] != null) {
+                metrics[0] = new ConversionMetrics();
+                options.metrics(metrics[0]);
+                register(metrics[0], stderr);
+            }
+            if (serveAddress != null || serveStdin) {
+                if (!positional.isEmpty() || batch || toStdout || (serveAddress != null && serveStdin)) {
+                    throw new IllegalArgumentException("--serve and --serve-stdin take no other inputs or modes");
+                }
+                if (!threadsGiven) {
+                    // Jobs already run concurrently, as in batch mode.
+                    options.parallelism(1);
+                }
+                if (serveAddress != null && statsFile[0] != null) {
+                    // An HTTP server only stops with the process.
+                    String file = statsFile[0];
+                    ConversionMetrics recorded = metrics[0];
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> writeStats(recorded, file, stderr)));
+                }
+                return runServer(new ConversionServer(options.build(), jobs, stderr), serveAddress,
+                        Path.of(batchOutput), stdout, stderr);
+            }
+            if (batch) {
+                if (positional.isEmpty() || toStdout) {
+                    throw new IllegalArgumentException("Batch mode expects input files, directories or globs");
+                }
+                if (!threadsGiven) {
+                    // Files already run concurrently; do not multiply threads by sheets as well.
+                    options.parallelism(1);
+                }
+                return runBatch(new BatchConverter(options.sheets(sheets).build(), jobs, memoryBudget),
+                        positional, Path.of(batchOutput), stderr);
+            }
+            if (positional.isEmpty() || positional.size() > 2 || (toStdout && positional.size() > 1)) {
+                throw new IllegalArgumentException("Expected a workbook and an optional output directory");
+            }
+        } catch (IllegalArgumentException e) {
+            stderr.println("excel-to-csv: " + e.getMessage());
+            printUsage(stderr);
+            return EXIT_USAGE;
+        }
+
+        // "-" reads the workbook from standard input, converting as it arrives.
+        boolean fromStdin = positional.get(0).equals("-");
+        Path workbook = Path.of(fromStdin ? "<stdin>" : positional.get(0));
+        ExcelToCsvConverter converter = new ExcelToCsvConverter(options.sheets(sheets).build());
+        try {
+            if (!fromStdin && !Files.isRegularFile(workbook)) {
+                stderr.println("excel-to-csv: no such file: " + workbook);
+                return EXIT_FAILURE;
+            }
+            String sheet = sheets.isEmpty() ? null : sheets.get(0);
+            if (toStdout) {
+                OutputStream out = stdout;
+                if (fromStdin) {
+                    converter.convertSheet(System.in, sheet, Channels.newChannel(out));
+                } else {
+                    converter.convertSheet(workbook, sheet, out);
+                }
+                out.flush();
+            } else {
+                Path outputDirectory = positional.size() > 1 ? Path.of(positional.get(1)) : Path.of(".");
+                List<SheetResult> results = fromStdin ? converter.convert(System.in, outputDirectory)
+                        : converter.convert(workbook, outputDirectory);
+                for (SheetResult result : results) {
+                    stderr.printf("%s -> %s (%d rows, %d ms%s)%n", result.sheetName(), result.output(),
+                            result.rows(), result.elapsed().toMillis(), result.cached() ? ", cached" : "");
+                }
+            }
+            return EXIT_OK;
+        } catch (IOException e) {
+            stderr.println("excel-to-csv: " + workbook + ": " + e.getMessage());
+            return EXIT_FAILURE;
+        }
+    }
+
+    /** Serves HTTP until the process is stopped, or the jobs on standard input until it ends. */
+    private static int runServer(ConversionServer server, String address, Path outputRoot, PrintStream stdout,
+                                 PrintStream stderr) {
+        try {
+            if (address == null) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                return server.serveLines(in, stdout, outputRoot) ? EXIT_OK : EXIT_FAILURE;
+            }
+            server.serveHttp(socketAddress(address));
+        } catch (IOException e) {
+            stderr.println("excel-to-csv: " + e.getMessage());
+            return EXIT_FAILURE;
+        }
+        try {
+            // The HTTP server runs on its own threads; wait for the process to be stopped.
+            new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return EXIT_OK;
+    }
+
+    /** Parses {@code PORT} or {@code HOST:PORT}; the host defaults to the loopback address. */
+    private static InetSocketAddress socketAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        String host = colon < 0 ? InetAddress.getLoopbackAddress().getHostAddress() : address.substring(0, colon);
+        int port = count(address.substring(colon + 1));
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Invalid port: " + address);
+        }
+        return new InetSocketAddress(host, port);
+    }
+
+    /** Builds the row selection given by the column, condition and row-range options. */
+    static RowSelection selection(String columns, List<String> conditions, String rowRange, int sampleEvery,
+                                  long limit) {
+        RowSelection selection = RowSelection.parse(columns, conditions).sample(sampleEvery);
+        if (rowRange != null) {
+            selection = selection.rows(rowRange);
+        }
+        if (limit != Long.MAX_VALUE) {
+            selection = selection.limit(limit);
+        }
+        return selection;
+    }
+
+    /** Makes the metrics visible to JMX clients while the command runs. */
+    private static void register(ConversionMetrics metrics, PrintStream stderr) {
+        try {
+            metrics.register();
+        } catch (JMException e) {
+            stderr.println("excel-to-csv: metrics not registered with JMX: " + e.getMessage());
+        }
+    }
+
+    /** Writes the metrics as JSON to {@code file}, or to standard error for {@code -}. */
+    private static boolean writeStats(ConversionMetrics metrics, String file, PrintStream stderr) {
+        String json = metrics.toJson();
+        if (file.equals("-")) {
+            stderr.print(json);
+            stderr.flush();
+            return true;
+        }
+        try {
+            Files.writeString(Path.of(file), json, StandardCharsets.UTF_8);
+            return true;
+        } catch (IOException e) {
+            stderr.println("excel-to-csv: " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static int runBatch(BatchConverter converter, List<String> inputs, Path outputRoot,
+                                PrintStream stderr) {
+        try {
+            List<BatchConverter.Task> tasks = BatchInputs.expand(inputs, outputRoot);
+            if (tasks.isEmpty()) {
+                stderr.println("excel-to-csv: no workbooks found");
+                return EXIT_FAILURE;
+            }
+            BatchSummary summary = converter.convert(tasks, result -> report(result, stderr));
+            stderr.printf("%d files (%d failed), %d sheets, %d rows, %d bytes in %d ms; "
+                            + "per file p50 %d ms, p99 %d ms%n",
+                    summary.files(), summary.failed(), summary.sheets(), summary.rows(), summary.bytes(),
+                    summary.elapsed().toMillis(), summary.p50().toMillis(), summary.p99().toMillis());
+            return summary.failed() == 0 ? EXIT_OK : EXIT_FAILURE;
+        } catch (IOException e) {
+            stderr.println("excel-to-csv: " + e.getMessage());
+            return EXIT_FAILURE;
+        }
+    }
+
+    private static void report(FileResult result, PrintStream stderr) {
+        if (result.succeeded()) {
+            stderr.printf("%s -> %s (%d sheets, %d rows, %d ms)%n", result.workbook(), result.outputDirectory(),
+                    result.sheets().size(), result.rows(), result.elapsed().toMillis());
+        } else {
+            String message = result.error() instanceof NoSuchFileException
+                    ? "no such file" : result.error().getMessage();
+            stderr.println("excel-to-csv: " + result.workbook() + ": " + message);
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    static char delimiter(String value) {
+        if (value.equals("\\t") || value.equalsIgnoreCase("tab")) {
+            return '\t';
+        }
+        if (value.length() != 1) {
+            throw new IllegalArgumentException("Delimiter must be a single character: " + value);
+        }
+        return value.charAt(0);
+    }
+
+    static int count(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + value);
+        }
+    }
+
+    /** Parses a byte count with an optional K, M or G suffix. */
+    static long size(String value) {
+        String digits = value.trim().toUpperCase();
+        long unit = 1;
+        if (digits.endsWith("B")) {
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        if (digits.endsWith("K")) {
+            unit = 1024;
+        } else if (digits.endsWith("M")) {
+            unit = 1024 * 1024;
+        } else if (digits.endsWith("G")) {
+            unit = 1024 * 1024 * 1024;
+        }
+        if (unit > 1) {
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        try {
+            return Math.multiplyExact(Long.parseLong(digits), unit);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid size: " + value);
+        }
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("Usage: excel-to-csv [options] <workbook>|- [<output-dir>]");
+        out.println("       excel-to-csv --batch [options] [-o <output-dir>] <file|dir|glob>...");
+        out.println("       excel-to-csv --serve [HOST:]PORT [options]");
+        out.println("       excel-to-csv --serve-stdin [options] [-o <output-dir>]");
+        out.println();
+        out.println("A workbook of '-' is read from standard input and converted as it arrives.");
+        out.println();
+        out.println("Options:");
+        out.println("  -s, --sheet NAME       convert only the named sheet (repeatable)");
+        out.println("  -d, --delimiter CHAR   field delimiter, default ',' ('tab' for TAB)");
+        out.println("      --crlf             end records with CRLF instead of LF");
+        out.println("      --spill-threshold SIZE");
+        out.println("                         spill shared strings larger than SIZE (e.g. 64M) to a temp file");
+        out.println("  -j, --threads N        convert up to N sheets concurrently (default: CPU count)");
+        out.println("      --split-sheets     parse row ranges of each XLSX sheet concurrently");
+        out.println("      --raw-values       write numbers as stored, ignoring number formats");
+        out.println("      --columns LIST     write only these columns, in this order (e.g. A,C,F:H)");
+        out.println("      --where COND       keep only rows where COND holds, e.g. B=EUR or D>=100;");
+        out.println("                         ops are = != < <= > >= (repeatable, all must hold)");
+        out.println("      --rows RANGE       read only sheet rows FIRST:LAST (e.g. 1:100, 5000:, :20)");
+        out.println("      --sample K         keep every K-th row of the range");
+        out.println("      --limit N          stop each sheet after writing N rows");
+        out.println("      --pipeline-budget SIZE");
+        out.println("                         buffer at most SIZE between inflate, parse and write stages");
+        out.println("                         (default: 64M or 1/8 of the heap; 0 runs each sheet on one thread)");
+        out.println("      --inflater NAME    decompress XLSX sheets with NAME: jdk (zlib, the default), java, or");
+        out.println("                         a backend added to the class path");
+        out.println("      --compress CODEC[:LEVEL]");
+        out.println("                         compress each CSV with gzip (levels 1-9, default 6), lz4 or zstd,");
+        out.println("                         on one thread per CPU; files get the codec's extension (.csv.gz)");
+        out.println("      --format FORMAT    write csv (the default) or arrow: an Arrow IPC file of typed columns");
+        out.println("      --row-group ROWS   rows per Arrow record batch (default: 65536)");
+        out.println("      --schema           write <sheet>.schema.json next to each sheet: column names, types,");
+        out.println("                         widths and null counts, gathered during the conversion");
+        out.println("      --stats FILE       write counters, stage timings and GC figures as JSON to FILE ('-'");
+        out.println("                         for standard error) when done; also published over JMX meanwhile");
+        out.println("      --stdout           write the first selected sheet to standard output");
+        out.println("      --cache DIR        reuse sheets converted earlier with the same content and options");
+        out.println("      --cache-size SIZE  evict least recently used cache entries above SIZE (default: 1G)");
+        out.println("      --cache-link       hard-link cached sheets to their outputs instead of copying;");
+        out.println("                         linked outputs must not be modified in place");
+        out.println("  -h, --help             show this help");
+        out.println();
+        out.println("Batch mode:");
+        out.println("      --batch            convert every workbook found in the given files, directories");
+        out.println("                         and globs, each into <output-dir>/<workbook name>/");
+        out.println("  -o, --output DIR       output directory for batch mode and --serve-stdin (default: .)");
+        out.println("      --jobs N           convert up to N workbooks concurrently (default: CPU count)");
+        out.println("      --memory-budget SIZE");
+        out.println("                         cap the estimated memory of workbooks in flight");
+        out.println("                         (default: half the heap)");
+        out.println();
+        out.println("Service mode:");
+        out.println("      --serve [HOST:]PORT");
+        out.println("                         keep a warm converter running and serve POST /convert (workbook as");
+        out.println("                         body) and GET /convert?path=FILE, streaming back CSV; HOST");
+        out.println("                         defaults to the loopback address");
+        out.println("      --serve-stdin      convert the workbook named on each line of standard input (optionally");
+        out.println("                         followed by TAB and an output directory), printing a result line each");
+        out.println("      --jobs N           run up to N jobs concurrently (default: CPU count)");
+    }
+}
@@ -0,0 +1,207 @@
+package com.github.godse823.exceltocsv.codec;
+
+import com.github.godse823.exceltocsv.Threads;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Cuts what is written into fixed-size blocks, compresses each block on a
+ * worker and writes the results in order.
+ *
+ * <p>The writing thread only copies bytes into the current block; once it is
+ * full, it is handed to a worker and the next one is filled while it is
+ * compressed. At most a few blocks per worker are in flight: the writer
+ * waits for the oldest before starting another, so memory stays bounded
+ * whatever the speed of the output. A block is reused once the block after
+ * it has been written, as that one may have used it as a dictionary.
+ * Per-worker codec state {@code S}, such as a {@link java.util.zip.Deflater}
+ * or hash table, is pooled and released on close.
+ */
+abstract class BlockCompressingChannel<S> implements WritableByteChannel {
+
+    /** The input of one block and its compressed form. */
+    static final class Block {
+
+        final byte[] input;
+        int length;
+        byte[] output;
+        int outputLength;
+
+        Block(int size, int outputSize) {
+            this.input = new byte[size];
+            this.output = new byte[outputSize];
+        }
+
+        /** Grows the output to hold at least {@code size} bytes, keeping what was written. */
+        void reserveOutput(int size) {
+            if (output.length < size) {
+                output = Arrays.copyOf(output, Math.max(size, output.length + (output.length >> 1)));
+            }
+        }
+    }
+
+    private record Pending(Block block, FutureTask<Void> task) {
+    }
+
+    private final WritableByteChannel out;
+    private final Executor workers;
+    private final int blockSize;
+    private final int maxInFlight;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final ArrayDeque<Block> free = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<S> states = new ConcurrentLinkedQueue<>();
+    private Block current;
+    /** The last block handed to a worker: the dictionary of the next one. */
+    private Block submitted;
+    /** The last block written, kept until the one after it is written too. */
+    private Block written;
+    private long blocks;
+    private boolean started;
+    private boolean closed;
+
+    BlockCompressingChannel(WritableByteChannel out, Executor workers, int blockSize) {
+        this.out = out;
+        this.workers = workers;
+        this.blockSize = blockSize;
+        this.maxInFlight = 2 * Runtime.getRuntime().availableProcessors() + 1;
+    }
+
+    /** Creates the codec state of one worker. */
+    abstract S newState();
+
+    /**
+     * Compresses {@code block.input} into {@code block.output} on a worker.
+     *
+     * @param previous the block before it, or {@code null} for the first
+     */
+    abstract void compress(S state, Block block, Block previous) throws IOException;
+
+    /** An upper bound on the compressed size of a full block, used to size output buffers. */
+    abstract int maxCompressedLength(int blockSize);
+
+    /** Called on the writing thread with each block, in order, before it is compressed. */
+    void accepted(Block block) {
+    }
+
+    /** The bytes written before the first block. */
+    ByteBuffer header() {
+        return ByteBuffer.allocate(0);
+    }
+
+    /** The bytes written after the last block, given the number of blocks. */
+    ByteBuffer trailer(long blocks) {
+        return ByteBuffer.allocate(0);
+    }
+
+    /** Frees a worker's codec state once the stream is closed. */
+    void release(S state) {
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        int written = src.remaining();
+        while (src.hasRemaining()) {
+            if (current == null) {
+                current = free.isEmpty() ? new Block(blockSize, maxCompressedLength(blockSize)) : free.poll();
+                current.length = 0;
+            }
+            int n = Math.min(src.remaining(), blockSize - current.length);
+            src.get(current.input, current.length, n);
+            current.length += n;
+            if (current.length == blockSize) {
+                submit();
+            }
+        }
+        return written;
+    }
+
+    private void submit() throws IOException {
+        Block block = current;
+        Block previous = submitted;
+        current = null;
+        submitted = block;
+        blocks++;
+        accepted(block);
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            S state = states.poll();
+            if (state == null) {
+                state = newState();
+            }
+            try {
+                compress(state, block, previous);
+            } finally {
+                states.offer(state);
+            }
+            return null;
+        });
+        workers.execute(task);
+        pending.add(new Pending(block, task));
+        while (pending.size() >= maxInFlight || (!pending.isEmpty() && pending.peek().task().isDone())) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        Pending next = pending.poll();
+        Threads.await(next.task());
+        start();
+        writeFully(ByteBuffer.wrap(next.block().output, 0, next.block().outputLength));
+        if (written != null) {
+            free.add(written);
+        }
+        written = next.block();
+    }
+
+    private void start() throws IOException {
+        if (!started) {
+            started = true;
+            writeFully(header());
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /** Compresses the last, partial block and writes the end of the stream; the target stays open. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (current != null && current.length > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            start();
+            writeFully(trailer(blocks));
+        } finally {
+            S state;
+            while ((state = states.poll()) != null) {
+                release(state);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.godse823.exceltocsv.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a single gzip member whose DEFLATE stream is compressed in parallel
+ * blocks, the way {@code pigz} does. Each block is deflated on its own with
+ * the last 32K of the block before it as a preset dictionary and ends with a
+ * sync flush, which byte-aligns it, so the blocks concatenate into one
+ * stream that any gzip reader accepts. The stream is closed with an empty
+ * final block. The CRC-32 is computed in order on the writing thread.
+ */
+final class GzipCodec implements OutputCodec {
+
+    static final int DEFAULT_LEVEL = 6;
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    /** ID1, ID2, CM = deflate, no flags, no mtime, XFL, OS = unknown. */
+    private static final byte[] HEADER = {0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, (byte) 0xFF};
+
+    private final int level;
+
+    GzipCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String name() {
+        return "gzip";
+    }
+
+    @Override
+    public String extension() {
+        return ".gz";
+    }
+
+    @Override
+    public String spec() {
+        return "gzip:" + level;
+    }
+
+    @Override
+    public OutputCodec withLevel(int level) {
+        if (level < 1 || level > 9) {
+            throw new IllegalArgumentException("gzip levels are 1 to 9: " + level);
+        }
+        return new GzipCodec(level);
+    }
+
+    @Override
+    public WritableByteChannel compress(WritableByteChannel out, Executor workers) {
+        return new Channel(out, workers, level);
+    }
+
+    private static final class Channel extends BlockCompressingChannel<Deflater> {
+
+        private final int level;
+        private final CRC32 crc = new CRC32();
+        private long size;
+
+        Channel(WritableByteChannel out, Executor workers, int level) {
+            super(out, workers, BLOCK_SIZE);
+            this.level = level;
+        }
+
+        @Override
+        Deflater newState() {
+            return new Deflater(level, true);
+        }
+
+        @Override
+        void compress(Deflater deflater, Block block, Block previous) {
+            deflater.reset();
+            if (previous != null) {
+                int dictionary = Math.min(DICTIONARY_SIZE, previous.length);
+                deflater.setDictionary(previous.input, previous.length - dictionary, dictionary);
+            }
+            deflater.setInput(block.input, 0, block.length);
+            int length = 0;
+            while (true) {
+                length += deflater.deflate(block.output, length, block.output.length - length, Deflater.SYNC_FLUSH);
+                if (length < block.output.length) {
+                    break;
+                }
+                // A full buffer may hide more pending output.
+                block.reserveOutput(length + BLOCK_SIZE / 8);
+            }
+            block.outputLength = length;
+        }
+
+        @Override
+        int maxCompressedLength(int blockSize) {
+            // Stored blocks cost 5 bytes per 16K at worst, plus the flush marker.
+            return blockSize + (blockSize >> 10) + 64;
+        }
+
+        @Override
+        void accepted(Block block) {
+            crc.update(block.input, 0, block.length);
+            size += block.length;
+        }
+
+        @Override
+        ByteBuffer header() {
+            return ByteBuffer.wrap(HEADER);
+        }
+
+        @Override
+        ByteBuffer trailer(long blocks) {
+            ByteBuffer trailer = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+            // An empty final block with fixed codes.
+            trailer.put((byte) 3).put((byte) 0);
+            trailer.putInt((int) crc.getValue()).putInt((int) size);
+            return trailer.flip();
+        }
+
+        @Override
+        void release(Deflater deflater) {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.godse823.exceltocsv.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes an LZ4 frame of independent 256K blocks, each compressed on a
+ * worker with a greedy single-probe match finder. Blocks that do not shrink
+ * are stored. The frame carries no checksums, so it is read back by any LZ4
+ * frame decoder as fast as it can copy.
+ */
+final class Lz4Codec implements OutputCodec {
+
+    static final Lz4Codec INSTANCE = new Lz4Codec();
+
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int MAX_OFFSET = 65535;
+    /** The last five bytes of a block are always literals... */
+    private static final int LAST_LITERALS = 5;
+    /** ...and the last match starts at least twelve bytes before its end. */
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int HASH_BITS = 14;
+    private static final int UNCOMPRESSED = 0x8000_0000;
+
+    /** Version 1, independent blocks, no checksums or content size; 256K blocks. */
+    private static final int FLAGS = 0x60;
+    private static final int BLOCK_DESCRIPTOR = 5 << 4;
+    private static final byte[] HEADER = {0x04, 0x22, 0x4D, 0x18, FLAGS, BLOCK_DESCRIPTOR,
+            (byte) (xxHash32(new byte[] {FLAGS, BLOCK_DESCRIPTOR}) >>> 8)};
+
+    private Lz4Codec() {
+    }
+
+    @Override
+    public String name() {
+        return "lz4";
+    }
+
+    @Override
+    public String extension() {
+        return ".lz4";
+    }
+
+    @Override
+    public WritableByteChannel compress(WritableByteChannel out, Executor workers) {
+        return new BlockCompressingChannel<int[]>(out, workers, BLOCK_SIZE) {
+            @Override
+            int[] newState() {
+                return new int[1 << HASH_BITS];
+            }
+
+            @Override
+            void compress(int[] table, Block block, Block previous) {
+                int length = compressBlock(block.input, block.length, block.output, 4, table);
+                if (length < block.length) {
+                    LzMatching.writeInt(block.output, 0, length);
+                } else {
+                    length = block.length;
+                    LzMatching.writeInt(block.output, 0, length | UNCOMPRESSED);
+                    System.arraycopy(block.input, 0, block.output, 4, length);
+                }
+                block.outputLength = 4 + length;
+            }
+
+            @Override
+            int maxCompressedLength(int blockSize) {
+                return 4 + blockSize + blockSize / 255 + 16;
+            }
+
+            @Override
+            ByteBuffer header() {
+                return ByteBuffer.wrap(HEADER);
+            }
+
+            @Override
+            ByteBuffer trailer(long blocks) {
+                // The end mark: a block of size 0.
+                return ByteBuffer.allocate(4);
+            }
+        };
+    }
+
+    /** Compresses {@code src[0, length)} into {@code dst} from {@code start}; returns the compressed size. */
+    private static int compressBlock(byte[] src, int length, byte[] dst, int start, int[] table) {
+        int op = start;
+        int anchor = 0;
+        int matchLimit = length - LAST_LITERALS;
+        int lastMatchStart = length - MATCH_FIND_LIMIT;
+        if (length > MATCH_FIND_LIMIT) {
+            Arrays.fill(table, -1);
+            int ip = 0;
+            int misses = 0;
+            while (ip <= lastMatchStart) {
+                int sequence = LzMatching.readInt(src, ip);
+                int hash = LzMatching.hash(sequence, HASH_BITS);
+                int reference = table[hash];
+                table[hash] = ip;
+                if (reference < 0 || ip - reference > MAX_OFFSET || LzMatching.readInt(src, reference) != sequence) {
+                    // Step faster through data that does not compress.
+                    ip += 1 + (misses++ >>> 6);
+                    continue;
+                }
+                misses = 0;
+                while (ip > anchor && reference > 0 && src[ip - 1] == src[reference - 1]) {
+                    ip--;
+                    reference--;
+                }
+                int matchLength = LzMatching.MIN_MATCH + LzMatching.matchLength(src,
+                        reference + LzMatching.MIN_MATCH, ip + LzMatching.MIN_MATCH, matchLimit);
+                op = writeSequence(src, anchor, ip - anchor, dst, op, ip - reference, matchLength);
+                ip += matchLength;
+                anchor = ip;
+                table[LzMatching.hash(LzMatching.readInt(src, ip - 2), HASH_BITS)] = ip - 2;
+            }
+        }
+        int literals = length - anchor;
+        int token = op++;
+        if (literals >= 15) {
+            dst[token] = (byte) (15 << 4);
+            op = writeLength(dst, op, literals - 15);
+        } else {
+            dst[token] = (byte) (literals << 4);
+        }
+        System.arraycopy(src, anchor, dst, op, literals);
+        return op + literals - start;
+    }
+
+    private static int writeSequence(byte[] src, int anchor, int literals, byte[] dst, int op, int offset,
+                                     int matchLength) {
+        int token = op++;
+        int tokenValue;
+        if (literals >= 15) {
+            tokenValue = 15 << 4;
+            op = writeLength(dst, op, literals - 15);
+        } else {
+            tokenValue = literals << 4;
+        }
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        int extra = matchLength - LzMatching.MIN_MATCH;
+        if (extra >= 15) {
+            tokenValue |= 15;
+            op = writeLength(dst, op, extra - 15);
+        } else {
+            tokenValue |= extra;
+        }
+        dst[token] = (byte) tokenValue;
+        return op;
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    /** XXH32 with seed 0 of fewer than 16 bytes, for the frame descriptor checksum. */
+    private static int xxHash32(byte[] data) {
+        final int prime1 = 0x9E3779B1;
+        final int prime2 = 0x85EBCA77;
+        final int prime3 = 0xC2B2AE3D;
+        final int prime4 = 0x27D4EB2F;
+        final int prime5 = 0x165667B1;
+        int hash = prime5 + data.length;
+        int i = 0;
+        for (; i + 4 <= data.length; i += 4) {
+            hash = Integer.rotateLeft(hash + LzMatching.readInt(data, i) * prime3, 17) * prime4;
+        }
+        for (; i < data.length; i++) {
+            hash = Integer.rotateLeft(hash + (data[i] & 0xFF) * prime5, 11) * prime1;
+        }
+        hash ^= hash >>> 15;
+        hash *= prime2;
+        hash ^= hash >>> 13;
+        hash *= prime3;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
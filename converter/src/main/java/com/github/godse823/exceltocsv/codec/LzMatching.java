@@ -0,0 +1,66 @@
+package com.github.godse823.exceltocsv.codec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Primitives of the greedy single-probe match finders of the LZ4 and
+ * Zstandard encoders: positions are hashed by their next four bytes into a
+ * table of the last position seen with that hash, and a candidate found
+ * there is extended eight bytes at a time.
+ */
+final class LzMatching {
+
+    static final int MIN_MATCH = 4;
+
+    private static final VarHandle INT_LE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_LE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private LzMatching() {
+    }
+
+    static int readInt(byte[] data, int position) {
+        return (int) INT_LE.get(data, position);
+    }
+
+    static void writeInt(byte[] data, int position, int value) {
+        INT_LE.set(data, position, value);
+    }
+
+    static long readLong(byte[] data, int position) {
+        return (long) LONG_LE.get(data, position);
+    }
+
+    /** Hashes the first {@code length} (at most eight) bytes of {@code sequence} into {@code bits} bits. */
+    static int hash(long sequence, int length, int bits) {
+        return (int) (((sequence << (64 - 8 * length)) * 0xCF1BBCDCB7A56463L) >>> (64 - bits));
+    }
+
+    /** Hashes four bytes into {@code bits} bits. */
+    static int hash(int sequence, int bits) {
+        return (sequence * 0x9E3779B1) >>> (32 - bits);
+    }
+
+    /**
+     * Returns how many bytes from {@code position} equal those from
+     * {@code reference}, which is before it, without reading at or past
+     * {@code limit}.
+     */
+    static int matchLength(byte[] data, int reference, int position, int limit) {
+        int length = 0;
+        while (position + length + 8 <= limit) {
+            long diff = (long) LONG_LE.get(data, position + length) ^ (long) LONG_LE.get(data, reference + length);
+            if (diff != 0) {
+                return length + (Long.numberOfTrailingZeros(diff) >>> 3);
+            }
+            length += 8;
+        }
+        while (position + length < limit && data[position + length] == data[reference + length]) {
+            length++;
+        }
+        return length;
+    }
+}
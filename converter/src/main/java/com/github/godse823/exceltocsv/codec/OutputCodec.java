@@ -0,0 +1,79 @@
+package com.github.godse823.exceltocsv.codec;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ServiceLoader;
+import java.util.concurrent.Executor;
+
+/**
+ * Compresses the CSV written for a sheet.
+ *
+ * <p>Three codecs are built in, all of which cut the CSV into blocks that are
+ * compressed on worker threads and written in order:
+ *
+ * <ul>
+ *   <li>{@code gzip}: one gzip member, each block deflated with the end of the
+ *       block before it as its dictionary, like {@code pigz}; levels 1 to 9;</li>
+ *   <li>{@code lz4}: an LZ4 frame of independent blocks;</li>
+ *   <li>{@code zstd}: one Zstandard frame of independently encoded 1M
+ *       segments, with the predefined sequence tables. It favours speed
+ *       over ratio.</li>
+ * </ul>
+ *
+ * Further codecs can be added as {@link ServiceLoader} providers of this
+ * interface. An available provider takes precedence over a built-in codec of
+ * the same name, so a binding to the native zstd library, say, replaces the
+ * built-in encoder once it is on the class path.
+ */
+public interface OutputCodec {
+
+    /** The name the codec is selected by, e.g. with {@code --compress}. */
+    String name();
+
+    /** The suffix appended to the names of compressed files, e.g. {@code .gz}. */
+    String extension();
+
+    /**
+     * The name and level of this codec in the form accepted by
+     * {@link #named}, e.g. {@code gzip:6}. Codecs with levels must override
+     * it, as it keys cached outputs.
+     */
+    default String spec() {
+        return name();
+    }
+
+    /** Whether the codec can be used in this process. */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Returns this codec compressing at the given level.
+     *
+     * @throws IllegalArgumentException if the codec has no levels or does not
+     *                                  support this one
+     */
+    default OutputCodec withLevel(int level) {
+        throw new IllegalArgumentException("Codec " + name() + " has no compression levels");
+    }
+
+    /**
+     * Returns a channel that compresses what is written to it into
+     * {@code out}, running the compression on {@code workers}. Closing the
+     * channel writes the end of the compressed stream and leaves {@code out}
+     * open. A conversion that fails abandons the channel without closing it,
+     * so that no well-formed but truncated stream is produced; it must then
+     * hold nothing that the garbage collector cannot reclaim.
+     */
+    WritableByteChannel compress(WritableByteChannel out, Executor workers) throws IOException;
+
+    /**
+     * Looks up a codec by {@code NAME} or {@code NAME:LEVEL}.
+     *
+     * @throws IllegalArgumentException if there is no available codec of that
+     *                                  name or it does not support the level
+     */
+    static OutputCodec named(String spec) {
+        return OutputCodecs.named(spec);
+    }
+}
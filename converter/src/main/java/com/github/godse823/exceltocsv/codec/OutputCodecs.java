@@ -0,0 +1,57 @@
+package com.github.godse823.exceltocsv.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/** Finds {@link OutputCodec}s: providers on the class path first, then the built-in ones. */
+final class OutputCodecs {
+
+    private static final List<OutputCodec> BUILT_IN =
+            List.of(new GzipCodec(GzipCodec.DEFAULT_LEVEL), Lz4Codec.INSTANCE, ZstdCodec.INSTANCE);
+
+    private OutputCodecs() {
+    }
+
+    /** Scanned on first use only, so that uncompressed runs never touch the class path. */
+    private static final class Providers {
+
+        static final List<OutputCodec> AVAILABLE = load();
+
+        private static List<OutputCodec> load() {
+            List<OutputCodec> available = new ArrayList<>();
+            for (OutputCodec codec : ServiceLoader.load(OutputCodec.class)) {
+                if (codec.isAvailable()) {
+                    available.add(codec);
+                }
+            }
+            return List.copyOf(available);
+        }
+    }
+
+    static OutputCodec named(String spec) {
+        int colon = spec.indexOf(':');
+        String name = colon < 0 ? spec : spec.substring(0, colon);
+        List<String> names = new ArrayList<>();
+        for (List<OutputCodec> codecs : List.of(Providers.AVAILABLE, BUILT_IN)) {
+            for (OutputCodec codec : codecs) {
+                if (codec.name().equals(name)) {
+                    return colon < 0 ? codec : codec.withLevel(level(spec.substring(colon + 1)));
+                }
+                if (!names.contains(codec.name())) {
+                    names.add(codec.name());
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown codec: " + name + " (available: "
+                + String.join(", ", names) + ")");
+    }
+
+    private static int level(String level) {
+        try {
+            return Integer.parseInt(level);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+    }
+}
@@ -0,0 +1,737 @@
+package com.github.godse823.exceltocsv.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes one Zstandard frame whose 128K blocks are encoded in independent 1M
+ * segments, one per worker task. Within a segment, matches of 8 bytes or
+ * more are found greedily across all of its blocks; none reaches into an
+ * earlier segment and repeated offsets are never used, so a segment needs
+ * nothing from the one before it. Literals are Huffman-coded per block;
+ * sequences use the predefined FSE tables, so their statistics are neither
+ * gathered nor sent. On CSV this comes within a few percent of the reference
+ * encoder's fastest level. A block that does not shrink is stored. Only the
+ * trailer sets the last-block flag, so a truncated stream is rejected.
+ */
+final class ZstdCodec implements OutputCodec {
+
+    static final ZstdCodec INSTANCE = new ZstdCodec();
+
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+    /** Block_Maximum_Size: no block may hold more, compressed or not. */
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int HASH_BITS = 16;
+    /**
+     * Shorter matches are left as literals: on CSV, Huffman-coded digits cost
+     * less than a sequence with a long offset.
+     */
+    private static final int MIN_MATCH = 8;
+
+    /**
+     * No content size, checksum or dictionary; a window of one segment, as
+     * exponent 10 (a 1M window) and mantissa 0.
+     */
+    private static final byte[] FRAME_HEADER = {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD, 0, 10 << 3};
+    /** An empty raw block with the last-block flag. */
+    private static final byte[] LAST_BLOCK = {1, 0, 0};
+    private static final int RAW_BLOCK = 0;
+    private static final int COMPRESSED_BLOCK = 2;
+    private static final int RAW_LITERALS = 0;
+    private static final int RLE_LITERALS = 1;
+    private static final int COMPRESSED_LITERALS = 2;
+    /** Below this, the Huffman tree would cost more than it saves. */
+    private static final int MIN_HUFFMAN_LITERALS = 64;
+    private static final int MAX_HUFFMAN_BITS = 11;
+    private static final int WEIGHT_TABLE_LOG = 6;
+    /** Offsets are sent as offset + 3; values up to 3 refer to repeated offsets. */
+    private static final int REPEAT_OFFSETS = 3;
+
+    private static final int[] LITERAL_LENGTH_BASE = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+            16, 18, 20, 22, 24, 28, 32, 40, 48, 64, 128, 256, 512, 1024, 2048, 4096,
+            8192, 16384, 32768, 65536};
+    private static final int[] LITERAL_LENGTH_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12,
+            13, 14, 15, 16};
+    private static final int[] MATCH_LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18,
+            19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34,
+            35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131, 259, 515, 1027, 2051,
+            4099, 8195, 16387, 32771, 65539};
+    private static final int[] MATCH_LENGTH_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11,
+            12, 13, 14, 15, 16};
+
+    // The predefined distributions of RFC 8878, section 3.1.1.3.2.2.
+    private static final FseTable LITERAL_LENGTHS = new FseTable(6, new int[] {
+            4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1,
+            2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1,
+            -1, -1, -1, -1});
+    private static final FseTable MATCH_LENGTHS = new FseTable(6, new int[] {
+            1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1,
+            -1, -1, -1, -1, -1});
+    private static final FseTable OFFSETS = new FseTable(5, new int[] {
+            1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1});
+
+    /** Codes of the short lengths, by value; longer ones are computed. */
+    private static final byte[] LITERAL_LENGTH_CODES = codes(LITERAL_LENGTH_BASE, 0, 64);
+    private static final byte[] MATCH_LENGTH_CODES = codes(MATCH_LENGTH_BASE, 3, 128);
+
+    private ZstdCodec() {
+    }
+
+    @Override
+    public String name() {
+        return "zstd";
+    }
+
+    @Override
+    public String extension() {
+        return ".zst";
+    }
+
+    @Override
+    public WritableByteChannel compress(WritableByteChannel out, Executor workers) {
+        return new BlockCompressingChannel<Encoder>(out, workers, SEGMENT_SIZE) {
+            @Override
+            Encoder newState() {
+                return new Encoder();
+            }
+
+            @Override
+            void compress(Encoder encoder, Block block, Block previous) {
+                block.outputLength = encoder.segment(block.input, block.length, block.output);
+            }
+
+            @Override
+            int maxCompressedLength(int segmentSize) {
+                return segmentSize + 3 * (segmentSize / BLOCK_SIZE + 1);
+            }
+
+            @Override
+            ByteBuffer header() {
+                return ByteBuffer.wrap(FRAME_HEADER);
+            }
+
+            @Override
+            ByteBuffer trailer(long segments) {
+                return ByteBuffer.wrap(LAST_BLOCK);
+            }
+        };
+    }
+
+    private static byte[] codes(int[] base, int offset, int count) {
+        byte[] codes = new byte[count];
+        int code = 0;
+        for (int value = 0; value < count; value++) {
+            while (code + 1 < base.length && base[code + 1] - offset <= value) {
+                code++;
+            }
+            codes[value] = (byte) code;
+        }
+        return codes;
+    }
+
+    private static int highestBit(int value) {
+        return 31 - Integer.numberOfLeadingZeros(value);
+    }
+
+    private static int literalLengthCode(int length) {
+        return length < 64 ? LITERAL_LENGTH_CODES[length] : highestBit(length) + 19;
+    }
+
+    private static int matchLengthCode(int length) {
+        int value = length - 3;
+        return value < 128 ? MATCH_LENGTH_CODES[value] : highestBit(value) + 36;
+    }
+
+    /**
+     * The encoding side of an FSE table built from a normalized
+     * distribution, laid out as in the reference encoder: states are spread
+     * over the table as the decoder spreads them, and each symbol maps the
+     * current state to its successor through {@code deltaNbBits} and
+     * {@code deltaFindState}.
+     */
+    private static final class FseTable {
+
+        final int log;
+        final int[] nextState;
+        final int[] deltaNbBits;
+        final int[] deltaFindState;
+
+        FseTable(int log, int[] counts) {
+            this.log = log;
+            int size = 1 << log;
+            int mask = size - 1;
+            int symbols = counts.length;
+            int[] cumulative = new int[symbols + 1];
+            int[] spread = new int[size];
+            // "Less than 1" symbols take one cell each, from the end of the table.
+            int highThreshold = size - 1;
+            for (int s = 0; s < symbols; s++) {
+                if (counts[s] == -1) {
+                    cumulative[s + 1] = cumulative[s] + 1;
+                    spread[highThreshold--] = s;
+                } else {
+                    cumulative[s + 1] = cumulative[s] + counts[s];
+                }
+            }
+            int position = 0;
+            int step = (size >>> 1) + (size >>> 3) + 3;
+            for (int s = 0; s < symbols; s++) {
+                for (int n = 0; n < counts[s]; n++) {
+                    spread[position] = s;
+                    do {
+                        position = (position + step) & mask;
+                    } while (position > highThreshold);
+                }
+            }
+            nextState = new int[size];
+            for (int u = 0; u < size; u++) {
+                nextState[cumulative[spread[u]]++] = size + u;
+            }
+            deltaNbBits = new int[symbols];
+            deltaFindState = new int[symbols];
+            int total = 0;
+            for (int s = 0; s < symbols; s++) {
+                int count = counts[s];
+                if (count == 0) {
+                    continue;
+                }
+                if (count == -1 || count == 1) {
+                    deltaNbBits[s] = (log << 16) - size;
+                    deltaFindState[s] = total - 1;
+                    total++;
+                } else {
+                    int maxBitsOut = log - highestBit(count - 1);
+                    deltaNbBits[s] = (maxBitsOut << 16) - (count << maxBitsOut);
+                    deltaFindState[s] = total - count;
+                    total += count;
+                }
+            }
+        }
+
+        int initialState(int symbol) {
+            int bits = (deltaNbBits[symbol] + (1 << 15)) >>> 16;
+            int value = (bits << 16) - deltaNbBits[symbol];
+            return nextState[(value >>> bits) + deltaFindState[symbol]];
+        }
+    }
+
+    /** The match finder, sequence store and bit writer of one worker. */
+    private static final class Encoder {
+
+        private final int[] table = new int[1 << HASH_BITS];
+        private final byte[] literals = new byte[BLOCK_SIZE];
+        private final int[] literalLengths = new int[BLOCK_SIZE / MIN_MATCH + 1];
+        private final int[] matchLengths = new int[literalLengths.length];
+        private final int[] offsets = new int[literalLengths.length];
+        // Literals plus at most 69 bits per sequence, with room for a word past the end.
+        private final byte[] body = new byte[4 * BLOCK_SIZE + 64];
+        private final int[] counts = new int[256];
+        private final long[] leaves = new long[256];
+        private final long[] nodeWeights = new long[2 * 256];
+        private final int[] parents = new int[2 * 256];
+        private final int[] depths = new int[2 * 256];
+        private final int[] codeLengths = new int[256];
+        private final int[] codes = new int[256];
+        private final int[] weights = new int[256];
+        private final int[] weightCounts = new int[MAX_HUFFMAN_BITS + 1];
+        private int literalCount;
+        private int sequenceCount;
+        private long bits;
+        private int bitCount;
+        private int position;
+
+        /** Encodes {@code src[0, length)} as the blocks of one segment into {@code dst}; returns their size. */
+        int segment(byte[] src, int length, byte[] dst) {
+            int op = 0;
+            Arrays.fill(table, -1);
+            for (int start = 0; start < length; start += BLOCK_SIZE) {
+                op = block(src, start, Math.min(start + BLOCK_SIZE, length), dst, op);
+            }
+            return op;
+        }
+
+        private int block(byte[] src, int start, int end, byte[] dst, int op) {
+            findSequences(src, start, end);
+            int size = encodeBody();
+            int rawSize = end - start;
+            if (size < rawSize) {
+                writeBlockHeader(dst, op, COMPRESSED_BLOCK, size);
+                System.arraycopy(body, 0, dst, op + 3, size);
+                return op + 3 + size;
+            }
+            writeBlockHeader(dst, op, RAW_BLOCK, rawSize);
+            System.arraycopy(src, start, dst, op + 3, rawSize);
+            return op + 3 + rawSize;
+        }
+
+        private static void writeBlockHeader(byte[] dst, int op, int type, int size) {
+            int header = (type << 1) | (size << 3);
+            dst[op] = (byte) header;
+            dst[op + 1] = (byte) (header >>> 8);
+            dst[op + 2] = (byte) (header >>> 16);
+        }
+
+        /** Splits {@code src[start, end)} into sequences, matching anywhere earlier in the segment. */
+        private void findSequences(byte[] src, int start, int end) {
+            literalCount = 0;
+            sequenceCount = 0;
+            int anchor = start;
+            int ip = start;
+            int misses = 0;
+            while (ip + 8 <= end) {
+                long sequence = LzMatching.readLong(src, ip);
+                int hash = LzMatching.hash(sequence, MIN_MATCH, HASH_BITS);
+                int reference = table[hash];
+                table[hash] = ip;
+                int matchLength = reference < 0 ? 0 : LzMatching.matchLength(src, reference, ip, end);
+                if (matchLength < MIN_MATCH) {
+                    ip += 1 + (misses++ >>> 6);
+                    continue;
+                }
+                misses = 0;
+                while (ip > anchor && reference > 0 && src[ip - 1] == src[reference - 1]) {
+                    ip--;
+                    reference--;
+                    matchLength++;
+                }
+                addLiterals(src, anchor, ip);
+                literalLengths[sequenceCount] = ip - anchor;
+                matchLengths[sequenceCount] = matchLength;
+                offsets[sequenceCount] = ip - reference;
+                sequenceCount++;
+                ip += matchLength;
+                anchor = ip;
+                if (ip + 6 <= end) {
+                    table[LzMatching.hash(LzMatching.readLong(src, ip - 2), MIN_MATCH, HASH_BITS)] = ip - 2;
+                }
+            }
+            addLiterals(src, anchor, end);
+        }
+
+        private void addLiterals(byte[] src, int from, int to) {
+            System.arraycopy(src, from, literals, literalCount, to - from);
+            literalCount += to - from;
+        }
+
+        /** Writes the literals and sequences sections of a compressed block; returns their size. */
+        private int encodeBody() {
+            int op = literalCount >= MIN_HUFFMAN_LITERALS ? encodeHuffmanLiterals() : -1;
+            if (op < 0) {
+                op = encodeRawLiterals(RAW_LITERALS);
+            }
+
+            int sequences = sequenceCount;
+            if (sequences < 128) {
+                body[op++] = (byte) sequences;
+            } else if (sequences < 0x7F00) {
+                body[op++] = (byte) ((sequences >>> 8) + 0x80);
+                body[op++] = (byte) sequences;
+            } else {
+                body[op++] = (byte) 0xFF;
+                body[op++] = (byte) (sequences - 0x7F00);
+                body[op++] = (byte) ((sequences - 0x7F00) >>> 8);
+            }
+            if (sequences == 0) {
+                return op;
+            }
+            // Predefined mode for literal lengths, offsets and match lengths alike.
+            body[op++] = 0;
+            return encodeSequences(op);
+        }
+
+        /** Writes the literals uncompressed, or as one repeated byte. */
+        private int encodeRawLiterals(int type) {
+            int count = literalCount;
+            int op = 0;
+            if (count < 32) {
+                body[op++] = (byte) (type | (count << 3));
+            } else if (count < 4096) {
+                body[op++] = (byte) (type | (1 << 2) | (count << 4));
+                body[op++] = (byte) (count >>> 4);
+            } else {
+                body[op++] = (byte) (type | (3 << 2) | (count << 4));
+                body[op++] = (byte) (count >>> 4);
+                body[op++] = (byte) (count >>> 12);
+            }
+            int length = type == RLE_LITERALS ? 1 : count;
+            System.arraycopy(literals, 0, body, op, length);
+            return op + length;
+        }
+
+        /**
+         * Huffman-codes the literals, in one stream up to 1023 bytes and in
+         * four above. Returns the end of the section, or -1 if the literals
+         * are better stored raw. The tree is sent as 4-bit weights when no
+         * literal is above 128, as is usual for ASCII, and FSE-coded
+         * otherwise.
+         */
+        private int encodeHuffmanLiterals() {
+            int count = literalCount;
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < count; i++) {
+                counts[literals[i] & 0xFF]++;
+            }
+            int last = 255;
+            while (counts[last] == 0) {
+                last--;
+            }
+            int maxBits = buildCode(last);
+            if (maxBits == 0) {
+                return encodeRawLiterals(RLE_LITERALS);
+            }
+            boolean single = count <= 1023;
+            int sizeBits = single ? 10 : count <= 16383 ? 14 : 18;
+            int headerSize = (4 + 2 * sizeBits + 7) / 8;
+            int start = headerSize;
+            int op = last <= 128 ? writeWeights(start, last, maxBits) : writeCompressedWeights(start, last, maxBits);
+            if (op < 0) {
+                return -1;
+            }
+            if (single) {
+                op = encodeHuffmanStream(0, count, op);
+            } else {
+                int jumpTable = op;
+                op += 6;
+                int segment = (count + 3) / 4;
+                for (int stream = 0; stream < 4; stream++) {
+                    int from = stream * segment;
+                    int streamStart = op;
+                    op = encodeHuffmanStream(from, Math.min(from + segment, count), op);
+                    if (stream < 3) {
+                        body[jumpTable + 2 * stream] = (byte) (op - streamStart);
+                        body[jumpTable + 2 * stream + 1] = (byte) ((op - streamStart) >>> 8);
+                    }
+                }
+            }
+            int compressedSize = op - start;
+            if (compressedSize >= count) {
+                return -1;
+            }
+            int sizeFormat = single ? 0 : sizeBits == 14 ? 2 : 3;
+            long header = COMPRESSED_LITERALS | (sizeFormat << 2) | ((long) count << 4)
+                    | ((long) compressedSize << (4 + sizeBits));
+            for (int i = 0; i < headerSize; i++) {
+                body[i] = (byte) (header >>> (8 * i));
+            }
+            return op;
+        }
+
+        /** Stores the weights of the symbols below {@code last} in 4 bits each; returns the end. */
+        private int writeWeights(int start, int last, int maxBits) {
+            body[start] = (byte) (127 + last);
+            int op = start + 1;
+            for (int s = 0; s < last; s += 2) {
+                int high = weight(s, maxBits);
+                int low = s + 1 < last ? weight(s + 1, maxBits) : 0;
+                body[op++] = (byte) ((high << 4) | low);
+            }
+            return op;
+        }
+
+        /**
+         * FSE-codes the weights of the symbols below {@code last} with two
+         * interleaved states, as the reference encoder does, and returns the
+         * end, or -1 if they cannot be coded in the 127 bytes allowed.
+         */
+        private int writeCompressedWeights(int start, int last, int maxBits) {
+            Arrays.fill(weightCounts, 0);
+            int maxWeight = 0;
+            for (int s = 0; s < last; s++) {
+                int weight = weight(s, maxBits);
+                weights[s] = weight;
+                weightCounts[weight]++;
+                maxWeight = Math.max(maxWeight, weight);
+            }
+            if (weightCounts[maxWeight] == last) {
+                return -1;
+            }
+            int[] normalized = normalize(weightCounts, maxWeight + 1, last, WEIGHT_TABLE_LOG);
+            FseTable table = new FseTable(WEIGHT_TABLE_LOG, normalized);
+
+            bits = 0;
+            bitCount = 0;
+            position = start + 1;
+            writeTableDescription(normalized, WEIGHT_TABLE_LOG);
+            while (bitCount > 0) {
+                body[position++] = (byte) bits;
+                bits >>>= 8;
+                bitCount -= 8;
+            }
+            bits = 0;
+            bitCount = 0;
+
+            int n = last;
+            int state1;
+            int state2;
+            if ((n & 1) != 0) {
+                state1 = table.initialState(weights[--n]);
+                state2 = table.initialState(weights[--n]);
+                state1 = encode(table, state1, weights[--n]);
+            } else {
+                state2 = table.initialState(weights[--n]);
+                state1 = table.initialState(weights[--n]);
+            }
+            while (n > 0) {
+                state2 = encode(table, state2, weights[--n]);
+                state1 = encode(table, state1, weights[--n]);
+            }
+            addBits(state2, table.log);
+            addBits(state1, table.log);
+            int end = closeBits();
+            int size = end - (start + 1);
+            if (size >= 128) {
+                return -1;
+            }
+            body[start] = (byte) size;
+            return end;
+        }
+
+        /**
+         * Scales {@code counts} of the symbols below {@code symbols}, which
+         * sum to {@code total}, to sum to {@code 1 << log}, keeping every
+         * occurring symbol at 1 or more.
+         */
+        private static int[] normalize(int[] counts, int symbols, int total, int log) {
+            int size = 1 << log;
+            int[] normalized = new int[symbols];
+            int sum = 0;
+            for (int s = 0; s < symbols; s++) {
+                if (counts[s] > 0) {
+                    normalized[s] = Math.max(1, (int) (((long) counts[s] * size + total / 2) / total));
+                    sum += normalized[s];
+                }
+            }
+            while (sum != size) {
+                int largest = 0;
+                for (int s = 1; s < symbols; s++) {
+                    if (normalized[s] > normalized[largest]) {
+                        largest = s;
+                    }
+                }
+                int step = sum > size ? -1 : 1;
+                normalized[largest] += step;
+                sum += step;
+            }
+            return normalized;
+        }
+
+        /** Writes the header from which the decoder rebuilds an FSE table (RFC 8878, section 4.1.1). */
+        private void writeTableDescription(int[] normalized, int log) {
+            addBits(log - 5, 4);
+            int remaining = (1 << log) + 1;
+            int threshold = 1 << log;
+            int nbBits = log + 1;
+            boolean previousZero = false;
+            int symbol = 0;
+            while (symbol < normalized.length && remaining > 1) {
+                if (previousZero) {
+                    // Runs of zero counts are sent as 2-bit repeat flags.
+                    int run = symbol;
+                    while (normalized[symbol] == 0) {
+                        symbol++;
+                    }
+                    while (symbol >= run + 24) {
+                        run += 24;
+                        addBits(0xFFFF, 16);
+                    }
+                    while (symbol >= run + 3) {
+                        run += 3;
+                        addBits(3, 2);
+                    }
+                    addBits(symbol - run, 2);
+                }
+                int count = normalized[symbol++];
+                int max = (2 * threshold - 1) - remaining;
+                remaining -= count;
+                count++;
+                if (count >= threshold) {
+                    count += max;
+                }
+                addBits(count, count < max ? nbBits - 1 : nbBits);
+                previousZero = count == 1;
+                while (remaining < threshold) {
+                    nbBits--;
+                    threshold >>= 1;
+                }
+            }
+        }
+
+        private int weight(int symbol, int maxBits) {
+            return codeLengths[symbol] == 0 ? 0 : maxBits + 1 - codeLengths[symbol];
+        }
+
+        /** Writes literals {@code [from, to)} last to first, as the decoder reads the stream backwards. */
+        private int encodeHuffmanStream(int from, int to, int op) {
+            bits = 0;
+            bitCount = 0;
+            position = op;
+            for (int i = to - 1; i >= from; i--) {
+                int symbol = literals[i] & 0xFF;
+                addBits(codes[symbol], codeLengths[symbol]);
+            }
+            return closeBits();
+        }
+
+        /**
+         * Builds a Huffman code of at most {@link #MAX_HUFFMAN_BITS} bits for
+         * the counted symbols up to {@code last} and returns its longest code
+         * length, or 0 if only one symbol occurs. Counts are halved until the
+         * code fits. Codes are assigned as the decoder rebuilds them from the
+         * weights: shortest codes last, symbols of the same length in order.
+         */
+        private int buildCode(int last) {
+            int present = 0;
+            for (int s = 0; s <= last; s++) {
+                if (counts[s] > 0) {
+                    leaves[present++] = ((long) counts[s] << 8) | s;
+                }
+            }
+            if (present == 1) {
+                return 0;
+            }
+            int maxBits;
+            while (true) {
+                Arrays.sort(leaves, 0, present);
+                maxBits = codeLengths(present, last);
+                if (maxBits <= MAX_HUFFMAN_BITS) {
+                    break;
+                }
+                for (int i = 0; i < present; i++) {
+                    long weight = leaves[i] >>> 8;
+                    leaves[i] = (((weight >>> 1) | 1) << 8) | (leaves[i] & 0xFF);
+                }
+            }
+            int[] rankStart = new int[maxBits + 2];
+            for (int s = 0; s <= last; s++) {
+                if (codeLengths[s] > 0) {
+                    int weight = maxBits + 1 - codeLengths[s];
+                    rankStart[weight + 1] += 1 << (weight - 1);
+                }
+            }
+            for (int w = 1; w <= maxBits; w++) {
+                rankStart[w + 1] += rankStart[w];
+            }
+            for (int s = 0; s <= last; s++) {
+                if (codeLengths[s] > 0) {
+                    int weight = maxBits + 1 - codeLengths[s];
+                    codes[s] = rankStart[weight] >>> (weight - 1);
+                    rankStart[weight] += 1 << (weight - 1);
+                }
+            }
+            return maxBits;
+        }
+
+        /**
+         * Computes Huffman code lengths for the {@code present} leaves, sorted
+         * by count, with the two-queue method; returns the longest.
+         */
+        private int codeLengths(int present, int last) {
+            Arrays.fill(codeLengths, 0, last + 1, 0);
+            int nodes = 2 * present - 1;
+            for (int i = 0; i < present; i++) {
+                nodeWeights[i] = leaves[i] >>> 8;
+            }
+            int leaf = 0;
+            int inner = present;
+            for (int next = present; next < nodes; next++) {
+                int a = leaf < present && (inner >= next || nodeWeights[leaf] <= nodeWeights[inner]) ? leaf++ : inner++;
+                int b = leaf < present && (inner >= next || nodeWeights[leaf] <= nodeWeights[inner]) ? leaf++ : inner++;
+                nodeWeights[next] = nodeWeights[a] + nodeWeights[b];
+                parents[a] = next;
+                parents[b] = next;
+            }
+            depths[nodes - 1] = 0;
+            int maxBits = 0;
+            for (int i = nodes - 2; i >= 0; i--) {
+                depths[i] = depths[parents[i]] + 1;
+                if (i < present) {
+                    codeLengths[(int) (leaves[i] & 0xFF)] = depths[i];
+                    maxBits = Math.max(maxBits, depths[i]);
+                }
+            }
+            return maxBits;
+        }
+
+        /**
+         * Writes the sequences bitstream, which the decoder reads backwards:
+         * the last sequence is written first and the initial states last.
+         */
+        private int encodeSequences(int op) {
+            bits = 0;
+            bitCount = 0;
+            position = op;
+            int n = sequenceCount - 1;
+            int literalLength = literalLengths[n];
+            int matchLength = matchLengths[n];
+            int offset = offsets[n] + REPEAT_OFFSETS;
+            int literalCode = literalLengthCode(literalLength);
+            int matchCode = matchLengthCode(matchLength);
+            int offsetCode = highestBit(offset);
+            int matchState = MATCH_LENGTHS.initialState(matchCode);
+            int offsetState = OFFSETS.initialState(offsetCode);
+            int literalState = LITERAL_LENGTHS.initialState(literalCode);
+            addBits(literalLength - LITERAL_LENGTH_BASE[literalCode], LITERAL_LENGTH_BITS[literalCode]);
+            addBits(matchLength - MATCH_LENGTH_BASE[matchCode], MATCH_LENGTH_BITS[matchCode]);
+            addBits(offset, offsetCode);
+            for (n--; n >= 0; n--) {
+                literalLength = literalLengths[n];
+                matchLength = matchLengths[n];
+                offset = offsets[n] + REPEAT_OFFSETS;
+                literalCode = literalLengthCode(literalLength);
+                matchCode = matchLengthCode(matchLength);
+                offsetCode = highestBit(offset);
+                offsetState = encode(OFFSETS, offsetState, offsetCode);
+                matchState = encode(MATCH_LENGTHS, matchState, matchCode);
+                literalState = encode(LITERAL_LENGTHS, literalState, literalCode);
+                addBits(literalLength - LITERAL_LENGTH_BASE[literalCode], LITERAL_LENGTH_BITS[literalCode]);
+                addBits(matchLength - MATCH_LENGTH_BASE[matchCode], MATCH_LENGTH_BITS[matchCode]);
+                addBits(offset, offsetCode);
+            }
+            addBits(matchState, MATCH_LENGTHS.log);
+            addBits(offsetState, OFFSETS.log);
+            addBits(literalState, LITERAL_LENGTHS.log);
+            return closeBits();
+        }
+
+        /** Writes the end mark, by which the decoder finds the last bit, and flushes. */
+        private int closeBits() {
+            addBits(1, 1);
+            while (bitCount > 0) {
+                body[position++] = (byte) bits;
+                bits >>>= 8;
+                bitCount -= 8;
+            }
+            return position;
+        }
+
+        private int encode(FseTable table, int state, int symbol) {
+            int bitsOut = (state + table.deltaNbBits[symbol]) >>> 16;
+            addBits(state, bitsOut);
+            return table.nextState[(state >>> bitsOut) + table.deltaFindState[symbol]];
+        }
+
+        /** Appends the low {@code count} bits of {@code value}; at most 32 bits at a time. */
+        private void addBits(int value, int count) {
+            bits |= (value & ((1L << count) - 1)) << bitCount;
+            bitCount += count;
+            if (bitCount >= 32) {
+                LzMatching.writeInt(body, position, (int) bits);
+                position += 4;
+                bits >>>= 32;
+                bitCount -= 32;
+            }
+        }
+    }
+}
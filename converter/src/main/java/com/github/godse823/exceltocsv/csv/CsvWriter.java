@@ -0,0 +1,168 @@
+package com.github.godse823.exceltocsv.csv;
+
+import com.github.godse823.exceltocsv.RowBuffer;
+import com.github.godse823.exceltocsv.SheetWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes rows as RFC 4180 CSV. A field is quoted only when it contains the
+ * delimiter, a double quote, CR or LF; embedded quotes are doubled.
+ *
+ * <p>Cells are copied as UTF-8 bytes from the {@link RowBuffer} into a
+ * direct {@link ByteBuffer}, which is handed to the channel when full, so a
+ * {@code FileChannel} target writes without any intermediate copy. Whether a
+ * field needs quoting is decided in one pass that tests eight bytes at a
+ * time for all four special characters.
+ */
+public final class CsvWriter implements SheetWriter, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte QUOTE = '"';
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long QUOTES = ONES * QUOTE;
+    private static final long LINE_FEEDS = ONES * '\n';
+    private static final long CARRIAGE_RETURNS = ONES * '\r';
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final byte delimiter;
+    private final long delimiters;
+    private final byte[] lineSeparator;
+    private long bytesWritten;
+
+    public CsvWriter(WritableByteChannel channel, char delimiter, String lineSeparator) {
+        this(channel, ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE), delimiter, lineSeparator);
+    }
+
+    /**
+     * Creates a writer that stages output in {@code buffer}, which may be
+     * reused by another writer once this one has been flushed.
+     */
+    public CsvWriter(WritableByteChannel channel, ByteBuffer buffer, char delimiter, String lineSeparator) {
+        if (delimiter > 0x7F || delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+            throw new IllegalArgumentException("Unsupported CSV delimiter: " + delimiter);
+        }
+        if (buffer.capacity() < 16) {
+            throw new IllegalArgumentException("CSV buffer too small: " + buffer.capacity());
+        }
+        this.channel = channel;
+        this.buffer = buffer.clear();
+        this.delimiter = (byte) delimiter;
+        this.delimiters = ONES * delimiter;
+        this.lineSeparator = lineSeparator.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void row(RowBuffer row) throws IOException {
+        byte[] data = row.array();
+        for (int i = 0, n = row.cellCount(); i < n; i++) {
+            if (i > 0) {
+                write(delimiter);
+            }
+            writeField(data, row.start(i), row.end(i));
+        }
+        write(lineSeparator, 0, lineSeparator.length);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flush();
+    }
+
+    @Override
+    public long bytesWritten() {
+        return bytesWritten + buffer.position();
+    }
+
+    /** Writes all buffered bytes to the channel. */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeField(byte[] data, int start, int end) throws IOException {
+        if (!needsQuoting(data, start, end)) {
+            write(data, start, end - start);
+            return;
+        }
+        write(QUOTE);
+        int runStart = start;
+        for (int i = start; i < end; i++) {
+            if (data[i] == QUOTE) {
+                write(data, runStart, i - runStart + 1);
+                write(QUOTE);
+                runStart = i + 1;
+            }
+        }
+        write(data, runStart, end - runStart);
+        write(QUOTE);
+    }
+
+    /**
+     * Tests for the delimiter, quote, CR and LF using the classic
+     * "has zero byte" bit trick on eight bytes per step.
+     */
+    boolean needsQuoting(byte[] data, int start, int end) {
+        int i = start;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            long word = (long) LONGS.get(data, i);
+            if ((zeroBytes(word ^ delimiters) | zeroBytes(word ^ QUOTES)
+                    | zeroBytes(word ^ LINE_FEEDS) | zeroBytes(word ^ CARRIAGE_RETURNS)) != 0) {
+                return true;
+            }
+        }
+        for (; i < end; i++) {
+            byte b = data[i];
+            if (b == delimiter || b == QUOTE || b == '\n' || b == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    private void write(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(b);
+    }
+
+    private void write(byte[] data, int offset, int length) throws IOException {
+        while (length > buffer.remaining()) {
+            int n = buffer.remaining();
+            buffer.put(data, offset, n);
+            offset += n;
+            length -= n;
+            flush();
+        }
+        buffer.put(data, offset, length);
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.godse823.exceltocsv.format;
+
+import com.github.godse823.exceltocsv.RowBuffer;
+
+/**
+ * A compiled number format: the formatting program for one format code,
+ * built once per distinct code by {@link CellFormats} and then reused for
+ * every cell with that style. Instances are immutable and thread-safe.
+ */
+public abstract class CellFormat {
+
+    /** The General format: numbers are written as stored. */
+    public static final CellFormat GENERAL = new GeneralFormat();
+
+    CellFormat() {
+    }
+
+    /** Whether this format leaves cell values unchanged. */
+    public boolean isGeneral() {
+        return false;
+    }
+
+    /**
+     * Whether this format shows numbers as dates or times of day, as opposed
+     * to plain numbers or elapsed durations such as {@code [h]:mm}.
+     */
+    public boolean isDate() {
+        return false;
+    }
+
+    /**
+     * Converts a serial number displayed by this {@linkplain #isDate() date}
+     * format to days since 1970-01-01, with the time of day as the fraction.
+     *
+     * @throws UnsupportedOperationException if this is not a date format
+     */
+    public double epochDays(double serial) {
+        throw new UnsupportedOperationException("Not a date format");
+    }
+
+    /**
+     * Formats a number given as UTF-8 decimal text, as stored in XLSX. Text
+     * that is not a number is written unchanged.
+     */
+    public void format(byte[] text, int offset, int length, RowBuffer out, FormatScratch scratch) {
+        Decimal value = scratch.decimal;
+        if (!value.parse(text, offset, length)) {
+            out.append(text, offset, length);
+            return;
+        }
+        format(value, out);
+    }
+
+    /** Formats a binary floating-point value, as stored in BIFF8. */
+    public void format(double value, RowBuffer out, FormatScratch scratch) {
+        Decimal decimal = scratch.decimal;
+        decimal.set(value);
+        format(decimal, out);
+    }
+
+    /** Formats {@code value}, which may be modified in the process. */
+    abstract void format(Decimal value, RowBuffer out);
+
+    /** Passes XLSX text through untouched and renders doubles with 15 significant digits. */
+    private static final class GeneralFormat extends CellFormat {
+
+        @Override
+        public boolean isGeneral() {
+            return true;
+        }
+
+        @Override
+        public void format(byte[] text, int offset, int length, RowBuffer out, FormatScratch scratch) {
+            out.append(text, offset, length);
+        }
+
+        @Override
+        void format(Decimal value, RowBuffer out) {
+            value.appendGeneral(out);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.github.godse823.exceltocsv.format;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles number format codes into {@link CellFormat}s, caching one
+ * compiled format per distinct code. A workbook builds one instance while
+ * loading its styles; the instance itself is not thread-safe, but the
+ * formats it returns are. Compiled formats are also kept process-wide, up
+ * to a bound, so that a long-running process converting many workbooks
+ * compiles each code once.
+ *
+ * <p>Codes that cannot be rendered faithfully without a locale or without
+ * arbitrary precision arithmetic (scientific notation, fractions, text
+ * sections) compile to {@link CellFormat#GENERAL}. The locale-dependent
+ * built-in date formats 14 and 22 are rendered as ISO 8601.
+ */
+public final class CellFormats {
+
+    private static final Map<Integer, String> BUILTIN = Map.ofEntries(
+            Map.entry(0, "General"),
+            Map.entry(1, "0"),
+            Map.entry(2, "0.00"),
+            Map.entry(3, "#,##0"),
+            Map.entry(4, "#,##0.00"),
+            Map.entry(9, "0%"),
+            Map.entry(10, "0.00%"),
+            Map.entry(11, "0.00E+00"),
+            Map.entry(12, "# ?/?"),
+            Map.entry(13, "# ??/??"),
+            Map.entry(14, "yyyy-mm-dd"),
+            Map.entry(15, "d-mmm-yy"),
+            Map.entry(16, "d-mmm"),
+            Map.entry(17, "mmm-yy"),
+            Map.entry(18, "h:mm AM/PM"),
+            Map.entry(19, "h:mm:ss AM/PM"),
+            Map.entry(20, "h:mm"),
+            Map.entry(21, "h:mm:ss"),
+            Map.entry(22, "yyyy-mm-dd hh:mm"),
+            Map.entry(37, "#,##0 ;(#,##0)"),
+            Map.entry(38, "#,##0 ;[Red](#,##0)"),
+            Map.entry(39, "#,##0.00;(#,##0.00)"),
+            Map.entry(40, "#,##0.00;[Red](#,##0.00)"),
+            Map.entry(45, "mm:ss"),
+            Map.entry(46, "[h]:mm:ss"),
+            Map.entry(47, "mm:ss.0"),
+            Map.entry(48, "##0.0E+0"),
+            Map.entry(49, "@"));
+
+    /** Enough for the formats of thousands of typical workbooks; codes beyond it are compiled per workbook. */
+    private static final int SHARED_LIMIT = 4096;
+    private static final Map<String, CellFormat> SHARED_1900 = new ConcurrentHashMap<>();
+    private static final Map<String, CellFormat> SHARED_1904 = new ConcurrentHashMap<>();
+
+    private final boolean date1904;
+    private final Map<String, CellFormat> cache = new HashMap<>();
+    private final Map<String, CellFormat> shared;
+
+    /**
+     * @param date1904 whether serial dates count from 1904-01-01 rather than
+     *                 from the 1900 epoch
+     */
+    public CellFormats(boolean date1904) {
+        this.date1904 = date1904;
+        this.shared = date1904 ? SHARED_1904 : SHARED_1900;
+    }
+
+    /** The format code of a built-in format id, or {@code null} if there is none. */
+    public static String builtinCode(int id) {
+        return BUILTIN.get(id);
+    }
+
+    /**
+     * Returns the format for a cell style.
+     *
+     * @param customCode the code the workbook declares for {@code id}, or
+     *                   {@code null} for built-in ids
+     */
+    public CellFormat forId(int id, String customCode) {
+        String code = customCode != null ? customCode : builtinCode(id);
+        return code == null ? CellFormat.GENERAL : forCode(code);
+    }
+
+    public CellFormat forCode(String code) {
+        CellFormat format = cache.get(code);
+        if (format == null) {
+            format = shared.get(code);
+            if (format == null) {
+                format = compile(code);
+                if (shared.size() < SHARED_LIMIT) {
+                    shared.putIfAbsent(code, format);
+                }
+            }
+            cache.put(code, format);
+        }
+        return format;
+    }
+
+    private CellFormat compile(String code) {
+        List<String> sections = sections(code);
+        if (sections.isEmpty() || sections.get(0).equalsIgnoreCase("General")) {
+            return CellFormat.GENERAL;
+        }
+        String first = sections.get(0);
+        if (DateTimeFormat.isDateTime(first)) {
+            return DateTimeFormat.compile(stripConditions(first), date1904);
+        }
+        for (String section : sections) {
+            if (DateTimeFormat.isDateTime(section)) {
+                return CellFormat.GENERAL;
+            }
+        }
+        List<String> numeric = new ArrayList<>(sections.size());
+        for (String section : sections) {
+            numeric.add(stripConditions(section));
+        }
+        NumericFormat format = NumericFormat.compile(numeric);
+        return format == null ? CellFormat.GENERAL : format;
+    }
+
+    /** Splits a code on unquoted, unescaped semicolons. */
+    private static List<String> sections(String code) {
+        List<String> sections = new ArrayList<>(4);
+        int start = 0;
+        boolean quoted = false;
+        boolean bracketed = false;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (quoted) {
+                continue;
+            } else if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                bracketed = true;
+            } else if (c == ']') {
+                bracketed = false;
+            } else if (c == ';' && !bracketed) {
+                sections.add(code.substring(start, i));
+                start = i + 1;
+            }
+        }
+        sections.add(code.substring(start));
+        return sections;
+    }
+
+    /**
+     * Drops colour and condition prefixes such as {@code [Red]} or
+     * {@code [<100]}; currency ({@code [$...]}) and elapsed-time brackets are
+     * kept for the section compilers.
+     */
+    private static String stripConditions(String section) {
+        StringBuilder out = null;
+        int i = 0;
+        while (i < section.length()) {
+            char c = section.charAt(i);
+            if (c == '"') {
+                int close = section.indexOf('"', i + 1);
+                i = close < 0 ? section.length() : close + 1;
+                continue;
+            }
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                int close = section.indexOf(']', i);
+                if (close < 0) {
+                    break;
+                }
+                String inner = section.substring(i + 1, close);
+                if (!inner.startsWith("$") && !isElapsed(inner)) {
+                    if (out == null) {
+                        out = new StringBuilder(section);
+                    }
+                    int removed = section.length() - out.length();
+                    out.delete(i - removed, close + 1 - removed);
+                }
+                i = close + 1;
+                continue;
+            }
+            i++;
+        }
+        return out == null ? section : out.toString();
+    }
+
+    private static boolean isElapsed(String inner) {
+        if (inner.isEmpty()) {
+            return false;
+        }
+        char first = Character.toLowerCase(inner.charAt(0));
+        if (first != 'h' && first != 'm' && first != 's') {
+            return false;
+        }
+        for (int i = 1; i < inner.length(); i++) {
+            if (Character.toLowerCase(inner.charAt(i)) != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
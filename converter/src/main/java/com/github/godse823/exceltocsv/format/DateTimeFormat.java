@@ -0,0 +1,403 @@
+package com.github.godse823.exceltocsv.format;
+
+import com.github.godse823.exceltocsv.RowBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Date and time formats such as {@code yyyy-mm-dd}, {@code d-mmm-yy},
+ * {@code h:mm:ss AM/PM} or {@code [h]:mm:ss}, compiled to a flat list of
+ * opcodes. Serial numbers are converted to calendar fields with integer
+ * arithmetic, honouring the 1900 and 1904 date systems and Excel's fictitious
+ * 29 February 1900.
+ */
+final class DateTimeFormat extends CellFormat {
+
+    private static final int LITERAL = 0;
+    private static final int YEAR_2 = 1;
+    private static final int YEAR_4 = 2;
+    private static final int MONTH = 3;
+    private static final int MONTH_2 = 4;
+    private static final int MONTH_ABBREVIATED = 5;
+    private static final int MONTH_FULL = 6;
+    private static final int MONTH_LETTER = 7;
+    private static final int DAY = 8;
+    private static final int DAY_2 = 9;
+    private static final int WEEKDAY_ABBREVIATED = 10;
+    private static final int WEEKDAY_FULL = 11;
+    private static final int HOUR = 12;
+    private static final int HOUR_2 = 13;
+    private static final int MINUTE = 14;
+    private static final int MINUTE_2 = 15;
+    private static final int SECOND = 16;
+    private static final int SECOND_2 = 17;
+    private static final int FRACTION = 18;
+    private static final int AM_PM = 19;
+    private static final int A_P = 20;
+    private static final int ELAPSED_HOURS = 21;
+    private static final int ELAPSED_MINUTES = 22;
+    private static final int ELAPSED_SECONDS = 23;
+
+    private static final String[] MONTHS = {
+        "January", "February", "March", "April", "May", "June",
+        "July", "August", "September", "October", "November", "December"
+    };
+    private static final String[] WEEKDAYS = {
+        "Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday"
+    };
+    private static final byte[][] MONTH_NAMES = names(MONTHS, Integer.MAX_VALUE);
+    private static final byte[][] MONTH_ABBREVIATIONS = names(MONTHS, 3);
+    private static final byte[][] WEEKDAY_NAMES = names(WEEKDAYS, Integer.MAX_VALUE);
+    private static final byte[][] WEEKDAY_ABBREVIATIONS = names(WEEKDAYS, 3);
+
+    /** 1970-01-01 as a serial number in the 1900 and 1904 date systems. */
+    private static final int EPOCH_1900 = 25569;
+    private static final int EPOCH_1904 = 24107;
+    /** 9999-12-31 is the last date Excel can display. */
+    private static final double MAX_SERIAL = 2958466;
+
+    private final int[] ops;
+    private final int[] widths;
+    private final byte[][] literals;
+    private final boolean twelveHour;
+    private final int fractionDigits;
+    private final boolean date1904;
+    private final boolean elapsed;
+
+    private DateTimeFormat(int[] ops, int[] widths, byte[][] literals, boolean date1904) {
+        this.ops = ops;
+        this.widths = widths;
+        this.literals = literals;
+        this.date1904 = date1904;
+        boolean ampm = false;
+        boolean duration = false;
+        int fraction = 0;
+        for (int i = 0; i < ops.length; i++) {
+            ampm |= ops[i] == AM_PM || ops[i] == A_P;
+            duration |= ops[i] == ELAPSED_HOURS || ops[i] == ELAPSED_MINUTES || ops[i] == ELAPSED_SECONDS;
+            if (ops[i] == FRACTION) {
+                fraction = Math.max(fraction, widths[i]);
+            }
+        }
+        this.twelveHour = ampm;
+        this.elapsed = duration;
+        this.fractionDigits = fraction;
+    }
+
+    /** Whether a format section contains date or time placeholders outside literals. */
+    static boolean isDateTime(String section) {
+        int n = section.length();
+        for (int i = 0; i < n; i++) {
+            char c = Character.toLowerCase(section.charAt(i));
+            switch (c) {
+                case '"' -> {
+                    int close = section.indexOf('"', i + 1);
+                    i = close < 0 ? n : close;
+                }
+                case '\\', '_', '*' -> i++;
+                case '[' -> {
+                    int close = section.indexOf(']', i);
+                    String inner = section.substring(i + 1, close < 0 ? n : close).toLowerCase();
+                    if (!inner.isEmpty() && (inner.chars().allMatch(ch -> ch == 'h')
+                            || inner.chars().allMatch(ch -> ch == 'm') || inner.chars().allMatch(ch -> ch == 's'))) {
+                        return true;
+                    }
+                    i = close < 0 ? n : close;
+                }
+                case 'y', 'm', 'd', 'h', 's' -> {
+                    return true;
+                }
+                default -> {
+                }
+            }
+        }
+        return false;
+    }
+
+    static DateTimeFormat compile(String section, boolean date1904) {
+        List<int[]> tokens = new ArrayList<>();
+        List<byte[]> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int n = section.length();
+        for (int i = 0; i < n; i++) {
+            char c = section.charAt(i);
+            char lower = Character.toLowerCase(c);
+            int run = 1;
+            while (i + run < n && Character.toLowerCase(section.charAt(i + run)) == lower) {
+                run++;
+            }
+            int op = -1;
+            int width = 0;
+            switch (lower) {
+                case 'y' -> op = run <= 2 ? YEAR_2 : YEAR_4;
+                case 'm' -> op = switch (run) {
+                    case 1 -> MONTH;
+                    case 2 -> MONTH_2;
+                    case 3 -> MONTH_ABBREVIATED;
+                    case 5 -> MONTH_LETTER;
+                    default -> MONTH_FULL;
+                };
+                case 'd' -> op = switch (run) {
+                    case 1 -> DAY;
+                    case 2 -> DAY_2;
+                    case 3 -> WEEKDAY_ABBREVIATED;
+                    default -> WEEKDAY_FULL;
+                };
+                case 'h' -> op = run == 1 ? HOUR : HOUR_2;
+                case 's' -> op = run == 1 ? SECOND : SECOND_2;
+                default -> {
+                }
+            }
+            if (op >= 0) {
+                flush(literal, tokens, literals);
+                tokens.add(new int[] {op, 0});
+                i += run - 1;
+                continue;
+            }
+            if (section.regionMatches(true, i, "AM/PM", 0, 5)) {
+                flush(literal, tokens, literals);
+                tokens.add(new int[] {AM_PM, 0});
+                i += 4;
+                continue;
+            }
+            if (section.regionMatches(true, i, "A/P", 0, 3)) {
+                flush(literal, tokens, literals);
+                tokens.add(new int[] {A_P, 0});
+                i += 2;
+                continue;
+            }
+            switch (c) {
+                case '"' -> {
+                    int close = section.indexOf('"', i + 1);
+                    int end = close < 0 ? n : close;
+                    literal.append(section, i + 1, end);
+                    i = end;
+                }
+                case '\\' -> {
+                    if (i + 1 < n) {
+                        literal.append(section.charAt(++i));
+                    }
+                }
+                case '_', '*' -> i++;
+                case '[' -> {
+                    int close = section.indexOf(']', i);
+                    int end = close < 0 ? n : close;
+                    String inner = section.substring(i + 1, end).toLowerCase();
+                    if (!inner.isEmpty() && inner.chars().allMatch(ch -> ch == 'h')) {
+                        width = inner.length();
+                        op = ELAPSED_HOURS;
+                    } else if (!inner.isEmpty() && inner.chars().allMatch(ch -> ch == 'm')) {
+                        width = inner.length();
+                        op = ELAPSED_MINUTES;
+                    } else if (!inner.isEmpty() && inner.chars().allMatch(ch -> ch == 's')) {
+                        width = inner.length();
+                        op = ELAPSED_SECONDS;
+                    } else if (inner.startsWith("$")) {
+                        int dash = inner.indexOf('-');
+                        literal.append(section, i + 2, i + 1 + (dash < 0 ? inner.length() : dash));
+                    }
+                    if (op >= 0) {
+                        flush(literal, tokens, literals);
+                        tokens.add(new int[] {op, width});
+                    }
+                    i = end;
+                }
+                case '.' -> {
+                    int zeros = 0;
+                    while (i + 1 + zeros < n && section.charAt(i + 1 + zeros) == '0') {
+                        zeros++;
+                    }
+                    if (zeros > 0 && !tokens.isEmpty() && isSecond(tokens.get(tokens.size() - 1)[0])
+                            && literal.length() == 0) {
+                        tokens.add(new int[] {FRACTION, Math.min(zeros, 3)});
+                        i += zeros;
+                    } else {
+                        literal.append(c);
+                    }
+                }
+                default -> literal.append(c);
+            }
+        }
+        flush(literal, tokens, literals);
+        resolveMinutes(tokens);
+
+        int[] ops = new int[tokens.size()];
+        int[] widths = new int[tokens.size()];
+        for (int i = 0; i < ops.length; i++) {
+            ops[i] = tokens.get(i)[0];
+            widths[i] = tokens.get(i)[1];
+        }
+        return new DateTimeFormat(ops, widths, literals.toArray(new byte[0][]), date1904);
+    }
+
+    /** An {@code m} or {@code mm} next to hours or seconds means minutes, not months. */
+    private static void resolveMinutes(List<int[]> tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            int op = tokens.get(i)[0];
+            if (op != MONTH && op != MONTH_2) {
+                continue;
+            }
+            int previous = neighbour(tokens, i, -1);
+            int next = neighbour(tokens, i, 1);
+            if (previous == HOUR || previous == HOUR_2 || previous == ELAPSED_HOURS
+                    || isSecond(next) || next == ELAPSED_SECONDS) {
+                tokens.get(i)[0] = op == MONTH ? MINUTE : MINUTE_2;
+            }
+        }
+    }
+
+    private static int neighbour(List<int[]> tokens, int index, int step) {
+        for (int i = index + step; i >= 0 && i < tokens.size(); i += step) {
+            if (tokens.get(i)[0] != LITERAL) {
+                return tokens.get(i)[0];
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSecond(int op) {
+        return op == SECOND || op == SECOND_2;
+    }
+
+    private static void flush(StringBuilder literal, List<int[]> tokens, List<byte[]> literals) {
+        if (literal.length() > 0) {
+            tokens.add(new int[] {LITERAL, literals.size()});
+            literals.add(literal.toString().getBytes(StandardCharsets.UTF_8));
+            literal.setLength(0);
+        }
+    }
+
+    @Override
+    public boolean isDate() {
+        return !elapsed;
+    }
+
+    @Override
+    public double epochDays(double serial) {
+        if (date1904) {
+            return serial - EPOCH_1904;
+        }
+        // Before the fictitious 1900-02-29, serials are one day ahead of the calendar.
+        return serial < 60 ? serial - EPOCH_1900 + 1 : serial - EPOCH_1900;
+    }
+
+    @Override
+    void format(Decimal decimal, RowBuffer out) {
+        double serial = decimal.toDouble();
+        if (serial < 0 || serial >= MAX_SERIAL) {
+            decimal.appendGeneral(out);
+            return;
+        }
+        long unitsPerSecond = 1;
+        for (int i = 0; i < fractionDigits; i++) {
+            unitsPerSecond *= 10;
+        }
+        long unitsPerDay = 86_400 * unitsPerSecond;
+        long units = Math.round(serial * unitsPerDay);
+        long days = units / unitsPerDay;
+        long time = units % unitsPerDay;
+        long totalSeconds = units / unitsPerSecond;
+        int hour = (int) (time / (3600 * unitsPerSecond));
+        int minute = (int) (time / (60 * unitsPerSecond) % 60);
+        int second = (int) (time / unitsPerSecond % 60);
+        long fraction = time % unitsPerSecond;
+
+        // Calendar fields come back packed into one long to avoid allocating.
+        long date = civilDate((int) days);
+        int year = (int) (date >>> 20);
+        int month = (int) (date >>> 15 & 0x1F);
+        int day = (int) (date >>> 5 & 0x1F);
+        int weekday = (int) (date & 0x1F);
+
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case LITERAL -> out.append(literals[widths[i]]);
+                case YEAR_2 -> Decimal.appendInt(year % 100, 2, out);
+                case YEAR_4 -> Decimal.appendInt(year, 4, out);
+                case MONTH -> Decimal.appendInt(month, 1, out);
+                case MONTH_2 -> Decimal.appendInt(month, 2, out);
+                case MONTH_ABBREVIATED -> out.append(MONTH_ABBREVIATIONS[month - 1]);
+                case MONTH_FULL -> out.append(MONTH_NAMES[month - 1]);
+                case MONTH_LETTER -> out.append(MONTH_NAMES[month - 1][0]);
+                case DAY -> Decimal.appendInt(day, 1, out);
+                case DAY_2 -> Decimal.appendInt(day, 2, out);
+                case WEEKDAY_ABBREVIATED -> out.append(WEEKDAY_ABBREVIATIONS[weekday]);
+                case WEEKDAY_FULL -> out.append(WEEKDAY_NAMES[weekday]);
+                case HOUR -> Decimal.appendInt(twelveHour ? twelveHour(hour) : hour, 1, out);
+                case HOUR_2 -> Decimal.appendInt(twelveHour ? twelveHour(hour) : hour, 2, out);
+                case MINUTE -> Decimal.appendInt(minute, 1, out);
+                case MINUTE_2 -> Decimal.appendInt(minute, 2, out);
+                case SECOND -> Decimal.appendInt(second, 1, out);
+                case SECOND_2 -> Decimal.appendInt(second, 2, out);
+                case FRACTION -> {
+                    out.append((byte) '.');
+                    long digits = fraction;
+                    for (int d = widths[i]; d < fractionDigits; d++) {
+                        digits /= 10;
+                    }
+                    Decimal.appendInt(digits, widths[i], out);
+                }
+                case AM_PM -> {
+                    out.append((byte) (hour < 12 ? 'A' : 'P'));
+                    out.append((byte) 'M');
+                }
+                case A_P -> out.append((byte) (hour < 12 ? 'A' : 'P'));
+                case ELAPSED_HOURS -> Decimal.appendInt(totalSeconds / 3600, widths[i], out);
+                case ELAPSED_MINUTES -> Decimal.appendInt(totalSeconds / 60, widths[i], out);
+                case ELAPSED_SECONDS -> Decimal.appendInt(totalSeconds, widths[i], out);
+                default -> throw new IllegalStateException("Unknown date opcode " + ops[i]);
+            }
+        }
+    }
+
+    private static int twelveHour(int hour) {
+        int h = hour % 12;
+        return h == 0 ? 12 : h;
+    }
+
+    /**
+     * Converts a whole serial day number to {@code year << 20 | month << 15 |
+     * day << 5 | weekday} (weekday 0 = Sunday), using Howard Hinnant's
+     * days-to-civil algorithm.
+     */
+    private long civilDate(int serial) {
+        long epochDay;
+        if (date1904) {
+            epochDay = serial - EPOCH_1904;
+        } else if (serial == 0) {
+            // Excel displays serial 0 as 1900-01-00, a Saturday.
+            return pack(1900, 1, 0, 6);
+        } else if (serial == 60) {
+            // The fictitious 1900-02-29 kept for Lotus 1-2-3 compatibility.
+            return pack(1900, 2, 29, 3);
+        } else {
+            epochDay = serial < 60 ? serial - EPOCH_1900 + 1 : serial - EPOCH_1900;
+        }
+        // Excel counts weekdays through its fictitious leap day, so 1900-01-01 is a Sunday.
+        long weekdayBase = date1904 || serial > 60 ? epochDay : serial - EPOCH_1900;
+        int weekday = (int) Math.floorMod(weekdayBase + 4, 7L);
+        long z = epochDay + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        return pack(year, month, day, weekday);
+    }
+
+    private static long pack(int year, int month, int day, int weekday) {
+        return (long) year << 20 | (long) month << 15 | (long) day << 5 | weekday;
+    }
+
+    private static byte[][] names(String[] names, int length) {
+        return Arrays.stream(names)
+                .map(name -> name.substring(0, Math.min(length, name.length())).getBytes(StandardCharsets.US_ASCII))
+                .toArray(byte[][]::new);
+    }
+}
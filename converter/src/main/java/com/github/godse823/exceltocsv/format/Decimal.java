@@ -0,0 +1,295 @@
+package com.github.godse823.exceltocsv.format;
+
+import com.github.godse823.exceltocsv.RowBuffer;
+
+/**
+ * A mutable decimal number used as scratch space while formatting: a sign,
+ * up to {@value #MAX_DIGITS} significant digits and the position of the
+ * decimal point relative to the first digit. Parsing, rounding and digit
+ * output all work on the digits directly, so formatting never goes through
+ * {@code String} or {@code BigDecimal}.
+ */
+final class Decimal {
+
+    static final int MAX_DIGITS = 24;
+
+    /** Excel keeps 15 significant digits of precision. */
+    private static final int DOUBLE_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    final byte[] digits = new byte[MAX_DIGITS];
+    boolean negative;
+    /** Number of significant digits; trailing zeros are never stored. */
+    int count;
+    /** The value is {@code 0.d1d2d3... * 10^point}. */
+    int point;
+
+    boolean isZero() {
+        return count == 0;
+    }
+
+    /** Returns the digit at {@code index} counted from the first significant digit, or 0 outside. */
+    int digit(int index) {
+        return index >= 0 && index < count ? digits[index] : 0;
+    }
+
+    /**
+     * Parses plain or scientific decimal notation, as found in XLSX
+     * {@code <v>} elements. Returns {@code false} if the text is not a number.
+     */
+    boolean parse(byte[] text, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end && (text[i] & 0xFF) <= ' ') {
+            i++;
+        }
+        while (end > i && (text[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        negative = false;
+        count = 0;
+        point = 0;
+        if (i < end && (text[i] == '-' || text[i] == '+')) {
+            negative = text[i] == '-';
+            i++;
+        }
+        boolean anyDigit = false;
+        boolean afterPoint = false;
+        for (; i < end; i++) {
+            byte c = text[i];
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (c == '0' && count == 0) {
+                    if (afterPoint) {
+                        point--;
+                    }
+                    continue;
+                }
+                if (count < MAX_DIGITS) {
+                    digits[count++] = (byte) (c - '0');
+                }
+                if (!afterPoint) {
+                    point++;
+                }
+            } else if (c == '.' && !afterPoint) {
+                afterPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigit) {
+            return false;
+        }
+        if (i < end) {
+            if (text[i] != 'e' && text[i] != 'E') {
+                return false;
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (text[i] == '-' || text[i] == '+')) {
+                negativeExponent = text[i] == '-';
+                i++;
+            }
+            if (i == end) {
+                return false;
+            }
+            int exponent = 0;
+            for (; i < end; i++) {
+                byte c = text[i];
+                if (c < '0' || c > '9' || exponent > 10000) {
+                    return false;
+                }
+                exponent = exponent * 10 + (c - '0');
+            }
+            point += negativeExponent ? -exponent : exponent;
+        }
+        trim();
+        return true;
+    }
+
+    /** Sets the value from a double, keeping Excel's 15 significant digits. */
+    void set(double value) {
+        negative = value < 0;
+        count = 0;
+        point = 0;
+        double magnitude = Math.abs(value);
+        if (magnitude == 0 || !Double.isFinite(magnitude)) {
+            negative = false;
+            return;
+        }
+        int exponent = (int) Math.floor(Math.log10(magnitude));
+        long mantissa = Math.round(scale(magnitude, DOUBLE_DIGITS - 1 - exponent));
+        if (mantissa >= 1_000_000_000_000_000L) {
+            mantissa = (mantissa + 5) / 10;
+            exponent++;
+        } else if (mantissa < 100_000_000_000_000L) {
+            exponent--;
+            mantissa = Math.round(scale(magnitude, DOUBLE_DIGITS - 1 - exponent));
+        }
+        for (int i = DOUBLE_DIGITS - 1; i >= 0; i--) {
+            digits[i] = (byte) (mantissa % 10);
+            mantissa /= 10;
+        }
+        count = DOUBLE_DIGITS;
+        point = exponent + 1;
+        trim();
+    }
+
+    /**
+     * Returns the nearest double. Up to 15 digits with a small exponent
+     * convert with one exact multiplication or division; longer values, such
+     * as the 17 digits Excel writes for computed results, go through
+     * {@link Double#parseDouble}.
+     */
+    double toDouble() {
+        if (count == 0) {
+            return 0;
+        }
+        int exponent = point - count;
+        if (count > DOUBLE_DIGITS || exponent > 22 || exponent < -22) {
+            return slowToDouble();
+        }
+        long mantissa = 0;
+        for (int i = 0; i < count; i++) {
+            mantissa = mantissa * 10 + digits[i];
+        }
+        double value = scale(mantissa, exponent);
+        return negative ? -value : value;
+    }
+
+    private double slowToDouble() {
+        char[] text = new char[count + 16];
+        int n = 0;
+        if (negative) {
+            text[n++] = '-';
+        }
+        for (int i = 0; i < count; i++) {
+            text[n++] = (char) ('0' + digits[i]);
+        }
+        text[n++] = 'E';
+        String exponent = Integer.toString(point - count);
+        exponent.getChars(0, exponent.length(), text, n);
+        return Double.parseDouble(new String(text, 0, n + exponent.length()));
+    }
+
+    /** Shifts the decimal point, e.g. by 2 for a percentage. */
+    void shift(int places) {
+        if (count > 0) {
+            point += places;
+        }
+    }
+
+    /** Rounds half away from zero to {@code fractionDigits} digits after the point. */
+    void round(int fractionDigits) {
+        int keep = point + fractionDigits;
+        if (keep >= count) {
+            return;
+        }
+        if (keep < 0) {
+            count = 0;
+        } else {
+            boolean up = digits[keep] >= 5;
+            count = keep;
+            if (up) {
+                int i = count - 1;
+                while (i >= 0 && digits[i] == 9) {
+                    i--;
+                }
+                if (i < 0) {
+                    digits[0] = 1;
+                    count = 1;
+                    point++;
+                } else {
+                    digits[i]++;
+                    count = i + 1;
+                }
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Writes the value the way Excel's General format would: plain notation
+     * for ordinary magnitudes and {@code d.dddE+xx} for very large or small ones.
+     */
+    void appendGeneral(RowBuffer out) {
+        if (count == 0) {
+            out.append((byte) '0');
+            return;
+        }
+        if (negative) {
+            out.append((byte) '-');
+        }
+        if (point > DOUBLE_DIGITS || point < -8) {
+            out.append((byte) ('0' + digits[0]));
+            if (count > 1) {
+                out.append((byte) '.');
+                for (int i = 1; i < count; i++) {
+                    out.append((byte) ('0' + digits[i]));
+                }
+            }
+            int exponent = point - 1;
+            out.append((byte) 'E');
+            out.append((byte) (exponent < 0 ? '-' : '+'));
+            appendInt(Math.abs(exponent), 2, out);
+            return;
+        }
+        if (point <= 0) {
+            out.append((byte) '0');
+        } else {
+            for (int i = 0; i < point; i++) {
+                out.append((byte) ('0' + digit(i)));
+            }
+        }
+        if (count > point) {
+            out.append((byte) '.');
+            for (int i = point; i < count; i++) {
+                out.append((byte) ('0' + digit(i)));
+            }
+        }
+    }
+
+    /** Appends a non-negative integer padded with zeros to at least {@code width} digits. */
+    static void appendInt(long value, int width, RowBuffer out) {
+        int length = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            length++;
+        }
+        for (int i = length; i < width; i++) {
+            out.append((byte) '0');
+        }
+        long divisor = 1;
+        for (int i = 1; i < length; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    private void trim() {
+        while (count > 0 && digits[count - 1] == 0) {
+            count--;
+        }
+        if (count == 0) {
+            negative = false;
+            point = 0;
+        }
+    }
+
+    private static double scale(double value, int exponent) {
+        while (exponent > 22) {
+            value *= 1e22;
+            exponent -= 22;
+        }
+        while (exponent < -22) {
+            value /= 1e22;
+            exponent += 22;
+        }
+        return exponent >= 0 ? value * POWERS_OF_TEN[exponent] : value / POWERS_OF_TEN[-exponent];
+    }
+}
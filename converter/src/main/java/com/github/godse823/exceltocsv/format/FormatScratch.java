@@ -0,0 +1,20 @@
+package com.github.godse823.exceltocsv.format;
+
+/**
+ * Per-thread working state for {@link CellFormat}s. Formats themselves are
+ * immutable and shared; each reader owns one scratch instance and passes it
+ * to every call, which keeps formatting free of allocation.
+ */
+public final class FormatScratch {
+
+    final Decimal decimal = new Decimal();
+
+    /**
+     * Parses decimal text such as an XLSX cell value, returning
+     * {@link Double#NaN} if the text is not a number.
+     */
+    public double parse(byte[] text, int offset, int length) {
+        Decimal value = decimal;
+        return value.parse(text, offset, length) ? value.toDouble() : Double.NaN;
+    }
+}
@@ -0,0 +1,199 @@
+package com.github.godse823.exceltocsv.format;
+
+import com.github.godse823.exceltocsv.RowBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Fixed-point number formats such as {@code 0.00}, {@code #,##0},
+ * {@code 0.0%} or {@code $#,##0.00;($#,##0.00)}, with optional negative and
+ * zero sections.
+ *
+ * <p>Padding ({@code _x}) and fill ({@code *x}) directives only align text
+ * within a column and are dropped, since CSV has no column width; for the
+ * same reason {@code ?} pads with nothing rather than a space. Scientific
+ * and fraction formats are not compiled here; {@link CellFormats} falls back
+ * to General for them.
+ */
+final class NumericFormat extends CellFormat {
+
+    private final Section positive;
+    private final Section negative;
+    private final Section zero;
+
+    private NumericFormat(Section positive, Section negative, Section zero) {
+        this.positive = positive;
+        this.negative = negative;
+        this.zero = zero;
+    }
+
+    /** Compiles up to three sections, or returns {@code null} if one is not a plain numeric format. */
+    static NumericFormat compile(List<String> sections) {
+        Section[] compiled = new Section[Math.min(sections.size(), 3)];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = Section.compile(sections.get(i));
+            if (compiled[i] == null) {
+                return null;
+            }
+        }
+        return new NumericFormat(compiled[0],
+                compiled.length > 1 ? compiled[1] : null,
+                compiled.length > 2 ? compiled[2] : null);
+    }
+
+    @Override
+    void format(Decimal value, RowBuffer out) {
+        if (value.isZero() && zero != null) {
+            zero.write(value, out, false);
+        } else if (value.negative && negative != null) {
+            value.negative = false;
+            negative.write(value, out, false);
+        } else {
+            positive.write(value, out, value.negative);
+        }
+    }
+
+    private static final class Section {
+
+        private byte[] prefix;
+        private byte[] suffix;
+        private boolean hasDigits;
+        private boolean grouping;
+        private boolean hasPoint;
+        private int minIntegerDigits;
+        private int minFractionDigits;
+        private int maxFractionDigits;
+        private int percent;
+        private int thousandsScale;
+
+        static Section compile(String code) {
+            Section section = new Section();
+            StringBuilder prefix = new StringBuilder();
+            StringBuilder suffix = new StringBuilder();
+            boolean inFraction = false;
+            int n = code.length();
+            for (int i = 0; i < n; i++) {
+                char c = code.charAt(i);
+                StringBuilder literal = section.hasDigits ? suffix : prefix;
+                switch (c) {
+                    case '"' -> {
+                        int close = code.indexOf('"', i + 1);
+                        int end = close < 0 ? n : close;
+                        literal.append(code, i + 1, end);
+                        i = end;
+                    }
+                    case '\\' -> {
+                        if (i + 1 < n) {
+                            literal.append(code.charAt(++i));
+                        }
+                    }
+                    case '_', '*' -> i++;
+                    case '[' -> {
+                        int close = code.indexOf(']', i);
+                        int end = close < 0 ? n : close;
+                        if (i + 1 < end && code.charAt(i + 1) == '$') {
+                            int dash = code.indexOf('-', i);
+                            literal.append(code, i + 2, dash > 0 && dash < end ? dash : end);
+                        }
+                        i = end;
+                    }
+                    case '0', '#', '?' -> {
+                        if (suffix.length() > 0) {
+                            // Literals between digit placeholders (e.g. 000-0000) are not supported.
+                            return null;
+                        }
+                        section.hasDigits = true;
+                        if (inFraction) {
+                            section.maxFractionDigits++;
+                            if (c == '0') {
+                                section.minFractionDigits = section.maxFractionDigits;
+                            }
+                        } else if (c == '0') {
+                            section.minIntegerDigits++;
+                        }
+                    }
+                    case '.' -> {
+                        if (inFraction) {
+                            literal.append(c);
+                        } else {
+                            inFraction = true;
+                            section.hasPoint = true;
+                            section.hasDigits = true;
+                        }
+                    }
+                    case ',' -> {
+                        if (section.hasDigits && i + 1 < n && isPlaceholder(code.charAt(i + 1)) && !inFraction) {
+                            section.grouping = true;
+                        } else if (section.hasDigits) {
+                            section.thousandsScale++;
+                        } else {
+                            literal.append(c);
+                        }
+                    }
+                    case '%' -> {
+                        section.percent++;
+                        literal.append(c);
+                    }
+                    case 'E', 'e' -> {
+                        if (i + 1 < n && (code.charAt(i + 1) == '+' || code.charAt(i + 1) == '-')) {
+                            return null;
+                        }
+                        literal.append(c);
+                    }
+                    case '/' -> {
+                        if (section.hasDigits) {
+                            return null;
+                        }
+                        literal.append(c);
+                    }
+                    case '@' -> {
+                        return null;
+                    }
+                    default -> literal.append(c);
+                }
+            }
+            section.prefix = prefix.toString().getBytes(StandardCharsets.UTF_8);
+            section.suffix = suffix.toString().getBytes(StandardCharsets.UTF_8);
+            return section;
+        }
+
+        private static boolean isPlaceholder(char c) {
+            return c == '0' || c == '#' || c == '?';
+        }
+
+        void write(Decimal value, RowBuffer out, boolean sign) {
+            if (!hasDigits) {
+                out.append(prefix);
+                return;
+            }
+            value.shift(2 * percent - 3 * thousandsScale);
+            value.round(maxFractionDigits);
+            // Like Excel, a negative number that rounds to zero keeps its sign: -0.04 is -0.0.
+            if (sign) {
+                out.append((byte) '-');
+            }
+            out.append(prefix);
+
+            int integerDigits = Math.max(value.point, 0);
+            int width = Math.max(integerDigits, minIntegerDigits);
+            for (int power = width - 1; power >= 0; power--) {
+                out.append((byte) ('0' + value.digit(integerDigits - 1 - power)));
+                if (grouping && power > 0 && power % 3 == 0) {
+                    out.append((byte) ',');
+                }
+            }
+            if (hasPoint) {
+                int fractionDigits = maxFractionDigits;
+                while (fractionDigits > minFractionDigits && value.digit(value.point + fractionDigits - 1) == 0) {
+                    fractionDigits--;
+                }
+                out.append((byte) '.');
+                for (int i = 0; i < fractionDigits; i++) {
+                    out.append((byte) ('0' + value.digit(value.point + i)));
+                }
+            }
+            out.append(suffix);
+        }
+    }
+}
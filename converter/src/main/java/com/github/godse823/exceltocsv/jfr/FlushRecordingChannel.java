@@ -0,0 +1,57 @@
+package com.github.godse823.exceltocsv.jfr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * Records an {@link OutputFlushedEvent} for each write to the channel it
+ * wraps. Only installed while the event is enabled in a running recording,
+ * so that conversions outside a recording write straight to their target.
+ */
+public final class FlushRecordingChannel implements WritableByteChannel {
+
+    private final WritableByteChannel out;
+    private final String sheet;
+    private final String output;
+
+    private FlushRecordingChannel(WritableByteChannel out, String sheet, Path output) {
+        this.out = out;
+        this.sheet = sheet;
+        this.output = output == null ? null : output.toString();
+    }
+
+    /**
+     * Returns {@code out} wrapped to record its writes if output flushes are
+     * being recorded, otherwise {@code out} itself.
+     */
+    public static WritableByteChannel of(WritableByteChannel out, String sheet, Path output) {
+        return new OutputFlushedEvent().isEnabled() ? new FlushRecordingChannel(out, sheet, output) : out;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        OutputFlushedEvent event = new OutputFlushedEvent();
+        event.begin();
+        int written = out.write(src);
+        event.end();
+        if (event.shouldCommit()) {
+            event.sheet = sheet;
+            event.output = output;
+            event.bytes = written;
+            event.commit();
+        }
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return out.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
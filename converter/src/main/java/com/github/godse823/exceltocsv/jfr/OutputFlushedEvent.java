@@ -0,0 +1,35 @@
+package com.github.godse823.exceltocsv.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A block of output handed to the file or stream a sheet is written to, as
+ * compressed if compression is on. Like the JDK's own file write events,
+ * only writes taking 10 ms or more are recorded unless the recording
+ * lowers the threshold, so that slow disks and consumers stand out.
+ */
+@Name("com.github.godse823.exceltocsv.OutputFlushed")
+@Label("Output Flushed")
+@Category("Excel to CSV")
+@Description("A block of a sheet's output has been written to its target")
+@Threshold("10 ms")
+@StackTrace(false)
+public final class OutputFlushedEvent extends jdk.jfr.Event {
+
+    @Label("Sheet")
+    public String sheet;
+
+    @Label("Output")
+    @Description("File the sheet is written to, or null when writing to a stream")
+    public String output;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,29 @@
+package com.github.godse823.exceltocsv.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** The shared-strings table of a workbook, read in full; the duration is the time taken to read it. */
+@Name("com.github.godse823.exceltocsv.SharedStringsLoaded")
+@Label("Shared Strings Loaded")
+@Category("Excel to CSV")
+@Description("A workbook's shared-strings table has been read")
+@StackTrace(false)
+public final class SharedStringsLoadedEvent extends jdk.jfr.Event {
+
+    @Label("Strings")
+    public int strings;
+
+    @Label("Size")
+    @Description("UTF-8 bytes held for the strings")
+    @DataAmount
+    public long size;
+
+    @Label("Spilled")
+    @Description("Whether the table exceeded the spill threshold and is kept in a temporary file")
+    public boolean spilled;
+}
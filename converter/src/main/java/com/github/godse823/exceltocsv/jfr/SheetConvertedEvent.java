@@ -0,0 +1,39 @@
+package com.github.godse823.exceltocsv.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A sheet converted or restored from the cache; the duration covers the whole sheet. */
+@Name("com.github.godse823.exceltocsv.SheetConverted")
+@Label("Sheet Converted")
+@Category("Excel to CSV")
+@Description("A sheet has been converted")
+@StackTrace(false)
+public final class SheetConvertedEvent extends jdk.jfr.Event {
+
+    @Label("Workbook")
+    public String workbook;
+
+    @Label("Sheet")
+    public String sheet;
+
+    @Label("Output")
+    @Description("File the sheet was written to, or null when writing to a stream")
+    public String output;
+
+    @Label("Rows")
+    public long rows;
+
+    @Label("Bytes")
+    @Description("Bytes of output written, before any compression")
+    @DataAmount
+    public long bytes;
+
+    @Label("Cached")
+    @Description("Whether the output was restored from the conversion cache")
+    public boolean cached;
+}
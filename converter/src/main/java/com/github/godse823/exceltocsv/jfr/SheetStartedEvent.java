@@ -0,0 +1,30 @@
+package com.github.godse823.exceltocsv.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A sheet about to be converted. Paired with a {@link SheetConvertedEvent}
+ * once it is done, so that a recording shows which sheets were still in
+ * progress when it ended.
+ */
+@Name("com.github.godse823.exceltocsv.SheetStarted")
+@Label("Sheet Started")
+@Category("Excel to CSV")
+@Description("The conversion of a sheet has started")
+@StackTrace(false)
+public final class SheetStartedEvent extends jdk.jfr.Event {
+
+    @Label("Workbook")
+    public String workbook;
+
+    @Label("Sheet")
+    public String sheet;
+
+    @Label("Output")
+    @Description("File the sheet is written to, or null when writing to a stream")
+    public String output;
+}
@@ -0,0 +1,36 @@
+package com.github.godse823.exceltocsv.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A workbook whose structure has been read: its directory, sheet list,
+ * styles and shared strings. The duration is the time taken to open it.
+ */
+@Name("com.github.godse823.exceltocsv.WorkbookOpened")
+@Label("Workbook Opened")
+@Category("Excel to CSV")
+@Description("A workbook has been opened and its sheets, styles and shared strings read")
+@StackTrace(false)
+public final class WorkbookOpenedEvent extends jdk.jfr.Event {
+
+    @Label("Workbook")
+    @Description("Path of the workbook, or <stream> for one read from a stream")
+    public String workbook;
+
+    @Label("Format")
+    public String format;
+
+    @Label("Size")
+    @Description("Size of the workbook file, or 0 when read from a stream")
+    @DataAmount
+    public long size;
+
+    @Label("Sheets")
+    @Description("Number of worksheets in the workbook")
+    public int sheets;
+}
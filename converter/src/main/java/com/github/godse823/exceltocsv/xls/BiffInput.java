@@ -0,0 +1,161 @@
+package com.github.godse823.exceltocsv.xls;
+
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.RowBuffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Sequential reader of BIFF8 records.
+ *
+ * <p>One record is buffered at a time. Field reads that run past the end of
+ * the current record continue transparently into a following
+ * {@code CONTINUE} record, which is how BIFF8 stores long string tables.
+ */
+final class BiffInput {
+
+    static final int CONTINUE = 0x003C;
+
+    private static final int MAX_RECORD_LENGTH = 8224;
+
+    private final InputStream in;
+    private final byte[] header = new byte[4];
+    private final byte[] data = new byte[MAX_RECORD_LENGTH];
+    private char[] chars = new char[256];
+    private int sid = -1;
+    private int length;
+    private int position;
+
+    BiffInput(InputStream in) {
+        this.in = in;
+    }
+
+    /** Advances to the next record; returns {@code false} at the end of the stream. */
+    boolean next() throws IOException {
+        int n = in.readNBytes(header, 0, 4);
+        if (n == 0) {
+            sid = -1;
+            return false;
+        }
+        if (n < 4) {
+            throw new EOFException("Truncated BIFF record header");
+        }
+        sid = (header[0] & 0xFF) | (header[1] & 0xFF) << 8;
+        length = (header[2] & 0xFF) | (header[3] & 0xFF) << 8;
+        if (length > MAX_RECORD_LENGTH) {
+            throw new ConversionException("BIFF record 0x" + Integer.toHexString(sid) + " is too long: " + length);
+        }
+        if (in.readNBytes(data, 0, length) < length) {
+            throw new EOFException("Truncated BIFF record 0x" + Integer.toHexString(sid));
+        }
+        position = 0;
+        return true;
+    }
+
+    int sid() {
+        return sid;
+    }
+
+    int length() {
+        return length;
+    }
+
+    int remaining() {
+        return length - position;
+    }
+
+    int readUByte() throws IOException {
+        if (position == length) {
+            continueRecord();
+        }
+        return data[position++] & 0xFF;
+    }
+
+    int readUShort() throws IOException {
+        if (position + 2 <= length) {
+            int value = (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8;
+            position += 2;
+            return value;
+        }
+        return readUByte() | readUByte() << 8;
+    }
+
+    int readInt() throws IOException {
+        if (position + 4 <= length) {
+            int value = (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8
+                    | (data[position + 2] & 0xFF) << 16 | (data[position + 3] & 0xFF) << 24;
+            position += 4;
+            return value;
+        }
+        return readUShort() | readUShort() << 16;
+    }
+
+    long readLong() throws IOException {
+        return (readInt() & 0xFFFFFFFFL) | (long) readInt() << 32;
+    }
+
+    double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /** Skips bytes, following {@code CONTINUE} records as needed. */
+    void skip(long count) throws IOException {
+        while (count > 0) {
+            if (position == length) {
+                continueRecord();
+            }
+            int n = (int) Math.min(count, length - position);
+            position += n;
+            count -= n;
+        }
+    }
+
+    /** Reads the 8 raw bytes of a FORMULA result into {@code target}. */
+    void readBytes(byte[] target, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            target[i] = (byte) readUByte();
+        }
+    }
+
+    /**
+     * Reads {@code count} characters of an XLUnicodeString body and appends
+     * them to the open cell of {@code row} as UTF-8. When the characters run
+     * into a {@code CONTINUE} record, that record restarts with its own
+     * option byte choosing between compressed and UTF-16 characters.
+     */
+    void appendChars(int count, boolean highByte, RowBuffer row) throws IOException {
+        row.appendUtf8(readChars(count, highByte), 0, count);
+    }
+
+    /** Reads {@code count} characters as a {@code String}; for names, not cell data. */
+    String readString(int count, boolean highByte) throws IOException {
+        return new String(readChars(count, highByte), 0, count);
+    }
+
+    private char[] readChars(int count, boolean highByte) throws IOException {
+        if (chars.length < count) {
+            chars = Arrays.copyOf(chars, Math.max(count, chars.length * 2));
+        }
+        for (int i = 0; i < count; i++) {
+            if (position == length) {
+                continueRecord();
+                highByte = (data[position++] & 0x01) != 0;
+            }
+            if (highByte) {
+                chars[i] = (char) readUShort();
+            } else {
+                chars[i] = (char) (data[position++] & 0xFF);
+            }
+        }
+        return chars;
+    }
+
+    private void continueRecord() throws IOException {
+        if (!next() || sid != CONTINUE) {
+            throw new ConversionException("BIFF record data ends unexpectedly");
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.github.godse823.exceltocsv.xls;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A read-only view of an OLE2 compound document (the container format of
+ * legacy {@code .xls} files).
+ *
+ * <p>Only the sector allocation table and the directory are loaded. Stream
+ * content is read sector by sector with positional reads on the file
+ * channel when it is consumed, so opening a stream costs one {@code int}
+ * per sector of its chain and nothing more. Streams opened from the same
+ * file are independent and may be read concurrently.
+ */
+public final class CompoundFile implements Closeable {
+
+    private static final long SIGNATURE = 0xE11AB1A1E011CFD0L;
+
+    private static final int END_OF_CHAIN = -2;
+    private static final int HEADER_DIFAT_ENTRIES = 109;
+    private static final int DIRECTORY_ENTRY_SIZE = 128;
+    private static final int TYPE_STREAM = 2;
+    private static final int TYPE_ROOT = 5;
+
+    private final FileChannel channel;
+    private final int sectorShift;
+    private final int sectorSize;
+    private final int miniSectorSize;
+    private final int miniStreamCutoff;
+    private final int[] fat;
+    private final int firstMiniFatSector;
+    private final byte[] directory;
+    private final int rootStart;
+    private final long rootSize;
+
+    private CompoundFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = read(0, 512);
+        if (header.getLong(0) != SIGNATURE) {
+            throw new ConversionException("Not an OLE2 compound document");
+        }
+        sectorShift = header.getShort(0x1E);
+        if (sectorShift != 9 && sectorShift != 12) {
+            throw new ConversionException("Unsupported compound document sector size 2^" + sectorShift);
+        }
+        sectorSize = 1 << sectorShift;
+        miniSectorSize = 1 << header.getShort(0x20);
+        miniStreamCutoff = header.getInt(0x38);
+        firstMiniFatSector = header.getInt(0x3C);
+
+        fat = readFat(header);
+        directory = readChain(header.getInt(0x30), -1);
+        if (directory.length < DIRECTORY_ENTRY_SIZE || directory[0x42] != TYPE_ROOT) {
+            throw new ConversionException("Compound document has no root directory entry");
+        }
+        ByteBuffer root = ByteBuffer.wrap(directory).order(ByteOrder.LITTLE_ENDIAN);
+        rootStart = root.getInt(0x74);
+        rootSize = root.getInt(0x78) & 0xFFFFFFFFL;
+    }
+
+    public static CompoundFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new CompoundFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Returns whether a stream with the given name exists (compared case-insensitively). */
+    public boolean hasStream(String name) {
+        return findStream(name) >= 0;
+    }
+
+    /** Opens a stream by name, compared case-insensitively. */
+    public SectorStream openStream(String name) throws IOException {
+        int entry = findStream(name);
+        if (entry < 0) {
+            throw new ConversionException("Compound document has no stream named " + name);
+        }
+        ByteBuffer dir = ByteBuffer.wrap(directory).order(ByteOrder.LITTLE_ENDIAN);
+        int start = dir.getInt(entry + 0x74);
+        long size = dir.getInt(entry + 0x78) & 0xFFFFFFFFL;
+        if (size < miniStreamCutoff) {
+            // Small streams live in the mini stream; they are below 4 KiB, so just load them.
+            return new SectorStream(readMiniStream(start, (int) size));
+        }
+        return new SectorStream(chain(start, size), size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int findStream(String name) {
+        ByteBuffer dir = ByteBuffer.wrap(directory).order(ByteOrder.LITTLE_ENDIAN);
+        for (int entry = 0; entry + DIRECTORY_ENTRY_SIZE <= directory.length; entry += DIRECTORY_ENTRY_SIZE) {
+            if (directory[entry + 0x42] != TYPE_STREAM) {
+                continue;
+            }
+            int nameBytes = dir.getShort(entry + 0x40);
+            int chars = Math.max(0, Math.min(32, nameBytes / 2) - 1);
+            if (chars != name.length()) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < chars && match; i++) {
+                match = Character.toUpperCase(dir.getChar(entry + 2 * i)) == Character.toUpperCase(name.charAt(i));
+            }
+            if (match) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int[] readFat(ByteBuffer header) throws IOException {
+        int fatSectors = header.getInt(0x2C);
+        int perSector = sectorSize / 4;
+        int[] fatSectorIds = new int[fatSectors];
+        int known = 0;
+        for (int i = 0; i < HEADER_DIFAT_ENTRIES && known < fatSectors; i++) {
+            fatSectorIds[known++] = header.getInt(0x4C + 4 * i);
+        }
+        int difatSector = header.getInt(0x44);
+        for (int guard = header.getInt(0x48); known < fatSectors && difatSector >= 0 && guard > 0; guard--) {
+            ByteBuffer difat = readSector(difatSector);
+            for (int i = 0; i < perSector - 1 && known < fatSectors; i++) {
+                fatSectorIds[known++] = difat.getInt(4 * i);
+            }
+            difatSector = difat.getInt(sectorSize - 4);
+        }
+        if (known < fatSectors) {
+            throw new ConversionException("Compound document allocation table is truncated");
+        }
+        int[] table = new int[fatSectors * perSector];
+        for (int s = 0; s < fatSectors; s++) {
+            ByteBuffer sector = readSector(fatSectorIds[s]);
+            for (int i = 0; i < perSector; i++) {
+                table[s * perSector + i] = sector.getInt(4 * i);
+            }
+        }
+        return table;
+    }
+
+    /** Follows a sector chain; {@code size < 0} means "until end of chain". */
+    private int[] chain(int start, long size) throws ConversionException {
+        int expected = size < 0 ? 16 : (int) ((size + sectorSize - 1) >>> sectorShift);
+        int[] sectors = new int[Math.max(expected, 1)];
+        int count = 0;
+        for (int sector = start; sector != END_OF_CHAIN && (size < 0 || count < expected); sector = fat[sector]) {
+            if (sector < 0 || sector >= fat.length || count > fat.length) {
+                throw new ConversionException("Corrupt sector chain in compound document");
+            }
+            if (count == sectors.length) {
+                sectors = Arrays.copyOf(sectors, count * 2);
+            }
+            sectors[count++] = sector;
+        }
+        if (size >= 0 && count < expected) {
+            throw new ConversionException("Compound document stream is shorter than its declared size");
+        }
+        return count == sectors.length ? sectors : Arrays.copyOf(sectors, count);
+    }
+
+    private byte[] readChain(int start, long size) throws IOException {
+        int[] sectors = chain(start, size);
+        byte[] data = new byte[sectors.length * sectorSize];
+        for (int i = 0; i < sectors.length; i++) {
+            readSector(sectors[i]).get(data, i * sectorSize, sectorSize);
+        }
+        return data;
+    }
+
+    private byte[] readMiniStream(int start, int size) throws IOException {
+        if (size == 0) {
+            return new byte[0];
+        }
+        ByteBuffer miniFat = ByteBuffer.wrap(readChain(firstMiniFatSector, -1)).order(ByteOrder.LITTLE_ENDIAN);
+        SectorStream miniStream = new SectorStream(chain(rootStart, rootSize), rootSize);
+        byte[] data = new byte[size];
+        int done = 0;
+        for (int sector = start; done < size; sector = miniFat.getInt(4 * sector)) {
+            if (sector < 0 || 4 * sector >= miniFat.capacity()) {
+                throw new ConversionException("Corrupt mini stream chain in compound document");
+            }
+            miniStream.seek((long) sector * miniSectorSize);
+            int n = Math.min(miniSectorSize, size - done);
+            miniStream.readFully(data, done, n);
+            done += n;
+        }
+        return data;
+    }
+
+    private ByteBuffer readSector(int sector) throws IOException {
+        return read((long) (sector + 1) << sectorShift, sectorSize);
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buffer, position);
+        return buffer.flip();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Compound document is truncated");
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * A seekable stream over a chain of sectors. Reads of consecutive
+     * sectors are merged into a single positional read.
+     */
+    public final class SectorStream extends InputStream {
+
+        private final int[] sectors;
+        private final long size;
+        private final byte[] inMemory;
+        private long position;
+
+        private SectorStream(int[] sectors, long size) {
+            this.sectors = sectors;
+            this.size = size;
+            this.inMemory = null;
+        }
+
+        private SectorStream(byte[] data) {
+            this.sectors = null;
+            this.size = data.length;
+            this.inMemory = data;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public long position() {
+            return position;
+        }
+
+        public void seek(long position) {
+            if (position < 0 || position > size) {
+                throw new IllegalArgumentException("Position " + position + " outside stream of " + size + " bytes");
+            }
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            len = (int) Math.min(len, size - position);
+            if (inMemory != null) {
+                System.arraycopy(inMemory, (int) position, b, off, len);
+                position += len;
+                return len;
+            }
+            int index = (int) (position >>> sectorShift);
+            int inSector = (int) (position & (sectorSize - 1));
+            // Extend the read across physically contiguous sectors.
+            int run = 1;
+            while (index + run < sectors.length && sectors[index + run] == sectors[index] + run
+                    && (long) run * sectorSize - inSector < len) {
+                run++;
+            }
+            int n = (int) Math.min(len, (long) run * sectorSize - inSector);
+            long offset = ((long) (sectors[index] + 1) << sectorShift) + inSector;
+            CompoundFile.this.readFully(ByteBuffer.wrap(b, off, n), offset);
+            position += n;
+            return n;
+        }
+
+        void readFully(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = read(b, off, len);
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of compound document stream");
+                }
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+    }
+}
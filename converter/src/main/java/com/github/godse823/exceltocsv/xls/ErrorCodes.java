@@ -0,0 +1,36 @@
+package com.github.godse823.exceltocsv.xls;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Display text of BIFF error codes.
+ */
+final class ErrorCodes {
+
+    private static final byte[] NULL = bytes("#NULL!");
+    private static final byte[] DIV0 = bytes("#DIV/0!");
+    private static final byte[] VALUE = bytes("#VALUE!");
+    private static final byte[] REF = bytes("#REF!");
+    private static final byte[] NAME = bytes("#NAME?");
+    private static final byte[] NUM = bytes("#NUM!");
+    private static final byte[] NA = bytes("#N/A");
+
+    private ErrorCodes() {
+    }
+
+    static byte[] text(int code) {
+        return switch (code) {
+            case 0x00 -> NULL;
+            case 0x07 -> DIV0;
+            case 0x0F -> VALUE;
+            case 0x17 -> REF;
+            case 0x1D -> NAME;
+            case 0x24 -> NUM;
+            default -> NA;
+        };
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.godse823.exceltocsv.xls;
+
+import com.github.godse823.exceltocsv.RowBuffer;
+
+/**
+ * Renders BIFF floating-point cell values the way Excel serialises them in
+ * XLSX: whole numbers without a fraction, everything else in the shortest
+ * form that round-trips, with a bare {@code E} exponent.
+ */
+final class NumberText {
+
+    private static final double MAX_PLAIN_INTEGER = 1e15;
+
+    private NumberText() {
+    }
+
+    static void append(double value, RowBuffer row) {
+        if (value == Math.rint(value) && Math.abs(value) < MAX_PLAIN_INTEGER) {
+            appendLong((long) value, row);
+            return;
+        }
+        String text = Double.toString(value);
+        int exponent = text.indexOf('E');
+        int mantissaEnd = exponent < 0 ? text.length() : exponent;
+        if (text.startsWith(".0", mantissaEnd - 2)) {
+            mantissaEnd -= 2;
+        }
+        for (int i = 0; i < mantissaEnd; i++) {
+            row.append((byte) text.charAt(i));
+        }
+        if (exponent >= 0) {
+            for (int i = exponent; i < text.length(); i++) {
+                row.append((byte) text.charAt(i));
+            }
+        }
+    }
+
+    static void appendLong(long value, RowBuffer row) {
+        if (value < 0) {
+            row.append((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            row.append((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.github.godse823.exceltocsv.xls;
+
+import com.github.godse823.exceltocsv.CellKind;
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.RowBuffer;
+import com.github.godse823.exceltocsv.RowSelection;
+import com.github.godse823.exceltocsv.RowSink;
+import com.github.godse823.exceltocsv.format.CellFormat;
+import com.github.godse823.exceltocsv.format.FormatScratch;
+import com.github.godse823.exceltocsv.xlsx.SharedStrings;
+
+import java.io.IOException;
+
+/**
+ * Streams the cell records of one BIFF8 worksheet substream to a
+ * {@link RowSink}. Excel writes cell records in row-major order, so a row
+ * is complete as soon as a record for a later row appears.
+ *
+ * <p>Output matches the XLSX path: missing rows become empty rows,
+ * booleans are {@code TRUE}/{@code FALSE}, errors use their display text,
+ * formulas contribute their cached result and numbers are rendered through
+ * the number format of their XF record. A typed reader also records the
+ * value of each number in the row.
+ *
+ * <p>Cells outside the {@link RowSelection} are skipped before their record
+ * body is decoded, and a row is abandoned as soon as one of its cells fails
+ * a condition or lies outside the selected row range. Reading stops at the
+ * end of the range or once the row limit is reached.
+ */
+final class XlsSheetReader {
+
+    private static final int FORMULA = 0x0006;
+    private static final int MULRK = 0x00BD;
+    private static final int MULBLANK = 0x00BE;
+    private static final int RSTRING = 0x00D6;
+    private static final int LABELSST = 0x00FD;
+    private static final int BLANK = 0x0201;
+    private static final int NUMBER = 0x0203;
+    private static final int LABEL = 0x0204;
+    private static final int BOOLERR = 0x0205;
+    private static final int STRING = 0x0207;
+    private static final int RK = 0x027E;
+
+    private static final int SUBSTREAM_WORKSHEET = 0x0010;
+
+    private static final byte[] TRUE = {'T', 'R', 'U', 'E'};
+    private static final byte[] FALSE = {'F', 'A', 'L', 'S', 'E'};
+
+    private final SharedStrings sharedStrings;
+    private final CellFormat[] styles;
+    private final RowSelection selection;
+    private final boolean typed;
+    private final FormatScratch scratch = new FormatScratch();
+    private final RowBuffer row = new RowBuffer();
+    private final byte[] formulaResult = new byte[8];
+    private RowSink sink;
+    private int currentRow;
+    private long rows;
+    private boolean pendingFormulaString;
+    /** Row slot of the cell last opened in the current row, or -1. */
+    private int openSlot = -1;
+    private boolean rejected;
+    /** Set once the row range or limit has been satisfied. */
+    private boolean done;
+    /** Cells decoded by the current read, reported to the sink when it ends. */
+    private long sharedStringCells;
+    private long formattedCells;
+
+    XlsSheetReader(SharedStrings sharedStrings, CellFormat[] styles, RowSelection selection, boolean typed) {
+        this.sharedStrings = sharedStrings;
+        this.styles = styles;
+        this.selection = selection;
+        this.typed = typed;
+    }
+
+    long read(BiffInput in, RowSink sink) throws IOException {
+        this.sink = sink;
+        this.currentRow = 0;
+        this.rows = 0;
+        this.openSlot = -1;
+        this.rejected = false;
+        this.done = false;
+        this.sharedStringCells = 0;
+        this.formattedCells = 0;
+        if (!in.next() || in.sid() != XlsWorkbook.BOF) {
+            throw new ConversionException("Sheet substream does not start with a BOF record");
+        }
+        in.readUShort();
+        if (in.readUShort() != SUBSTREAM_WORKSHEET) {
+            return 0;
+        }
+        int depth = 0;
+        while (!done && in.next()) {
+            int sid = in.sid();
+            if (sid == XlsWorkbook.BOF) {
+                // Embedded chart or other nested substream: skip to its EOF.
+                depth++;
+                continue;
+            }
+            if (sid == XlsWorkbook.EOF) {
+                if (depth-- == 0) {
+                    break;
+                }
+                continue;
+            }
+            if (depth == 0) {
+                record(in, sid);
+            }
+        }
+        if (currentRow > 0 && !done) {
+            completeRow();
+        }
+        sink.decoded(sharedStringCells, formattedCells);
+        return rows;
+    }
+
+    private void record(BiffInput in, int sid) throws IOException {
+        switch (sid) {
+            case LABELSST -> {
+                if (cell(in.readUShort(), in.readUShort())) {
+                    in.readUShort();
+                    sharedStrings.appendTo(in.readInt(), row);
+                    sharedStringCells++;
+                    row.endCell();
+                }
+            }
+            case NUMBER -> {
+                if (cell(in.readUShort(), in.readUShort())) {
+                    number(in.readUShort(), in.readDouble());
+                    row.endCell();
+                }
+            }
+            case RK -> {
+                if (cell(in.readUShort(), in.readUShort())) {
+                    number(in.readUShort(), rk(in.readInt()));
+                    row.endCell();
+                }
+            }
+            case MULRK -> {
+                int rowIndex = in.readUShort();
+                int column = in.readUShort();
+                int count = (in.length() - 6) / 6;
+                for (int i = 0; i < count; i++) {
+                    if (cell(rowIndex, column + i)) {
+                        number(in.readUShort(), rk(in.readInt()));
+                        row.endCell();
+                    } else {
+                        in.readUShort();
+                        in.readInt();
+                    }
+                }
+            }
+            case LABEL, RSTRING -> {
+                if (cell(in.readUShort(), in.readUShort())) {
+                    in.readUShort();
+                    int count = in.readUShort();
+                    in.appendChars(count, (in.readUByte() & 0x01) != 0, row);
+                    row.endCell();
+                }
+            }
+            case BOOLERR -> {
+                if (!cell(in.readUShort(), in.readUShort())) {
+                    return;
+                }
+                in.readUShort();
+                int value = in.readUByte();
+                if (in.readUByte() != 0) {
+                    error(value);
+                } else {
+                    bool(value != 0);
+                }
+                row.endCell();
+            }
+            case FORMULA -> formula(in);
+            case STRING -> {
+                if (pendingFormulaString) {
+                    pendingFormulaString = false;
+                    int count = in.readUShort();
+                    in.appendChars(count, (in.readUByte() & 0x01) != 0, row);
+                    row.endCell();
+                }
+            }
+            case BLANK -> {
+                if (cell(in.readUShort(), in.readUShort())) {
+                    row.endCell();
+                }
+            }
+            case MULBLANK -> {
+                int rowIndex = in.readUShort();
+                int first = in.readUShort();
+                int last = first + (in.length() - 6) / 2 - 1;
+                // Only the rightmost selected blank matters: it sets the width of the row.
+                int column = last;
+                while (column > first && selection.slot(column) < 0) {
+                    column--;
+                }
+                if (cell(rowIndex, column)) {
+                    row.endCell();
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void formula(BiffInput in) throws IOException {
+        if (!cell(in.readUShort(), in.readUShort())) {
+            return;
+        }
+        int xf = in.readUShort();
+        in.readBytes(formulaResult, 8);
+        if ((formulaResult[6] & 0xFF) != 0xFF || (formulaResult[7] & 0xFF) != 0xFF) {
+            long bits = 0;
+            for (int i = 7; i >= 0; i--) {
+                bits = bits << 8 | (formulaResult[i] & 0xFF);
+            }
+            number(xf, Double.longBitsToDouble(bits));
+            row.endCell();
+            return;
+        }
+        switch (formulaResult[0]) {
+            case 0 -> {
+                // The value follows in a STRING record; leave the cell open until then.
+                pendingFormulaString = true;
+                return;
+            }
+            case 1 -> bool(formulaResult[2] != 0);
+            case 2 -> error(formulaResult[2] & 0xFF);
+            default -> {
+            }
+        }
+        row.endCell();
+    }
+
+    /** Appends a numeric value, formatted by XF record {@code xf} unless that is General. */
+    private void number(int xf, double value) {
+        CellFormat format = xf < styles.length ? styles[xf] : CellFormat.GENERAL;
+        if (format.isGeneral()) {
+            NumberText.append(value, row);
+        } else {
+            format.format(value, row, scratch);
+            formattedCells++;
+        }
+        if (!typed) {
+            row.kind(format.isDate() ? CellKind.DATE : CellKind.NUMBER);
+        } else if (format.isDate()) {
+            row.number(CellKind.DATE, format.epochDays(value));
+        } else {
+            row.number(CellKind.NUMBER, value);
+        }
+    }
+
+    private void bool(boolean value) {
+        row.append(value ? TRUE : FALSE);
+        row.number(CellKind.BOOLEAN, value ? 1 : 0);
+    }
+
+    private void error(int code) {
+        row.append(ErrorCodes.text(code));
+        row.kind(CellKind.ERROR);
+    }
+
+    /**
+     * Positions the row buffer on a new cell, completing earlier rows first.
+     * Returns {@code false}, leaving the record body unread, if the cell is
+     * not selected or its row has already been rejected.
+     */
+    private boolean cell(int rowIndex, int column) throws IOException {
+        pendingFormulaString = false;
+        int rowNumber = rowIndex + 1;
+        if (rowNumber != currentRow) {
+            if (rowNumber < currentRow) {
+                throw new ConversionException("Cell records out of row order at row " + rowNumber);
+            }
+            if (currentRow > 0) {
+                completeRow();
+            }
+            int gapEnd = Math.min(rowNumber - 1, selection.lastRow());
+            for (int gap = currentRow + 1; gap <= gapEnd && !done; gap++) {
+                row.reset(gap);
+                deliver();
+            }
+            if (done || rowNumber > selection.lastRow()) {
+                done = true;
+                return false;
+            }
+            row.reset(rowNumber);
+            currentRow = rowNumber;
+            openSlot = -1;
+            rejected = !selection.includesRow(rowNumber);
+        } else if (openSlot >= 0 && !rejected) {
+            // The previous cell of this row is complete; check it before decoding more.
+            row.endCell();
+            rejected = !selection.test(openSlot, row, scratch);
+        }
+        int slot = rejected ? -1 : selection.slot(column);
+        openSlot = slot;
+        if (slot < 0) {
+            return false;
+        }
+        row.beginCell(slot);
+        return true;
+    }
+
+    private void completeRow() throws IOException {
+        row.endCell();
+        if (!rejected) {
+            deliver();
+        }
+    }
+
+    private void deliver() throws IOException {
+        if (selection.includesRow(row.rowNumber()) && selection.accept(row, scratch)) {
+            sink.row(row);
+            rows++;
+            done = rows >= selection.limit();
+        }
+    }
+
+    /** Decodes an RK value: a compressed 30-bit integer or truncated double, optionally scaled by 1/100. */
+    static double rk(int rk) {
+        double value = (rk & 0x02) != 0
+                ? (double) (rk >> 2)
+                : Double.longBitsToDouble((long) (rk & 0xFFFFFFFC) << 32);
+        return (rk & 0x01) != 0 ? value / 100 : value;
+    }
+}
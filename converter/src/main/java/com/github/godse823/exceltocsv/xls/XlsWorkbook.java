@@ -0,0 +1,209 @@
+package com.github.godse823.exceltocsv.xls;
+
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.RowBuffer;
+import com.github.godse823.exceltocsv.RowSelection;
+import com.github.godse823.exceltocsv.RowSink;
+import com.github.godse823.exceltocsv.Workbook;
+import com.github.godse823.exceltocsv.format.CellFormat;
+import com.github.godse823.exceltocsv.format.CellFormats;
+import com.github.godse823.exceltocsv.xlsx.SharedStrings;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A legacy Excel 97-2003 ({@code .xls}, BIFF8) workbook.
+ *
+ * <p>Opening the workbook reads only the globals substream: the sheet
+ * directory (BOUNDSHEET), the number formats of the cell styles (FORMAT, XF,
+ * DATEMODE) and the shared-strings table (SST), which is stored off-heap
+ * like its XLSX counterpart. Sheets are streamed straight
+ * from the compound document when converted, without building a workbook
+ * model.
+ */
+public final class XlsWorkbook implements Workbook {
+
+    static final int BOF = 0x0809;
+    static final int EOF = 0x000A;
+
+    private static final int DATEMODE = 0x0022;
+    private static final int FILEPASS = 0x002F;
+    private static final int BOUNDSHEET = 0x0085;
+    private static final int XF = 0x00E0;
+    private static final int SST = 0x00FC;
+    private static final int FORMAT = 0x041E;
+
+    private static final int BIFF8_VERSION = 0x0600;
+    private static final int SUBSTREAM_GLOBALS = 0x0005;
+    private static final int SHEET_TYPE_WORKSHEET = 0;
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final CompoundFile file;
+    private final String streamName;
+    private final List<String> sheetNames;
+    private final long[] sheetOffsets;
+    private final SharedStrings sharedStrings;
+    private final CellFormat[] styles;
+    private final RowSelection selection;
+    private final boolean typed;
+
+    private XlsWorkbook(CompoundFile file, String streamName, List<String> sheetNames, long[] sheetOffsets,
+                        SharedStrings sharedStrings, CellFormat[] styles, RowSelection selection, boolean typed) {
+        this.file = file;
+        this.streamName = streamName;
+        this.sheetNames = sheetNames;
+        this.sheetOffsets = sheetOffsets;
+        this.sharedStrings = sharedStrings;
+        this.styles = styles;
+        this.selection = selection;
+        this.typed = typed;
+    }
+
+    public static XlsWorkbook open(Path path, ConversionOptions options) throws IOException {
+        CompoundFile file = CompoundFile.open(path);
+        try {
+            String streamName = file.hasStream("Workbook") ? "Workbook" : "Book";
+            if (!file.hasStream(streamName)) {
+                throw new ConversionException("Compound document contains no workbook stream");
+            }
+            return readGlobals(file, streamName, options);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public List<String> sheetNames() {
+        return sheetNames;
+    }
+
+    public SharedStrings sharedStrings() {
+        return sharedStrings;
+    }
+
+    @Override
+    public long readSheet(int index, RowSink sink) throws IOException {
+        CompoundFile.SectorStream stream = file.openStream(streamName);
+        stream.seek(sheetOffsets[index]);
+        BiffInput in = new BiffInput(new BufferedInputStream(stream, STREAM_BUFFER_SIZE));
+        return new XlsSheetReader(sharedStrings, styles, selection, typed).read(in, sink);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sharedStrings.close();
+        } finally {
+            file.close();
+        }
+    }
+
+    private static XlsWorkbook readGlobals(CompoundFile file, String streamName, ConversionOptions options)
+            throws IOException {
+        BiffInput in = new BiffInput(new BufferedInputStream(file.openStream(streamName), STREAM_BUFFER_SIZE));
+        if (!in.next() || in.sid() != BOF) {
+            throw new ConversionException("Workbook stream does not start with a BOF record");
+        }
+        int version = in.readUShort();
+        int type = in.readUShort();
+        if (version != BIFF8_VERSION || type != SUBSTREAM_GLOBALS) {
+            throw new ConversionException("Only BIFF8 (Excel 97-2003) workbooks are supported");
+        }
+
+        List<String> names = new ArrayList<>();
+        long[] offsets = new long[16];
+        SharedStrings sharedStrings = SharedStrings.EMPTY;
+        Map<Integer, String> formatCodes = new HashMap<>();
+        int[] xfFormats = new int[64];
+        int xfCount = 0;
+        boolean date1904 = false;
+        try {
+            while (in.next() && in.sid() != EOF) {
+                switch (in.sid()) {
+                    case FILEPASS -> throw new ConversionException("Encrypted workbooks are not supported");
+                    case BOUNDSHEET -> {
+                        long offset = in.readInt() & 0xFFFFFFFFL;
+                        in.readUByte();
+                        int sheetType = in.readUByte();
+                        int nameLength = in.readUByte();
+                        boolean highByte = (in.readUByte() & 0x01) != 0;
+                        String name = in.readString(nameLength, highByte);
+                        if (sheetType == SHEET_TYPE_WORKSHEET) {
+                            if (names.size() == offsets.length) {
+                                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                            }
+                            offsets[names.size()] = offset;
+                            names.add(name);
+                        }
+                    }
+                    case DATEMODE -> date1904 = in.readUShort() != 0;
+                    case FORMAT -> {
+                        int id = in.readUShort();
+                        int length = in.readUShort();
+                        boolean highByte = (in.readUByte() & 0x01) != 0;
+                        formatCodes.put(id, in.readString(length, highByte));
+                    }
+                    case XF -> {
+                        in.readUShort();
+                        if (xfCount == xfFormats.length) {
+                            xfFormats = Arrays.copyOf(xfFormats, xfCount * 2);
+                        }
+                        xfFormats[xfCount++] = in.readUShort();
+                    }
+                    case SST -> {
+                        sharedStrings.close();
+                        sharedStrings = readSharedStrings(in, options.sharedStringsSpillThreshold());
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            sharedStrings.close();
+            throw e;
+        }
+        CellFormat[] styles = new CellFormat[options.formatNumbers() ? xfCount : 0];
+        CellFormats formats = new CellFormats(date1904);
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = formats.forId(xfFormats[i], formatCodes.get(xfFormats[i]));
+        }
+        return new XlsWorkbook(file, streamName, Collections.unmodifiableList(names), offsets, sharedStrings, styles,
+                options.selection(), options.outputFormat().typed());
+    }
+
+    private static SharedStrings readSharedStrings(BiffInput in, long spillThreshold) throws IOException {
+        SharedStrings.Builder builder = new SharedStrings.Builder(spillThreshold);
+        RowBuffer scratch = new RowBuffer();
+        try {
+            in.readInt();
+            int unique = in.readInt();
+            for (int i = 0; i < unique; i++) {
+                int count = in.readUShort();
+                int flags = in.readUByte();
+                int richRuns = (flags & 0x08) != 0 ? in.readUShort() : 0;
+                int extLength = (flags & 0x04) != 0 ? in.readInt() : 0;
+                scratch.reset(0);
+                scratch.beginCell(0);
+                in.appendChars(count, (flags & 0x01) != 0, scratch);
+                scratch.endCell();
+                in.skip(4L * richRuns + (extLength & 0xFFFFFFFFL));
+                builder.add(scratch.array(), scratch.start(0), scratch.length(0));
+            }
+            return builder.build();
+        } catch (IOException | RuntimeException e) {
+            builder.discard();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import com.github.godse823.exceltocsv.RowBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only byte storage that lives outside the Java heap.
+ *
+ * <p>Bytes are first written to direct buffers. Once the arena grows past its
+ * spill threshold the content is moved to a temporary file, and after
+ * {@link #seal()} that file is memory-mapped read-only. Either way data is
+ * addressed by a {@code long} offset and read with absolute gets only, so a
+ * sealed arena can be shared by concurrent readers.
+ */
+final class ByteArena implements Closeable {
+
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    private final long spillThreshold;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long size;
+
+    private Path spillFile;
+    private FileChannel spillChannel;
+    private ByteBuffer writeBuffer;
+    private ByteBuffer[] readBuffers;
+    private int readShift;
+    private boolean sealed;
+
+    /**
+     * @param spillThreshold number of bytes kept in direct memory before the
+     *                       arena moves to a temporary file; a negative value
+     *                       never spills
+     */
+    ByteArena(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    long size() {
+        return size;
+    }
+
+    boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /** Appends bytes and returns the offset at which they were stored. */
+    long append(byte[] bytes, int offset, int length) throws IOException {
+        if (sealed) {
+            throw new IllegalStateException("Arena is sealed");
+        }
+        long start = size;
+        if (spillChannel == null && spillThreshold >= 0 && size + length > spillThreshold) {
+            spill();
+        }
+        if (spillChannel != null) {
+            appendToFile(bytes, offset, length);
+        } else {
+            appendToChunks(bytes, offset, length);
+        }
+        size += length;
+        return start;
+    }
+
+    /** Ends the write phase; afterwards the arena is read-only and thread-safe. */
+    void seal() throws IOException {
+        if (sealed) {
+            return;
+        }
+        sealed = true;
+        if (spillChannel == null) {
+            readBuffers = chunks.toArray(new ByteBuffer[0]);
+            readShift = CHUNK_SHIFT;
+            return;
+        }
+        flushWriteBuffer();
+        writeBuffer = null;
+        int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long position = (long) i << SEGMENT_SHIFT;
+            segments[i] = spillChannel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(SEGMENT_SIZE, size - position));
+        }
+        readBuffers = segments;
+        readShift = SEGMENT_SHIFT;
+    }
+
+    /**
+     * Copies {@code length} bytes starting at {@code offset} into the open
+     * cell of {@code row}. Only valid once the arena has been sealed.
+     */
+    void copyTo(long offset, int length, RowBuffer row) {
+        ByteBuffer[] buffers = readBuffers;
+        int mask = (1 << readShift) - 1;
+        int done = 0;
+        while (done < length) {
+            long at = offset + done;
+            int position = (int) (at & mask);
+            int n = Math.min(length - done, mask + 1 - position);
+            row.append(buffers[(int) (at >>> readShift)], position, n);
+            done += n;
+        }
+    }
+
+    /** Copies {@code length} bytes starting at {@code offset} into {@code dst}. */
+    void copyTo(long offset, byte[] dst, int dstOffset, int length) {
+        ByteBuffer[] buffers = readBuffers;
+        int mask = (1 << readShift) - 1;
+        int done = 0;
+        while (done < length) {
+            long at = offset + done;
+            int position = (int) (at & mask);
+            int n = Math.min(length - done, mask + 1 - position);
+            buffers[(int) (at >>> readShift)].get(position, dst, dstOffset + done, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunks.clear();
+        readBuffers = null;
+        writeBuffer = null;
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+            } finally {
+                spillChannel = null;
+                Files.deleteIfExists(spillFile);
+            }
+        }
+    }
+
+    private void appendToChunks(byte[] bytes, int offset, int length) {
+        int done = 0;
+        while (done < length) {
+            int chunk = (int) ((size + done) >>> CHUNK_SHIFT);
+            if (chunk == chunks.size()) {
+                chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+            }
+            int position = (int) ((size + done) & (CHUNK_SIZE - 1));
+            int n = Math.min(length - done, CHUNK_SIZE - position);
+            chunks.get(chunk).put(position, bytes, offset + done, n);
+            done += n;
+        }
+    }
+
+    private void spill() throws IOException {
+        spillFile = Files.createTempFile("excel-to-csv-sst", ".bin");
+        spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long remaining = size;
+        for (ByteBuffer chunk : chunks) {
+            ByteBuffer view = chunk.duplicate().position(0).limit((int) Math.min(CHUNK_SIZE, remaining));
+            while (view.hasRemaining()) {
+                spillChannel.write(view);
+            }
+            remaining -= CHUNK_SIZE;
+        }
+        chunks.clear();
+        writeBuffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+    }
+
+    private void appendToFile(byte[] bytes, int offset, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            if (!writeBuffer.hasRemaining()) {
+                flushWriteBuffer();
+            }
+            int n = Math.min(length - done, writeBuffer.remaining());
+            writeBuffer.put(bytes, offset + done, n);
+            done += n;
+        }
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            spillChannel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+/**
+ * Decodes A1-style cell references and numeric attributes straight from
+ * their XML bytes, without allocating.
+ */
+final class CellReference {
+
+    private CellReference() {
+    }
+
+    /**
+     * Returns the 0-based column of a reference such as {@code AB12}, or
+     * {@code -1} if the reference does not start with a column name.
+     */
+    static int column(byte[] bytes, int start, int end) {
+        int column = 0;
+        int i = start;
+        while (i < end) {
+            byte c = bytes[i];
+            if (c >= 'A' && c <= 'Z') {
+                column = column * 26 + (c - 'A' + 1);
+            } else if (c >= 'a' && c <= 'z') {
+                column = column * 26 + (c - 'a' + 1);
+            } else {
+                break;
+            }
+            i++;
+        }
+        return i == start ? -1 : column - 1;
+    }
+
+    /**
+     * Parses a non-negative decimal integer, ignoring surrounding whitespace,
+     * and returns {@code -1} if the text is not one.
+     */
+    static int parseIndex(byte[] bytes, int start, int end) {
+        while (start < end && isWhitespace(bytes[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(bytes[end - 1])) {
+            end--;
+        }
+        if (start == end || end - start > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            byte c = bytes[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+}
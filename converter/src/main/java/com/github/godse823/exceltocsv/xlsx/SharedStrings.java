@@ -0,0 +1,307 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.RowBuffer;
+import com.github.godse823.exceltocsv.jfr.SharedStringsLoadedEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The shared-strings table of a workbook: {@code xl/sharedStrings.xml} in
+ * XLSX, or the SST record of a BIFF8 {@code .xls} workbook.
+ *
+ * <p>Entries are stored as pre-encoded UTF-8 in an off-heap {@link ByteArena}
+ * and located through a primitive offset index, so the table costs about
+ * eight bytes of heap per entry and a lookup copies bytes straight into the
+ * row without allocating. Tables larger than the configured threshold are
+ * spilled to a memory-mapped temporary file. Once read, the table is
+ * immutable and may be shared across threads.
+ *
+ * <p>An XLSX table is read in one pass that only indexes its entries. An
+ * entry that is a single run of text with nothing to decode, by far the
+ * most common kind, is its own UTF-8 and is stored as is. Anything else,
+ * such as rich text, phonetic runs or escaped characters, is stored as the
+ * raw markup of the {@code <si>} element and decoded when a cell first
+ * refers to it. Workbooks often refer to a few such entries many times, so
+ * a small direct-mapped cache keeps the decoded bytes of the ones used
+ * last.
+ *
+ * <p>The cache holds UTF-8 rather than CSV-escaped bytes: cells are handed
+ * to the {@link com.github.godse823.exceltocsv.SheetWriter} through the row
+ * buffer, where the Arrow writer and the column profile behind the schema
+ * sidecar read the same bytes as the CSV writer, and the delimiter is a
+ * setting of the writer, not of the table.
+ * Decoding the markup is what costs; the CSV writer's test for quoting
+ * covers eight bytes a step, and most entries need no quoting at all.
+ */
+public final class SharedStrings implements Closeable {
+
+    public static final SharedStrings EMPTY = new SharedStrings(new ByteArena(-1), new long[1], 0, null);
+
+    /** Slots in the cache of decoded entries; a power of two. */
+    private static final int CACHE_SLOTS = 4096;
+    /** Longer decoded entries are not cached, which bounds the cache to a few megabytes. */
+    private static final int MAX_CACHED_LENGTH = 1024;
+
+    private final ByteArena arena;
+    private final long[] offsets;
+    private final int count;
+    /** Entries stored as markup, or null if there are none. */
+    private final BitSet encoded;
+    /**
+     * Decoded entries by index modulo the number of slots. Slots are read and
+     * replaced without locking: a {@link Decoded} is immutable, so a reader
+     * sees either an older entry or a newer one, and checks its index.
+     */
+    private final Decoded[] cache;
+
+    private SharedStrings(ByteArena arena, long[] offsets, int count, BitSet encoded) {
+        this.arena = arena;
+        this.offsets = offsets;
+        this.count = count;
+        this.encoded = encoded;
+        this.cache = encoded == null ? null : new Decoded[CACHE_SLOTS];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Total size of the stored entries, counting those kept as markup at their encoded size. */
+    public long byteSize() {
+        return arena.size();
+    }
+
+    /** Whether the table was spilled to a temporary file. */
+    public boolean isSpilled() {
+        return arena.isSpilled();
+    }
+
+    /** Appends the UTF-8 bytes of entry {@code index} to the open cell of {@code row}. */
+    public void appendTo(int index, RowBuffer row) throws ConversionException {
+        if (index < 0 || index >= count) {
+            throw new ConversionException("Shared string index " + index + " out of range (" + count + " entries)");
+        }
+        if (encoded != null && encoded.get(index)) {
+            byte[] utf8 = decoded(index);
+            row.append(utf8, 0, utf8.length);
+            return;
+        }
+        long start = offsets[index];
+        arena.copyTo(start, (int) (offsets[index + 1] - start), row);
+    }
+
+    @Override
+    public void close() throws IOException {
+        arena.close();
+    }
+
+    private byte[] decoded(int index) throws ConversionException {
+        int slot = index & (CACHE_SLOTS - 1);
+        Decoded hit = cache[slot];
+        if (hit != null && hit.index() == index) {
+            return hit.utf8();
+        }
+        long start = offsets[index];
+        byte[] xml = new byte[(int) (offsets[index + 1] - start)];
+        arena.copyTo(start, xml, 0, xml.length);
+        byte[] utf8;
+        try {
+            utf8 = decode(new SheetTokenizer(xml, 0, xml.length));
+        } catch (ConversionException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new ConversionException("Malformed shared string " + index, e);
+        }
+        if (utf8.length <= MAX_CACHED_LENGTH) {
+            cache[slot] = new Decoded(index, utf8);
+        }
+        return utf8;
+    }
+
+    /** Collects the text runs of an {@code <si>} element's content, leaving out phonetic runs. */
+    private static byte[] decode(SheetTokenizer xml) throws IOException {
+        boolean inText = false;
+        int phoneticDepth = 0;
+        for (int event = xml.next(); event != SheetTokenizer.END_DOCUMENT; event = xml.next()) {
+            if (event == SheetTokenizer.START_ELEMENT) {
+                switch (xml.element()) {
+                    case SheetTokenizer.TEXT_RUN -> inText = phoneticDepth == 0;
+                    case SheetTokenizer.PHONETIC_RUN -> phoneticDepth++;
+                    default -> {
+                    }
+                }
+            } else if (event == SheetTokenizer.END_ELEMENT) {
+                switch (xml.element()) {
+                    case SheetTokenizer.TEXT_RUN -> inText = false;
+                    case SheetTokenizer.PHONETIC_RUN -> phoneticDepth--;
+                    default -> {
+                    }
+                }
+            } else if (inText) {
+                xml.collectText();
+            }
+        }
+        return Arrays.copyOf(xml.text(), xml.textLength());
+    }
+
+    /**
+     * Reads a shared-strings part, indexing its entries without decoding
+     * them.
+     *
+     * @param spillThreshold see {@link Builder#Builder(long)}
+     */
+    static SharedStrings read(InputStream in, long spillThreshold) throws IOException {
+        Builder builder = new Builder(spillThreshold);
+        try {
+            SheetTokenizer xml = new SheetTokenizer(in);
+            for (int event = xml.next(); event != SheetTokenizer.END_DOCUMENT; event = xml.next()) {
+                if (event == SheetTokenizer.START_ELEMENT && xml.element() == SheetTokenizer.SHARED_ITEM) {
+                    xml.clearText();
+                    xml.copyElement();
+                    byte[] content = xml.text();
+                    int length = xml.textLength();
+                    int text = plainTextStart(content, length);
+                    if (text >= 0) {
+                        builder.add(content, text, lastIndexOf(content, length, (byte) '<') - text);
+                    } else {
+                        builder.addMarkup(content, 0, length);
+                    }
+                }
+            }
+            return builder.build();
+        } catch (IOException | RuntimeException e) {
+            builder.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * If the content of an {@code <si>} element is exactly one {@code <t>}
+     * element whose text needs no decoding, returns the index at which the
+     * text starts; it ends at the last {@code <}. Otherwise returns -1.
+     */
+    private static int plainTextStart(byte[] xml, int length) {
+        if (length < "<t></t>".length() || xml[0] != '<' || xml[length - 1] != '>') {
+            return -1;
+        }
+        int nameEnd = 1;
+        while (nameEnd < length && !isNameEnd(xml[nameEnd])) {
+            nameEnd++;
+        }
+        if (SheetTokenizer.elementName(xml, 1, nameEnd) != SheetTokenizer.TEXT_RUN) {
+            return -1;
+        }
+        int i = nameEnd;
+        byte quote = 0;
+        while (i < length && (quote != 0 || xml[i] != '>')) {
+            if (quote == 0 && (xml[i] == '"' || xml[i] == '\'')) {
+                quote = xml[i];
+            } else if (xml[i] == quote) {
+                quote = 0;
+            }
+            i++;
+        }
+        if (i == length || xml[i - 1] == '/') {
+            return -1;
+        }
+        int text = i + 1;
+        int close = text;
+        while (close < length && xml[close] != '<' && xml[close] != '&' && xml[close] != '\r') {
+            close++;
+        }
+        if (close == length || xml[close] != '<' || xml[close + 1] != '/') {
+            return -1;
+        }
+        int closeNameEnd = close + 2;
+        while (!isNameEnd(xml[closeNameEnd])) {
+            closeNameEnd++;
+        }
+        for (int j = closeNameEnd; j < length - 1; j++) {
+            if (!isWhitespace(xml[j])) {
+                return -1;
+            }
+        }
+        return SheetTokenizer.elementName(xml, close + 2, closeNameEnd) == SheetTokenizer.TEXT_RUN ? text : -1;
+    }
+
+    private static int lastIndexOf(byte[] b, int length, byte value) {
+        int i = length - 1;
+        while (b[i] != value) {
+            i--;
+        }
+        return i;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || isWhitespace(b);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    private record Decoded(int index, byte[] utf8) {
+    }
+
+    /**
+     * Accumulates UTF-8 entries in order. Used by readers of other formats
+     * that carry their own shared-strings table.
+     */
+    public static final class Builder {
+
+        private final ByteArena arena;
+        private final SharedStringsLoadedEvent event = new SharedStringsLoadedEvent();
+        private long[] offsets = new long[1024];
+        private int count;
+        private BitSet encoded;
+
+        /**
+         * @param spillThreshold table size in bytes above which entries are
+         *                       kept in a temporary file; negative to never spill
+         */
+        public Builder(long spillThreshold) {
+            this.arena = new ByteArena(spillThreshold);
+            event.begin();
+        }
+
+        public void add(byte[] utf8, int offset, int length) throws IOException {
+            if (count + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[count++] = arena.append(utf8, offset, length);
+        }
+
+        /** Adds an entry as the raw content of its {@code <si>} element, to be decoded on use. */
+        void addMarkup(byte[] xml, int offset, int length) throws IOException {
+            if (encoded == null) {
+                encoded = new BitSet();
+            }
+            encoded.set(count);
+            add(xml, offset, length);
+        }
+
+        public SharedStrings build() throws IOException {
+            offsets[count] = arena.size();
+            arena.seal();
+            SharedStrings table = new SharedStrings(arena, offsets, count, encoded);
+            event.end();
+            if (event.shouldCommit()) {
+                event.strings = count;
+                event.size = table.byteSize();
+                event.spilled = table.isSpilled();
+                event.commit();
+            }
+            return table;
+        }
+
+        /** Releases the storage of a table that will not be built. */
+        public void discard() throws IOException {
+            arena.close();
+        }
+    }
+}
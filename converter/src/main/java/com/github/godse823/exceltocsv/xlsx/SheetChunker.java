@@ -0,0 +1,236 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Cuts the inflated XML of a sheet into chunks of whole {@code <row>}
+ * elements so that the chunks can be parsed independently and in parallel.
+ *
+ * <p>The chunker only looks for row start tags and the closing
+ * {@code </sheetData>} tag at the byte level; it never parses cells. Each
+ * chunk records the number of the row preceding it, which lets a
+ * {@link SheetReader} fill row gaps exactly as a sequential read would.
+ * Markup cannot appear unescaped in XML text, so a {@code <} followed by a
+ * row tag name is always a real row start.
+ */
+public final class SheetChunker {
+
+    /** Default target size of a chunk in bytes. */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final byte[] ROW = {'r', 'o', 'w'};
+    private static final byte[] SHEET_DATA = {'s', 'h', 'e', 'e', 't', 'D', 'a', 't', 'a'};
+
+    private final InputStream in;
+    private final int chunkSize;
+
+    private byte[] buffer;
+    private int filled;
+    private boolean eof;
+    private boolean started;
+    private boolean finished;
+    private int previousRow;
+
+    public SheetChunker(InputStream in, int chunkSize) {
+        if (chunkSize < 1024) {
+            throw new IllegalArgumentException("Chunk size too small: " + chunkSize);
+        }
+        this.in = in;
+        this.chunkSize = chunkSize;
+        this.buffer = new byte[chunkSize];
+    }
+
+    /**
+     * A run of complete {@code <row>} elements.
+     *
+     * @param data        buffer holding the chunk from offset 0
+     * @param length      number of valid bytes in {@code data}
+     * @param previousRow 1-based number of the row before the chunk, 0 for the first chunk
+     */
+    public record Chunk(byte[] data, int length, int previousRow) {
+    }
+
+    /** Returns the next chunk, or {@code null} once all rows have been returned. */
+    public Chunk next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (!started && !skipToFirstRow()) {
+            finished = true;
+            return null;
+        }
+        while (true) {
+            int lastRowStart = -1;
+            int rowsInChunk = 0;
+            int end = -1;
+            for (int i = 0; i < filled; i++) {
+                if (buffer[i] != '<') {
+                    continue;
+                }
+                if (isRowStart(buffer, i + 1, filled)) {
+                    lastRowStart = i;
+                    rowsInChunk++;
+                } else if (isSheetDataEnd(buffer, i + 1, filled)) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end >= 0) {
+                finished = true;
+                return new Chunk(buffer, end, previousRow);
+            }
+            if (eof) {
+                throw new ConversionException("Sheet XML ends inside sheetData");
+            }
+            if (lastRowStart > 0 && filled == buffer.length) {
+                return cut(lastRowStart, rowsInChunk - 1);
+            }
+            // A single row larger than the buffer, or the buffer is not full yet.
+            if (filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            fill();
+        }
+    }
+
+    private Chunk cut(int at, int rowsInChunk) throws IOException {
+        Chunk chunk = new Chunk(buffer, at, previousRow);
+        int lastRow = lastRowNumber(buffer, at);
+        previousRow = lastRow > 0 ? lastRow : previousRow + rowsInChunk;
+
+        byte[] next = new byte[Math.max(chunkSize, filled - at)];
+        System.arraycopy(buffer, at, next, 0, filled - at);
+        buffer = next;
+        filled -= at;
+        fill();
+        return chunk;
+    }
+
+    /** Finds the {@code r} attribute of the last row starting before {@code limit}. */
+    private static int lastRowNumber(byte[] data, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (data[i] == '<' && isRowStart(data, i + 1, limit)) {
+                return rowAttribute(data, i, limit);
+            }
+        }
+        return 0;
+    }
+
+    private static int rowAttribute(byte[] data, int start, int limit) {
+        for (int i = start; i < limit && data[i] != '>'; i++) {
+            if (data[i] == 'r' && i + 2 < limit && data[i + 1] == '=' && isSpace(data[i - 1])) {
+                byte quote = data[i + 2];
+                int value = 0;
+                int j = i + 3;
+                for (; j < limit && data[j] >= '0' && data[j] <= '9'; j++) {
+                    value = value * 10 + (data[j] - '0');
+                }
+                return j < limit && data[j] == quote ? value : 0;
+            }
+        }
+        return 0;
+    }
+
+    private boolean skipToFirstRow() throws IOException {
+        while (true) {
+            fill();
+            for (int i = 0; i < filled; i++) {
+                if (buffer[i] != '<') {
+                    continue;
+                }
+                if (isRowStart(buffer, i + 1, filled)) {
+                    System.arraycopy(buffer, i, buffer, 0, filled - i);
+                    filled -= i;
+                    started = true;
+                    return true;
+                }
+                if (isSheetDataEnd(buffer, i + 1, filled) || isEmptySheetData(buffer, i + 1, filled)) {
+                    return false;
+                }
+            }
+            if (eof) {
+                return false;
+            }
+            // Keep a tail in case a tag straddles the refill.
+            int keep = Math.min(filled, 64);
+            System.arraycopy(buffer, filled - keep, buffer, 0, keep);
+            filled = keep;
+        }
+    }
+
+    private void fill() throws IOException {
+        while (!eof && filled < buffer.length) {
+            int n = in.read(buffer, filled, buffer.length - filled);
+            if (n < 0) {
+                eof = true;
+            } else {
+                filled += n;
+            }
+        }
+    }
+
+    /** Matches {@code [prefix:]row} followed by whitespace, {@code >} or {@code /}. */
+    private static boolean isRowStart(byte[] data, int at, int limit) {
+        int name = skipPrefix(data, at, limit);
+        return matches(data, name, limit, ROW) && name + ROW.length < limit && isNameEnd(data[name + ROW.length]);
+    }
+
+    private static boolean isSheetDataEnd(byte[] data, int at, int limit) {
+        if (at >= limit || data[at] != '/') {
+            return false;
+        }
+        int name = skipPrefix(data, at + 1, limit);
+        return matches(data, name, limit, SHEET_DATA) && name + SHEET_DATA.length < limit
+                && isNameEnd(data[name + SHEET_DATA.length]);
+    }
+
+    private static boolean isEmptySheetData(byte[] data, int at, int limit) {
+        int name = skipPrefix(data, at, limit);
+        if (!matches(data, name, limit, SHEET_DATA)) {
+            return false;
+        }
+        for (int i = name + SHEET_DATA.length; i < limit; i++) {
+            if (data[i] == '>') {
+                return data[i - 1] == '/';
+            }
+        }
+        return false;
+    }
+
+    private static int skipPrefix(byte[] data, int at, int limit) {
+        for (int i = at; i < limit; i++) {
+            byte b = data[i];
+            if (b == ':') {
+                return i + 1;
+            }
+            if (!(b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9' || b == '_' || b == '-')) {
+                return at;
+            }
+        }
+        return at;
+    }
+
+    private static boolean matches(byte[] data, int at, int limit, byte[] name) {
+        if (at + name.length > limit) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (data[at + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || isSpace(b);
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+}
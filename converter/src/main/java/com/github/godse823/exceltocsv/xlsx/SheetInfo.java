@@ -0,0 +1,11 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+/**
+ * A worksheet as declared in {@code xl/workbook.xml}.
+ *
+ * @param name      the sheet name shown on the tab
+ * @param index     0-based position of the sheet in the workbook
+ * @param entryName the ZIP entry holding the sheet XML
+ */
+public record SheetInfo(String name, int index, String entryName) {
+}
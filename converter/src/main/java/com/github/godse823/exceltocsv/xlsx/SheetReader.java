@@ -0,0 +1,337 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import com.github.godse823.exceltocsv.CellKind;
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.RowBuffer;
+import com.github.godse823.exceltocsv.RowSelection;
+import com.github.godse823.exceltocsv.RowSink;
+import com.github.godse823.exceltocsv.format.CellFormat;
+import com.github.godse823.exceltocsv.format.FormatScratch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streams a worksheet part ({@code xl/worksheets/sheetN.xml}) event by event
+ * and delivers each {@code <row>} to a {@link RowSink} as soon as it has been
+ * decoded. Memory use is bounded by the widest row, not by the sheet size.
+ *
+ * <p>Worksheets are by far the largest parts of a workbook, so they are read
+ * with the byte-level {@link SheetTokenizer} rather than StAX: cell values go
+ * from the XML bytes to the row without ever becoming {@code String}s.
+ *
+ * <p>Numeric cells are rendered through the number format of their cell
+ * style, so dates, percentages and fixed decimals come out as Excel displays
+ * them. Cells without a style, or styled as General, are copied verbatim.
+ * A typed reader also records the value of each number in the row, for
+ * sinks that write typed columns.
+ *
+ * <p>Rows missing from the XML are delivered as empty rows so that line
+ * numbers in the output match row numbers in the sheet, unless a
+ * {@link RowSelection} filters them out. Cells outside the selection are
+ * skipped without decoding their value, and once a cell fails a condition
+ * the rest of its row is skipped too. Rows outside the selected range are
+ * skipped without tokenizing them, and reading stops at the end of the
+ * range or once the row limit is reached.
+ */
+public final class SheetReader {
+
+    private static final byte[] TRUE = {'T', 'R', 'U', 'E'};
+    private static final byte[] FALSE = {'F', 'A', 'L', 'S', 'E'};
+
+    private static final CellFormat[] NO_STYLES = new CellFormat[0];
+
+    private final SharedStrings sharedStrings;
+    private final CellFormat[] styles;
+    private final RowSelection selection;
+    private final boolean typed;
+    private final FormatScratch scratch = new FormatScratch();
+    private final RowBuffer row = new RowBuffer();
+    /** Cells decoded by the current read, reported to the sink when it ends. */
+    private long sharedStringCells;
+    private long formattedCells;
+
+    public SheetReader(SharedStrings sharedStrings) {
+        this(sharedStrings, NO_STYLES);
+    }
+
+    /**
+     * @param styles number format of each cell style, indexed by the
+     *               {@code s} attribute of a cell
+     */
+    public SheetReader(SharedStrings sharedStrings, CellFormat[] styles) {
+        this(sharedStrings, styles, RowSelection.ALL);
+    }
+
+    /**
+     * @param styles    number format of each cell style, indexed by the
+     *                  {@code s} attribute of a cell
+     * @param selection the columns to decode and the rows to deliver
+     */
+    public SheetReader(SharedStrings sharedStrings, CellFormat[] styles, RowSelection selection) {
+        this(sharedStrings, styles, selection, false);
+    }
+
+    /**
+     * @param styles    number format of each cell style, indexed by the
+     *                  {@code s} attribute of a cell
+     * @param selection the columns to decode and the rows to deliver
+     * @param typed     whether to record the values of numeric cells with
+     *                  {@link RowBuffer#number}
+     */
+    public SheetReader(SharedStrings sharedStrings, CellFormat[] styles, RowSelection selection, boolean typed) {
+        this.sharedStrings = sharedStrings;
+        this.styles = styles;
+        this.selection = selection;
+        this.typed = typed;
+    }
+
+    /**
+     * Reads the sheet and returns the number of rows delivered to the sink.
+     */
+    public long read(InputStream in, RowSink sink) throws IOException {
+        return counted(new SheetTokenizer(in), sink, 0, false);
+    }
+
+    /**
+     * Reads one chunk produced by a {@link SheetChunker} and returns the number
+     * of rows delivered, including empty rows filling a gap before the chunk.
+     */
+    public long read(SheetChunker.Chunk chunk, RowSink sink) throws IOException {
+        // A chunk holds bare <row> elements from inside <sheetData>.
+        return counted(new SheetTokenizer(chunk.data(), 0, chunk.length()), sink, chunk.previousRow(), true);
+    }
+
+    private long counted(SheetTokenizer xml, RowSink sink, int previousRow, boolean inSheetData) throws IOException {
+        sharedStringCells = 0;
+        formattedCells = 0;
+        long rows = read(xml, sink, previousRow, inSheetData);
+        sink.decoded(sharedStringCells, formattedCells);
+        return rows;
+    }
+
+    private long read(SheetTokenizer xml, RowSink sink, int previousRow, boolean inSheetData) throws IOException {
+        long rows = 0;
+        int lastRow = previousRow;
+        int nextColumn = 0;
+        CellType cellType = CellType.NUMBER;
+        CellFormat format = CellFormat.GENERAL;
+        boolean inValue = false;
+        boolean inInlineText = false;
+        int phoneticDepth = 0;
+        int slot = -1;
+        boolean rejected = false;
+
+        int event;
+        while ((event = xml.next()) != SheetTokenizer.END_DOCUMENT) {
+            if (event == SheetTokenizer.START_ELEMENT) {
+                switch (xml.element()) {
+                    case SheetTokenizer.SHEET_DATA -> inSheetData = true;
+                    case SheetTokenizer.ROW -> {
+                        if (!inSheetData) {
+                            break;
+                        }
+                        int rowNumber = rowNumber(xml, lastRow);
+                        int gapEnd = Math.min(rowNumber - 1, selection.lastRow());
+                        while (lastRow < gapEnd) {
+                            row.reset(++lastRow);
+                            rows += deliver(sink);
+                            if (rows >= selection.limit()) {
+                                return rows;
+                            }
+                        }
+                        if (rowNumber > selection.lastRow()) {
+                            // Past the requested range: stop without reading the rest of the sheet.
+                            return rows;
+                        }
+                        lastRow = rowNumber;
+                        if (!selection.includesRow(rowNumber)) {
+                            xml.skipElement();
+                            break;
+                        }
+                        row.reset(rowNumber);
+                        nextColumn = 0;
+                        rejected = false;
+                    }
+                    case SheetTokenizer.CELL -> {
+                        if (!inSheetData) {
+                            break;
+                        }
+                        byte[] bytes = xml.buffer();
+                        int column = -1;
+                        cellType = CellType.NUMBER;
+                        int style = 0;
+                        for (int i = 0, n = xml.attributeCount(); i < n; i++) {
+                            int start = xml.attributeStart(i);
+                            int end = xml.attributeEnd(i);
+                            switch (xml.attributeName(i)) {
+                                case SheetTokenizer.ATTRIBUTE_R -> column = CellReference.column(bytes, start, end);
+                                case SheetTokenizer.ATTRIBUTE_T -> cellType = CellType.of(bytes, start, end);
+                                case SheetTokenizer.ATTRIBUTE_S ->
+                                        style = Math.max(CellReference.parseIndex(bytes, start, end), 0);
+                                default -> {
+                                }
+                            }
+                        }
+                        if (column < 0) {
+                            column = nextColumn;
+                        }
+                        nextColumn = column + 1;
+                        slot = rejected ? -1 : selection.slot(column);
+                        if (slot >= 0) {
+                            format = style < styles.length ? styles[style] : CellFormat.GENERAL;
+                            row.beginCell(slot);
+                        }
+                    }
+                    case SheetTokenizer.VALUE -> {
+                        inValue = slot >= 0;
+                        xml.clearText();
+                    }
+                    case SheetTokenizer.INLINE_STRING -> xml.clearText();
+                    case SheetTokenizer.TEXT_RUN -> inInlineText = slot >= 0
+                            && cellType == CellType.INLINE_STRING && phoneticDepth == 0;
+                    case SheetTokenizer.PHONETIC_RUN -> phoneticDepth++;
+                    default -> {
+                    }
+                }
+            } else if (event == SheetTokenizer.END_ELEMENT) {
+                switch (xml.element()) {
+                    case SheetTokenizer.SHEET_DATA -> inSheetData = false;
+                    case SheetTokenizer.ROW -> {
+                        if (inSheetData) {
+                            row.endCell();
+                            if (!rejected) {
+                                rows += deliver(sink);
+                                if (rows >= selection.limit()) {
+                                    return rows;
+                                }
+                            }
+                        }
+                    }
+                    case SheetTokenizer.CELL -> {
+                        if (slot >= 0) {
+                            row.endCell();
+                            rejected = !selection.test(slot, row, scratch);
+                            slot = -1;
+                        }
+                    }
+                    case SheetTokenizer.VALUE -> {
+                        if (inValue) {
+                            inValue = false;
+                            appendValue(cellType, format, xml.text(), xml.textLength());
+                        }
+                    }
+                    case SheetTokenizer.INLINE_STRING -> {
+                        if (slot >= 0) {
+                            row.clearCell();
+                            row.append(xml.text(), 0, xml.textLength());
+                        }
+                    }
+                    case SheetTokenizer.TEXT_RUN -> inInlineText = false;
+                    case SheetTokenizer.PHONETIC_RUN -> phoneticDepth--;
+                    default -> {
+                    }
+                }
+            } else if (inValue || inInlineText) {
+                xml.collectText();
+            }
+        }
+        return rows;
+    }
+
+    /** Passes the row to the sink if the selection keeps it; returns the number of rows delivered. */
+    private int deliver(RowSink sink) throws IOException {
+        if (!selection.includesRow(row.rowNumber()) || !selection.accept(row, scratch)) {
+            return 0;
+        }
+        sink.row(row);
+        return 1;
+    }
+
+    private int rowNumber(SheetTokenizer xml, int lastRow) throws ConversionException {
+        int r = xml.attribute(SheetTokenizer.ATTRIBUTE_R);
+        if (r < 0) {
+            return lastRow + 1;
+        }
+        int rowNumber = CellReference.parseIndex(xml.buffer(), xml.attributeStart(r), xml.attributeEnd(r));
+        if (rowNumber < 0) {
+            throw new ConversionException("Invalid row number after row " + lastRow);
+        }
+        return rowNumber;
+    }
+
+    private void appendValue(CellType type, CellFormat format, byte[] text, int length) throws ConversionException {
+        row.clearCell();
+        switch (type) {
+            case SHARED_STRING -> {
+                int index = CellReference.parseIndex(text, 0, length);
+                if (index < 0) {
+                    throw new ConversionException("Invalid shared string index in row " + row.rowNumber());
+                }
+                sharedStrings.appendTo(index, row);
+                sharedStringCells++;
+            }
+            case BOOLEAN -> {
+                boolean value = length == 1 && text[0] == '1';
+                row.append(value ? TRUE : FALSE);
+                row.number(CellKind.BOOLEAN, value ? 1 : 0);
+            }
+            case NUMBER -> {
+                format.format(text, 0, length, row, scratch);
+                if (format != CellFormat.GENERAL) {
+                    formattedCells++;
+                }
+                if (typed) {
+                    record(format, text, length);
+                } else {
+                    row.kind(format.isDate() ? CellKind.DATE : CellKind.NUMBER);
+                }
+            }
+            case ERROR -> {
+                row.append(text, 0, length);
+                row.kind(CellKind.ERROR);
+            }
+            default -> row.append(text, 0, length);
+        }
+    }
+
+    /** Records the value of a number as stored; a value that is not a number stays text. */
+    private void record(CellFormat format, byte[] text, int length) {
+        double value = scratch.parse(text, 0, length);
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (format.isDate()) {
+            row.number(CellKind.DATE, format.epochDays(value));
+        } else {
+            row.number(CellKind.NUMBER, value);
+        }
+    }
+
+    /** The {@code t} attribute of a {@code <c>} element. */
+    private enum CellType {
+        NUMBER, SHARED_STRING, INLINE_STRING, FORMULA_STRING, BOOLEAN, ERROR;
+
+        private static final byte[] SHARED = {'s'};
+        private static final byte[] INLINE = {'i', 'n', 'l', 'i', 'n', 'e', 'S', 't', 'r'};
+        private static final byte[] FORMULA = {'s', 't', 'r'};
+        private static final byte[] BOOL = {'b'};
+        private static final byte[] ERR = {'e'};
+
+        static CellType of(byte[] b, int start, int end) {
+            if (Arrays.equals(b, start, end, SHARED, 0, SHARED.length)) {
+                return SHARED_STRING;
+            } else if (Arrays.equals(b, start, end, INLINE, 0, INLINE.length)) {
+                return INLINE_STRING;
+            } else if (Arrays.equals(b, start, end, FORMULA, 0, FORMULA.length)) {
+                return FORMULA_STRING;
+            } else if (Arrays.equals(b, start, end, BOOL, 0, BOOL.length)) {
+                return BOOLEAN;
+            } else if (Arrays.equals(b, start, end, ERR, 0, ERR.length)) {
+                return ERROR;
+            }
+            return NUMBER;
+        }
+    }
+}
@@ -0,0 +1,847 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+
+/**
+ * A pull tokenizer for worksheet and shared-strings XML that works on the
+ * raw UTF-8 bytes.
+ *
+ * <p>Worksheets use a small, fixed vocabulary, so instead of materialising
+ * names, attributes and text as strings like a general StAX parser, the
+ * tokenizer identifies element and attribute names by their bytes and
+ * exposes attribute values as slices of its input buffer. Text is only
+ * decoded when the caller asks for it with {@link #collectText()}; entity
+ * and character references and XML line-end normalisation are handled
+ * there. Namespace prefixes are ignored.
+ *
+ * <p>Comments, processing instructions and the document type declaration
+ * are skipped. Documents declared in an encoding other than UTF-8 are
+ * transcoded to UTF-8 on the fly.
+ */
+final class SheetTokenizer {
+
+    static final int END_DOCUMENT = 0;
+    static final int START_ELEMENT = 1;
+    static final int END_ELEMENT = 2;
+    /** Character data; call {@link #collectText()} to keep it. */
+    static final int TEXT = 3;
+
+    // Element names.
+    static final int OTHER = 0;
+    static final int SHEET_DATA = 1;
+    static final int ROW = 2;
+    static final int CELL = 3;
+    static final int VALUE = 4;
+    static final int INLINE_STRING = 5;
+    static final int TEXT_RUN = 6;
+    static final int PHONETIC_RUN = 7;
+    static final int SHARED_ITEM = 8;
+
+    // Attribute names.
+    static final int ATTRIBUTE_R = 1;
+    static final int ATTRIBUTE_T = 2;
+    static final int ATTRIBUTE_S = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTRIBUTES = 16;
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMMENT_START = "<!--".getBytes(StandardCharsets.US_ASCII);
+
+    private InputStream in;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    private int element;
+    private boolean emptyElement;
+    private boolean pendingEnd;
+    private boolean pendingText;
+    private boolean cdata;
+    /** Start of the bytes {@link #fill()} must keep while copying an element, or -1. */
+    private int mark = -1;
+
+    private final int[] attributeNames = new int[MAX_ATTRIBUTES];
+    private final int[] attributeStarts = new int[MAX_ATTRIBUTES];
+    private final int[] attributeEnds = new int[MAX_ATTRIBUTES];
+    private int attributeCount;
+
+    private byte[] text = new byte[256];
+    private int textLength;
+
+    /** Tokenizes a stream; the caller closes it. */
+    SheetTokenizer(InputStream in) throws IOException {
+        this.in = in;
+        this.buf = new byte[BUFFER_SIZE];
+        detectEncoding();
+    }
+
+    /** Tokenizes {@code length} bytes of UTF-8 XML, such as a sheet chunk. */
+    SheetTokenizer(byte[] data, int offset, int length) {
+        this.buf = data;
+        this.pos = offset;
+        this.limit = offset + length;
+        this.eof = true;
+    }
+
+    /** Advances to the next event and returns its type. */
+    int next() throws IOException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            return END_ELEMENT;
+        }
+        if (pendingText) {
+            skipText();
+        }
+        attributeCount = 0;
+        while (true) {
+            if (pos == limit && !fill()) {
+                return END_DOCUMENT;
+            }
+            if (buf[pos] != '<') {
+                pendingText = true;
+                cdata = false;
+                return TEXT;
+            }
+            if (!ensure(2)) {
+                throw malformed("Unexpected end of document");
+            }
+            byte b = buf[pos + 1];
+            if (b == '/') {
+                readEndTag();
+                return END_ELEMENT;
+            }
+            if (b == '?') {
+                skipPast("?>");
+            } else if (b == '!') {
+                if (startsWith(CDATA_START)) {
+                    pos += CDATA_START.length;
+                    pendingText = true;
+                    cdata = true;
+                    return TEXT;
+                }
+                if (startsWith(COMMENT_START)) {
+                    skipPast("-->");
+                } else {
+                    skipDeclaration();
+                }
+            } else {
+                readStartTag();
+                pendingEnd = emptyElement;
+                return START_ELEMENT;
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of the element whose start tag was just returned, up to
+     * and including its end tag, without tokenizing its content. The element
+     * must not contain a nested element of the same name, as is the case for
+     * {@code <row>}.
+     */
+    void skipElement() throws IOException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            return;
+        }
+        pendingText = false;
+        int target = element;
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw malformed("Unexpected end of document");
+            }
+            if (buf[pos] != '<') {
+                pos++;
+                continue;
+            }
+            if (!ensure(2)) {
+                throw malformed("Unexpected end of document");
+            }
+            if (buf[pos + 1] == '/') {
+                readEndTag();
+                if (element == target) {
+                    return;
+                }
+            } else if (startsWith(CDATA_START)) {
+                pos += CDATA_START.length;
+                skipPast("]]>");
+            } else if (startsWith(COMMENT_START)) {
+                skipPast("-->");
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Like {@link #skipElement()}, but appends the raw markup between the
+     * start tag just returned and its end tag to {@link #text()}, without
+     * decoding it.
+     */
+    void copyElement() throws IOException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            return;
+        }
+        pendingText = false;
+        int target = element;
+        mark = pos;
+        try {
+            while (true) {
+                if (pos == limit && !fill()) {
+                    throw malformed("Unexpected end of document");
+                }
+                if (buf[pos] != '<') {
+                    pos++;
+                    continue;
+                }
+                if (!ensure(2)) {
+                    throw malformed("Unexpected end of document");
+                }
+                if (buf[pos + 1] == '/') {
+                    int length = pos - mark;
+                    readEndTag();
+                    if (element == target) {
+                        appendText(buf, mark, length);
+                        return;
+                    }
+                } else if (startsWith(CDATA_START)) {
+                    pos += CDATA_START.length;
+                    skipPast("]]>");
+                } else if (startsWith(COMMENT_START)) {
+                    skipPast("-->");
+                } else {
+                    pos++;
+                }
+            }
+        } finally {
+            mark = -1;
+        }
+    }
+
+    /** The element of the current start or end event. */
+    int element() {
+        return element;
+    }
+
+    int attributeCount() {
+        return attributeCount;
+    }
+
+    /** The name of attribute {@code i} of the current start tag, or {@link #OTHER}. */
+    int attributeName(int i) {
+        return attributeNames[i];
+    }
+
+    /**
+     * The buffer holding the raw attribute values of the current start tag.
+     * Values are valid until the next call to {@link #next()}.
+     */
+    byte[] buffer() {
+        return buf;
+    }
+
+    int attributeStart(int i) {
+        return attributeStarts[i];
+    }
+
+    int attributeEnd(int i) {
+        return attributeEnds[i];
+    }
+
+    /** Returns the index of the first attribute called {@code name}, or -1. */
+    int attribute(int name) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeNames[i] == name) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Clears the text collected so far. */
+    void clearText() {
+        textLength = 0;
+    }
+
+    /** Decodes the current {@link #TEXT} event and appends it to {@link #text()}. */
+    void collectText() throws IOException {
+        if (!pendingText) {
+            return;
+        }
+        pendingText = false;
+        if (cdata) {
+            collectCdata();
+            return;
+        }
+        while (true) {
+            if (pos == limit && !fill()) {
+                return;
+            }
+            int start = pos;
+            int end = limit;
+            int i = start;
+            while (i < end) {
+                byte b = buf[i];
+                if (b == '<' || b == '&' || b == '\r') {
+                    break;
+                }
+                i++;
+            }
+            appendText(buf, start, i - start);
+            pos = i;
+            if (i == end) {
+                continue;
+            }
+            byte b = buf[i];
+            if (b == '<') {
+                return;
+            }
+            if (b == '&') {
+                decodeReference();
+            } else {
+                // XML normalises CR LF and lone CR to LF.
+                pos++;
+                if ((pos < limit || fill()) && buf[pos] == '\n') {
+                    pos++;
+                }
+                appendText((byte) '\n');
+            }
+        }
+    }
+
+    byte[] text() {
+        return text;
+    }
+
+    int textLength() {
+        return textLength;
+    }
+
+    // ---- tags
+
+    private void readStartTag() throws IOException {
+        int end = findTagEnd();
+        int i = pos + 1;
+        int nameStart = i;
+        while (i < end && !isNameEnd(buf[i])) {
+            i++;
+        }
+        element = elementName(buf, nameStart, i);
+        emptyElement = buf[end - 1] == '/';
+        int attributesEnd = emptyElement ? end - 1 : end;
+        attributeCount = 0;
+        while (true) {
+            while (i < attributesEnd && isWhitespace(buf[i])) {
+                i++;
+            }
+            if (i >= attributesEnd) {
+                break;
+            }
+            int attributeStart = i;
+            while (i < attributesEnd && buf[i] != '=' && !isWhitespace(buf[i])) {
+                i++;
+            }
+            int attributeName = attributeName(buf, attributeStart, i);
+            while (i < attributesEnd && isWhitespace(buf[i])) {
+                i++;
+            }
+            if (i >= attributesEnd || buf[i] != '=') {
+                throw malformed("Attribute without value");
+            }
+            i++;
+            while (i < attributesEnd && isWhitespace(buf[i])) {
+                i++;
+            }
+            if (i >= attributesEnd || (buf[i] != '"' && buf[i] != '\'')) {
+                throw malformed("Unquoted attribute value");
+            }
+            byte quote = buf[i++];
+            int valueStart = i;
+            while (i < attributesEnd && buf[i] != quote) {
+                i++;
+            }
+            if (i >= attributesEnd) {
+                throw malformed("Unterminated attribute value");
+            }
+            if (attributeName != OTHER && attributeCount < MAX_ATTRIBUTES) {
+                attributeNames[attributeCount] = attributeName;
+                attributeStarts[attributeCount] = valueStart;
+                attributeEnds[attributeCount] = i;
+                attributeCount++;
+            }
+            i++;
+        }
+        pos = end + 1;
+    }
+
+    private void readEndTag() throws IOException {
+        int end = findTagEnd();
+        int nameEnd = pos + 2;
+        while (nameEnd < end && !isNameEnd(buf[nameEnd])) {
+            nameEnd++;
+        }
+        element = elementName(buf, pos + 2, nameEnd);
+        pos = end + 1;
+    }
+
+    /**
+     * Makes sure the whole tag starting at {@code pos} is buffered and
+     * returns the index of its closing {@code >}.
+     */
+    private int findTagEnd() throws IOException {
+        int i = pos + 1;
+        byte quote = 0;
+        while (true) {
+            if (i == limit) {
+                int shift = pos;
+                if (!fill()) {
+                    throw malformed("Unterminated tag");
+                }
+                i -= shift - pos;
+                continue;
+            }
+            byte b = buf[i];
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i;
+            }
+            i++;
+        }
+    }
+
+    /** Identifies the element named by bytes {@code start} to {@code end}, ignoring any prefix. */
+    static int elementName(byte[] b, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (b[i] == ':') {
+                start = i + 1;
+                break;
+            }
+        }
+        return switch (end - start) {
+            case 1 -> switch (b[start]) {
+                case 'c' -> CELL;
+                case 'v' -> VALUE;
+                case 't' -> TEXT_RUN;
+                default -> OTHER;
+            };
+            case 2 -> {
+                if (b[start] == 'i' && b[start + 1] == 's') {
+                    yield INLINE_STRING;
+                }
+                yield b[start] == 's' && b[start + 1] == 'i' ? SHARED_ITEM : OTHER;
+            }
+            case 3 -> {
+                if (b[start] == 'r' && b[start + 1] == 'o' && b[start + 2] == 'w') {
+                    yield ROW;
+                }
+                yield b[start] == 'r' && b[start + 1] == 'P' && b[start + 2] == 'h' ? PHONETIC_RUN : OTHER;
+            }
+            case 9 -> equals(b, start, "sheetData") ? SHEET_DATA : OTHER;
+            default -> OTHER;
+        };
+    }
+
+    private static int attributeName(byte[] b, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (b[i] == ':') {
+                start = i + 1;
+                break;
+            }
+        }
+        if (end - start != 1) {
+            return OTHER;
+        }
+        return switch (b[start]) {
+            case 'r' -> ATTRIBUTE_R;
+            case 't' -> ATTRIBUTE_T;
+            case 's' -> ATTRIBUTE_S;
+            default -> OTHER;
+        };
+    }
+
+    private static boolean equals(byte[] b, int start, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (b[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || isWhitespace(b);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    // ---- text
+
+    private void skipText() throws IOException {
+        pendingText = false;
+        if (cdata) {
+            skipPast("]]>");
+            return;
+        }
+        while (true) {
+            while (pos < limit) {
+                if (buf[pos] == '<') {
+                    return;
+                }
+                pos++;
+            }
+            if (!fill()) {
+                return;
+            }
+        }
+    }
+
+    private void collectCdata() throws IOException {
+        while (true) {
+            if (!ensure(3)) {
+                throw malformed("Unterminated CDATA section");
+            }
+            if (buf[pos] == ']' && buf[pos + 1] == ']' && buf[pos + 2] == '>') {
+                pos += 3;
+                return;
+            }
+            byte b = buf[pos++];
+            if (b == '\r') {
+                if ((pos < limit || fill()) && buf[pos] == '\n') {
+                    pos++;
+                }
+                b = '\n';
+            }
+            appendText(b);
+        }
+    }
+
+    /** Decodes the entity or character reference at {@code pos}. */
+    private void decodeReference() throws IOException {
+        int start = pos;
+        int i = pos + 1;
+        while (true) {
+            if (i == limit) {
+                int shift = pos;
+                if (!fill()) {
+                    throw malformed("Unterminated entity reference");
+                }
+                start -= shift - pos;
+                i -= shift - pos;
+                continue;
+            }
+            if (buf[i] == ';') {
+                break;
+            }
+            if (i - start > 12) {
+                throw malformed("Invalid entity reference");
+            }
+            i++;
+        }
+        int nameStart = start + 1;
+        int length = i - nameStart;
+        pos = i + 1;
+        if (length > 1 && buf[nameStart] == '#') {
+            boolean hex = buf[nameStart + 1] == 'x';
+            int radix = hex ? 16 : 10;
+            int digitsStart = nameStart + (hex ? 2 : 1);
+            int codePoint = 0;
+            for (int k = digitsStart; k < i; k++) {
+                int digit = Character.digit(buf[k], radix);
+                if (digit < 0 || codePoint > 0x10FFFF) {
+                    throw malformed("Invalid character reference");
+                }
+                codePoint = codePoint * radix + digit;
+            }
+            if (digitsStart == i) {
+                throw malformed("Invalid character reference");
+            }
+            appendCodePoint(codePoint);
+            return;
+        }
+        byte decoded = switch (length) {
+            case 2 -> buf[nameStart] == 'l' && buf[nameStart + 1] == 't' ? (byte) '<'
+                    : buf[nameStart] == 'g' && buf[nameStart + 1] == 't' ? (byte) '>' : 0;
+            case 3 -> equals(buf, nameStart, "amp") ? (byte) '&' : 0;
+            case 4 -> equals(buf, nameStart, "quot") ? (byte) '"' : equals(buf, nameStart, "apos") ? (byte) '\'' : 0;
+            default -> 0;
+        };
+        if (decoded == 0) {
+            throw malformed("Undefined entity &" + new String(buf, nameStart, length, StandardCharsets.UTF_8) + ";");
+        }
+        appendText(decoded);
+    }
+
+    private void appendCodePoint(int cp) throws ConversionException {
+        if (cp < 0x80) {
+            appendText((byte) cp);
+        } else if (cp < 0x800) {
+            appendText((byte) (0xC0 | (cp >> 6)));
+            appendText((byte) (0x80 | (cp & 0x3F)));
+        } else if (cp >= 0xD800 && cp <= 0xDFFF) {
+            // A lone surrogate cannot be encoded; substitute as RowBuffer.appendUtf8 does.
+            appendText((byte) '?');
+        } else if (cp < 0x10000) {
+            appendText((byte) (0xE0 | (cp >> 12)));
+            appendText((byte) (0x80 | ((cp >> 6) & 0x3F)));
+            appendText((byte) (0x80 | (cp & 0x3F)));
+        } else if (cp <= 0x10FFFF) {
+            appendText((byte) (0xF0 | (cp >> 18)));
+            appendText((byte) (0x80 | ((cp >> 12) & 0x3F)));
+            appendText((byte) (0x80 | ((cp >> 6) & 0x3F)));
+            appendText((byte) (0x80 | (cp & 0x3F)));
+        } else {
+            throw malformed("Invalid character reference");
+        }
+    }
+
+    private void appendText(byte[] bytes, int offset, int length) {
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+        }
+        System.arraycopy(bytes, offset, text, textLength, length);
+        textLength += length;
+    }
+
+    private void appendText(byte b) {
+        if (textLength == text.length) {
+            text = Arrays.copyOf(text, text.length * 2);
+        }
+        text[textLength++] = b;
+    }
+
+    // ---- skipping
+
+    private void skipPast(String terminator) throws IOException {
+        byte[] end = terminator.getBytes(StandardCharsets.US_ASCII);
+        while (true) {
+            if (!ensure(end.length)) {
+                throw malformed("Unterminated markup");
+            }
+            if (startsWith(end)) {
+                pos += end.length;
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /** Skips a {@code <!DOCTYPE ...>} declaration, including any internal subset. */
+    private void skipDeclaration() throws IOException {
+        int depth = 0;
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw malformed("Unterminated declaration");
+            }
+            byte b = buf[pos++];
+            if (b == '[') {
+                depth++;
+            } else if (b == ']') {
+                depth--;
+            } else if (b == '>' && depth <= 0) {
+                return;
+            }
+        }
+    }
+
+    private boolean startsWith(byte[] prefix) throws IOException {
+        if (!ensure(prefix.length)) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---- buffering
+
+    /** Makes at least {@code n} bytes available at {@code pos}; returns false at the end of input. */
+    private boolean ensure(int n) throws IOException {
+        while (limit - pos < n) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads more input, keeping the bytes from {@code pos} on, or from the
+     * mark if one is set. The kept bytes may move to the start of the buffer,
+     * and the buffer grows if they fill it. Returns false if no more input is
+     * available.
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int keep = mark >= 0 ? mark : pos;
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, limit - keep);
+            limit -= keep;
+            pos -= keep;
+            if (mark >= 0) {
+                mark = 0;
+            }
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private ConversionException malformed(String message) {
+        return new ConversionException("Malformed sheet XML: " + message);
+    }
+
+    // ---- encoding
+
+    /**
+     * Inspects the byte order mark and XML declaration, and switches to a
+     * transcoding stream when the document is not UTF-8.
+     */
+    private void detectEncoding() throws IOException {
+        while (limit < 256 && fill()) {
+            // Read enough for the XML declaration.
+        }
+        Charset charset = StandardCharsets.UTF_8;
+        int bomLength = 0;
+        if (limit >= 3 && (buf[0] & 0xFF) == 0xEF && (buf[1] & 0xFF) == 0xBB && (buf[2] & 0xFF) == 0xBF) {
+            bomLength = 3;
+        } else if (limit >= 2 && (buf[0] & 0xFF) == 0xFE && (buf[1] & 0xFF) == 0xFF) {
+            charset = StandardCharsets.UTF_16BE;
+            bomLength = 2;
+        } else if (limit >= 2 && (buf[0] & 0xFF) == 0xFF && (buf[1] & 0xFF) == 0xFE) {
+            charset = StandardCharsets.UTF_16LE;
+            bomLength = 2;
+        } else {
+            charset = declaredCharset();
+        }
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            pos = bomLength;
+            return;
+        }
+        InputStream rest = new SequenceInputStream(
+                new ByteArrayInputStream(Arrays.copyOfRange(buf, bomLength, limit)), in);
+        in = new Utf8Transcoder(new InputStreamReader(rest, charset));
+        pos = 0;
+        limit = 0;
+        eof = false;
+    }
+
+    private Charset declaredCharset() throws ConversionException {
+        String head = new String(buf, 0, limit, StandardCharsets.ISO_8859_1);
+        if (!head.startsWith("<?xml")) {
+            return StandardCharsets.UTF_8;
+        }
+        int declarationEnd = head.indexOf("?>");
+        int encoding = head.indexOf("encoding");
+        if (declarationEnd < 0 || encoding < 0 || encoding > declarationEnd) {
+            return StandardCharsets.UTF_8;
+        }
+        int i = encoding + "encoding".length();
+        while (i < declarationEnd && (head.charAt(i) == ' ' || head.charAt(i) == '=')) {
+            i++;
+        }
+        if (i >= declarationEnd || (head.charAt(i) != '"' && head.charAt(i) != '\'')) {
+            return StandardCharsets.UTF_8;
+        }
+        int close = head.indexOf(head.charAt(i), i + 1);
+        if (close < 0 || close > declarationEnd) {
+            return StandardCharsets.UTF_8;
+        }
+        String name = head.substring(i + 1, close);
+        try {
+            return Charset.forName(name);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            throw new ConversionException("Unsupported sheet encoding: " + name);
+        }
+    }
+
+    /** Re-encodes characters from a reader as UTF-8. */
+    private static final class Utf8Transcoder extends InputStream {
+
+        private final Reader reader;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(8192).flip();
+        private final ByteBuffer bytes = ByteBuffer.allocate(3 * 8192 + 4).flip();
+        private boolean endOfInput;
+
+        Utf8Transcoder(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (!bytes.hasRemaining()) {
+                if (endOfInput && !chars.hasRemaining()) {
+                    return -1;
+                }
+                chars.compact();
+                int n = endOfInput ? -1 : reader.read(chars);
+                chars.flip();
+                if (n < 0) {
+                    endOfInput = true;
+                }
+                bytes.clear();
+                CoderResult result = encoder.encode(chars, bytes, endOfInput);
+                if (endOfInput && !chars.hasRemaining()) {
+                    encoder.flush(bytes);
+                }
+                if (result.isError()) {
+                    result.throwException();
+                }
+                bytes.flip();
+            }
+            int n = Math.min(len, bytes.remaining());
+            bytes.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
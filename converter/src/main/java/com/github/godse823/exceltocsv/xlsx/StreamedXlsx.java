@@ -0,0 +1,301 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.format.CellFormat;
+import com.github.godse823.exceltocsv.format.CellFormats;
+import com.github.godse823.exceltocsv.zip.ZipStreamReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts an XLSX package read front to back from a stream, such as a
+ * pipe, where {@link XlsxWorkbook} would need the central directory at the
+ * end of the file.
+ *
+ * <p>Entries are handled in the order they arrive. Relationship parts and
+ * the workbook part are small and kept in memory; the styles and
+ * shared-strings parts are loaded as soon as the workbook structure says
+ * they are needed. A selected sheet arriving after everything it depends on
+ * is converted straight from the stream, so rows are written before the
+ * rest of the input has been received. Only entries that arrive too early
+ * to be used, such as sheets stored ahead of the shared strings, as Excel
+ * does, are spilled to temporary files in their compressed form and
+ * converted, in workbook order, once their dependencies are in.
+ */
+public final class StreamedXlsx {
+
+    private static final String ROOT_RELATIONSHIPS = "_rels/.rels";
+    private static final String DEFAULT_WORKBOOK_PART = "xl/workbook.xml";
+    private static final CellFormat[] NO_STYLES = new CellFormat[0];
+
+    /** Receives the sheets of a streamed workbook. */
+    public interface Handler {
+
+        /**
+         * Chooses the sheets to convert once the workbook structure is
+         * known. Sheets are delivered to {@link #sheet} in the order they
+         * become available, which need not be workbook order.
+         */
+        List<SheetInfo> select(List<SheetInfo> sheets) throws IOException;
+
+        /** Converts one selected sheet; {@code xml} is only valid during the call. */
+        void sheet(SheetInfo sheet, SheetReader reader, InputStream xml) throws IOException;
+    }
+
+    private final ConversionOptions options;
+    private final Handler handler;
+
+    /** Relationship parts and the workbook part, by entry name. */
+    private final Map<String, byte[]> parts = new HashMap<>();
+    /** Entries received before they could be used. */
+    private final Map<String, Spill> spilled = new HashMap<>();
+    private final Set<String> converted = new HashSet<>();
+
+    private String workbookPart;
+    /** The selected sheets; {@code null} until the workbook structure is known. */
+    private List<SheetInfo> selected;
+    private boolean date1904;
+    private String stylesPart;
+    private String sharedStringsPart;
+    private CellFormat[] styles = NO_STYLES;
+    private SharedStrings sharedStrings = SharedStrings.EMPTY;
+
+    private record Spill(Path file, int method) {
+    }
+
+    private StreamedXlsx(ConversionOptions options, Handler handler) {
+        this.options = options;
+        this.handler = handler;
+    }
+
+    /**
+     * Reads the workbook from {@code in} and closes it. The central directory
+     * at the end is read and discarded rather than left unread, so that a
+     * process writing into a pipe does not fail on a closed pipe.
+     */
+    public static void read(InputStream in, ConversionOptions options, Handler handler) throws IOException {
+        StreamedXlsx workbook = new StreamedXlsx(options, handler);
+        try (ZipStreamReader zip = new ZipStreamReader(in)) {
+            workbook.read(zip);
+            in.transferTo(OutputStream.nullOutputStream());
+        } finally {
+            workbook.cleanUp();
+        }
+    }
+
+    private void read(ZipStreamReader zip) throws IOException {
+        ZipStreamReader.Entry entry;
+        while ((entry = zip.next()) != null) {
+            String name = entry.name();
+            if (name.endsWith(".rels") || name.equals(workbookPart)
+                    || (workbookPart == null && name.equals(DEFAULT_WORKBOOK_PART))) {
+                parts.put(name, zip.openEntry().readAllBytes());
+                resolveStructure(false);
+            } else if (selected == null) {
+                spill(zip, entry);
+            } else if (name.equals(stylesPart)) {
+                styles = Styles.read(zip.openEntry(), new CellFormats(date1904));
+                stylesPart = null;
+                convertSpilled(false);
+            } else if (name.equals(sharedStringsPart)) {
+                sharedStrings = SharedStrings.read(zip.openEntry(), options.sharedStringsSpillThreshold());
+                sharedStringsPart = null;
+                convertSpilled(false);
+            } else {
+                SheetInfo sheet = selectedSheet(name);
+                if (sheet == null) {
+                    continue;
+                }
+                if (dependenciesLoaded()) {
+                    convert(sheet, zip.openEntry());
+                } else {
+                    spill(zip, entry);
+                }
+            }
+        }
+        // Parts that never arrived are treated as absent.
+        resolveStructure(true);
+        stylesPart = null;
+        sharedStringsPart = null;
+        convertSpilled(true);
+        for (SheetInfo sheet : selected) {
+            if (!converted.contains(sheet.entryName())) {
+                throw new ConversionException("Sheet '" + sheet.name() + "' refers to missing part "
+                        + sheet.entryName());
+            }
+        }
+    }
+
+    /**
+     * Works out the workbook structure once the root relationships, the
+     * workbook part and its relationships are in, then loads any spilled
+     * parts it needs. At the end of the input, missing relationships are
+     * taken as empty.
+     */
+    private void resolveStructure(boolean atEnd) throws IOException {
+        if (selected != null) {
+            return;
+        }
+        if (workbookPart == null) {
+            byte[] rootRelationships = parts.get(ROOT_RELATIONSHIPS);
+            if (rootRelationships != null) {
+                workbookPart = DEFAULT_WORKBOOK_PART;
+                for (XlsxWorkbook.Relationship rel
+                        : XlsxWorkbook.readRelationships(new ByteArrayInputStream(rootRelationships),
+                        ROOT_RELATIONSHIPS).values()) {
+                    if (rel.type().endsWith(XlsxWorkbook.RELATIONSHIP_OFFICE_DOCUMENT)) {
+                        workbookPart = XlsxWorkbook.resolve("", rel.target());
+                        break;
+                    }
+                }
+                // The workbook part may have been spilled before its name was known.
+                Spill spill = spilled.remove(workbookPart);
+                if (spill != null) {
+                    try (InputStream in = open(spill)) {
+                        parts.put(workbookPart, in.readAllBytes());
+                    } finally {
+                        delete(spill);
+                    }
+                }
+            } else if (atEnd) {
+                workbookPart = DEFAULT_WORKBOOK_PART;
+            } else {
+                return;
+            }
+        }
+        byte[] workbook = parts.get(workbookPart);
+        String relationshipsPart = XlsxWorkbook.relationshipsPartOf(workbookPart);
+        byte[] relationshipBytes = parts.get(relationshipsPart);
+        if (workbook == null || (relationshipBytes == null && !atEnd)) {
+            if (atEnd && workbook == null) {
+                throw new ConversionException("Not an XLSX workbook: no office document part found");
+            }
+            return;
+        }
+        Map<String, XlsxWorkbook.Relationship> relationships = relationshipBytes == null ? Map.of()
+                : XlsxWorkbook.readRelationships(new ByteArrayInputStream(relationshipBytes), relationshipsPart);
+        XlsxWorkbook.WorkbookPart structure =
+                XlsxWorkbook.readWorkbook(new ByteArrayInputStream(workbook), workbookPart, relationships);
+        date1904 = structure.date1904();
+        selected = List.copyOf(handler.select(structure.sheets()));
+        sharedStringsPart = findPart(relationships, XlsxWorkbook.RELATIONSHIP_SHARED_STRINGS);
+        stylesPart = options.formatNumbers() ? findPart(relationships, XlsxWorkbook.RELATIONSHIP_STYLES) : null;
+
+        // Drop spilled entries that turn out to be irrelevant, and load the shared parts.
+        spilled.keySet().removeIf(name -> {
+            boolean needed = name.equals(sharedStringsPart) || name.equals(stylesPart) || selectedSheet(name) != null;
+            if (!needed) {
+                delete(spilled.get(name));
+            }
+            return !needed;
+        });
+        Spill spill = stylesPart == null ? null : spilled.remove(stylesPart);
+        if (spill != null) {
+            try (InputStream in = open(spill)) {
+                styles = Styles.read(in, new CellFormats(date1904));
+            } finally {
+                delete(spill);
+            }
+            stylesPart = null;
+        }
+        spill = sharedStringsPart == null ? null : spilled.remove(sharedStringsPart);
+        if (spill != null) {
+            try (InputStream in = open(spill)) {
+                sharedStrings = SharedStrings.read(in, options.sharedStringsSpillThreshold());
+            } finally {
+                delete(spill);
+            }
+            sharedStringsPart = null;
+        }
+        convertSpilled(false);
+    }
+
+    private String findPart(Map<String, XlsxWorkbook.Relationship> relationships, String type) {
+        for (XlsxWorkbook.Relationship rel : relationships.values()) {
+            if (rel.type().endsWith(type)) {
+                return XlsxWorkbook.resolve(workbookPart, rel.target());
+            }
+        }
+        return null;
+    }
+
+    /** Converts the spilled selected sheets in workbook order, once their dependencies are loaded. */
+    private void convertSpilled(boolean atEnd) throws IOException {
+        if (selected == null || (!atEnd && !dependenciesLoaded())) {
+            return;
+        }
+        for (SheetInfo sheet : selected) {
+            Spill spill = spilled.remove(sheet.entryName());
+            if (spill != null) {
+                try (InputStream in = open(spill)) {
+                    convert(sheet, in);
+                } finally {
+                    delete(spill);
+                }
+            }
+        }
+    }
+
+    private boolean dependenciesLoaded() {
+        return stylesPart == null && sharedStringsPart == null;
+    }
+
+    private SheetInfo selectedSheet(String entryName) {
+        for (SheetInfo sheet : selected) {
+            if (sheet.entryName().equals(entryName)) {
+                return sheet;
+            }
+        }
+        return null;
+    }
+
+    private void convert(SheetInfo sheet, InputStream xml) throws IOException {
+        if (converted.add(sheet.entryName())) {
+            handler.sheet(sheet, new SheetReader(sharedStrings, styles, options.selection(),
+                    options.outputFormat().typed()), xml);
+        }
+    }
+
+    private void spill(ZipStreamReader zip, ZipStreamReader.Entry entry) throws IOException {
+        Path file = Files.createTempFile("excel-to-csv-", ".part");
+        Spill spill = new Spill(file, entry.method());
+        Spill previous = spilled.put(entry.name(), spill);
+        if (previous != null) {
+            delete(previous);
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            zip.transferRawTo(out);
+        }
+    }
+
+    private static InputStream open(Spill spill) throws IOException {
+        return ZipStreamReader.openRaw(Files.newInputStream(spill.file()), spill.method());
+    }
+
+    private static void delete(Spill spill) {
+        try {
+            Files.deleteIfExists(spill.file());
+        } catch (IOException e) {
+            spill.file().toFile().deleteOnExit();
+        }
+    }
+
+    private void cleanUp() throws IOException {
+        for (Spill spill : spilled.values()) {
+            delete(spill);
+        }
+        spilled.clear();
+        sharedStrings.close();
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.format.CellFormat;
+import com.github.godse823.exceltocsv.format.CellFormats;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the number formats of the cell styles in {@code xl/styles.xml}. The
+ * result is indexed by the {@code s} attribute of a cell; fonts, fills and
+ * borders are ignored.
+ */
+final class Styles {
+
+    private Styles() {
+    }
+
+    static CellFormat[] read(InputStream in, CellFormats formats) throws IOException {
+        Map<Integer, String> customCodes = new HashMap<>();
+        List<CellFormat> cellFormats = new ArrayList<>();
+        try {
+            XMLStreamReader xml = XmlSupport.inputFactory().createXMLStreamReader(in);
+            try {
+                boolean inCellXfs = false;
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (XmlSupport.localName(xml.getLocalName())) {
+                            case "numFmt" -> {
+                                String id = XlsxWorkbook.attribute(xml, "numFmtId");
+                                String code = XlsxWorkbook.attribute(xml, "formatCode");
+                                if (id != null && code != null) {
+                                    customCodes.put(Integer.parseInt(id.trim()), code);
+                                }
+                            }
+                            case "cellXfs" -> inCellXfs = true;
+                            case "xf" -> {
+                                if (inCellXfs) {
+                                    String id = XlsxWorkbook.attribute(xml, "numFmtId");
+                                    int numFmtId = id == null ? 0 : Integer.parseInt(id.trim());
+                                    cellFormats.add(formats.forId(numFmtId, customCodes.get(numFmtId)));
+                                }
+                            }
+                            default -> {
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT
+                            && XmlSupport.localName(xml.getLocalName()).equals("cellXfs")) {
+                        inCellXfs = false;
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new ConversionException("Malformed styles part", e);
+        }
+        return cellFormats.toArray(new CellFormat[0]);
+    }
+}
@@ -0,0 +1,316 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.RowSelection;
+import com.github.godse823.exceltocsv.RowSink;
+import com.github.godse823.exceltocsv.Workbook;
+import com.github.godse823.exceltocsv.format.CellFormat;
+import com.github.godse823.exceltocsv.format.CellFormats;
+import com.github.godse823.exceltocsv.zip.MappedZipFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * An open XLSX package. Only the workbook manifest, the cell styles and the
+ * shared-strings table are read eagerly; sheet XML is streamed on demand through
+ * {@link #openSheet(SheetInfo)}. The package is accessed through a
+ * {@link MappedZipFile}, so converting one sheet inflates only that sheet's
+ * entry.
+ */
+public final class XlsxWorkbook implements Workbook {
+
+    static final String RELATIONSHIP_OFFICE_DOCUMENT = "/officeDocument";
+    private static final String RELATIONSHIP_WORKSHEET = "/worksheet";
+    static final String RELATIONSHIP_SHARED_STRINGS = "/sharedStrings";
+    static final String RELATIONSHIP_STYLES = "/styles";
+    private static final CellFormat[] NO_STYLES = new CellFormat[0];
+
+    private final MappedZipFile zip;
+    private final List<SheetInfo> sheets;
+    private final SharedStrings sharedStrings;
+    private final CellFormat[] styles;
+    private final RowSelection selection;
+    private final boolean typed;
+    private final List<String> sheetNames;
+    /** Parts besides the sheet itself that its CSV depends on: shared strings and styles. */
+    private final List<MappedZipFile.Entry> sharedParts;
+    private final boolean date1904;
+
+    private XlsxWorkbook(MappedZipFile zip, List<SheetInfo> sheets, SharedStrings sharedStrings,
+                         CellFormat[] styles, RowSelection selection, boolean typed,
+                         List<MappedZipFile.Entry> sharedParts, boolean date1904) {
+        this.zip = zip;
+        this.sheets = sheets;
+        this.sharedStrings = sharedStrings;
+        this.styles = styles;
+        this.selection = selection;
+        this.typed = typed;
+        this.sharedParts = sharedParts;
+        this.date1904 = date1904;
+        this.sheetNames = sheets.stream().map(SheetInfo::name).toList();
+    }
+
+    public static XlsxWorkbook open(Path path) throws IOException {
+        return open(path, ConversionOptions.defaults());
+    }
+
+    public static XlsxWorkbook open(Path path, ConversionOptions options) throws IOException {
+        MappedZipFile zip = MappedZipFile.open(path, options.inflater());
+        try {
+            String workbookPart = findWorkbookPart(zip);
+            Map<String, Relationship> relationships = readRelationships(zip, relationshipsPartOf(workbookPart));
+            WorkbookPart workbook = readWorkbook(zip, workbookPart, relationships);
+
+            List<MappedZipFile.Entry> sharedParts = new ArrayList<>(2);
+            CellFormat[] styles = NO_STYLES;
+            if (options.formatNumbers()) {
+                MappedZipFile.Entry entry = findPart(zip, workbookPart, relationships, RELATIONSHIP_STYLES);
+                if (entry != null) {
+                    sharedParts.add(entry);
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        styles = Styles.read(in, new CellFormats(workbook.date1904()));
+                    }
+                }
+            }
+            SharedStrings sharedStrings = SharedStrings.EMPTY;
+            MappedZipFile.Entry entry = findPart(zip, workbookPart, relationships, RELATIONSHIP_SHARED_STRINGS);
+            if (entry != null) {
+                sharedParts.add(entry);
+                try (InputStream in = zip.getInputStream(entry)) {
+                    sharedStrings = SharedStrings.read(in, options.sharedStringsSpillThreshold());
+                }
+            }
+            return new XlsxWorkbook(zip, workbook.sheets(), sharedStrings, styles, options.selection(),
+                    options.outputFormat().typed(), List.copyOf(sharedParts), workbook.date1904());
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    private static MappedZipFile.Entry findPart(MappedZipFile zip, String workbookPart,
+                                                Map<String, Relationship> relationships, String type) {
+        for (Relationship rel : relationships.values()) {
+            if (rel.type().endsWith(type)) {
+                MappedZipFile.Entry entry = zip.getEntry(resolve(workbookPart, rel.target()));
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    public List<SheetInfo> sheets() {
+        return sheets;
+    }
+
+    @Override
+    public List<String> sheetNames() {
+        return sheetNames;
+    }
+
+    @Override
+    public long readSheet(int index, RowSink sink) throws IOException {
+        try (InputStream in = openSheet(sheets.get(index))) {
+            return newSheetReader().read(in, sink);
+        }
+    }
+
+    /**
+     * Digests the sheet part together with the shared-strings and styles
+     * parts and the date system, which is everything its CSV depends on
+     * besides the conversion options. Parts are digested in their compressed
+     * form, so this costs a pass over the bytes but no inflation or parsing.
+     */
+    @Override
+    public boolean digestSheet(int index, MessageDigest digest) throws IOException {
+        MappedZipFile.Entry entry = zip.getEntry(sheets.get(index).entryName());
+        if (entry == null) {
+            return false;
+        }
+        zip.digest(entry, digest);
+        for (MappedZipFile.Entry part : sharedParts) {
+            zip.digest(part, digest);
+        }
+        digest.update((byte) (date1904 ? 1 : 0));
+        return true;
+    }
+
+    /**
+     * Creates a reader for this workbook's sheets. Readers are not
+     * thread-safe; create one per thread.
+     */
+    public SheetReader newSheetReader() {
+        return new SheetReader(sharedStrings, styles, selection, typed);
+    }
+
+    public SharedStrings sharedStrings() {
+        return sharedStrings;
+    }
+
+    /** Opens the raw XML stream of a sheet. The caller closes it. */
+    public InputStream openSheet(SheetInfo sheet) throws IOException {
+        MappedZipFile.Entry entry = zip.getEntry(sheet.entryName());
+        if (entry == null) {
+            throw new ConversionException("Sheet '" + sheet.name() + "' refers to missing part " + sheet.entryName());
+        }
+        return zip.getInputStream(entry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sharedStrings.close();
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static String findWorkbookPart(MappedZipFile zip) throws IOException {
+        for (Relationship rel : readRelationships(zip, "_rels/.rels").values()) {
+            if (rel.type().endsWith(RELATIONSHIP_OFFICE_DOCUMENT)) {
+                return resolve("", rel.target());
+            }
+        }
+        if (zip.getEntry("xl/workbook.xml") != null) {
+            return "xl/workbook.xml";
+        }
+        throw new ConversionException("Not an XLSX workbook: no office document part found");
+    }
+
+    private static WorkbookPart readWorkbook(MappedZipFile zip, String workbookPart,
+                                              Map<String, Relationship> relationships) throws IOException {
+        MappedZipFile.Entry entry = zip.getEntry(workbookPart);
+        if (entry == null) {
+            throw new ConversionException("Missing workbook part " + workbookPart);
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            return readWorkbook(in, workbookPart, relationships);
+        }
+    }
+
+    /** Lists the worksheets of the workbook part read from {@code in}, in workbook order. */
+    static WorkbookPart readWorkbook(InputStream in, String workbookPart,
+                                     Map<String, Relationship> relationships) throws IOException {
+        List<SheetInfo> sheets = new ArrayList<>();
+        boolean date1904 = false;
+        try {
+            XMLStreamReader xml = XmlSupport.inputFactory().createXMLStreamReader(in);
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String element = XmlSupport.localName(xml.getLocalName());
+                    if (element.equals("workbookPr")) {
+                        String value = attribute(xml, "date1904");
+                        date1904 = "1".equals(value) || "true".equals(value);
+                    } else if (element.equals("sheet")) {
+                        String name = attribute(xml, "name");
+                        Relationship rel = relationships.get(attribute(xml, "id"));
+                        if (rel == null || !rel.type().endsWith(RELATIONSHIP_WORKSHEET)) {
+                            // Chart sheets and dialog sheets carry no cell data.
+                            continue;
+                        }
+                        sheets.add(new SheetInfo(name, sheets.size(), resolve(workbookPart, rel.target())));
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new ConversionException("Malformed workbook part " + workbookPart, e);
+        }
+        return new WorkbookPart(Collections.unmodifiableList(sheets), date1904);
+    }
+
+    private static Map<String, Relationship> readRelationships(MappedZipFile zip, String part) throws IOException {
+        MappedZipFile.Entry entry = zip.getEntry(part);
+        if (entry == null) {
+            return new HashMap<>();
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            return readRelationships(in, part);
+        }
+    }
+
+    /** Reads a relationships part, keyed by relationship id. */
+    static Map<String, Relationship> readRelationships(InputStream in, String part) throws IOException {
+        Map<String, Relationship> relationships = new HashMap<>();
+        try {
+            XMLStreamReader xml = XmlSupport.inputFactory().createXMLStreamReader(in);
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() == XMLStreamConstants.START_ELEMENT
+                            && XmlSupport.localName(xml.getLocalName()).equals("Relationship")) {
+                        String id = attribute(xml, "Id");
+                        if (id != null) {
+                            relationships.put(id, new Relationship(
+                                    String.valueOf(attribute(xml, "Type")),
+                                    String.valueOf(attribute(xml, "Target"))));
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new ConversionException("Malformed relationships part " + part, e);
+        }
+        return relationships;
+    }
+
+    /** Looks up an attribute by local name, ignoring any namespace prefix. */
+    static String attribute(XMLStreamReader xml, String localName) {
+        for (int i = 0, n = xml.getAttributeCount(); i < n; i++) {
+            if (XmlSupport.localName(xml.getAttributeLocalName(i)).equals(localName)) {
+                return xml.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    /** Resolves a relationship target against the directory of the source part. */
+    static String resolve(String sourcePart, String target) {
+        if (target.startsWith("/")) {
+            return target.substring(1);
+        }
+        int slash = sourcePart.lastIndexOf('/');
+        String path = slash < 0 ? target : sourcePart.substring(0, slash + 1) + target;
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (segment.equals("..")) {
+                if (!segments.isEmpty()) {
+                    segments.remove(segments.size() - 1);
+                }
+            } else if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.add(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    static String relationshipsPartOf(String part) {
+        int slash = part.lastIndexOf('/');
+        return part.substring(0, slash + 1) + "_rels/" + part.substring(slash + 1) + ".rels";
+    }
+
+    record Relationship(String type, String target) {
+    }
+
+    record WorkbookPart(List<SheetInfo> sheets, boolean date1904) {
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import javax.xml.stream.XMLInputFactory;
+
+/**
+ * Shared StAX configuration for reading workbook parts.
+ */
+final class XmlSupport {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private XmlSupport() {
+    }
+
+    static XMLInputFactory inputFactory() {
+        return FACTORY;
+    }
+
+    private static XMLInputFactory createFactory() {
+        // Not newFactory(): its provider lookup scans the class path at start-up
+        // and needs reflection in a native image.
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        return factory;
+    }
+
+    /** Strips a namespace prefix such as {@code x:} from an element name. */
+    static String localName(String qualifiedName) {
+        int colon = qualifiedName.indexOf(':');
+        return colon < 0 ? qualifiedName : qualifiedName.substring(colon + 1);
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.godse823.exceltocsv.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ServiceLoader;
+
+/**
+ * Decompresses the raw DEFLATE data of ZIP entries read through
+ * {@link MappedZipFile}.
+ *
+ * <p>Two backends are built in: {@code jdk}, the zlib behind
+ * {@link java.util.zip.Inflater}, and {@code java}, a table-driven inflater
+ * written in Java that decodes straight from the mapped entry. Further
+ * backends, for example one binding a native library, can be added as
+ * {@link ServiceLoader} providers of this interface; a provider that cannot
+ * load its library reports itself as not {@linkplain #isAvailable()
+ * available} and is passed over, so the converter falls back to the
+ * built-in ones.
+ */
+public interface InflaterBackend {
+
+    /** The stored bytes of one entry, handed over in one or more windows. */
+    interface Input {
+
+        /** Returns the next window of input, or {@code null} once all has been returned. */
+        ByteBuffer next() throws IOException;
+    }
+
+    /** The name the backend is selected by, e.g. with {@code --inflater}. */
+    String name();
+
+    /** Whether the backend can be used in this process. */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Returns a stream of the data inflated from {@code input}. The stream
+     * ends with the final DEFLATE block and must be closed to release any
+     * native resources.
+     */
+    InputStream inflate(Input input) throws IOException;
+
+    /** The zlib inflater of the JDK. */
+    static InflaterBackend jdk() {
+        return JdkInflaterBackend.INSTANCE;
+    }
+
+    /**
+     * The backend used unless another is chosen: the first available
+     * provider found on the class path, otherwise {@link #jdk()}.
+     */
+    static InflaterBackend preferred() {
+        return InflaterBackends.preferred();
+    }
+
+    /**
+     * Looks up a backend by name.
+     *
+     * @throws IllegalArgumentException if there is no available backend of
+     *                                  that name
+     */
+    static InflaterBackend named(String name) {
+        return InflaterBackends.named(name);
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.godse823.exceltocsv.zip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/** Finds {@link InflaterBackend}s: the built-in ones first, then providers on the class path. */
+final class InflaterBackends {
+
+    private static final List<InflaterBackend> BUILT_IN =
+            List.of(JdkInflaterBackend.INSTANCE, JavaInflater.BACKEND);
+
+    private InflaterBackends() {
+    }
+
+    /** Scanned once, on first use, as every options builder asks for it. */
+    private static final class Providers {
+
+        static final List<InflaterBackend> AVAILABLE = load();
+
+        private static List<InflaterBackend> load() {
+            List<InflaterBackend> available = new ArrayList<>();
+            for (InflaterBackend backend : ServiceLoader.load(InflaterBackend.class)) {
+                if (backend.isAvailable()) {
+                    available.add(backend);
+                }
+            }
+            return List.copyOf(available);
+        }
+    }
+
+    static InflaterBackend preferred() {
+        List<InflaterBackend> providers = Providers.AVAILABLE;
+        return providers.isEmpty() ? JdkInflaterBackend.INSTANCE : providers.get(0);
+    }
+
+    static InflaterBackend named(String name) {
+        List<String> names = new ArrayList<>();
+        for (List<InflaterBackend> backends : List.of(BUILT_IN, Providers.AVAILABLE)) {
+            for (InflaterBackend backend : backends) {
+                if (backend.name().equals(name)) {
+                    return backend;
+                }
+                names.add(backend.name());
+            }
+        }
+        throw new IllegalArgumentException("Unknown inflater: " + name + " (available: "
+                + String.join(", ", names) + ")");
+    }
+}
@@ -0,0 +1,592 @@
+package com.github.godse823.exceltocsv.zip;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A raw DEFLATE (RFC 1951) decoder in Java, exposed as the {@code java}
+ * {@link InflaterBackend}.
+ *
+ * <p>Huffman codes are decoded through two-level lookup tables: a primary
+ * table indexed by the next 10 (literal/length) or 8 (distance) bits, with
+ * subtables for the rare longer codes. Input bits are kept in a 64-bit
+ * buffer refilled eight bytes at a time, so a whole length/distance pair is
+ * decoded without checking for input in between. Output is decoded into a
+ * buffer that keeps the last 32K as match history and is handed out from
+ * there; decoding stops at symbol boundaries while fewer than 258 bytes
+ * (the longest match) of space are left, so a match is never split.
+ */
+final class JavaInflater extends InputStream {
+
+    static final InflaterBackend BACKEND = new InflaterBackend() {
+        @Override
+        public String name() {
+            return "java";
+        }
+
+        @Override
+        public InputStream inflate(Input input) {
+            return new JavaInflater(input);
+        }
+    };
+
+    private static final VarHandle LONG_LE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final int HISTORY = 32 * 1024;
+    private static final int MAX_MATCH = 258;
+    private static final int OUTPUT_SIZE = HISTORY + 256 * 1024;
+    private static final int INPUT_SIZE = 64 * 1024;
+
+    private static final int LITLEN_BITS = 10;
+    private static final int DIST_BITS = 8;
+    private static final int CODE_LENGTH_BITS = 7;
+    private static final int MAX_CODE_LENGTH = 15;
+    /** Largest table: a full primary table plus subtables for every prefix. */
+    private static final int MAX_TABLE = (1 << LITLEN_BITS) + (1 << MAX_CODE_LENGTH);
+
+    // Table entry layout: bits 0-4 code length, 5-7 kind, 8-12 extra bits
+    // (or subtable bits), 16-31 value (literal, base or subtable offset).
+    private static final int KIND_LITERAL = 0;
+    private static final int KIND_BASE = 1 << 5;
+    private static final int KIND_END = 2 << 5;
+    private static final int KIND_SUBTABLE = 3 << 5;
+    private static final int KIND_INVALID = 4 << 5;
+    private static final int KIND_MASK = 7 << 5;
+
+    private static final int[] LENGTH_BASE = {
+        3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+        35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {
+        0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+        3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DIST_BASE = {
+        1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+        257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DIST_EXTRA = {
+        0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+        7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {
+        16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    /** What each symbol decodes to, without its code length. */
+    private static final int[] LITLEN_SYMBOLS = new int[288];
+    private static final int[] DIST_SYMBOLS = new int[32];
+    private static final int[] CODE_LENGTH_SYMBOLS = new int[19];
+    private static final int[] FIXED_LITLEN = new int[MAX_TABLE];
+    private static final int[] FIXED_DIST = new int[MAX_TABLE];
+
+    static {
+        for (int symbol = 0; symbol < 288; symbol++) {
+            if (symbol < 256) {
+                LITLEN_SYMBOLS[symbol] = KIND_LITERAL | symbol << 16;
+            } else if (symbol == 256) {
+                LITLEN_SYMBOLS[symbol] = KIND_END;
+            } else if (symbol < 286) {
+                LITLEN_SYMBOLS[symbol] = KIND_BASE | LENGTH_EXTRA[symbol - 257] << 8
+                        | LENGTH_BASE[symbol - 257] << 16;
+            } else {
+                LITLEN_SYMBOLS[symbol] = KIND_INVALID;
+            }
+        }
+        for (int symbol = 0; symbol < 32; symbol++) {
+            DIST_SYMBOLS[symbol] = symbol < 30 ? KIND_BASE | DIST_EXTRA[symbol] << 8 | DIST_BASE[symbol] << 16
+                    : KIND_INVALID;
+        }
+        for (int symbol = 0; symbol < 19; symbol++) {
+            CODE_LENGTH_SYMBOLS[symbol] = KIND_LITERAL | symbol << 16;
+        }
+        byte[] lengths = new byte[288];
+        Arrays.fill(lengths, 0, 144, (byte) 8);
+        Arrays.fill(lengths, 144, 256, (byte) 9);
+        Arrays.fill(lengths, 256, 280, (byte) 7);
+        Arrays.fill(lengths, 280, 288, (byte) 8);
+        byte[] distances = new byte[32];
+        Arrays.fill(distances, (byte) 5);
+        try {
+            buildTable(lengths, 0, 288, LITLEN_SYMBOLS, LITLEN_BITS, FIXED_LITLEN);
+            buildTable(distances, 0, 32, DIST_SYMBOLS, DIST_BITS, FIXED_DIST);
+        } catch (ConversionException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final int HEADER = 0;
+    private static final int STORED = 1;
+    private static final int HUFFMAN = 2;
+    private static final int DONE = 3;
+
+    private final InflaterBackend.Input input;
+    private ByteBuffer window;
+    private boolean inputEnded;
+    private final byte[] in = new byte[INPUT_SIZE];
+    private int inPosition;
+    private int inLimit;
+    /** Zero bytes added to the bit buffer past the end of the input. */
+    private int overrun;
+    /**
+     * Bits not yet consumed. Bits above {@code bitCount} may hold the bits
+     * of the following input bytes, which a refill ORs in again unchanged.
+     */
+    private long bitBuffer;
+    private int bitCount;
+
+    /** Output and match history, with slack for matches copied a word at a time. */
+    private final byte[] out = new byte[OUTPUT_SIZE + 8];
+    private int outPosition;
+    private int readPosition;
+
+    private int state = HEADER;
+    private boolean lastBlock;
+    private int storedRemaining;
+    private int[] litlen;
+    private int[] dist;
+    private int[] dynamicLitlen;
+    private int[] dynamicDist;
+    private boolean closed;
+
+    JavaInflater(InflaterBackend.Input input) {
+        this.input = input;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (readPosition == outPosition) {
+            if (state == DONE) {
+                return -1;
+            }
+            decode();
+        }
+        int n = Math.min(len, outPosition - readPosition);
+        System.arraycopy(out, readPosition, b, off, n);
+        readPosition += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /** Decodes until the output buffer is nearly full or the stream ends. Called with all output handed out. */
+    private void decode() throws IOException {
+        if (outPosition > OUTPUT_SIZE - MAX_MATCH) {
+            System.arraycopy(out, outPosition - HISTORY, out, 0, HISTORY);
+            outPosition = HISTORY;
+            readPosition = HISTORY;
+        }
+        while (true) {
+            switch (state) {
+                case HEADER -> readBlockHeader();
+                case STORED -> {
+                    copyStored();
+                    if (storedRemaining > 0) {
+                        return;
+                    }
+                    endBlock();
+                }
+                case HUFFMAN -> {
+                    if (!decodeHuffman()) {
+                        return;
+                    }
+                    endBlock();
+                }
+                default -> {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void endBlock() throws ConversionException {
+        if (lastBlock) {
+            if (bitCount < overrun * 8) {
+                throw truncated();
+            }
+            state = DONE;
+        } else {
+            state = HEADER;
+        }
+    }
+
+    private void readBlockHeader() throws IOException {
+        need(3);
+        lastBlock = (bitBuffer & 1) != 0;
+        int type = (int) (bitBuffer >>> 1) & 3;
+        skip(3);
+        switch (type) {
+            case 0 -> {
+                skip(bitCount & 7);
+                need(32);
+                int length = (int) bitBuffer & 0xFFFF;
+                int complement = (int) (bitBuffer >>> 16) & 0xFFFF;
+                skip(32);
+                if (length != (~complement & 0xFFFF)) {
+                    throw new ConversionException("Corrupt deflate data in ZIP entry: bad stored block length");
+                }
+                storedRemaining = length;
+                state = STORED;
+            }
+            case 1 -> {
+                litlen = FIXED_LITLEN;
+                dist = FIXED_DIST;
+                state = HUFFMAN;
+            }
+            case 2 -> {
+                readDynamicTables();
+                state = HUFFMAN;
+            }
+            default -> throw new ConversionException("Corrupt deflate data in ZIP entry: bad block type");
+        }
+    }
+
+    private void readDynamicTables() throws IOException {
+        need(14);
+        int literals = ((int) bitBuffer & 0x1F) + 257;
+        int distances = ((int) (bitBuffer >>> 5) & 0x1F) + 1;
+        int codeLengthCodes = ((int) (bitBuffer >>> 10) & 0xF) + 4;
+        skip(14);
+        if (literals > 286 || distances > 30) {
+            throw new ConversionException("Corrupt deflate data in ZIP entry: too many codes");
+        }
+        byte[] codeLengthLengths = new byte[19];
+        for (int i = 0; i < codeLengthCodes; i++) {
+            need(3);
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = (byte) (bitBuffer & 7);
+            skip(3);
+        }
+        int[] codeLengthTable = new int[1 << CODE_LENGTH_BITS];
+        buildTable(codeLengthLengths, 0, 19, CODE_LENGTH_SYMBOLS, CODE_LENGTH_BITS, codeLengthTable);
+
+        byte[] lengths = new byte[literals + distances];
+        for (int i = 0; i < lengths.length; ) {
+            need(MAX_CODE_LENGTH);
+            int entry = codeLengthTable[(int) bitBuffer & ((1 << CODE_LENGTH_BITS) - 1)];
+            if ((entry & KIND_MASK) != KIND_LITERAL || (entry & 0x1F) == 0) {
+                throw new ConversionException("Corrupt deflate data in ZIP entry: bad code length code");
+            }
+            skip(entry & 0x1F);
+            int symbol = entry >>> 16;
+            if (symbol < 16) {
+                lengths[i++] = (byte) symbol;
+                continue;
+            }
+            int repeat;
+            byte value = 0;
+            need(7);
+            if (symbol == 16) {
+                if (i == 0) {
+                    throw new ConversionException("Corrupt deflate data in ZIP entry: repeat with no length");
+                }
+                value = lengths[i - 1];
+                repeat = 3 + ((int) bitBuffer & 3);
+                skip(2);
+            } else if (symbol == 17) {
+                repeat = 3 + ((int) bitBuffer & 7);
+                skip(3);
+            } else {
+                repeat = 11 + ((int) bitBuffer & 0x7F);
+                skip(7);
+            }
+            if (i + repeat > lengths.length) {
+                throw new ConversionException("Corrupt deflate data in ZIP entry: too many code lengths");
+            }
+            Arrays.fill(lengths, i, i + repeat, value);
+            i += repeat;
+        }
+        if (lengths[256] == 0) {
+            throw new ConversionException("Corrupt deflate data in ZIP entry: no end-of-block code");
+        }
+        if (dynamicLitlen == null) {
+            dynamicLitlen = new int[MAX_TABLE];
+            dynamicDist = new int[MAX_TABLE];
+        }
+        buildTable(lengths, 0, literals, LITLEN_SYMBOLS, LITLEN_BITS, dynamicLitlen);
+        buildTable(lengths, literals, distances, DIST_SYMBOLS, DIST_BITS, dynamicDist);
+        litlen = dynamicLitlen;
+        dist = dynamicDist;
+    }
+
+    /**
+     * Builds a two-level decoding table for canonical Huffman codes with the
+     * given code lengths. Codes are stored bit-reversed, as DEFLATE sends
+     * them least significant bit first. Incomplete codes are allowed; their
+     * unused entries decode as invalid.
+     */
+    private static void buildTable(byte[] lengths, int from, int count, int[] symbols, int primaryBits,
+                                   int[] table) throws ConversionException {
+        int[] lengthCounts = new int[MAX_CODE_LENGTH + 1];
+        for (int i = 0; i < count; i++) {
+            lengthCounts[lengths[from + i]]++;
+        }
+        lengthCounts[0] = 0;
+        int left = 1;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            left = (left << 1) - lengthCounts[length];
+            if (left < 0) {
+                throw new ConversionException("Corrupt deflate data in ZIP entry: over-subscribed code");
+            }
+        }
+        int[] nextCode = new int[MAX_CODE_LENGTH + 2];
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            nextCode[length + 1] = (nextCode[length] + lengthCounts[length]) << 1;
+        }
+
+        int primarySize = 1 << primaryBits;
+        int primaryMask = primarySize - 1;
+        Arrays.fill(table, 0, primarySize, KIND_INVALID);
+        int[] codes = new int[count];
+        int[] subtableBits = null;
+        for (int i = 0; i < count; i++) {
+            int length = lengths[from + i];
+            if (length == 0) {
+                continue;
+            }
+            int code = Integer.reverse(nextCode[length]++) >>> (32 - length);
+            codes[i] = code;
+            if (length <= primaryBits) {
+                int entry = symbols[i] | length;
+                for (int index = code; index < primarySize; index += 1 << length) {
+                    table[index] = entry;
+                }
+            } else {
+                if (subtableBits == null) {
+                    subtableBits = new int[primarySize];
+                }
+                int prefix = code & primaryMask;
+                subtableBits[prefix] = Math.max(subtableBits[prefix], length - primaryBits);
+            }
+        }
+        if (subtableBits == null) {
+            return;
+        }
+        int next = primarySize;
+        for (int prefix = 0; prefix < primarySize; prefix++) {
+            if (subtableBits[prefix] > 0) {
+                int size = 1 << subtableBits[prefix];
+                Arrays.fill(table, next, next + size, KIND_INVALID);
+                table[prefix] = KIND_SUBTABLE | subtableBits[prefix] << 8 | next << 16;
+                next += size;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int length = lengths[from + i];
+            if (length <= primaryBits) {
+                continue;
+            }
+            int pointer = table[codes[i] & primaryMask];
+            int start = pointer >>> 16;
+            int size = 1 << ((pointer >>> 8) & 0x1F);
+            int entry = symbols[i] | length;
+            for (int index = codes[i] >>> primaryBits; index < size; index += 1 << (length - primaryBits)) {
+                table[start + index] = entry;
+            }
+        }
+    }
+
+    /**
+     * Decodes Huffman symbols of the current block. Returns {@code true} at
+     * the end of the block, {@code false} when the output buffer is full.
+     */
+    private boolean decodeHuffman() throws IOException {
+        final byte[] out = this.out;
+        final int[] litlen = this.litlen;
+        final int[] dist = this.dist;
+        final int outLimit = OUTPUT_SIZE - MAX_MATCH;
+        int position = outPosition;
+        long bits = bitBuffer;
+        int count = bitCount;
+        try {
+            while (position <= outLimit) {
+                // 48 bits cover the longest length code, its extra bits, distance code and extra bits.
+                if (count < 48) {
+                    if (inLimit - inPosition >= 8) {
+                        bits |= (long) LONG_LE.get(in, inPosition) << count;
+                        inPosition += (63 - count) >>> 3;
+                        count |= 56;
+                    } else {
+                        bitBuffer = bits;
+                        bitCount = count;
+                        refill();
+                        bits = bitBuffer;
+                        count = bitCount;
+                    }
+                }
+                int entry = litlen[(int) bits & ((1 << LITLEN_BITS) - 1)];
+                if ((entry & KIND_MASK) == KIND_SUBTABLE) {
+                    entry = litlen[(entry >>> 16)
+                            + ((int) (bits >>> LITLEN_BITS) & ((1 << ((entry >>> 8) & 0x1F)) - 1))];
+                }
+                int kind = entry & KIND_MASK;
+                if (kind == KIND_LITERAL) {
+                    int length = entry & 0x1F;
+                    bits >>>= length;
+                    count -= length;
+                    out[position++] = (byte) (entry >>> 16);
+                    continue;
+                }
+                if (kind != KIND_BASE) {
+                    if (kind == KIND_END) {
+                        int length = entry & 0x1F;
+                        bits >>>= length;
+                        count -= length;
+                        return true;
+                    }
+                    throw new ConversionException("Corrupt deflate data in ZIP entry: bad literal/length code");
+                }
+                int codeLength = entry & 0x1F;
+                int extra = (entry >>> 8) & 0x1F;
+                bits >>>= codeLength;
+                int length = (entry >>> 16) + ((int) bits & ((1 << extra) - 1));
+                bits >>>= extra;
+                count -= codeLength + extra;
+
+                entry = dist[(int) bits & ((1 << DIST_BITS) - 1)];
+                if ((entry & KIND_MASK) == KIND_SUBTABLE) {
+                    entry = dist[(entry >>> 16)
+                            + ((int) (bits >>> DIST_BITS) & ((1 << ((entry >>> 8) & 0x1F)) - 1))];
+                }
+                if ((entry & KIND_MASK) != KIND_BASE) {
+                    throw new ConversionException("Corrupt deflate data in ZIP entry: bad distance code");
+                }
+                codeLength = entry & 0x1F;
+                extra = (entry >>> 8) & 0x1F;
+                bits >>>= codeLength;
+                int distance = (entry >>> 16) + ((int) bits & ((1 << extra) - 1));
+                bits >>>= extra;
+                count -= codeLength + extra;
+
+                int from = position - distance;
+                if (from < 0) {
+                    throw new ConversionException("Corrupt deflate data in ZIP entry: distance too far back");
+                }
+                int end = position + length;
+                if (distance >= 8) {
+                    // Eight bytes at a time, possibly past the end into the slack; each word read
+                    // lies wholly before the one being written.
+                    do {
+                        LONG_LE.set(out, position, (long) LONG_LE.get(out, from));
+                        from += 8;
+                        position += 8;
+                    } while (position < end);
+                } else {
+                    // Short distances repeat the last few bytes.
+                    do {
+                        out[position++] = out[from++];
+                    } while (position < end);
+                }
+                position = end;
+            }
+            return false;
+        } finally {
+            outPosition = position;
+            bitBuffer = bits;
+            bitCount = count;
+        }
+    }
+
+    private void copyStored() throws IOException {
+        int space = OUTPUT_SIZE - outPosition;
+        while (storedRemaining > 0 && space > 0) {
+            if (bitCount > 0) {
+                // Whole bytes left in the bit buffer after the block header come first.
+                if (bitCount <= overrun * 8) {
+                    throw truncated();
+                }
+                out[outPosition++] = (byte) bitBuffer;
+                bitBuffer >>>= 8;
+                bitCount -= 8;
+                storedRemaining--;
+                space--;
+                continue;
+            }
+            bitBuffer = 0;
+            if (inPosition == inLimit && !fillInput()) {
+                throw truncated();
+            }
+            int n = Math.min(Math.min(storedRemaining, space), inLimit - inPosition);
+            System.arraycopy(in, inPosition, out, outPosition, n);
+            inPosition += n;
+            outPosition += n;
+            storedRemaining -= n;
+            space -= n;
+        }
+    }
+
+    private void need(int n) throws IOException {
+        if (bitCount < n) {
+            refill();
+        }
+    }
+
+    private void skip(int n) {
+        bitBuffer >>>= n;
+        bitCount -= n;
+    }
+
+    /**
+     * Fills the bit buffer to at least 56 bits. Past the end of the input it
+     * is padded with zero bytes, as a decoder may look ahead further than
+     * the final code; reading more than that is an error.
+     */
+    private void refill() throws IOException {
+        if (inLimit - inPosition >= 8) {
+            bitBuffer |= (long) LONG_LE.get(in, inPosition) << bitCount;
+            inPosition += (63 - bitCount) >>> 3;
+            bitCount |= 56;
+            return;
+        }
+        while (bitCount <= 56) {
+            if (inPosition == inLimit && !fillInput()) {
+                if (++overrun > 8) {
+                    throw truncated();
+                }
+            } else {
+                bitBuffer |= (in[inPosition++] & 0xFFL) << bitCount;
+            }
+            bitCount += 8;
+        }
+    }
+
+    /** Moves unread input to the front of the buffer and appends more; {@code false} at the end. */
+    private boolean fillInput() throws IOException {
+        int remaining = inLimit - inPosition;
+        System.arraycopy(in, inPosition, in, 0, remaining);
+        inPosition = 0;
+        inLimit = remaining;
+        while (inLimit < in.length && !inputEnded) {
+            if (window == null || !window.hasRemaining()) {
+                window = input.next();
+                inputEnded = window == null;
+                continue;
+            }
+            int n = Math.min(window.remaining(), in.length - inLimit);
+            window.get(in, inLimit, n);
+            inLimit += n;
+        }
+        return inLimit > remaining;
+    }
+
+    private static ConversionException truncated() {
+        return new ConversionException("Truncated deflate data in ZIP entry");
+    }
+}
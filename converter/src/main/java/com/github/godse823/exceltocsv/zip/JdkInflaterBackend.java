@@ -0,0 +1,86 @@
+package com.github.godse823.exceltocsv.zip;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/** Inflates with {@link Inflater}, handing it the mapped input windows without copying. */
+final class JdkInflaterBackend implements InflaterBackend {
+
+    static final JdkInflaterBackend INSTANCE = new JdkInflaterBackend();
+
+    private JdkInflaterBackend() {
+    }
+
+    @Override
+    public String name() {
+        return "jdk";
+    }
+
+    @Override
+    public InputStream inflate(Input input) {
+        return new InflatingStream(input);
+    }
+
+    private static final class InflatingStream extends InputStream {
+
+        private final Inflater inflater = new Inflater(true);
+        private final Input input;
+        private boolean closed;
+
+        InflatingStream(Input input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                while (true) {
+                    int n = inflater.inflate(b, off, len);
+                    if (n > 0) {
+                        return n;
+                    }
+                    if (inflater.finished()) {
+                        return -1;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new ConversionException("Unsupported preset dictionary in ZIP entry");
+                    }
+                    if (inflater.needsInput()) {
+                        ByteBuffer window = input.next();
+                        if (window == null) {
+                            throw new ConversionException("Truncated deflate data in ZIP entry");
+                        }
+                        inflater.setInput(window);
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new ConversionException("Corrupt deflate data in ZIP entry", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                inflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.github.godse823.exceltocsv.zip;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Random-access reader for ZIP archives backed by memory mapping.
+ *
+ * <p>Only the end-of-central-directory record and the central directory are
+ * read when the archive is opened. An entry is then located by name and its
+ * compressed bytes are mapped and fed to the {@linkplain InflaterBackend
+ * inflater} directly from the mapping, so selecting one sheet of a large
+ * workbook touches only the pages of that sheet. ZIP64 archives are supported. Entries may be read
+ * concurrently. Every offset and length read from the archive is checked
+ * against the file before it is used, so a damaged archive fails with a
+ * {@link ConversionException}.
+ */
+public final class MappedZipFile implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int END_RECORD_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    /** Largest region mapped at once; entries beyond this are mapped in windows. */
+    private static final long MAP_WINDOW = 1L << 30;
+
+    private final FileChannel channel;
+    private final InflaterBackend inflater;
+    private final long fileSize;
+    private final Map<String, Entry> entries;
+
+    /**
+     * A file in the archive as described by the central directory.
+     *
+     * @param name              entry name, using {@code /} as separator
+     * @param method            compression method, 0 (stored) or 8 (deflated)
+     * @param compressedSize    size of the stored data
+     * @param size              size after inflation
+     * @param localHeaderOffset offset of the entry's local file header
+     */
+    public record Entry(String name, int method, long compressedSize, long size, long localHeaderOffset) {
+    }
+
+    private MappedZipFile(FileChannel channel, InflaterBackend inflater) throws IOException {
+        this.channel = channel;
+        this.inflater = inflater;
+        this.fileSize = channel.size();
+        this.entries = Collections.unmodifiableMap(readCentralDirectory());
+    }
+
+    public static MappedZipFile open(Path path) throws IOException {
+        return open(path, InflaterBackend.jdk());
+    }
+
+    public static MappedZipFile open(Path path, InflaterBackend inflater) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedZipFile(channel, inflater);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Returns the entry with the given name, or {@code null}. */
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    public Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * Opens an entry for reading, inflating it with this file's
+     * {@link InflaterBackend}. The stream must be closed to release its
+     * inflater.
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        long dataOffset = dataOffset(entry);
+        if (entry.compressedSize() > fileSize - dataOffset) {
+            throw new ConversionException("ZIP entry " + entry.name() + " extends past the end of the archive");
+        }
+        return switch (entry.method()) {
+            case METHOD_STORED -> new MappedStream(dataOffset, entry.size());
+            case METHOD_DEFLATED -> inflater.inflate(new MappedInput(dataOffset, entry.compressedSize()));
+            default -> throw new ConversionException(
+                    "Unsupported compression method " + entry.method() + " for ZIP entry " + entry.name());
+        };
+    }
+
+    /**
+     * Feeds the stored (usually compressed) bytes of an entry and its
+     * compression method into {@code digest}, without inflating it. Equal
+     * digests imply equal content.
+     */
+    public void digest(Entry entry, MessageDigest digest) throws IOException {
+        long offset = dataOffset(entry);
+        if (entry.compressedSize() > fileSize - offset) {
+            throw new ConversionException("ZIP entry " + entry.name() + " extends past the end of the archive");
+        }
+        digest.update((byte) entry.method());
+        long end = offset + entry.compressedSize();
+        for (long position = offset; position < end; position += MAP_WINDOW) {
+            digest.update(map(position, Math.min(MAP_WINDOW, end - position)));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer map(long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private long dataOffset(Entry entry) throws IOException {
+        if (entry.localHeaderOffset() < 0 || entry.localHeaderOffset() > fileSize - 30) {
+            throw new ConversionException("Bad local header for ZIP entry " + entry.name());
+        }
+        ByteBuffer header = map(entry.localHeaderOffset(), 30);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ConversionException("Bad local header for ZIP entry " + entry.name());
+        }
+        return entry.localHeaderOffset() + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+    }
+
+    private Map<String, Entry> readCentralDirectory() throws IOException {
+        int tailSize = (int) Math.min(fileSize, END_RECORD_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE);
+        long tailStart = fileSize - tailSize;
+        ByteBuffer tail = map(tailStart, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_RECORD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ConversionException("Not a ZIP archive: end of central directory not found");
+        }
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+        if (end >= ZIP64_LOCATOR_SIZE && tail.getInt(end - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR_SIGNATURE) {
+            long zip64End = tail.getLong(end - ZIP64_LOCATOR_SIZE + 8);
+            if (zip64End < 0 || zip64End > fileSize - 56) {
+                throw new ConversionException("Corrupt ZIP64 end of central directory");
+            }
+            ByteBuffer record = map(zip64End, 56);
+            if (record.getInt(0) != ZIP64_END_SIGNATURE) {
+                throw new ConversionException("Corrupt ZIP64 end of central directory");
+            }
+            count = record.getLong(32);
+            directorySize = record.getLong(40);
+            directoryOffset = record.getLong(48);
+        }
+        if (count < 0 || directoryOffset < 0 || directorySize < 0 || directorySize > fileSize - directoryOffset
+                || directorySize > Integer.MAX_VALUE) {
+            throw new ConversionException("Corrupt ZIP central directory");
+        }
+
+        ByteBuffer directory = map(directoryOffset, directorySize);
+        Map<String, Entry> result = new LinkedHashMap<>();
+        int position = 0;
+        for (long i = 0; i < count; i++) {
+            if (position + 46 > directory.limit() || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ConversionException("Corrupt ZIP central directory");
+            }
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+            if (nameLength + extraLength + commentLength > directory.limit() - position - 46) {
+                throw new ConversionException("Corrupt ZIP central directory");
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.get(position + 46, nameBytes);
+            String name = new String(nameBytes,
+                    (flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+
+            // ZIP64 extra field: only the values saturated in the header are present, in this order.
+            int extra = position + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = directory.getShort(extra) & 0xFFFF;
+                int length = directory.getShort(extra + 2) & 0xFFFF;
+                int fieldEnd = extra + 4 + length;
+                if (fieldEnd > extraEnd) {
+                    throw new ConversionException("Corrupt extra field for ZIP entry " + name);
+                }
+                if (id == ZIP64_EXTRA_ID) {
+                    int field = extra + 4;
+                    if (size == 0xFFFFFFFFL) {
+                        size = zip64Value(directory, field, fieldEnd, name);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = zip64Value(directory, field, fieldEnd, name);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL) {
+                        localHeaderOffset = zip64Value(directory, field, fieldEnd, name);
+                    }
+                }
+                extra = fieldEnd;
+            }
+            position += 46 + nameLength + extraLength + commentLength;
+
+            if ((flags & FLAG_ENCRYPTED) != 0) {
+                throw new ConversionException("Encrypted ZIP entries are not supported: " + name);
+            }
+            if (size < 0 || compressedSize < 0 || method == METHOD_STORED && size != compressedSize) {
+                throw new ConversionException("Corrupt sizes for ZIP entry " + name);
+            }
+            result.put(name, new Entry(name, method, compressedSize, size, localHeaderOffset));
+        }
+        return result;
+    }
+
+    private static long zip64Value(ByteBuffer directory, int field, int fieldEnd, String name)
+            throws ConversionException {
+        if (field + 8 > fieldEnd) {
+            throw new ConversionException("Corrupt ZIP64 extra field for ZIP entry " + name);
+        }
+        return directory.getLong(field);
+    }
+
+    /** Hands the stored bytes of an entry to an inflater in mapped windows. */
+    private final class MappedInput implements InflaterBackend.Input {
+
+        private final long end;
+        private long position;
+
+        MappedInput(long offset, long compressedSize) {
+            this.position = offset;
+            this.end = offset + compressedSize;
+        }
+
+        @Override
+        public ByteBuffer next() throws IOException {
+            if (position >= end) {
+                return null;
+            }
+            ByteBuffer window = map(position, Math.min(MAP_WINDOW, end - position));
+            position += window.limit();
+            return window;
+        }
+    }
+
+    /** Reads stored (uncompressed) entry data straight from the mapping. */
+    private final class MappedStream extends InputStream {
+
+        private final long end;
+        private long position;
+        private ByteBuffer window;
+
+        MappedStream(long offset, long size) {
+            this.position = offset;
+            this.end = offset + size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (window == null || !window.hasRemaining()) {
+                if (position >= end) {
+                    return -1;
+                }
+                window = map(position, Math.min(MAP_WINDOW, end - position));
+                position += window.limit();
+            }
+            int n = Math.min(len, window.remaining());
+            window.get(b, off, n);
+            return n;
+        }
+    }
+
+}
@@ -0,0 +1,410 @@
+package com.github.godse823.exceltocsv.zip;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads a ZIP archive front to back from a non-seekable stream, entry by
+ * entry, using the local file headers instead of the central directory at
+ * the end of the archive.
+ *
+ * <p>An entry whose sizes are deferred to a data descriptor (written by
+ * streaming ZIP writers) is delimited by the end of its deflate stream, so
+ * such entries must be deflated; stored ones are rejected. The data of the
+ * current entry can be read once, either inflated through
+ * {@link #openEntry()} or in its stored form through
+ * {@link #transferRawTo(OutputStream)} for {@linkplain #openRaw reading
+ * back} later. Whatever is not read is skipped by {@link #next()}.
+ */
+public final class ZipStreamReader implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[64 * 1024];
+    private final Inflater inflater = new Inflater(true);
+    private int position;
+    private int limit;
+    /** End of the buffer range last handed to the inflater, which consumes it from {@code position}. */
+    private int inputEnd;
+
+    private Entry current;
+    private boolean zip64;
+    /** Stored bytes of the current entry consumed so far. */
+    private long consumed;
+    /** Inflated bytes of a stored entry returned so far. */
+    private long produced;
+    private boolean dataDone;
+    private boolean opened;
+
+    /**
+     * An entry as described by its local file header.
+     *
+     * @param method         compression method, 0 (stored) or 8 (deflated)
+     * @param compressedSize size of the stored data, or -1 if deferred to a
+     *                       data descriptor
+     * @param size           size after inflation, or -1 if deferred
+     */
+    public record Entry(String name, int method, long compressedSize, long size) {
+    }
+
+    public ZipStreamReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Skips the rest of the current entry and returns the next one, or
+     * {@code null} once the central directory is reached.
+     */
+    public Entry next() throws IOException {
+        if (current != null) {
+            finishEntry();
+        }
+        current = null;
+        if (!request(4)) {
+            return null;
+        }
+        int signature = int32(position);
+        if (signature == CENTRAL_HEADER_SIGNATURE || signature == END_SIGNATURE) {
+            return null;
+        }
+        if (signature != LOCAL_HEADER_SIGNATURE) {
+            throw new ConversionException("Bad ZIP local file header");
+        }
+        require(30);
+        int flags = int16(position + 6);
+        int method = int16(position + 8);
+        long compressedSize = int32(position + 18) & 0xFFFFFFFFL;
+        long size = int32(position + 22) & 0xFFFFFFFFL;
+        int nameLength = int16(position + 26);
+        int extraLength = int16(position + 28);
+        position += 30;
+        require(nameLength + extraLength);
+        String name = new String(buffer, position, nameLength,
+                (flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+
+        zip64 = false;
+        int extra = position + nameLength;
+        int extraEnd = extra + extraLength;
+        while (extra + 4 <= extraEnd) {
+            int id = int16(extra);
+            int length = int16(extra + 2);
+            if (id == ZIP64_EXTRA_ID && length >= 16) {
+                // In a local header the ZIP64 field holds both sizes.
+                zip64 = true;
+                size = int64(extra + 4);
+                compressedSize = int64(extra + 12);
+            }
+            extra += 4 + length;
+        }
+        position += nameLength + extraLength;
+
+        if ((flags & FLAG_ENCRYPTED) != 0) {
+            throw new ConversionException("Encrypted ZIP entries are not supported: " + name);
+        }
+        if (method != METHOD_STORED && method != METHOD_DEFLATED) {
+            throw new ConversionException("Unsupported compression method " + method + " for ZIP entry " + name);
+        }
+        if ((flags & FLAG_DATA_DESCRIPTOR) != 0) {
+            if (method == METHOD_STORED) {
+                throw new ConversionException("Stored ZIP entry " + name + " without sizes cannot be streamed");
+            }
+            compressedSize = -1;
+            size = -1;
+        }
+        current = new Entry(name, method, compressedSize, size);
+        consumed = 0;
+        produced = 0;
+        dataDone = false;
+        opened = false;
+        inflater.reset();
+        inputEnd = position;
+        return current;
+    }
+
+    /** Streams the inflated data of the current entry. The stream need not be closed. */
+    public InputStream openEntry() throws IOException {
+        checkUnopened();
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                return current.method() == METHOD_STORED ? readStored(b, off, len) : inflate(b, off, len, null);
+            }
+        };
+    }
+
+    /**
+     * Copies the stored form of the current entry to {@code out} and returns
+     * its length. Read it back with {@link #openRaw}.
+     */
+    public long transferRawTo(OutputStream out) throws IOException {
+        checkUnopened();
+        if (current.compressedSize() >= 0) {
+            long remaining = current.compressedSize();
+            while (remaining > 0) {
+                if (position == limit && !fill()) {
+                    throw truncated();
+                }
+                int n = (int) Math.min(remaining, limit - position);
+                out.write(buffer, position, n);
+                position += n;
+                remaining -= n;
+            }
+            consumed = current.compressedSize();
+        } else {
+            // The end is only known by inflating up to it.
+            byte[] scratch = new byte[8192];
+            while (inflate(scratch, 0, scratch.length, out) >= 0) {
+                // Discard.
+            }
+        }
+        dataDone = true;
+        return consumed;
+    }
+
+    /** Reads back entry data saved with {@link #transferRawTo}, inflating it if needed. */
+    public static InputStream openRaw(InputStream raw, int method) {
+        if (method == METHOD_STORED) {
+            return raw;
+        }
+        return new InflaterInputStream(raw, new Inflater(true), 64 * 1024) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    inf.end();
+                    super.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private void checkUnopened() {
+        if (current == null || opened) {
+            throw new IllegalStateException(current == null ? "No current ZIP entry" : "ZIP entry already read");
+        }
+        opened = true;
+    }
+
+    private void finishEntry() throws IOException {
+        if (!dataDone) {
+            if (!opened && current.compressedSize() >= 0) {
+                skip(current.compressedSize() - consumed);
+                dataDone = true;
+            } else if (current.method() == METHOD_STORED) {
+                skip(current.size() - produced);
+                dataDone = true;
+            } else {
+                opened = true;
+                byte[] scratch = new byte[8192];
+                while (inflate(scratch, 0, scratch.length, null) >= 0) {
+                    // Discard.
+                }
+            }
+        }
+        if (current.compressedSize() < 0) {
+            skipDataDescriptor();
+        }
+    }
+
+    /**
+     * Skips the data descriptor after an entry. Some writers use 8-byte
+     * sizes without marking the entry as ZIP64, so the width is told from
+     * which reading matches the sizes actually found.
+     */
+    private void skipDataDescriptor() throws IOException {
+        require(4);
+        if (int32(position) == DATA_DESCRIPTOR_SIGNATURE) {
+            position += 4;
+        }
+        long size = inflater.getBytesWritten();
+        boolean wide = zip64;
+        if (!wide) {
+            require(12);
+            wide = (int32(position + 4) & 0xFFFFFFFFL) != (consumed & 0xFFFFFFFFL)
+                    || (int32(position + 8) & 0xFFFFFFFFL) != (size & 0xFFFFFFFFL);
+            if (!wide && size == 0 && request(16)) {
+                // An empty entry can match both readings; only the narrow one is followed by a header.
+                int after = int32(position + 12);
+                wide = after != LOCAL_HEADER_SIGNATURE && after != CENTRAL_HEADER_SIGNATURE;
+            }
+        }
+        int length = wide ? 20 : 12;
+        require(length);
+        if (wide && (int64(position + 4) != consumed || int64(position + 12) != size)) {
+            throw new ConversionException("Bad data descriptor for ZIP entry " + current.name());
+        }
+        position += length;
+    }
+
+    private int readStored(byte[] b, int off, int len) throws IOException {
+        long remaining = current.size() - produced;
+        if (remaining <= 0) {
+            dataDone = true;
+            return -1;
+        }
+        if (position == limit && !fill()) {
+            throw truncated();
+        }
+        int n = (int) Math.min(Math.min(len, remaining), limit - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        produced += n;
+        consumed += n;
+        return n;
+    }
+
+    /**
+     * Inflates from the buffer, copying the stored bytes consumed to
+     * {@code raw} if it is not {@code null}. Returns -1 at the end of the
+     * deflate stream, leaving the buffer positioned just after it.
+     */
+    private int inflate(byte[] b, int off, int len, OutputStream raw) throws IOException {
+        if (dataDone) {
+            return -1;
+        }
+        try {
+            while (true) {
+                int n = inflater.inflate(b, off, len);
+                int used = inputEnd - inflater.getRemaining() - position;
+                if (used > 0) {
+                    if (raw != null) {
+                        raw.write(buffer, position, used);
+                    }
+                    position += used;
+                    consumed += used;
+                }
+                if (n > 0) {
+                    return n;
+                }
+                if (inflater.finished()) {
+                    if (current.compressedSize() >= 0) {
+                        // Anything the header counted beyond the deflate stream is padding.
+                        skip(current.compressedSize() - consumed);
+                    }
+                    dataDone = true;
+                    return -1;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new ConversionException("Unsupported preset dictionary in ZIP entry " + current.name());
+                }
+                if (inflater.needsInput()) {
+                    if (position == limit && !fill()) {
+                        throw truncated();
+                    }
+                    int available = limit - position;
+                    if (current.compressedSize() >= 0) {
+                        available = (int) Math.min(available, current.compressedSize() - consumed);
+                        if (available == 0) {
+                            throw new ConversionException("Truncated deflate data in ZIP entry " + current.name());
+                        }
+                    }
+                    inflater.setInput(buffer, position, available);
+                    inputEnd = position + available;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ConversionException("Corrupt deflate data in ZIP entry " + current.name(), e);
+        }
+    }
+
+    /** Compacts the buffer and reads more input; returns {@code false} at the end of the stream. */
+    private boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /** Ensures {@code n} bytes are buffered at {@code position}, or returns {@code false} at the end. */
+    private boolean request(int n) throws IOException {
+        while (limit - position < n) {
+            int before = limit - position;
+            if (!fill() && limit - position == before) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void require(int n) throws IOException {
+        if (n > buffer.length) {
+            throw new ConversionException("ZIP header too large");
+        }
+        if (!request(n)) {
+            throw truncated();
+        }
+    }
+
+    private void skip(long n) throws IOException {
+        while (n > 0) {
+            if (position == limit && !fill()) {
+                throw truncated();
+            }
+            int step = (int) Math.min(n, limit - position);
+            position += step;
+            consumed += step;
+            n -= step;
+        }
+    }
+
+    private ConversionException truncated() {
+        return new ConversionException("Truncated ZIP stream" + (current == null ? "" : " in entry " + current.name()),
+                new EOFException());
+    }
+
+    private int int16(int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    private int int32(int offset) {
+        return int16(offset) | int16(offset + 2) << 16;
+    }
+
+    private long int64(int offset) {
+        return (int32(offset) & 0xFFFFFFFFL) | (long) int32(offset + 4) << 32;
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.godse823.exceltocsv;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Eviction of whole entries, and of the manifests naming them, once the cache outgrows its limit. */
+class ConversionCacheTest {
+
+    private static final int SHEET_BYTES = 1000;
+    private static final long START = System.currentTimeMillis();
+
+    @TempDir
+    Path directory;
+
+    @TempDir
+    Path work;
+
+    @Test
+    void evictsWholeEntriesAndStaleManifests() throws IOException {
+        ConversionCache cache = new ConversionCache(directory.resolve("cache"), 10 * SHEET_BYTES, false);
+
+        for (int i = 0; i < 30; i++) {
+            storeWorkbook(cache, i);
+            age(directory.resolve("cache"), i);
+        }
+
+        assertConsistent(directory.resolve("cache"));
+        assertTrue(sizeOf(directory.resolve("cache")) <= 10 * SHEET_BYTES);
+        assertNotNull(cache.manifest(workbookKey(29)));
+        assertNull(cache.manifest(workbookKey(0)));
+        assertNull(cache.restore(objectKey(0), work.resolve("restored.csv")));
+    }
+
+    @Test
+    void enforcesLimitWhenOpened() throws IOException {
+        Path cacheDirectory = directory.resolve("cache");
+        ConversionCache large = new ConversionCache(cacheDirectory, Long.MAX_VALUE, false);
+        for (int i = 0; i < 20; i++) {
+            storeWorkbook(large, i);
+            age(cacheDirectory, i);
+        }
+
+        ConversionCache small = new ConversionCache(cacheDirectory, 5 * SHEET_BYTES, false);
+        Path restored = work.resolve("restored.csv");
+        long[] totals = small.restore(objectKey(19), restored);
+
+        assertConsistent(cacheDirectory);
+        assertTrue(sizeOf(cacheDirectory) <= 5 * SHEET_BYTES);
+        assertNotNull(totals);
+        assertArrayEquals(sheet(19), Files.readAllBytes(restored));
+        assertFalse(Files.exists(cacheDirectory.resolve("objects").resolve(objectKey(0).substring(0, 2))
+                .resolve(objectKey(0) + ".csv")));
+    }
+
+    @Test
+    void evictsPartsLeftWithoutTheirSheetFirst() throws IOException {
+        Path cacheDirectory = directory.resolve("cache");
+        ConversionCache large = new ConversionCache(cacheDirectory, Long.MAX_VALUE, false);
+        for (int i = 0; i < 3; i++) {
+            storeWorkbook(large, i);
+        }
+        String orphan = objectKey(99);
+        Path shard = Files.createDirectories(cacheDirectory.resolve("objects").resolve(orphan.substring(0, 2)));
+        Files.writeString(shard.resolve(orphan + ".meta"), "1 " + SHEET_BYTES + "\n");
+        Files.write(shard.resolve(orphan + ".schema.json"), new byte[2 * SHEET_BYTES]);
+
+        new ConversionCache(cacheDirectory, sizeOf(cacheDirectory) - 1, false).manifest(workbookKey(0));
+
+        assertConsistent(cacheDirectory);
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(large.manifest(workbookKey(i)));
+        }
+    }
+
+    /** Stores sheet {@code i} with its sidecar, and a workbook of it and the sheet before. */
+    private void storeWorkbook(ConversionCache cache, int i) throws IOException {
+        Path csv = work.resolve("sheet.csv");
+        Files.write(csv, sheet(i));
+        cache.store(objectKey(i), csv, 1, SHEET_BYTES);
+        Path sidecar = work.resolve("sheet.schema.json");
+        Files.writeString(sidecar, "{}");
+        cache.storeSidecar(objectKey(i), sidecar);
+        List<ConversionCache.Sheet> sheets = new ArrayList<>();
+        if (i > 0) {
+            sheets.add(new ConversionCache.Sheet(objectKey(i - 1), "a.csv", "A"));
+        }
+        sheets.add(new ConversionCache.Sheet(objectKey(i), "b.csv", "B"));
+        cache.storeManifest(workbookKey(i), sheets);
+    }
+
+    private static byte[] sheet(int i) {
+        byte[] data = new byte[SHEET_BYTES];
+        Arrays.fill(data, (byte) ('a' + i % 26));
+        return data;
+    }
+
+    private static String objectKey(int i) {
+        return ConversionCache.finish(ConversionCache.newKey("sheet " + i));
+    }
+
+    private static String workbookKey(int i) {
+        return ConversionCache.finish(ConversionCache.newKey("workbook " + i));
+    }
+
+    /**
+     * Dates the entries of workbook {@code i} a second after those of the
+     * workbook before, and all of them before anything stored or restored
+     * later, so eviction order does not depend on the file system's clock.
+     */
+    private static void age(Path cacheDirectory, int i) throws IOException {
+        FileTime time = FileTime.fromMillis(START - (100 - i) * 1000L);
+        Path objects = cacheDirectory.resolve("objects").resolve(objectKey(i).substring(0, 2));
+        List<Path> files = new ArrayList<>();
+        for (String suffix : new String[] {".csv", ".meta", ".schema.json"}) {
+            files.add(objects.resolve(objectKey(i) + suffix));
+        }
+        files.add(cacheDirectory.resolve("workbooks").resolve(workbookKey(i).substring(0, 2)).resolve(workbookKey(i)));
+        for (Path file : files) {
+            if (Files.exists(file)) {
+                Files.setLastModifiedTime(file, time);
+            }
+        }
+    }
+
+    /** Asserts that every metadata file and sidecar has its sheet, and every manifest names cached sheets only. */
+    private static void assertConsistent(Path cacheDirectory) throws IOException {
+        for (Path file : files(cacheDirectory.resolve("objects"))) {
+            String name = file.getFileName().toString();
+            String key = name.substring(0, name.indexOf('.'));
+            assertTrue(Files.exists(file.resolveSibling(key + ".csv")), () -> "orphan " + name);
+        }
+        for (Path manifest : files(cacheDirectory.resolve("workbooks"))) {
+            for (String line : Files.readAllLines(manifest)) {
+                String key = line.substring(0, line.indexOf('\t'));
+                Path object = cacheDirectory.resolve("objects").resolve(key.substring(0, 2)).resolve(key + ".csv");
+                assertTrue(Files.exists(object), () -> "stale manifest " + manifest.getFileName());
+            }
+        }
+        assertEquals(List.of(), files(cacheDirectory).stream()
+                .filter(file -> file.getFileName().toString().startsWith(".tmp-")).toList());
+    }
+
+    private static long sizeOf(Path cacheDirectory) throws IOException {
+        long size = 0;
+        for (Path file : files(cacheDirectory)) {
+            size += Files.size(file);
+        }
+        return size;
+    }
+
+    private static List<Path> files(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).toList();
+        }
+    }
+}
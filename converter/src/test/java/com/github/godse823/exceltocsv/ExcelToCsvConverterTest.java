@@ -0,0 +1,109 @@
+package com.github.godse823.exceltocsv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Converts the sample workbooks along each reading path and compares the
+ * result with the CSV files under {@code golden/}. Both workbooks hold the
+ * same cells; the XLSX one stores whole numbers as {@code 1.0}, which the
+ * General format passes through as stored.
+ */
+class ExcelToCsvConverterTest {
+
+    private static final List<String> SHEETS = List.of("Data", "Other Sheet!");
+    private static final List<String> FILES = List.of("Data.csv", "Other Sheet_.csv");
+
+    @TempDir
+    Path out;
+
+    static Stream<Arguments> paths() {
+        return Stream.of(
+                Arguments.of("xlsx", ConversionOptions.defaults()),
+                Arguments.of("xlsx", ConversionOptions.builder().parallelism(1).pipelineBudget(0).build()),
+                Arguments.of("xlsx", ConversionOptions.builder().splitSheets(true).sheetChunkSize(1024).build()),
+                Arguments.of("xlsx", ConversionOptions.builder().sharedStringsSpillThreshold(0).build()),
+                Arguments.of("xls", ConversionOptions.defaults()),
+                Arguments.of("xls", ConversionOptions.builder().parallelism(1).build()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("paths")
+    void convertsFileToGoldenCsv(String format, ConversionOptions options) throws IOException {
+        List<SheetResult> results = new ExcelToCsvConverter(options).convert(resource("golden/sample." + format), out);
+
+        assertEquals(SHEETS, results.stream().map(SheetResult::sheetName).toList());
+        assertGolden(format);
+    }
+
+    @ParameterizedTest
+    @MethodSource("paths")
+    void convertsStreamToGoldenCsv(String format, ConversionOptions options) throws IOException {
+        try (InputStream in = Files.newInputStream(resource("golden/sample." + format))) {
+            new ExcelToCsvConverter(options).convert(in, out);
+        }
+
+        assertGolden(format);
+    }
+
+    @Test
+    void renamedSheetGetsFreshSchemaFromCache(@TempDir Path work) throws IOException {
+        ConversionOptions options = ConversionOptions.builder()
+                .cacheDirectory(work.resolve("cache"))
+                .schemaSidecar(true)
+                .build();
+        String rows = TestWorkbook.row(1, "id", "name") + TestWorkbook.row(2, "7", "seven");
+        Path before = new TestWorkbook().sheet("Old", rows).sheet("Other", rows).write(work.resolve("before.xlsx"));
+        Path after = new TestWorkbook().sheet("New", rows).sheet("Other", rows).write(work.resolve("after.xlsx"));
+        new ExcelToCsvConverter(options).convert(before, out);
+
+        List<SheetResult> results = new ExcelToCsvConverter(options).convert(after, out);
+
+        assertFalse(results.get(0).cached());
+        assertTrue(results.get(1).cached());
+        String schema = Files.readString(out.resolve("New.schema.json"));
+        assertTrue(schema.contains("\"sheet\": \"New\"") && schema.contains("\"path\": \"New.csv\""), schema);
+    }
+
+    @Test
+    void countsRecordsWrittenNotHeader(@TempDir Path work) throws IOException {
+        String rows = TestWorkbook.row(1, "id", "name") + TestWorkbook.row(2, "7", "seven")
+                + TestWorkbook.row(3, "8", "eight");
+        Path workbook = new TestWorkbook().sheet("Data", rows).write(work.resolve("header.xlsx"));
+        ConversionOptions csv = ConversionOptions.defaults();
+        ConversionOptions arrow = ConversionOptions.builder().outputFormat(OutputFormat.ARROW).build();
+
+        assertEquals(3, new ExcelToCsvConverter(csv).convert(workbook, work.resolve("csv")).get(0).rows());
+        // The header row names the Arrow columns rather than becoming a record.
+        assertEquals(2, new ExcelToCsvConverter(arrow).convert(workbook, work.resolve("arrow")).get(0).rows());
+    }
+
+    private void assertGolden(String format) throws IOException {
+        for (String file : FILES) {
+            String expected = Files.readString(resource("golden/" + format + "/" + file));
+            assertEquals(expected, Files.readString(out.resolve(file)), format + " " + file);
+        }
+    }
+
+    static Path resource(String name) {
+        try {
+            return Path.of(ExcelToCsvConverterTest.class.getResource("/" + name).toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.godse823.exceltocsv;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Blocks passed between stages, and the budget they hold, when either side stops early. */
+class PipeTest {
+
+    private static final int BLOCK = 1024;
+
+    private final ByteBudget budget = ByteBudget.unlimited();
+    private final BufferPool pool = new BufferPool(BLOCK, 4);
+    private final ExecutorService consumer = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void stopConsumer() {
+        consumer.shutdownNow();
+    }
+
+    @Test
+    void passesStreamToConsumer() throws Exception {
+        Pipe pipe = new Pipe(budget, pool, 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Future<Long> drained = consumer.submit(() -> pipe.drainTo(Channels.newChannel(out)));
+        byte[] data = bytes(10 * BLOCK + 17);
+
+        pipe.write(ByteBuffer.wrap(data));
+        pipe.finish();
+
+        assertEquals(data.length, drained.get());
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void abortReleasesQueuedBlocksWithoutConsumer() throws IOException {
+        Pipe pipe = new Pipe(budget, pool, 4);
+        pipe.write(ByteBuffer.wrap(bytes(3 * BLOCK + 1)));
+
+        pipe.abort(new IOException("parse failed"));
+
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void abortWakesWaitingConsumer() throws Exception {
+        Pipe pipe = new Pipe(budget, pool, 4);
+        InputStream source = pipe.source();
+        Future<byte[]> read = consumer.submit(source::readAllBytes);
+        pipe.write(ByteBuffer.wrap(bytes(4 * BLOCK)));
+        IOException cause = new IOException("parse failed");
+
+        pipe.abort(cause);
+
+        Exception failure = assertThrows(Exception.class, read::get);
+        assertSame(cause, failure.getCause());
+        source.close();
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void closedSourceStopsProducer() throws IOException {
+        Pipe pipe = new Pipe(budget, pool, 4);
+        pipe.write(ByteBuffer.wrap(bytes(2 * BLOCK)));
+
+        pipe.source().close();
+
+        assertThrows(IOException.class, () -> pipe.write(ByteBuffer.wrap(bytes(BLOCK))));
+        pipe.finish();
+        assertEquals(0, budget.used());
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.godse823.exceltocsv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/** {@code --columns}, {@code --where}, {@code --rows}, {@code --sample} and {@code --limit} on the sample sheet. */
+class RowSelectionTest {
+
+    private static final String ROW_1 = "1.0,näme 1,1.5,2.0,FALSE\n";
+    private static final String ROW_2 = "2.0,näme 2,3.0,4.0,TRUE\n";
+    private static final String ROW_3 = "3.0,\"näme 3\nline2\",4.5,6.0,FALSE\n";
+    private static final String ROW_4 = "4.0,näme 4,6.0,8.0,TRUE\n";
+    private static final String ROW_5 = "5.0,näme 5,7.5,10.0,FALSE\n";
+
+    @Test
+    void projectsColumnsInGivenOrder() throws IOException {
+        assertEquals("value,id\n1.5,1.0\n3.0,2.0\n4.5,3.0\n6.0,4.0\n7.5,5.0\n\n\n\"1,234,567.89\",2023-03-15\n",
+                convert(RowSelection.parse("C,A", List.of())));
+    }
+
+    @Test
+    void comparesNumericallyAndSkipsText() throws IOException {
+        assertEquals(ROW_3 + ROW_4 + ROW_5, convert(RowSelection.parse(null, List.of("C>=4.5"))));
+    }
+
+    @Test
+    void comparesTextExactly() throws IOException {
+        assertEquals(ROW_2, convert(RowSelection.parse(null, List.of("B=näme 2"))));
+        assertEquals("", convert(RowSelection.parse(null, List.of("B=näme"))));
+    }
+
+    @Test
+    void filtersOnColumnsThatAreNotWritten() throws IOException {
+        assertEquals("1.0\n3.0\n", convert(RowSelection.parse("A", List.of("E=FALSE", "C<7"))));
+    }
+
+    @Test
+    void keepsRowRange() throws IOException {
+        assertEquals(ROW_1 + ROW_2, convert(RowSelection.ALL.rows("2:3")));
+        assertEquals(ROW_4 + ROW_5, convert(RowSelection.ALL.rows("5:6")));
+    }
+
+    @Test
+    void samplesRange() throws IOException {
+        assertEquals(ROW_1 + ROW_3 + ROW_5, convert(RowSelection.ALL.rows("2:6").sample(2)));
+    }
+
+    @Test
+    void stopsAtLimit() throws IOException {
+        assertEquals("id,\"name, \"\"quoted\"\"\",value,,flag\n" + ROW_1, convert(RowSelection.ALL.limit(2)));
+        assertEquals(ROW_2 + ROW_3, convert(RowSelection.ALL.rows("3:").limit(2)));
+    }
+
+    @Test
+    void limitCountsRowsThatPassConditions() throws IOException {
+        assertEquals(ROW_2 + ROW_4, convert(RowSelection.parse(null, List.of("E=TRUE")).limit(5)));
+        assertEquals(ROW_3, convert(RowSelection.parse(null, List.of("C>3")).limit(1)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "A,", "1", "A:", "C:A"})
+    void rejectsMalformedColumns(String columns) {
+        assertThrows(IllegalArgumentException.class, () -> RowSelection.parse(columns, List.of()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"A", "=1", "A<x", "A<>1"})
+    void rejectsMalformedConditions(String condition) {
+        assertThrows(IllegalArgumentException.class, () -> RowSelection.parse(null, List.of(condition)));
+    }
+
+    @Test
+    void rejectsEmptyRowRange() {
+        assertThrows(IllegalArgumentException.class, () -> RowSelection.ALL.rows("5:4"));
+        assertThrows(IllegalArgumentException.class, () -> RowSelection.ALL.rows("x"));
+        assertThrows(IllegalArgumentException.class, () -> RowSelection.ALL.limit(0));
+    }
+
+    private static String convert(RowSelection selection) throws IOException {
+        ConversionOptions options = ConversionOptions.builder().selection(selection).build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Path workbook = ExcelToCsvConverterTest.resource("golden/sample.xlsx");
+        new ExcelToCsvConverter(options).convertSheet(workbook, "Data", out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.godse823.exceltocsv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes minimal XLSX packages for tests: a workbook part, relationships
+ * and one worksheet part per sheet, whose {@code <sheetData>} content is
+ * given as XML. Cells are usually inline strings or numbers, so no
+ * shared-strings or styles part is needed.
+ */
+public final class TestWorkbook {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<String> sheetData = new ArrayList<>();
+
+    public TestWorkbook sheet(String name, String sheetData) {
+        names.add(name);
+        this.sheetData.add(sheetData);
+        return this;
+    }
+
+    /** A row of inline-string cells, in the form {@link #sheet} takes. */
+    public static String row(int number, String... cells) {
+        StringBuilder xml = new StringBuilder("<row r=\"").append(number).append("\">");
+        for (int i = 0; i < cells.length; i++) {
+            xml.append("<c r=\"").append((char) ('A' + i)).append(number).append("\" t=\"inlineStr\"><is><t>")
+                    .append(cells[i]).append("</t></is></c>");
+        }
+        return xml.append("</row>").toString();
+    }
+
+    public Path write(Path file) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            StringBuilder types = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"rels\""
+                    + " ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+            StringBuilder sheets = new StringBuilder();
+            StringBuilder relationships = new StringBuilder();
+            for (int i = 1; i <= names.size(); i++) {
+                types.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ContentType=\"")
+                        .append("application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+                sheets.append("<sheet name=\"").append(names.get(i - 1)).append("\" sheetId=\"").append(i)
+                        .append("\" r:id=\"rId").append(i).append("\"/>");
+                relationships.append("<Relationship Id=\"rId").append(i).append("\" Type=\"http://schemas")
+                        .append(".openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"")
+                        .append("worksheets/sheet").append(i).append(".xml\"/>");
+            }
+            types.append("</Types>");
+            put(zip, "[Content_Types].xml", types.toString());
+            put(zip, "_rels/.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/"
+                    + "relationships/officeDocument\" Target=\"xl/workbook.xml\"/></Relationships>");
+            put(zip, "xl/workbook.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+                    + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+                    + "<sheets>" + sheets + "</sheets></workbook>");
+            put(zip, "xl/_rels/workbook.xml.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + relationships + "</Relationships>");
+            for (int i = 1; i <= names.size(); i++) {
+                zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + i + ".xml"));
+                write(zip, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                        + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+                write(zip, sheetData.get(i - 1));
+                write(zip, "</sheetData></worksheet>");
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static void put(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        write(zip, content);
+        zip.closeEntry();
+    }
+
+    private static void write(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.godse823.exceltocsv.arrow;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.godse823.exceltocsv.CellKind;
+import com.github.godse823.exceltocsv.RowBuffer;
+import com.github.godse823.exceltocsv.RowSelection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Types inferred over the whole sheet, whether it fits one row group or is
+ * spilled group by group. Without an Arrow reader at hand, files are
+ * compared with each other: a column widened to {@code utf8} must have the
+ * schema of a column of text, and a spilled sheet the bytes of one that
+ * was not.
+ */
+class ArrowWriterTest {
+
+    private static final String[] HEADER = {"id", "amount", "when", "flag", "note"};
+    private static final String[][] ROWS = {
+        {"1", "12.5", "d43831", "true", "first"},
+        {"2", "", "d43832.5", "false", ""},
+        {"3", "-7", "", "#N/A", "third"},
+    };
+
+    @Test
+    void widensColumnToTextWhenLaterCellIsText() throws IOException {
+        String[][] rows = {{"n"}, {"1"}, {"2"}, {"3"}, {"4"}, {"5"}, {"n/a"}};
+
+        byte[] widened = write(2, rows);
+
+        assertArrayEquals(schema(write(100, text(rows))), schema(widened));
+        assertFalse(Arrays.equals(schema(write(100, Arrays.copyOf(rows, 6))), schema(widened)));
+        assertTrue(contains(widened, "n/a"));
+        assertEquals("ARROW1", new String(widened, widened.length - 6, 6, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void addsColumnsFirstFilledAfterFirstRowGroup() throws IOException {
+        String[][] rows = {{"1"}, {"2"}, {"3"}, {"4", "late"}, {"5"}};
+
+        assertArrayEquals(schema(write(100, rows)), schema(write(2, rows)));
+    }
+
+    @Test
+    void spilledGroupWritesSameFileAsBufferedOne() throws IOException {
+        String[][] rows = new String[ROWS.length + 1][];
+        rows[0] = HEADER;
+        System.arraycopy(ROWS, 0, rows, 1, ROWS.length);
+
+        // A full row group is spilled; one row more keeps it in memory.
+        assertArrayEquals(write(ROWS.length + 1, rows), write(ROWS.length, rows));
+    }
+
+    @Test
+    void writesEmptySheet() throws IOException {
+        byte[] file = write(2);
+
+        assertEquals("ARROW1", new String(file, 0, 6, StandardCharsets.US_ASCII));
+        assertEquals("ARROW1", new String(file, file.length - 6, 6, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Writes the rows through an {@link ArrowWriter}. A cell that parses as
+     * a number is a number, one with a {@code d} prefix a date, {@code true}
+     * and {@code false} booleans, {@code #N/A} an error and anything else text.
+     */
+    private static byte[] write(int rowGroupSize, String[]... rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Small, so that batches straddle flushes.
+        ArrowWriter writer = new ArrowWriter(Channels.newChannel(out), ByteBuffer.allocate(64), rowGroupSize,
+                RowSelection.ALL);
+        RowBuffer row = new RowBuffer();
+        for (int r = 0; r < rows.length; r++) {
+            row.reset(r + 1);
+            for (int c = 0; c < rows[r].length; c++) {
+                row.beginCell(c);
+                cell(row, rows[r][c]);
+                row.endCell();
+            }
+            writer.row(row);
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    private static void cell(RowBuffer row, String value) {
+        if (value.startsWith("d")) {
+            row.number(CellKind.DATE, Double.parseDouble(value.substring(1)) - 25569);
+            value = value.substring(1);
+        } else if (value.equals("true") || value.equals("false")) {
+            row.number(CellKind.BOOLEAN, value.equals("true") ? 1 : 0);
+        } else if (value.equals("#N/A")) {
+            row.kind(CellKind.ERROR);
+        } else if (!value.isEmpty() && !value.startsWith("_")) {
+            try {
+                row.number(CellKind.NUMBER, Double.parseDouble(value));
+            } catch (NumberFormatException e) {
+                // Text.
+            }
+        }
+        row.append((value.startsWith("_") ? value.substring(1) : value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The rows with every cell but those of the first row marked as text. */
+    private static String[][] text(String[][] rows) {
+        String[][] text = new String[rows.length][];
+        text[0] = rows[0];
+        for (int r = 1; r < rows.length; r++) {
+            text[r] = Arrays.stream(rows[r]).map(value -> "_" + value).toArray(String[]::new);
+        }
+        return text;
+    }
+
+    /** The schema message that follows the magic of an Arrow file. */
+    private static byte[] schema(byte[] file) {
+        int length = ByteBuffer.wrap(file, 12, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        return Arrays.copyOfRange(file, 8, 16 + length);
+    }
+
+    private static boolean contains(byte[] data, String text) {
+        byte[] needle = text.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + needle.length <= data.length; i++) {
+            if (Arrays.equals(data, i, i + needle.length, needle, 0, needle.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.godse823.exceltocsv.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.godse823.exceltocsv.TestWorkbook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Option handling of the command line, run in-process through {@link Main#run}. */
+class MainTest {
+
+    @TempDir
+    Path work;
+
+    private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+    @Test
+    void rejectsOutputOptionForSingleWorkbook() throws IOException {
+        Path workbook = workbook();
+
+        assertEquals(2, run("-o", work.resolve("out").toString(), workbook.toString()));
+        assertTrue(stderr.toString(StandardCharsets.UTF_8).contains("-o/--output"));
+        assertEquals(2, run("--serve", "127.0.0.1:0", "-o", work.resolve("out").toString()));
+        assertTrue(Files.notExists(work.resolve("out")));
+    }
+
+    @Test
+    void rejectsNegativeSpillThreshold() throws IOException {
+        assertEquals(2, run("--spill-threshold", "-1", "--stdout", workbook().toString()));
+        assertTrue(stderr.toString(StandardCharsets.UTF_8).contains("Spill threshold must not be negative"));
+    }
+
+    @Test
+    void writesBatchOutputToOutputOption() throws IOException {
+        Path workbook = workbook();
+
+        assertEquals(0, run("--batch", "-o", work.resolve("out").toString(), workbook.toString()));
+        assertTrue(Files.isRegularFile(work.resolve("out").resolve("book").resolve("Data.csv")));
+    }
+
+    private Path workbook() throws IOException {
+        return new TestWorkbook().sheet("Data", TestWorkbook.row(1, "a", "b")).write(work.resolve("book.xlsx"));
+    }
+
+    private int run(String... args) {
+        PrintStream err = new PrintStream(stderr, true, StandardCharsets.UTF_8);
+        return Main.run(args, new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8), err);
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.godse823.exceltocsv.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.ExcelToCsvConverter;
+import com.github.godse823.exceltocsv.TestWorkbook;
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Compresses data with each built-in codec and reads it back with a
+ * reference decoder: {@link GZIPInputStream}, the LZ4 frame reader of
+ * Commons Compress and zstd-jni.
+ */
+class OutputCodecTest {
+
+    private static final int K = 1024;
+    private static final String[] CODECS = {"gzip:1", "gzip:6", "gzip:9", "lz4", "zstd"};
+    /**
+     * Around the block sizes of the codecs: 128K for gzip and zstd blocks,
+     * 256K for LZ4 and 1M for zstd segments.
+     */
+    private static final int[] SIZES = {0, 1, 100, 128 * K - 1, 128 * K, 128 * K + 1, 256 * K, 256 * K + 1,
+        K * K - 1, K * K, K * K + 1, 3 * K * K + K * K / 2};
+
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(4);
+
+    @AfterAll
+    static void stopWorkers() {
+        WORKERS.shutdownNow();
+    }
+
+    static Stream<Arguments> inputs() {
+        List<Arguments> inputs = new ArrayList<>();
+        for (String codec : CODECS) {
+            for (int size : SIZES) {
+                inputs.add(Arguments.of(codec, "csv", size));
+                inputs.add(Arguments.of(codec, "random", size));
+            }
+            inputs.add(Arguments.of(codec, "zeros", 2 * K * K + 3));
+            inputs.add(Arguments.of(codec, "mixed", 3 * K * K));
+        }
+        return inputs.stream();
+    }
+
+    @ParameterizedTest(name = "{0} {1} {2}")
+    @MethodSource("inputs")
+    void roundTrips(String spec, String kind, int size) throws IOException {
+        byte[] data = data(kind, size);
+        OutputCodec codec = OutputCodec.named(spec);
+
+        byte[] compressed = compress(codec, data, 10_007, true);
+
+        assertArrayEquals(data, decompress(codec, compressed), spec + " " + kind + " " + size);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gzip", "lz4", "zstd"})
+    void roundTripsOneLargeWrite(String spec) throws IOException {
+        byte[] data = data("mixed", 5 * K * K);
+        OutputCodec codec = OutputCodec.named(spec);
+
+        assertArrayEquals(data, decompress(codec, compress(codec, data, data.length, true)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gzip", "lz4", "zstd"})
+    void shrinksCsv(String spec) throws IOException {
+        byte[] data = data("csv", 2 * K * K);
+        OutputCodec codec = OutputCodec.named(spec);
+
+        assertTrue(compress(codec, data, 65_536, true).length < data.length / 2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gzip", "lz4", "zstd"})
+    void abandonedStreamIsRejected(String spec) throws IOException {
+        OutputCodec codec = OutputCodec.named(spec);
+        for (int size : new int[] {100, 3 * K * K}) {
+            assertIncomplete(codec, compress(codec, data("csv", size), 10_007, false), spec + " " + size);
+        }
+    }
+
+    @Test
+    void failedSheetLeavesNoEndOfStream(@TempDir Path directory) throws IOException {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 1; i <= 40_000; i++) {
+            rows.append(TestWorkbook.row(i, "row " + i, "some text to fill the block", String.valueOf(i * 7)));
+        }
+        // A shared string in a workbook without a shared-strings table fails the sheet after its rows.
+        rows.append("<row r=\"40001\"><c r=\"A40001\" t=\"s\"><v>0</v></c></row>");
+        Path workbook = new TestWorkbook().sheet("Data", rows.toString()).write(directory.resolve("failing.xlsx"));
+
+        for (String spec : new String[] {"gzip", "lz4", "zstd"}) {
+            OutputCodec codec = OutputCodec.named(spec);
+            ExcelToCsvConverter converter = new ExcelToCsvConverter(ConversionOptions.builder()
+                    .compression(codec)
+                    .build());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            assertThrows(ConversionException.class, () -> converter.convertSheet(workbook, "Data", out));
+            assertIncomplete(codec, out.toByteArray(), spec);
+        }
+    }
+
+    @Test
+    void rejectsUnknownCodecsAndLevels() {
+        assertEquals("gzip:6", OutputCodec.named("gzip").spec());
+        assertEquals("gzip:9", OutputCodec.named("gzip:9").spec());
+        assertThrows(IllegalArgumentException.class, () -> OutputCodec.named("gzip:0"));
+        assertThrows(IllegalArgumentException.class, () -> OutputCodec.named("lz4:3"));
+        assertThrows(IllegalArgumentException.class, () -> OutputCodec.named("brotli"));
+    }
+
+    /**
+     * Asserts that {@code compressed} has no end of stream: either nothing was
+     * written yet, because the blocks were still being compressed, or the
+     * reference decoder fails on it.
+     */
+    private static void assertIncomplete(OutputCodec codec, byte[] compressed, String message) {
+        if (compressed.length > 0) {
+            assertThrows(IOException.class, () -> decompress(codec, compressed), message);
+        }
+    }
+
+    /** Writes {@code data} in pieces of {@code piece} bytes and closes the channel if {@code finish}. */
+    private static byte[] compress(OutputCodec codec, byte[] data, int piece, boolean finish) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel channel = codec.compress(Channels.newChannel(out), WORKERS);
+        for (int i = 0; i < data.length; i += piece) {
+            channel.write(ByteBuffer.wrap(data, i, Math.min(piece, data.length - i)));
+        }
+        if (finish) {
+            channel.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(OutputCodec codec, byte[] compressed) throws IOException {
+        InputStream source = new ByteArrayInputStream(compressed);
+        try (InputStream in = switch (codec.name()) {
+            case "gzip" -> new GZIPInputStream(source);
+            case "lz4" -> new FramedLZ4CompressorInputStream(source);
+            case "zstd" -> new ZstdInputStream(source);
+            default -> throw new IllegalArgumentException(codec.name());
+        }) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] data(String kind, int size) {
+        byte[] data = new byte[size];
+        SplittableRandom random = new SplittableRandom(size);
+        switch (kind) {
+            case "csv" -> fillCsv(data, random);
+            case "random" -> random.nextBytes(data);
+            case "zeros" -> {
+            }
+            case "mixed" -> {
+                fillCsv(data, random);
+                for (int i = 0; i < size; i += 300 * K) {
+                    byte[] noise = new byte[Math.min(100 * K, size - i)];
+                    random.nextBytes(noise);
+                    System.arraycopy(noise, 0, data, i, noise.length);
+                }
+            }
+            default -> throw new IllegalArgumentException(kind);
+        }
+        return data;
+    }
+
+    private static void fillCsv(byte[] data, SplittableRandom random) {
+        StringBuilder csv = new StringBuilder(data.length + 100);
+        for (int row = 1; csv.length() < data.length; row++) {
+            csv.append(row).append(",customer ").append(random.nextInt(500)).append(',')
+                    .append(random.nextInt(100_000) / 100.0).append(",EUR,2023-0").append(1 + random.nextInt(9))
+                    .append('-').append(10 + random.nextInt(18)).append('\n');
+        }
+        byte[] bytes = csv.toString().getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, data, 0, data.length);
+    }
+}
@@ -0,0 +1,208 @@
+package com.github.godse823.exceltocsv.format;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.godse823.exceltocsv.RowBuffer;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * Built-in and custom format codes against the text Excel displays for the
+ * same value. Values are given as doubles, as BIFF8 stores them, and as
+ * decimal text, as XLSX does.
+ */
+class CellFormatsTest {
+
+    private static final String DELIMITER = "|";
+
+    @ParameterizedTest(name = "{0} of {1}")
+    @CsvSource(delimiterString = DELIMITER, textBlock = """
+            1          | 1234.5678       | 1235
+            2          | 1234.5678       | 1234.57
+            3          | 1234567.891     | 1,234,568
+            4          | -1234.5         | -1,234.50
+            9          | 0.125           | 13%
+            10         | 0.12345         | 12.35%
+            14         | 43831           | 2020-01-01
+            15         | 43831           | 1-Jan-20
+            16         | 43831           | 1-Jan
+            17         | 43831           | Jan-20
+            18         | 0.75            | 6:00 PM
+            19         | 0.5             | 12:00:00 PM
+            20         | 0.75            | 18:00
+            21         | 0.1234          | 2:57:42
+            22         | 43831.5         | 2020-01-01 12:00
+            37         | 1234            | '1,234 '
+            37         | -1234           | (1,234)
+            39         | -1234.5         | (1,234.50)
+            45         | 0.0625          | 30:00
+            46         | 1.5             | 36:00:00
+            47         | 1234.5678       | 37:37.9
+            """)
+    void formatsBuiltInIds(int id, double value, String expected) {
+        assertEquals(expected, format(new CellFormats(false).forId(id, null), value));
+    }
+
+    @ParameterizedTest(name = "{0} of {1}")
+    @CsvSource(delimiterString = DELIMITER, textBlock = """
+            0.00                        | 2.675         | 2.68
+            0                           | 2.5           | 3
+            0                           | -2.5          | -3
+            0                           | 0.4           | 0
+            0.0                         | -0.04         | -0.0
+            #                           | 0             | ''
+            #.##                        | 0.5           | .5
+            #.##                        | 1             | 1.
+            0.0#                        | 1.5           | 1.5
+            0.0#                        | 1.256         | 1.26
+            000                         | 7             | 007
+            #,##0                       | 999.5         | 1,000
+            #,##0,                      | 1234567       | 1,235
+            0.0,,                       | 1234567       | 1.2
+            0.00                        | 1E20          | 100000000000000000000.00
+            0                           | 123456789012345678 | 123456789012346000
+            0.000%                      | 0.0001        | 0.010%
+            #,##0.00 "EUR"              | 1234.5        | '1,234.50 EUR'
+            [$$-409]#,##0.00            | 1234.5        | $1,234.50
+            \\$0.00                     | 3             | $3.00
+            [Red]0.00                   | 1.5           | 1.50
+            0.00;(0.00)                 | -1.5          | (1.50)
+            0.00;(0.00)                 | 0             | 0.00
+            #,##0.00;[Red]-#,##0.00;"-" | 0             | -
+            #,##0.00;[Red]-#,##0.00;"-" | -1234.5       | -1,234.50
+            0.00;-0.00;"zero"           | 0             | zero
+            0.00E+00                    | 12345         | 12345
+            # ?/?                       | 0.5           | 0.5
+            @                           | 3             | 3
+            General                     | 0.1           | 0.1
+            """)
+    void formatsNumbers(String code, double value, String expected) {
+        assertEquals(expected, format(new CellFormats(false).forCode(code), value));
+    }
+
+    @ParameterizedTest(name = "{0} of {1}")
+    @CsvSource(delimiterString = DELIMITER, textBlock = """
+            yyyy-mm-dd dddd            | 0             | 1900-01-00 Saturday
+            yyyy-mm-dd dddd            | 1             | 1900-01-01 Sunday
+            yyyy-mm-dd ddd             | 59            | 1900-02-28 Tue
+            yyyy-mm-dd ddd             | 60            | 1900-02-29 Wed
+            yyyy-mm-dd ddd             | 61            | 1900-03-01 Thu
+            yyyy-mm-dd dddd            | 43831         | 2020-01-01 Wednesday
+            yyyy-mm-dd                 | 36585         | 2000-02-29
+            yyyy-mm-dd                 | 2958465       | 9999-12-31
+            yyyy-mm-dd                 | 2958466       | 2958466
+            yyyy-mm-dd                 | -1            | -1
+            m/d/yy                     | 43831         | 1/1/20
+            mmmm d, yyyy               | 43862         | February 1, 2020
+            mmmmm                      | 43862         | F
+            dd/mm/yyyy hh:mm:ss        | 43831.75      | 01/01/2020 18:00:00
+            h:mm AM/PM                 | 0             | 12:00 AM
+            h:mm A/P                   | 0.5416666667  | 1:00 P
+            hh:mm:ss AM/PM             | 0.75          | 06:00:00 PM
+            [$-409]h:mm AM/PM          | 0.75          | 6:00 PM
+            h:mm:ss                    | 0.5000069444  | 12:00:01
+            h:mm:ss.000                | 0.0423741088  | 1:01:01.123
+            mm:ss.00                   | 0.0000057870  | 00:00.50
+            [h]:mm                     | 2.25          | 54:00
+            [mm]:ss                    | 1             | 1440:00
+            [ss]                       | 0.01          | 864
+            [h]:mm:ss                  | -0.5          | -0.5
+            "Week of "d mmm            | 43831         | Week of 1 Jan
+            """)
+    void formatsDatesIn1900System(String code, double value, String expected) {
+        assertEquals(expected, format(new CellFormats(false).forCode(code), value));
+    }
+
+    @ParameterizedTest(name = "{0} of {1}")
+    @CsvSource(delimiterString = DELIMITER, textBlock = """
+            yyyy-mm-dd dddd            | 0             | 1904-01-01 Friday
+            yyyy-mm-dd                 | 1             | 1904-01-02
+            yyyy-mm-dd                 | 59            | 1904-02-29
+            yyyy-mm-dd                 | 42369         | 2020-01-01
+            yyyy-mm-dd                 | -1            | -1
+            """)
+    void formatsDatesIn1904System(String code, double value, String expected) {
+        assertEquals(expected, format(new CellFormats(true).forCode(code), value));
+    }
+
+    @Test
+    void formatsXlsxText() {
+        CellFormat twoPlaces = new CellFormats(false).forCode("#,##0.00");
+
+        assertEquals("1,234.57", formatText(twoPlaces, "1234.5678"));
+        assertEquals("1,234.57", formatText(twoPlaces, "1.2345678E3"));
+        // Seventeen digits, as Excel writes computed results.
+        assertEquals("0.30", formatText(twoPlaces, "0.30000000000000004"));
+        assertEquals("n/a", formatText(twoPlaces, "n/a"));
+        assertEquals("1.0", formatText(CellFormat.GENERAL, "1.0"));
+        assertEquals("12:00", formatText(new CellFormats(false).forCode("hh:mm"), "0.5"));
+    }
+
+    @Test
+    void writesGeneralDoublesWithFifteenDigits() {
+        assertEquals("0.3", format(CellFormat.GENERAL, 0.1 + 0.2));
+        assertEquals("1E-10", format(CellFormat.GENERAL, 1e-10));
+        assertEquals("1.23456789012346E+20", format(CellFormat.GENERAL, 123456789012345678901d));
+        assertEquals("-42", format(CellFormat.GENERAL, -42));
+    }
+
+    @Test
+    void tellsDatesFromDurations() {
+        CellFormats formats = new CellFormats(false);
+
+        assertTrue(formats.forId(14, null).isDate());
+        assertTrue(formats.forCode("h:mm").isDate());
+        assertFalse(formats.forId(46, null).isDate());
+        assertFalse(formats.forId(4, null).isDate());
+        assertTrue(formats.forId(0, null).isGeneral());
+        assertTrue(formats.forId(164, null).isGeneral());
+    }
+
+    @Test
+    void convertsSerialsToEpochDays() {
+        CellFormat date1900 = new CellFormats(false).forId(14, null);
+        CellFormat date1904 = new CellFormats(true).forId(14, null);
+
+        assertEquals(0, date1900.epochDays(25569));
+        assertEquals(-25567, date1900.epochDays(1));
+        assertEquals(-25508, date1900.epochDays(61));
+        assertEquals(0.5, date1900.epochDays(25569.5));
+        assertEquals(0, date1904.epochDays(24107));
+        assertEquals(-24107, date1904.epochDays(0));
+    }
+
+    @Test
+    void sharesCompiledFormatsPerDateSystem() {
+        assertSame(new CellFormats(false).forCode("0.000"), new CellFormats(false).forCode("0.000"));
+        CellFormat date1900 = new CellFormats(false).forCode("yyyy-mm-dd");
+        CellFormat date1904 = new CellFormats(true).forCode("yyyy-mm-dd");
+
+        assertEquals("1900-01-01", format(date1900, 1));
+        assertEquals("1904-01-02", format(date1904, 1));
+    }
+
+    private static String format(CellFormat format, double value) {
+        RowBuffer row = new RowBuffer();
+        row.reset(1);
+        row.beginCell(0);
+        format.format(value, row, new FormatScratch());
+        row.endCell();
+        return row.cellAsString(0);
+    }
+
+    private static String formatText(CellFormat format, String text) {
+        RowBuffer row = new RowBuffer();
+        row.reset(1);
+        row.beginCell(0);
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        format.format(bytes, 0, bytes.length, row, new FormatScratch());
+        row.endCell();
+        return row.cellAsString(0);
+    }
+}
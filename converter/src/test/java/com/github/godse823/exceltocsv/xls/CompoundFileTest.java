@@ -0,0 +1,139 @@
+package com.github.godse823.exceltocsv.xls;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Streams read back from compound documents written by
+ * {@link TestCompoundFile}: sector chains in and out of order, the mini
+ * stream, an allocation table listed partly outside the header, and files
+ * that are damaged.
+ */
+class CompoundFileTest {
+
+    @TempDir
+    Path work;
+
+    @Test
+    void readsInterleavedSectorChains() throws IOException {
+        byte[] first = bytes(10_000, 1);
+        byte[] second = bytes(7_000, 2);
+        Path path = new TestCompoundFile().stream("First", first).stream("Second", second).interleave()
+                .write(work.resolve("interleaved.xls"));
+
+        try (CompoundFile file = CompoundFile.open(path)) {
+            assertArrayEquals(first, readAll(file.openStream("First")));
+            assertArrayEquals(second, readAll(file.openStream("Second")));
+        }
+    }
+
+    @Test
+    void seeksWithinChains() throws IOException {
+        byte[] data = bytes(9_000, 3);
+        for (TestCompoundFile builder : new TestCompoundFile[] {
+            new TestCompoundFile().stream("Data", data),
+            new TestCompoundFile().stream("Data", data).stream("Other", bytes(5_000, 4)).interleave()}) {
+            try (CompoundFile file = CompoundFile.open(builder.write(work.resolve("seek.xls")))) {
+                CompoundFile.SectorStream stream = file.openStream("Data");
+                assertEquals(data.length, stream.size());
+                // Across the boundary of the second and third sectors, then to the end.
+                stream.seek(1000);
+                byte[] part = new byte[100];
+                stream.readFully(part, 0, part.length);
+                assertArrayEquals(Arrays.copyOfRange(data, 1000, 1100), part);
+                stream.seek(8_990);
+                assertArrayEquals(Arrays.copyOfRange(data, 8_990, data.length), stream.readAllBytes());
+                assertEquals(-1, stream.read());
+            }
+        }
+    }
+
+    @Test
+    void readsStreamsFromMiniStream() throws IOException {
+        int[] sizes = {0, 1, 63, 64, 65, 1000, 4095};
+        TestCompoundFile builder = new TestCompoundFile().stream("Large", bytes(4096, 9));
+        for (int size : sizes) {
+            builder.stream("Small" + size, bytes(size, size));
+        }
+
+        try (CompoundFile file = CompoundFile.open(builder.write(work.resolve("mini.xls")))) {
+            for (int size : sizes) {
+                assertArrayEquals(bytes(size, size), readAll(file.openStream("Small" + size)), "size " + size);
+            }
+            assertArrayEquals(bytes(4096, 9), readAll(file.openStream("Large")));
+        }
+    }
+
+    @Test
+    void readsAllocationTableListedBeyondHeader() throws IOException {
+        byte[] large = bytes(20_000, 5);
+        byte[] small = bytes(300, 6);
+        // 14,000 sectors take 110 allocation table sectors, one more than the header can list.
+        byte[] document = new TestCompoundFile().padding(14_000).stream("Large", large).stream("Small", small)
+                .build();
+        assertTrue(ByteBuffer.wrap(document).order(ByteOrder.LITTLE_ENDIAN).getInt(0x48) > 0);
+
+        try (CompoundFile file = CompoundFile.open(Files.write(work.resolve("difat.xls"), document))) {
+            assertArrayEquals(large, readAll(file.openStream("Large")));
+            assertArrayEquals(small, readAll(file.openStream("Small")));
+        }
+    }
+
+    @Test
+    void findsStreamsIgnoringCase() throws IOException {
+        Path path = new TestCompoundFile().stream("Workbook", bytes(10, 7)).write(work.resolve("names.xls"));
+
+        try (CompoundFile file = CompoundFile.open(path)) {
+            assertTrue(file.hasStream("WORKBOOK"));
+            assertFalse(file.hasStream("Book"));
+            assertThrows(ConversionException.class, () -> file.openStream("Book"));
+        }
+    }
+
+    @Test
+    void rejectsStreamLongerThanItsChain() throws IOException {
+        Path path = new TestCompoundFile().stream("Data", bytes(5_000, 8), 20_000).write(work.resolve("short.xls"));
+
+        try (CompoundFile file = CompoundFile.open(path)) {
+            assertThrows(ConversionException.class, () -> file.openStream("Data"));
+        }
+    }
+
+    @Test
+    void rejectsDamagedFiles() throws IOException {
+        byte[] document = new TestCompoundFile().stream("Data", bytes(5_000, 8)).build();
+        Path truncated = Files.write(work.resolve("truncated.xls"), Arrays.copyOf(document, document.length / 2));
+        Path notCompound = Files.write(work.resolve("zeros.xls"), new byte[1024]);
+
+        assertThrows(IOException.class, () -> CompoundFile.open(truncated).close());
+        assertThrows(ConversionException.class, () -> CompoundFile.open(notCompound).close());
+    }
+
+    private static byte[] readAll(CompoundFile.SectorStream stream) throws IOException {
+        try (stream) {
+            return stream.readAllBytes();
+        }
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,256 @@
+package com.github.godse823.exceltocsv.xls;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes OLE2 compound documents with 512-byte sectors for tests. Streams
+ * below the 4096-byte cutoff go to the mini stream; larger ones get their
+ * own sector chains, interleaved with one another if asked, so that chains
+ * are not contiguous. Unused sectors can be put in front of the streams to
+ * make the allocation table outgrow the 109 sectors the header can list.
+ */
+final class TestCompoundFile {
+
+    private static final int SECTOR = 512;
+    private static final int MINI_SECTOR = 64;
+    private static final int CUTOFF = 4096;
+    private static final int PER_SECTOR = SECTOR / 4;
+    private static final int FREE = -1;
+    private static final int END_OF_CHAIN = -2;
+    private static final int FAT_SECTOR = -3;
+    private static final int DIFAT_SECTOR = -4;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<byte[]> contents = new ArrayList<>();
+    private final List<Long> declaredSizes = new ArrayList<>();
+    private boolean interleave;
+    private int padding;
+
+    TestCompoundFile stream(String name, byte[] content) {
+        return stream(name, content, content.length);
+    }
+
+    /** Adds a stream whose directory entry claims {@code declaredSize} bytes. */
+    TestCompoundFile stream(String name, byte[] content, long declaredSize) {
+        names.add(name);
+        contents.add(content);
+        declaredSizes.add(declaredSize);
+        return this;
+    }
+
+    /** Allocates the sectors of large streams in turn, one sector each, rather than one stream after another. */
+    TestCompoundFile interleave() {
+        interleave = true;
+        return this;
+    }
+
+    /** Leaves {@code sectors} free sectors in front of all data. */
+    TestCompoundFile padding(int sectors) {
+        padding = sectors;
+        return this;
+    }
+
+    Path write(Path file) throws IOException {
+        Files.write(file, build());
+        return file;
+    }
+
+    byte[] build() {
+        int count = padding;
+
+        // Large streams.
+        int[][] chains = new int[names.size()][];
+        List<Integer> large = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (contents.get(i).length >= CUTOFF) {
+                large.add(i);
+                chains[i] = new int[sectors(contents.get(i).length, SECTOR)];
+            }
+        }
+        if (interleave) {
+            int[] filled = new int[names.size()];
+            boolean more = true;
+            while (more) {
+                more = false;
+                for (int i : large) {
+                    if (filled[i] < chains[i].length) {
+                        chains[i][filled[i]++] = count++;
+                        more = true;
+                    }
+                }
+            }
+        } else {
+            for (int i : large) {
+                for (int s = 0; s < chains[i].length; s++) {
+                    chains[i][s] = count++;
+                }
+            }
+        }
+
+        // The mini stream and its allocation table.
+        int[] miniStarts = new int[names.size()];
+        List<Integer> miniFat = new ArrayList<>();
+        byte[] mini = new byte[0];
+        for (int i = 0; i < names.size(); i++) {
+            byte[] content = contents.get(i);
+            if (content.length >= CUTOFF) {
+                continue;
+            }
+            int miniSectors = sectors(content.length, MINI_SECTOR);
+            miniStarts[i] = miniSectors == 0 ? END_OF_CHAIN : miniFat.size();
+            for (int s = 0; s < miniSectors; s++) {
+                miniFat.add(s == miniSectors - 1 ? END_OF_CHAIN : miniFat.size() + 1);
+            }
+            int at = mini.length;
+            mini = Arrays.copyOf(mini, at + miniSectors * MINI_SECTOR);
+            System.arraycopy(content, 0, mini, at, content.length);
+        }
+        int[] miniChain = range(count, sectors(mini.length, SECTOR));
+        count += miniChain.length;
+        int[] miniFatChain = range(count, sectors(miniFat.size() * 4, SECTOR));
+        count += miniFatChain.length;
+        int entries = names.size() + 1;
+        int[] directoryChain = range(count, sectors(entries * 128, SECTOR));
+        count += directoryChain.length;
+
+        // The allocation table covers itself and the sectors listing it.
+        int fatSectors = 0;
+        int difatSectors = 0;
+        while (true) {
+            int total = count + fatSectors + difatSectors;
+            int neededFat = sectors(total * 4, SECTOR);
+            int neededDifat = Math.max(0, sectors(Math.max(0, neededFat - 109) * 4, SECTOR - 4));
+            if (neededFat == fatSectors && neededDifat == difatSectors) {
+                break;
+            }
+            fatSectors = neededFat;
+            difatSectors = neededDifat;
+        }
+        int[] fatChain = range(count, fatSectors);
+        count += fatSectors;
+        int[] difatChain = range(count, difatSectors);
+        count += difatSectors;
+
+        int[] next = new int[fatSectors * PER_SECTOR];
+        Arrays.fill(next, FREE);
+        for (int[] chain : chains) {
+            link(next, chain);
+        }
+        link(next, miniChain);
+        link(next, miniFatChain);
+        link(next, directoryChain);
+        for (int s : fatChain) {
+            next[s] = FAT_SECTOR;
+        }
+        for (int s : difatChain) {
+            next[s] = DIFAT_SECTOR;
+        }
+
+        ByteBuffer file = ByteBuffer.allocate((count + 1) * SECTOR).order(ByteOrder.LITTLE_ENDIAN);
+        // Header.
+        file.putLong(0, 0xE11AB1A1E011CFD0L);
+        file.putShort(0x18, (short) 0x3E);
+        file.putShort(0x1A, (short) 3);
+        file.putShort(0x1C, (short) 0xFFFE);
+        file.putShort(0x1E, (short) 9);
+        file.putShort(0x20, (short) 6);
+        file.putInt(0x2C, fatSectors);
+        file.putInt(0x30, directoryChain[0]);
+        file.putInt(0x38, CUTOFF);
+        file.putInt(0x3C, miniFatChain.length == 0 ? END_OF_CHAIN : miniFatChain[0]);
+        file.putInt(0x40, miniFatChain.length);
+        file.putInt(0x44, difatChain.length == 0 ? END_OF_CHAIN : difatChain[0]);
+        file.putInt(0x48, difatChain.length);
+        for (int i = 0; i < 109; i++) {
+            file.putInt(0x4C + 4 * i, i < fatSectors ? fatChain[i] : FREE);
+        }
+        // Streams.
+        for (int i = 0; i < names.size(); i++) {
+            if (chains[i] != null) {
+                writeChain(file, chains[i], contents.get(i));
+            }
+        }
+        writeChain(file, miniChain, mini);
+        ByteBuffer miniTable = ByteBuffer.allocate(miniFatChain.length * SECTOR).order(ByteOrder.LITTLE_ENDIAN);
+        for (int s = 0; s < miniFatChain.length * PER_SECTOR; s++) {
+            miniTable.putInt(s < miniFat.size() ? miniFat.get(s) : FREE);
+        }
+        writeChain(file, miniFatChain, miniTable.array());
+        // Directory: the root, then one entry per stream, chained as right siblings.
+        ByteBuffer directory = ByteBuffer.allocate(directoryChain.length * SECTOR).order(ByteOrder.LITTLE_ENDIAN);
+        entry(directory, 0, "Root Entry", 5, FREE, names.isEmpty() ? FREE : 1,
+                miniChain.length == 0 ? END_OF_CHAIN : miniChain[0], mini.length);
+        for (int i = 0; i < names.size(); i++) {
+            int start = chains[i] != null ? chains[i][0] : miniStarts[i];
+            entry(directory, i + 1, names.get(i), 2, i + 1 < names.size() ? i + 2 : FREE, FREE, start,
+                    declaredSizes.get(i));
+        }
+        writeChain(file, directoryChain, directory.array());
+        // Allocation table and the sectors listing it beyond the header.
+        ByteBuffer table = ByteBuffer.allocate(fatSectors * SECTOR).order(ByteOrder.LITTLE_ENDIAN);
+        for (int value : next) {
+            table.putInt(value);
+        }
+        writeChain(file, fatChain, table.array());
+        for (int d = 0; d < difatSectors; d++) {
+            int base = (difatChain[d] + 1) * SECTOR;
+            for (int i = 0; i < PER_SECTOR - 1; i++) {
+                int index = 109 + d * (PER_SECTOR - 1) + i;
+                file.putInt(base + 4 * i, index < fatSectors ? fatChain[index] : FREE);
+            }
+            file.putInt(base + SECTOR - 4, d + 1 < difatSectors ? difatChain[d + 1] : END_OF_CHAIN);
+        }
+        return file.array();
+    }
+
+    private static void entry(ByteBuffer directory, int index, String name, int type, int right, int child,
+                              int start, long size) {
+        int base = index * 128;
+        for (int i = 0; i < name.length(); i++) {
+            directory.putChar(base + 2 * i, name.charAt(i));
+        }
+        directory.putShort(base + 0x40, (short) (2 * name.length() + 2));
+        directory.put(base + 0x42, (byte) type);
+        directory.put(base + 0x43, (byte) 1);
+        directory.putInt(base + 0x44, FREE);
+        directory.putInt(base + 0x48, right);
+        directory.putInt(base + 0x4C, child);
+        directory.putInt(base + 0x74, start);
+        directory.putInt(base + 0x78, (int) size);
+    }
+
+    private static void writeChain(ByteBuffer file, int[] chain, byte[] content) {
+        for (int s = 0; s < chain.length; s++) {
+            int from = s * SECTOR;
+            file.put((chain[s] + 1) * SECTOR, content, from, Math.min(SECTOR, content.length - from));
+        }
+    }
+
+    private static void link(int[] next, int[] chain) {
+        if (chain == null) {
+            return;
+        }
+        for (int s = 0; s < chain.length; s++) {
+            next[chain[s]] = s + 1 < chain.length ? chain[s + 1] : END_OF_CHAIN;
+        }
+    }
+
+    private static int[] range(int first, int length) {
+        int[] sectors = new int[length];
+        for (int i = 0; i < length; i++) {
+            sectors[i] = first + i;
+        }
+        return sectors;
+    }
+
+    private static int sectors(long bytes, int size) {
+        return (int) ((bytes + size - 1) / size);
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.godse823.exceltocsv.xls;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.github.godse823.exceltocsv.ConversionOptions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * The globals substream of BIFF8 workbooks built record by record: the
+ * sheet directory, number formats and date system, and a shared-strings
+ * table whose strings are split across CONTINUE records.
+ */
+class XlsWorkbookTest {
+
+    private static final int BOF = 0x0809;
+    private static final int EOF = 0x000A;
+    private static final int CONTINUE = 0x003C;
+    private static final int DATEMODE = 0x0022;
+    private static final int BOUNDSHEET = 0x0085;
+    private static final int XF = 0x00E0;
+    private static final int SST = 0x00FC;
+    private static final int FORMAT = 0x041E;
+    private static final int LABELSST = 0x00FD;
+    private static final int NUMBER = 0x0203;
+
+    /** Days from 1900-01-00 to 1904-01-01. */
+    private static final int DATE_1904_OFFSET = 1462;
+
+    @TempDir
+    Path work;
+
+    @ParameterizedTest(name = "1904 date system: {0}")
+    @ValueSource(booleans = {false, true})
+    void formatsNumbersThroughFormatAndXfRecords(boolean date1904) throws IOException {
+        int offset = date1904 ? DATE_1904_OFFSET : 0;
+        Records sheet = sheet()
+                .add(NUMBER, number(0, 0, 0, 1234.5678))
+                .add(NUMBER, number(0, 1, 1, 1234.5678))
+                .add(NUMBER, number(0, 2, 2, 43831 - offset))
+                .add(NUMBER, number(0, 3, 3, -1234.5))
+                .add(NUMBER, number(0, 4, 4, 43831.5 - offset))
+                .add(EOF, new Body());
+
+        try (XlsWorkbook workbook = open(date1904, sst(), sheet)) {
+            assertEquals(List.of("Numbers", "Übersicht"), workbook.sheetNames());
+            assertEquals(List.of("1234.5678|1234.568|2020-01-01|-1,234.50 €|2020-01-01 12:00"), rows(workbook, 0));
+        }
+    }
+
+    @Test
+    void readsSharedStringsSplitAcrossContinueRecords() throws IOException {
+        Records sheet = sheet();
+        for (int i = 0; i < 6; i++) {
+            sheet.add(LABELSST, new Body().u16(i).u16(0).u16(0).i32(i));
+        }
+        sheet.add(EOF, new Body());
+
+        try (XlsWorkbook workbook = open(false, sst(), sheet)) {
+            assertEquals(6, workbook.sharedStrings().size());
+            assertEquals(List.of("plain", "Grüße, 世界", "bold", "東京", "last", "Zürich"), rows(workbook, 1));
+        }
+    }
+
+    /**
+     * The strings plain, Grüße 世界 (switching to UTF-16 in a CONTINUE
+     * record), bold (with formatting runs split between records), 東京 (with
+     * phonetic data), last (starting a record) and Zürich (switching back to
+     * compressed characters).
+     */
+    private static Records sst() {
+        Records records = new Records();
+        records.add(SST, new Body().i32(12).i32(6)
+                .u16(5).u8(0).latin1("plain")
+                .u16(9).u8(0).latin1("Grü"));
+        records.add(CONTINUE, new Body().u8(1).utf16("ße, 世界")
+                .u16(4).u8(0x08).u16(2).latin1("bold").zeros(3));
+        records.add(CONTINUE, new Body().zeros(5)
+                .u16(2).u8(0x05).i32(10).utf16("東京").zeros(10));
+        records.add(CONTINUE, new Body().u16(4).u8(0).latin1("last")
+                .u16(6).u8(1).utf16("Zü"));
+        records.add(CONTINUE, new Body().u8(0).latin1("rich"));
+        return records;
+    }
+
+    /** Opens a workbook whose two worksheets, Numbers and Übersicht, both hold the records of {@code sheet}. */
+    private XlsWorkbook open(boolean date1904, Records sst, Records sheet) throws IOException {
+        // Record lengths do not depend on the offsets, so a first pass finds where the sheets start.
+        Records globals = globals(date1904, sst, 0, 0);
+        globals = globals(date1904, sst, globals.size(), sheet.size());
+        byte[] stream = globals.append(sheet).append(sheet).toByteArray();
+        Path path = new TestCompoundFile().stream("Workbook", stream).write(work.resolve("book.xls"));
+        return XlsWorkbook.open(path, ConversionOptions.defaults());
+    }
+
+    /** The globals substream, with sheets starting at {@code sheets}, each {@code sheetSize} bytes long. */
+    private static Records globals(boolean date1904, Records sst, int sheets, int sheetSize) {
+        Records records = new Records()
+                .add(BOF, new Body().u16(0x0600).u16(0x0005).zeros(12))
+                .add(DATEMODE, new Body().u16(date1904 ? 1 : 0))
+                .add(FORMAT, new Body().u16(164).u16(5).u8(0).latin1("0.000"))
+                .add(FORMAT, new Body().u16(165).u16(12).u8(1).utf16("#,##0.00 \"€\""));
+        for (int format : new int[] {0, 164, 14, 165, 22}) {
+            records.add(XF, new Body().u16(0).u16(format).zeros(16));
+        }
+        records.add(BOUNDSHEET, new Body().i32(sheets).u8(0).u8(0).u8(7).u8(0).latin1("Numbers"))
+                .add(BOUNDSHEET, new Body().i32(0).u8(0).u8(2).u8(5).u8(0).latin1("Chart"))
+                .add(BOUNDSHEET, new Body().i32(sheets + sheetSize).u8(0).u8(0).u8(9).u8(1)
+                        .utf16("Übersicht"));
+        return records.append(sst).add(EOF, new Body());
+    }
+
+    /** A worksheet substream so far: its BOF record. */
+    private static Records sheet() {
+        return new Records().add(BOF, new Body().u16(0x0600).u16(0x0010).zeros(12));
+    }
+
+    private static Body number(int row, int column, int xf, double value) {
+        return new Body().u16(row).u16(column).u16(xf).f64(value);
+    }
+
+    private static List<String> rows(XlsWorkbook workbook, int sheet) throws IOException {
+        List<String> rows = new ArrayList<>();
+        workbook.readSheet(sheet, row -> {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < row.cellCount(); i++) {
+                text.append(i == 0 ? "" : "|").append(row.cellAsString(i));
+            }
+            rows.add(text.toString());
+        });
+        return rows;
+    }
+
+    /** BIFF8 records: a little-endian record id and length, then the body. */
+    private static final class Records {
+
+        private byte[] data = new byte[0];
+
+        Records add(int sid, Body body) {
+            byte[] bytes = body.bytes();
+            ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN)
+                    .putShort((short) sid).putShort((short) bytes.length);
+            return append(header.array()).append(bytes);
+        }
+
+        Records append(Records records) {
+            return append(records.data);
+        }
+
+        private Records append(byte[] bytes) {
+            int at = data.length;
+            data = Arrays.copyOf(data, at + bytes.length);
+            System.arraycopy(bytes, 0, data, at, bytes.length);
+            return this;
+        }
+
+        int size() {
+            return data.length;
+        }
+
+        byte[] toByteArray() {
+            return data.clone();
+        }
+    }
+
+    /** The body of one record. */
+    private static final class Body {
+
+        private final ByteBuffer data = ByteBuffer.allocate(8224).order(ByteOrder.LITTLE_ENDIAN);
+
+        Body u8(int value) {
+            data.put((byte) value);
+            return this;
+        }
+
+        Body u16(int value) {
+            data.putShort((short) value);
+            return this;
+        }
+
+        Body i32(int value) {
+            data.putInt(value);
+            return this;
+        }
+
+        Body f64(double value) {
+            data.putDouble(value);
+            return this;
+        }
+
+        Body latin1(String text) {
+            data.put(text.getBytes(StandardCharsets.ISO_8859_1));
+            return this;
+        }
+
+        Body utf16(String text) {
+            data.put(text.getBytes(StandardCharsets.UTF_16LE));
+            return this;
+        }
+
+        Body zeros(int count) {
+            data.put(new byte[count]);
+            return this;
+        }
+
+        byte[] bytes() {
+            return Arrays.copyOf(data.array(), data.position());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.RowBuffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Entries of an XLSX shared-strings table, plain ones stored as is and the
+ * rest decoded from their markup on use, read repeatedly and in orders that
+ * make entries share a slot of the decoded-entry cache.
+ */
+class SharedStringsTest {
+
+    /** Entries this far apart share a cache slot. */
+    private static final int SLOTS = 4096;
+
+    @Test
+    void storesPlainEntriesAsIs() throws IOException {
+        try (SharedStrings table = read("<si><t>plain</t></si>",
+                "<si><t xml:space=\"preserve\"> padded </t></si>", "<si><t></t></si>")) {
+            assertEquals(3, table.size());
+            assertEquals("plain", text(table, 0));
+            assertEquals(" padded ", text(table, 1));
+            assertEquals("", text(table, 2));
+        }
+    }
+
+    @Test
+    void joinsRichTextRuns() throws IOException {
+        try (SharedStrings table = read("<si><r><rPr><b/><sz val=\"11\"/></rPr><t>bold</t></r>"
+                + "<r><t xml:space=\"preserve\"> and plain</t></r></si>")) {
+            assertEquals("bold and plain", text(table, 0));
+            assertEquals("bold and plain", text(table, 0));
+        }
+    }
+
+    @Test
+    void skipsPhoneticRuns() throws IOException {
+        try (SharedStrings table = read("<si><t>東京</t><rPh sb=\"0\" eb=\"2\"><t>トウキョウ</t></rPh>"
+                + "<phoneticPr fontId=\"1\"/></si>",
+                "<si><r><t>大</t></r><rPh sb=\"0\" eb=\"1\"><t>オオ</t></rPh><r><t>阪</t></r></si>")) {
+            assertEquals("東京", text(table, 0));
+            assertEquals("大阪", text(table, 1));
+        }
+    }
+
+    @Test
+    void decodesReferencesAndLineEnds() throws IOException {
+        try (SharedStrings table = read("<si><t>a &amp; b &lt;c&gt; &#x263A;&#65;</t></si>",
+                "<si><t>one\r\ntwo</t></si>", "<si><t><![CDATA[<raw>]]></t></si>")) {
+            assertEquals("a & b <c> ☺A", text(table, 0));
+            assertEquals("one\ntwo", text(table, 1));
+            assertEquals("<raw>", text(table, 2));
+        }
+    }
+
+    @Test
+    void servesEntriesSharingACacheSlot() throws IOException {
+        String[] entries = new String[2 * SLOTS + 8];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = i % SLOTS == 7 ? "<si><r><t>rich </t></r><r><t>" + i + "</t></r></si>"
+                    : "<si><t>" + i + "</t></si>";
+        }
+        try (SharedStrings table = read(entries)) {
+            for (int round = 0; round < 3; round++) {
+                assertEquals("rich 7", text(table, 7));
+                assertEquals("rich " + (SLOTS + 7), text(table, SLOTS + 7));
+                assertEquals("rich 7", text(table, 7));
+                assertEquals("rich " + (2 * SLOTS + 7), text(table, 2 * SLOTS + 7));
+                assertEquals(String.valueOf(SLOTS), text(table, SLOTS));
+            }
+        }
+    }
+
+    @Test
+    void decodesLongEntriesOnEveryUse() throws IOException {
+        String longText = "x&amp;y".repeat(1000);
+        String longDecoded = "x&y".repeat(1000);
+        String[] entries = new String[SLOTS + 1];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = "<si><t>" + i + "</t></si>";
+        }
+        entries[0] = "<si><t>" + longText + "</t></si>";
+        entries[SLOTS] = "<si><r><t>short</t></r></si>";
+        try (SharedStrings table = read(entries)) {
+            assertEquals(longDecoded, text(table, 0));
+            assertEquals("short", text(table, SLOTS));
+            assertEquals(longDecoded, text(table, 0));
+            assertEquals("short", text(table, SLOTS));
+        }
+    }
+
+    @Test
+    void rejectsIndexesOutOfRange() throws IOException {
+        try (SharedStrings table = read("<si><t>only</t></si>")) {
+            assertThrows(ConversionException.class, () -> text(table, 1));
+            assertThrows(ConversionException.class, () -> text(table, -1));
+        }
+    }
+
+    private static SharedStrings read(String... entries) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\""
+                + entries.length + "\" uniqueCount=\"" + entries.length + "\">");
+        for (String entry : entries) {
+            xml.append(entry);
+        }
+        xml.append("</sst>");
+        return SharedStrings.read(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)), -1);
+    }
+
+    private static String text(SharedStrings table, int index) throws ConversionException {
+        RowBuffer row = new RowBuffer();
+        row.reset(1);
+        row.beginCell(0);
+        table.appendTo(index, row);
+        row.endCell();
+        return row.cellAsString(0);
+    }
+}
@@ -0,0 +1,227 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tokenizes small documents and compares a trace of their events. Every
+ * document is read both from an array and from a stream that hands out a
+ * few bytes at a time, so that tags, references and CDATA sections straddle
+ * buffer refills.
+ */
+class SheetTokenizerTest {
+
+    private static final String[] ELEMENTS = {"?", "sheetData", "row", "c", "v", "is", "t", "rPh", "si"};
+    private static final String[] ATTRIBUTES = {"?", "r", "t", "s"};
+
+    @Test
+    void reportsKnownElementsAndAttributes() throws IOException {
+        assertEquals("<?><sheetData><row r=1><c r=A1 t=s><v>0</v></c><c r=B1 s=3></c></row></sheetData></?>",
+                trace("<worksheet><sheetData><row r=\"1\" spans=\"1:2\"><c r=\"A1\" t=\"s\"><v>0</v></c>"
+                        + "<c r='B1' s = '3'/></row></sheetData></worksheet>"));
+    }
+
+    @Test
+    void ignoresNamespacePrefixes() throws IOException {
+        assertEquals("<?><row r=2><c r=B2 t=inlineStr><is><t>x</t></is></c></row></?>",
+                trace("<x:worksheet xmlns:x=\"urn:x\"><x:row x:r=\"2\"><x:c r=\"B2\" x:t=\"inlineStr\">"
+                        + "<x:is><x:t>x</x:t></x:is></x:c></x:row></x:worksheet>"));
+    }
+
+    @Test
+    void decodesEntityAndCharacterReferences() throws IOException {
+        assertEquals("<t>a & b <>\"' A☺😀</t>",
+                trace("<t>a &amp; b &lt;&gt;&quot;&apos; &#65;&#x263A;&#x1F600;</t>"));
+    }
+
+    @Test
+    void rejectsUnknownEntities() {
+        assertThrows(ConversionException.class, () -> trace("<t>&nbsp;</t>"));
+    }
+
+    @Test
+    void readsCdataVerbatim() throws IOException {
+        assertEquals("<t><x> &amp; ]] a|b|c</t>",
+                trace("<t><![CDATA[<x> &amp; ]]]]><![CDATA[ a]]>|b|<![CDATA[c]]></t>"));
+    }
+
+    @Test
+    void normalisesLineEnds() throws IOException {
+        assertEquals("<t>a\nb\nc\n</t>", trace("<t>a\r\nb\rc\n</t>"));
+    }
+
+    @Test
+    void skipsDeclarationsCommentsAndProcessingInstructions() throws IOException {
+        assertEquals("<c><v>1</v></c>",
+                trace("<?xml version=\"1.0\"?><!DOCTYPE c [<!ENTITY e \"x\">]><!-- <v>0</v> -->"
+                        + "<c><?pi <v>?><v>1</v><!-- <v>2</v> --></c>"));
+    }
+
+    @Test
+    void skipsElementWithoutTokenizingIt() throws IOException {
+        SheetTokenizer xml = tokenizer("<sheetData><row r=\"1\"><c><v><![CDATA[</row>]]></v></c><!-- </row> --></row>"
+                + "<row r=\"2\"/></sheetData>");
+        assertEquals(SheetTokenizer.START_ELEMENT, xml.next());
+        assertEquals(SheetTokenizer.START_ELEMENT, xml.next());
+        xml.skipElement();
+        assertEquals(SheetTokenizer.START_ELEMENT, xml.next());
+        assertEquals(SheetTokenizer.ROW, xml.element());
+        assertEquals("2", attribute(xml, SheetTokenizer.ATTRIBUTE_R));
+    }
+
+    @Test
+    void copiesElementMarkup() throws IOException {
+        String content = "<r><t>a &amp; b</t></r><t><![CDATA[</si>]]></t>" + "x".repeat(100);
+        for (SheetTokenizer xml : tokenizers("<sst><si>" + content + "</si><si/><si><t>z</t></si></sst>")) {
+            assertEquals(SheetTokenizer.START_ELEMENT, xml.next());
+            assertEquals(SheetTokenizer.START_ELEMENT, xml.next());
+            assertEquals(SheetTokenizer.SHARED_ITEM, xml.element());
+            xml.copyElement();
+            assertEquals(content, text(xml));
+            assertEquals(SheetTokenizer.START_ELEMENT, xml.next());
+            xml.clearText();
+            xml.copyElement();
+            assertEquals("", text(xml));
+            assertEquals(SheetTokenizer.START_ELEMENT, xml.next());
+            xml.copyElement();
+            assertEquals("<t>z</t>", text(xml));
+            assertEquals(SheetTokenizer.END_ELEMENT, xml.next());
+            assertEquals(SheetTokenizer.END_DOCUMENT, xml.next());
+        }
+    }
+
+    @Test
+    void readsTextLongerThanTheBuffer() throws IOException {
+        String text = "0123456789&amp;".repeat(10_000);
+        assertEquals("<t>" + text.replace("&amp;", "&") + "</t>", trace("<t>" + text + "</t>"));
+    }
+
+    @Test
+    void skipsUtf8ByteOrderMark() throws IOException {
+        assertEquals("<t>ä</t>", streamTrace(bytes("\uFEFF<?xml version=\"1.0\"?><t>ä</t>", StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void transcodesUtf16WithByteOrderMark() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-16\"?><t>ä☺😀</t>";
+        assertEquals("<t>ä☺😀</t>", streamTrace(bytes("\uFEFF" + xml, StandardCharsets.UTF_16BE)));
+        assertEquals("<t>ä☺😀</t>", streamTrace(bytes("\uFEFF" + xml, StandardCharsets.UTF_16LE)));
+    }
+
+    @Test
+    void transcodesDeclaredEncoding() throws IOException {
+        String xml = "<?xml version='1.0' encoding='ISO-8859-1'?><c r=\"Ä1\"><t>äöü</t></c>";
+        assertEquals("<c r=Ä1><t>äöü</t></c>", streamTrace(bytes(xml, StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    void rejectsUnsupportedEncoding() {
+        byte[] xml = bytes("<?xml version=\"1.0\" encoding=\"x-no-such-charset\"?><t/>", StandardCharsets.US_ASCII);
+        assertThrows(ConversionException.class, () -> new SheetTokenizer(new ByteArrayInputStream(xml)));
+    }
+
+    @Test
+    void rejectsTruncatedDocuments() {
+        assertThrows(ConversionException.class, () -> trace("<c r=\"A1"));
+        assertThrows(ConversionException.class, () -> trace("<t><![CDATA[x</t>"));
+        assertThrows(ConversionException.class, () -> {
+            SheetTokenizer xml = tokenizer("<row><c>");
+            xml.next();
+            xml.skipElement();
+        });
+    }
+
+    /** Traces {@code xml} read from an array and from a stream, which must agree. */
+    private static String trace(String xml) throws IOException {
+        SheetTokenizer[] both = tokenizers(xml);
+        String fromArray = trace(both[0]);
+        assertEquals(fromArray, trace(both[1]), "stream");
+        return fromArray;
+    }
+
+    private static String streamTrace(byte[] xml) throws IOException {
+        return trace(new SheetTokenizer(new Trickle(xml)));
+    }
+
+    private static String trace(SheetTokenizer xml) throws IOException {
+        StringBuilder trace = new StringBuilder();
+        for (int event = xml.next(); event != SheetTokenizer.END_DOCUMENT; event = xml.next()) {
+            if (event == SheetTokenizer.TEXT) {
+                xml.clearText();
+                xml.collectText();
+                trace.append(text(xml));
+                continue;
+            }
+            if (event == SheetTokenizer.END_ELEMENT) {
+                trace.append("</").append(ELEMENTS[xml.element()]).append('>');
+                continue;
+            }
+            trace.append('<').append(ELEMENTS[xml.element()]);
+            for (int i = 0; i < xml.attributeCount(); i++) {
+                trace.append(' ').append(ATTRIBUTES[xml.attributeName(i)]).append('=').append(
+                        new String(xml.buffer(), xml.attributeStart(i), xml.attributeEnd(i) - xml.attributeStart(i),
+                                StandardCharsets.UTF_8));
+            }
+            trace.append('>');
+        }
+        return trace.toString();
+    }
+
+    private static SheetTokenizer tokenizer(String xml) {
+        byte[] bytes = bytes(xml, StandardCharsets.UTF_8);
+        return new SheetTokenizer(bytes, 0, bytes.length);
+    }
+
+    private static SheetTokenizer[] tokenizers(String xml) throws IOException {
+        byte[] bytes = bytes(xml, StandardCharsets.UTF_8);
+        byte[] padded = new byte[bytes.length + 6];
+        System.arraycopy(bytes, 0, padded, 3, bytes.length);
+        return new SheetTokenizer[] {
+            new SheetTokenizer(padded, 3, bytes.length),
+            new SheetTokenizer(new Trickle(bytes))
+        };
+    }
+
+    private static String attribute(SheetTokenizer xml, int name) {
+        int i = xml.attribute(name);
+        return new String(xml.buffer(), xml.attributeStart(i), xml.attributeEnd(i) - xml.attributeStart(i),
+                StandardCharsets.UTF_8);
+    }
+
+    private static String text(SheetTokenizer xml) {
+        return new String(xml.text(), 0, xml.textLength(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String s, Charset charset) {
+        return s.getBytes(charset);
+    }
+
+    /** Returns at most three bytes per read. */
+    private static final class Trickle extends InputStream {
+
+        private final ByteArrayInputStream in;
+
+        Trickle(byte[] bytes) {
+            this.in = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return in.read(b, off, Math.min(len, 3));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.github.godse823.exceltocsv.xlsx;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.godse823.exceltocsv.ConversionException;
+import com.github.godse823.exceltocsv.ConversionOptions;
+import com.github.godse823.exceltocsv.ExcelToCsvConverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * The sample workbook streamed with its entries rearranged and sized by
+ * data descriptors, as a streaming writer leaves them, so that sheets
+ * arrive before the parts they depend on and must be spilled. Whatever the
+ * order, the output must match the golden CSV files and no spill file may
+ * be left behind.
+ */
+class StreamedXlsxTest {
+
+    private static final String SHEET1 = "xl/worksheets/sheet1.xml";
+    private static final String SHEET2 = "xl/worksheets/sheet2.xml";
+    private static final String SHARED_STRINGS = "xl/sharedStrings.xml";
+
+    @TempDir
+    Path out;
+
+    static Stream<Arguments> orders() {
+        return Stream.of(
+                Arguments.of("as Excel writes it", List.of("[Content_Types].xml", "_rels/.rels", "docProps/app.xml",
+                        "docProps/core.xml", "xl/workbook.xml", "xl/_rels/workbook.xml.rels", SHEET1, SHEET2,
+                        "xl/styles.xml", SHARED_STRINGS)),
+                Arguments.of("sheets in reverse", List.of("_rels/.rels", "xl/workbook.xml",
+                        "xl/_rels/workbook.xml.rels", SHEET2, "xl/styles.xml", SHEET1, SHARED_STRINGS,
+                        "[Content_Types].xml", "docProps/app.xml", "docProps/core.xml")),
+                Arguments.of("structure last", List.of(SHEET1, SHARED_STRINGS, "xl/workbook.xml", SHEET2,
+                        "xl/styles.xml", "xl/_rels/workbook.xml.rels", "[Content_Types].xml", "_rels/.rels",
+                        "docProps/app.xml", "docProps/core.xml")));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("orders")
+    void convertsEntriesInAnyOrder(String description, List<String> order) throws IOException {
+        Map<String, byte[]> parts = sampleParts();
+        Set<Path> spillsBefore = spillFiles();
+
+        convert(zip(parts, order));
+
+        for (String file : List.of("Data.csv", "Other Sheet_.csv")) {
+            assertEquals(Files.readString(resource("golden/xlsx/" + file)), Files.readString(out.resolve(file)),
+                    file);
+        }
+        assertEquals(spillsBefore, spillFiles());
+    }
+
+    @Test
+    void spillsLargeSheetUntilSharedStringsArrive() throws IOException {
+        Map<String, byte[]> parts = sampleParts();
+        StringBuilder sheet = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><worksheet"
+                + " xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+        StringBuilder expected = new StringBuilder();
+        SplittableRandom random = new SplittableRandom(42);
+        // Random values keep the compressed sheet larger than the stream reader's buffer.
+        for (int r = 1; r <= 20_000; r++) {
+            int value = random.nextInt(1_000_000_000);
+            sheet.append("<row r=\"").append(r).append("\"><c r=\"A").append(r).append("\" t=\"s\"><v>")
+                    .append(10 + r % 9).append("</v></c><c r=\"B").append(r).append("\"><v>").append(value)
+                    .append("</v></c></row>");
+            expected.append('r').append(r % 9 / 3).append('c').append(r % 3).append(',').append(value).append('\n');
+        }
+        parts.put(SHEET2, sheet.append("</sheetData></worksheet>").toString().getBytes(StandardCharsets.UTF_8));
+        Set<Path> spillsBefore = spillFiles();
+
+        convert(zip(parts, List.of("_rels/.rels", "xl/workbook.xml", "xl/_rels/workbook.xml.rels", SHEET2, SHEET1,
+                "xl/styles.xml", SHARED_STRINGS)));
+
+        assertEquals(expected.toString(), Files.readString(out.resolve("Other Sheet_.csv")).replace("\r\n", "\n"));
+        assertEquals(spillsBefore, spillFiles());
+    }
+
+    @Test
+    void deletesSpillsWhenConversionFails() throws IOException {
+        Map<String, byte[]> parts = sampleParts();
+        parts.put(SHARED_STRINGS, ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><sst"
+                + " xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><si><t>only</t></si></sst>")
+                .getBytes(StandardCharsets.UTF_8));
+        Set<Path> spillsBefore = spillFiles();
+
+        byte[] workbook = zip(parts, List.of("_rels/.rels", "xl/workbook.xml", "xl/_rels/workbook.xml.rels", SHEET1,
+                SHEET2, "xl/styles.xml", SHARED_STRINGS));
+
+        assertThrows(ConversionException.class, () -> convert(workbook));
+        assertEquals(spillsBefore, spillFiles());
+    }
+
+    private void convert(byte[] workbook) throws IOException {
+        try (InputStream in = new ByteArrayInputStream(workbook)) {
+            new ExcelToCsvConverter(ConversionOptions.defaults()).convert(in, out);
+        }
+    }
+
+    /** The entries of the sample workbook, by name. */
+    private static Map<String, byte[]> sampleParts() throws IOException {
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        try (ZipFile zip = new ZipFile(resource("golden/sample.xlsx").toFile())) {
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream in = zip.getInputStream(entry)) {
+                    parts.put(entry.getName(), in.readAllBytes());
+                }
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Writes the named parts in the given order as deflated entries, whose
+     * sizes {@link ZipOutputStream} puts in a data descriptor after the data.
+     */
+    private static byte[] zip(Map<String, byte[]> parts, List<String> order) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (String name : order) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(parts.get(name));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Set<Path> spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith("excel-to-csv-") && name.endsWith(".part");
+            }).collect(Collectors.toSet());
+        }
+    }
+
+    private static Path resource(String name) {
+        try {
+            return Path.of(StreamedXlsxTest.class.getResource("/" + name).toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.github.godse823.exceltocsv.zip;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Inflates DEFLATE streams with the Java inflater and with
+ * {@link java.util.zip.Inflater}, which must agree. Streams come from
+ * {@link Deflater} with each strategy, and from a small encoder here for
+ * codes zlib never emits, such as matches at the full 32K distance.
+ */
+class JavaInflaterTest {
+
+    private static final int STORED = 0;
+    private static final int FIXED = 1;
+    private static final int DYNAMIC = 2;
+
+    /** Sizes of the windows the compressed stream is handed over in. */
+    private static final int[] WINDOWS = {1, 7, 8, 4096, 64 * 1024 + 1, Integer.MAX_VALUE};
+
+    static Stream<Arguments> deflated() {
+        byte[] xml = xml(400_000);
+        byte[] random = random(300_000);
+        return Stream.of(
+                Arguments.of("empty", deflate(new byte[0], Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY),
+                        FIXED),
+                Arguments.of("short text fixed", deflate("a short row".getBytes(StandardCharsets.US_ASCII),
+                        Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY), FIXED),
+                Arguments.of("stored", deflate(xml, Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY), STORED),
+                Arguments.of("incompressible", deflate(random, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY),
+                        STORED),
+                Arguments.of("dynamic", deflate(xml, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY),
+                        DYNAMIC),
+                Arguments.of("fast", deflate(xml, Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY), DYNAMIC),
+                Arguments.of("huffman only", deflate(xml, Deflater.DEFAULT_COMPRESSION, Deflater.HUFFMAN_ONLY),
+                        DYNAMIC),
+                Arguments.of("filtered", deflate(xml, Deflater.BEST_COMPRESSION, Deflater.FILTERED), DYNAMIC),
+                Arguments.of("mixed blocks", mixed(xml, random), DYNAMIC),
+                Arguments.of("long runs", deflate(runs(500_000), Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY),
+                        DYNAMIC),
+                Arguments.of("full distance matches", fixedBlockWithFarMatches(), FIXED));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("deflated")
+    void matchesJdkInflater(String name, byte[] deflated, int firstBlockType) throws IOException {
+        assertEquals(firstBlockType, (deflated[0] >> 1) & 3, "type of the first block");
+        byte[] expected = jdkInflate(deflated);
+        for (int window : WINDOWS) {
+            assertArrayEquals(expected, javaInflate(deflated, window, false), name + ", windows of " + window);
+        }
+        assertArrayEquals(expected, javaInflate(deflated, 4096, true), name + ", direct windows");
+    }
+
+    @Test
+    void readsByteAtATime() throws IOException {
+        byte[] data = xml(20_000);
+        byte[] deflated = deflate(data, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = JavaInflater.BACKEND.inflate(windows(deflated, 3, false))) {
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                out.write(b);
+            }
+        }
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    void rejectsTruncatedStream() {
+        byte[] deflated = deflate(xml(100_000), Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        byte[] truncated = Arrays.copyOf(deflated, deflated.length / 2);
+        assertThrows(ConversionException.class, () -> javaInflate(truncated, 4096, false));
+    }
+
+    @Test
+    void rejectsDistanceBeforeStartOfOutput() {
+        BitWriter bits = new BitWriter();
+        bits.bits(1, 1);
+        bits.bits(FIXED, 2);
+        bits.literal('x');
+        bits.match(3, 2);
+        bits.endOfBlock();
+        assertThrows(ConversionException.class, () -> javaInflate(bits.toByteArray(), 4096, false));
+    }
+
+    @Test
+    void isSelectableByName() {
+        assertEquals("java", InflaterBackend.named("java").name());
+        assertEquals("jdk", InflaterBackend.named("jdk").name());
+        assertThrows(IllegalArgumentException.class, () -> InflaterBackend.named("no-such-inflater"));
+    }
+
+    private static byte[] javaInflate(byte[] deflated, int window, boolean direct) throws IOException {
+        try (InputStream in = JavaInflater.BACKEND.inflate(windows(deflated, window, direct))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Hands out {@code deflated} in windows of {@code size}, the last ending exactly at the end of the stream. */
+    private static InflaterBackend.Input windows(byte[] deflated, int size, boolean direct) {
+        return new InflaterBackend.Input() {
+            private int position;
+
+            @Override
+            public ByteBuffer next() {
+                if (position == deflated.length) {
+                    return null;
+                }
+                int n = Math.min(size, deflated.length - position);
+                ByteBuffer window = direct ? ByteBuffer.allocateDirect(n) : ByteBuffer.allocate(n);
+                window.put(deflated, position, n).flip();
+                position += n;
+                return window;
+            }
+        };
+    }
+
+    private static byte[] jdkInflate(byte[] deflated) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(deflated);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && !inflater.finished() && inflater.needsInput()) {
+                    throw new IllegalStateException("Truncated test stream");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(byte[] data, int level, int strategy) {
+        Deflater deflater = new Deflater(level, true);
+        deflater.setStrategy(strategy);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] out = drain(deflater);
+        deflater.end();
+        return out;
+    }
+
+    /** Text and random data deflated with changing levels, which starts new blocks of different types. */
+    private static byte[] mixed(byte[] text, byte[] random) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] levels = {Deflater.DEFAULT_COMPRESSION, Deflater.NO_COMPRESSION, Deflater.BEST_SPEED};
+        for (int i = 0; i < 6; i++) {
+            deflater.setLevel(levels[i % levels.length]);
+            byte[] part = i % 2 == 0 ? text : random;
+            deflater.setInput(part, i * 1000, 50_000);
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        deflater.finish();
+        out.writeBytes(drain(deflater));
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] drain(Deflater deflater) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A fixed-code block of 32K random literals followed by matches at
+     * distance 32768, the farthest DEFLATE allows, including ones of the
+     * longest length, 258, and overlapping runs at distance 1.
+     */
+    private static byte[] fixedBlockWithFarMatches() {
+        BitWriter bits = new BitWriter();
+        bits.bits(1, 1);
+        bits.bits(FIXED, 2);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 32 * 1024; i++) {
+            bits.literal(random.nextInt(256));
+        }
+        bits.match(258, 32768);
+        bits.match(3, 32768);
+        bits.match(100, 32768);
+        bits.match(258, 1);
+        bits.match(227, 32768);
+        bits.literal('z');
+        bits.match(258, 32768);
+        bits.endOfBlock();
+        return bits.toByteArray();
+    }
+
+    private static byte[] xml(int size) {
+        StringBuilder xml = new StringBuilder(size + 200);
+        SplittableRandom random = new SplittableRandom(1);
+        for (int row = 1; xml.length() < size; row++) {
+            xml.append("<row r=\"").append(row).append("\"><c r=\"A").append(row).append("\" t=\"s\"><v>")
+                    .append(random.nextInt(5000)).append("</v></c><c r=\"B").append(row).append("\"><v>")
+                    .append(random.nextDouble() * 1000).append("</v></c></row>");
+        }
+        return xml.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new SplittableRandom(2).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] runs(int size) {
+        byte[] bytes = new byte[size];
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < size; ) {
+            int run = Math.min(size - i, 1 + random.nextInt(2000));
+            Arrays.fill(bytes, i, i + run, (byte) random.nextInt(4));
+            i += run;
+        }
+        return bytes;
+    }
+
+    /** Writes DEFLATE bits, with the fixed codes of RFC 1951 section 3.2.6. */
+    private static final class BitWriter {
+
+        private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+        private static final int[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+        private static final int[] DIST_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+        private static final int[] DIST_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private long buffer;
+        private int count;
+
+        /** Writes {@code n} bits of {@code value}, least significant first. */
+        void bits(int value, int n) {
+            buffer |= (long) value << count;
+            count += n;
+            while (count >= 8) {
+                out.write((int) buffer);
+                buffer >>>= 8;
+                count -= 8;
+            }
+        }
+
+        /** Writes a Huffman code, which goes most significant bit first. */
+        void code(int code, int length) {
+            bits(Integer.reverse(code) >>> (32 - length), length);
+        }
+
+        void literal(int value) {
+            symbol(value);
+        }
+
+        void match(int length, int distance) {
+            int lengthCode = lastAtMost(LENGTH_BASE, length);
+            symbol(257 + lengthCode);
+            bits(length - LENGTH_BASE[lengthCode], LENGTH_EXTRA[lengthCode]);
+            int distanceCode = lastAtMost(DIST_BASE, distance);
+            code(distanceCode, 5);
+            bits(distance - DIST_BASE[distanceCode], DIST_EXTRA[distanceCode]);
+        }
+
+        void endOfBlock() {
+            symbol(256);
+        }
+
+        byte[] toByteArray() {
+            bits(0, 7);
+            return out.toByteArray();
+        }
+
+        private void symbol(int symbol) {
+            if (symbol < 144) {
+                code(0x30 + symbol, 8);
+            } else if (symbol < 256) {
+                code(0x190 + symbol - 144, 9);
+            } else if (symbol < 280) {
+                code(symbol - 256, 7);
+            } else {
+                code(0xC0 + symbol - 280, 8);
+            }
+        }
+
+        private static int lastAtMost(int[] bases, int value) {
+            int i = bases.length - 1;
+            while (bases[i] > value) {
+                i--;
+            }
+            return i;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.godse823.exceltocsv.zip;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Archives with ZIP64 records and extra fields, and archives whose central
+ * directory is damaged in one field at a time, each of which must fail with
+ * a {@link ConversionException} rather than a runtime exception.
+ */
+class MappedZipFileTest {
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_RECORD_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    @TempDir
+    Path work;
+
+    @Test
+    void readsZip64Archive() throws IOException {
+        byte[] sheet = content("xl/worksheets/sheet1.xml", 50_000);
+        byte[] workbook = content("xl/workbook.xml", 300);
+        Path path = work.resolve("zip64.xlsx");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(path)) {
+            zip.setUseZip64(Zip64Mode.Always);
+            put(zip, "xl/workbook.xml", workbook, ZipEntry.STORED);
+            put(zip, "xl/worksheets/sheet1.xml", sheet, ZipEntry.DEFLATED);
+        }
+        byte[] archive = Files.readAllBytes(path);
+        int locator = archive.length - END_RECORD_SIZE - ZIP64_LOCATOR_SIZE;
+        assertEquals(0x07064b50, le(archive).getInt(locator));
+        assertEquals(0xFFFFFFFF, le(archive).getInt(centralHeader(archive, 1) + 20));
+
+        try (MappedZipFile file = MappedZipFile.open(path)) {
+            MappedZipFile.Entry entry = file.getEntry("xl/worksheets/sheet1.xml");
+            assertEquals(sheet.length, entry.size());
+            assertTrue(entry.compressedSize() < entry.size());
+            assertArrayEquals(sheet, read(file, entry));
+            assertArrayEquals(workbook, read(file, file.getEntry("xl/workbook.xml")));
+        }
+    }
+
+    @Test
+    void skipsUnknownExtraFields() throws IOException {
+        byte[] archive = zip(new byte[] {(byte) 0xFE, (byte) 0xCA, 4, 0, 1, 2, 3, 4}, "a.xml", "b.xml");
+
+        try (MappedZipFile file = MappedZipFile.open(Files.write(work.resolve("extra.zip"), archive))) {
+            assertArrayEquals(content("b.xml", 1000), read(file, file.getEntry("b.xml")));
+        }
+    }
+
+    @Test
+    void rejectsNameRunningPastDirectory() throws IOException {
+        byte[] archive = zip(null, "a.xml", "b.xml");
+        le(archive).putShort(centralHeader(archive, 1) + 28, (short) 0xFFFF);
+
+        assertRejected(archive);
+    }
+
+    @Test
+    void rejectsExtraFieldRunningPastHeader() throws IOException {
+        byte[] archive = zip(new byte[] {(byte) 0xFE, (byte) 0xCA, 4, 0, 1, 2, 3, 4}, "a.xml", "b.xml");
+        int header = centralHeader(archive, 1);
+        le(archive).putShort(header + 46 + 5 + 2, (short) 200);
+
+        assertRejected(archive);
+    }
+
+    @Test
+    void rejectsZip64ExtraFieldTooShortForItsValues() throws IOException {
+        byte[] archive = zip(new byte[] {(byte) 0xFE, (byte) 0xCA, 0, 0}, "a.xml", "b.xml");
+        int header = centralHeader(archive, 1);
+        le(archive).putShort(header + 46 + 5, (short) 0x0001).putInt(header + 20, 0xFFFFFFFF);
+
+        assertRejected(archive);
+    }
+
+    @Test
+    void rejectsZip64LocatorOutsideFile() throws IOException {
+        Path path = work.resolve("zip64.zip");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(path)) {
+            zip.setUseZip64(Zip64Mode.Always);
+            put(zip, "a.xml", content("a.xml", 100), ZipEntry.DEFLATED);
+        }
+        byte[] archive = Files.readAllBytes(path);
+        int locator = archive.length - END_RECORD_SIZE - ZIP64_LOCATOR_SIZE;
+
+        le(archive).putLong(locator + 8, 1L << 40);
+        assertRejected(archive);
+        le(archive).putLong(locator + 8, -1);
+        assertRejected(archive);
+    }
+
+    @Test
+    void rejectsDirectoryOutsideFile() throws IOException {
+        byte[] archive = zip(null, "a.xml");
+        le(archive).putInt(archive.length - END_RECORD_SIZE + 16, archive.length);
+
+        assertRejected(archive);
+    }
+
+    @Test
+    void rejectsMoreEntriesThanDirectoryHolds() throws IOException {
+        byte[] archive = zip(null, "a.xml", "b.xml");
+        le(archive).putShort(archive.length - END_RECORD_SIZE + 10, (short) 3);
+
+        assertRejected(archive);
+    }
+
+    @Test
+    void rejectsLocalHeaderOutsideFile() throws IOException {
+        byte[] archive = zip(null, "a.xml", "b.xml");
+        le(archive).putInt(centralHeader(archive, 1) + 42, 0x7FFFFFF0);
+
+        assertRejected(archive);
+    }
+
+    @Test
+    void rejectsTruncatedArchive() throws IOException {
+        byte[] archive = zip(null, "a.xml", "b.xml");
+
+        assertRejected(Arrays.copyOf(archive, centralHeader(archive, 1) + 10));
+    }
+
+    /** Asserts that opening the archive, or reading any of its entries, fails cleanly. */
+    private void assertRejected(byte[] archive) throws IOException {
+        Path path = Files.write(work.resolve("damaged.zip"), archive);
+        assertThrows(ConversionException.class, () -> {
+            try (MappedZipFile file = MappedZipFile.open(path)) {
+                for (MappedZipFile.Entry entry : file.entries()) {
+                    read(file, entry);
+                }
+            }
+        });
+    }
+
+    /** An archive of deflated entries named {@code names}, each with the given extra field if not null. */
+    private static byte[] zip(byte[] extra, String... names) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (String name : names) {
+                ZipEntry entry = new ZipEntry(name);
+                if (extra != null) {
+                    entry.setExtra(extra);
+                }
+                zip.putNextEntry(entry);
+                zip.write(content(name, 1000));
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void put(ZipArchiveOutputStream zip, String name, byte[] data, int method) throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(method);
+        zip.putArchiveEntry(entry);
+        zip.write(data);
+        zip.closeArchiveEntry();
+    }
+
+    /** Offset of the central directory header of entry {@code index}, in an archive without a comment. */
+    private static int centralHeader(byte[] archive, int index) {
+        ByteBuffer buffer = le(archive);
+        int position = buffer.getInt(archive.length - END_RECORD_SIZE + 16);
+        for (int i = 0; i < index; i++) {
+            assertEquals(CENTRAL_HEADER_SIGNATURE, buffer.getInt(position));
+            position += 46 + (buffer.getShort(position + 28) & 0xFFFF) + (buffer.getShort(position + 30) & 0xFFFF)
+                    + (buffer.getShort(position + 32) & 0xFFFF);
+        }
+        return position;
+    }
+
+    private static byte[] read(MappedZipFile file, MappedZipFile.Entry entry) throws IOException {
+        try (InputStream in = file.getInputStream(entry)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] content(String name, int length) {
+        byte[] row = ("<row>" + name + "</row>\n").getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = row[i % row.length];
+        }
+        return data;
+    }
+
+    private static ByteBuffer le(byte[] archive) {
+        return ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
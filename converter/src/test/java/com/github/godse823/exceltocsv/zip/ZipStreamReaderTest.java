@@ -0,0 +1,203 @@
+package com.github.godse823.exceltocsv.zip;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.godse823.exceltocsv.ConversionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Archives read front to back as a streaming writer leaves them: deflated
+ * entries whose sizes follow in a data descriptor, in the 4-byte and the
+ * ZIP64 8-byte form, mixed with stored entries whose sizes are known, and
+ * handed over in pieces as small as a pipe may deliver them.
+ */
+class ZipStreamReaderTest {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+
+    /** Larger than the reader's buffer once deflated. */
+    private static final byte[] LARGE = random(300_000);
+    private static final byte[] SMALL = "<row r=\"1\"/>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] STORED = "[Content_Types]".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void readsEntriesSizedByDataDescriptors() throws IOException {
+        byte[] archive = zip();
+
+        for (int chunk : new int[] {1, 7, Integer.MAX_VALUE}) {
+            try (ZipStreamReader zip = new ZipStreamReader(dribble(archive, chunk))) {
+                assertEntry(zip.next(), "stored.xml", 0, STORED.length);
+                assertArrayEquals(STORED, zip.openEntry().readAllBytes());
+                assertEntry(zip.next(), "large.xml", 8, -1);
+                assertArrayEquals(LARGE, zip.openEntry().readAllBytes());
+                assertEntry(zip.next(), "empty.xml", 8, -1);
+                assertArrayEquals(new byte[0], zip.openEntry().readAllBytes());
+                assertEntry(zip.next(), "small.xml", 8, -1);
+                assertArrayEquals(SMALL, zip.openEntry().readAllBytes());
+                assertNull(zip.next());
+            }
+        }
+    }
+
+    @Test
+    void readsZip64DataDescriptors() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(out)) {
+            zip.setUseZip64(Zip64Mode.Always);
+            for (String name : new String[] {"large.xml", "empty.xml", "small.xml"}) {
+                zip.putArchiveEntry(new ZipArchiveEntry(name));
+                zip.write(content(name));
+                zip.closeArchiveEntry();
+            }
+        }
+
+        try (ZipStreamReader zip = new ZipStreamReader(dribble(out.toByteArray(), 4096))) {
+            assertEntry(zip.next(), "large.xml", 8, -1);
+            assertArrayEquals(LARGE, zip.openEntry().readAllBytes());
+            assertEntry(zip.next(), "empty.xml", 8, -1);
+            assertEntry(zip.next(), "small.xml", 8, -1);
+            assertArrayEquals(SMALL, zip.openEntry().readAllBytes());
+            assertNull(zip.next());
+        }
+    }
+
+    @Test
+    void skipsEntriesLeftUnreadOrHalfRead() throws IOException {
+        try (ZipStreamReader zip = new ZipStreamReader(dribble(zip(), 1000))) {
+            zip.next();
+            zip.next();
+            assertEquals(LARGE[0], (byte) zip.openEntry().read());
+            zip.next();
+            assertEntry(zip.next(), "small.xml", 8, -1);
+            assertArrayEquals(SMALL, zip.openEntry().readAllBytes());
+            assertNull(zip.next());
+        }
+    }
+
+    @Test
+    void readsBackRawEntriesSpilledBeforeUse() throws IOException {
+        byte[][] raw = new byte[4][];
+        int[] methods = new int[4];
+        try (ZipStreamReader zip = new ZipStreamReader(dribble(zip(), 999))) {
+            for (int i = 0; i < raw.length; i++) {
+                methods[i] = zip.next().method();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                long length = zip.transferRawTo(out);
+                assertEquals(out.size(), length);
+                raw[i] = out.toByteArray();
+            }
+            assertNull(zip.next());
+        }
+
+        byte[][] expected = {STORED, LARGE, new byte[0], SMALL};
+        for (int i = 0; i < raw.length; i++) {
+            try (InputStream in = ZipStreamReader.openRaw(new ByteArrayInputStream(raw[i]), methods[i])) {
+                assertArrayEquals(expected[i], in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void rejectsStoredEntryWithoutSizes() throws IOException {
+        byte[] archive = zip();
+        ByteBuffer header = ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(LOCAL_HEADER_SIGNATURE, header.getInt(0));
+        header.putShort(6, (short) (header.getShort(6) | FLAG_DATA_DESCRIPTOR));
+
+        try (ZipStreamReader zip = new ZipStreamReader(new ByteArrayInputStream(archive))) {
+            assertThrows(ConversionException.class, zip::next);
+        }
+    }
+
+    @Test
+    void rejectsTruncatedStream() throws IOException {
+        byte[] archive = zip();
+
+        for (int length : new int[] {10, 40, archive.length / 2}) {
+            try (ZipStreamReader zip = new ZipStreamReader(new ByteArrayInputStream(archive, 0, length))) {
+                assertThrows(ConversionException.class, () -> {
+                    while (zip.next() != null) {
+                        zip.openEntry().readAllBytes();
+                    }
+                });
+            }
+        }
+    }
+
+    private static void assertEntry(ZipStreamReader.Entry entry, String name, int method, long size) {
+        assertEquals(name, entry.name());
+        assertEquals(method, entry.method());
+        assertEquals(size, entry.size());
+    }
+
+    /**
+     * A stored entry with its sizes in the header, then deflated ones whose
+     * sizes follow their data, as {@link ZipOutputStream} writes them.
+     */
+    private static byte[] zip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            ZipEntry stored = new ZipEntry("stored.xml");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(STORED.length);
+            CRC32 crc = new CRC32();
+            crc.update(STORED);
+            stored.setCrc(crc.getValue());
+            zip.putNextEntry(stored);
+            zip.write(STORED);
+            for (String name : new String[] {"large.xml", "empty.xml", "small.xml"}) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(content(name));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] content(String name) {
+        return switch (name) {
+            case "large.xml" -> LARGE;
+            case "small.xml" -> SMALL;
+            default -> new byte[0];
+        };
+    }
+
+    /** Random digits in rows, which deflate to a little under half their size. */
+    private static byte[] random(int length) {
+        SplittableRandom random = new SplittableRandom(18);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 40 == 39 ? '\n' : '0' + random.nextInt(10));
+        }
+        return data;
+    }
+
+    /** Hands the data over at most {@code chunk} bytes per read. */
+    private static InputStream dribble(byte[] data, int chunk) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, chunk));
+            }
+        };
+    }
+}